@@ -0,0 +1,109 @@
+using System.Collections.Generic;
+using NUnit.Framework;
+using Unity.MLAgents;
+using Unity.MLAgents.Actuators;
+using Unity.MLAgents.Sensors;
+using Unity.PerformanceTesting;
+using UnityEngine;
+
+namespace MLAgentsExamples.Tests.Performance
+{
+    /// <summary>
+    /// Measures the time of an Academy step with agents that use a RayPerceptionSensorComponent3D, with rays cast
+    /// one at a time and in batches, among a grid of obstacles.
+    /// </summary>
+    [TestFixture]
+    public class RayPerceptionPerformanceTests
+    {
+        const int k_MeasurementCount = 25;
+        const int k_StepsPerMeasurement = 10;
+        const int k_NumObstacles = 400;
+
+        List<GameObject> m_GameObjects = new List<GameObject>();
+
+        /// <summary>
+        /// Agent that requests a decision at every step.
+        /// </summary>
+        class RayAgent : Agent
+        {
+            public override void Heuristic(in ActionBuffers actionsOut)
+            {
+            }
+        }
+
+        [SetUp]
+        public void SetUp()
+        {
+            Random.InitState(0);
+            // Spread obstacles with different tags on a grid around the agents.
+            var gridSize = (int)Mathf.Sqrt(k_NumObstacles);
+            for (var i = 0; i < k_NumObstacles; i++)
+            {
+                var obstacle = GameObject.CreatePrimitive(i % 2 == 0 ? PrimitiveType.Cube : PrimitiveType.Sphere);
+                obstacle.transform.position = new Vector3(
+                    5f * (i % gridSize - gridSize / 2), 0, 5f * (i / gridSize - gridSize / 2) + 2.5f);
+                obstacle.tag = i % 3 == 0 ? "Player" : "Respawn";
+                m_GameObjects.Add(obstacle);
+            }
+            Physics.SyncTransforms();
+        }
+
+        [TearDown]
+        public void TearDown()
+        {
+            foreach (var gameObject in m_GameObjects)
+            {
+                Object.DestroyImmediate(gameObject);
+            }
+            m_GameObjects.Clear();
+        }
+
+        void CreateAgents(int numAgents, bool useBatchedRaycasts, float castRadius)
+        {
+            for (var i = 0; i < numAgents; i++)
+            {
+                var agentGameObj = new GameObject();
+                agentGameObj.transform.position = new Vector3(Random.Range(-40f, 40f), 0, Random.Range(-40f, 40f));
+                agentGameObj.transform.rotation = Quaternion.Euler(0, Random.Range(0f, 360f), 0);
+                var perception = agentGameObj.AddComponent<RayPerceptionSensorComponent3D>();
+                perception.RaysPerDirection = 10;
+                perception.RayLength = 20;
+                perception.SphereCastRadius = castRadius;
+                perception.DetectableTags = new List<string> { "Player", "Respawn" };
+                perception.UseBatchedRaycasts = useBatchedRaycasts;
+                var agent = agentGameObj.AddComponent<RayAgent>();
+                agent.LazyInitialize();
+                m_GameObjects.Add(agentGameObj);
+            }
+        }
+
+        void Step()
+        {
+            for (var i = 0; i < k_StepsPerMeasurement; i++)
+            {
+                foreach (var gameObject in m_GameObjects)
+                {
+                    gameObject.GetComponent<Agent>()?.RequestDecision();
+                }
+                Academy.Instance.EnvironmentStep();
+            }
+        }
+
+        [Test, Performance]
+        public void TestRayPerception(
+            [Values(1, 100, 1000)] int numAgents,
+            [Values(false, true)] bool useBatchedRaycasts,
+            [Values(0f, .5f)] float castRadius)
+        {
+            CreateAgents(numAgents, useBatchedRaycasts, castRadius);
+            // Don't time the first step, which initializes the Academy and allocates the buffers.
+            Step();
+
+            // Each measurement is the time of k_StepsPerMeasurement steps.
+            Measure.Method(Step)
+                .MeasurementCount(k_MeasurementCount)
+                .GC()
+                .Run();
+        }
+    }
+}
@@ -68,6 +68,7 @@ namespace Unity.MLAgents.Editor
                 EditorGUILayout.LabelField("Collider and Buffer", EditorStyles.boldLabel);
                 EditorGUILayout.PropertyField(so.FindProperty(nameof(GridSensorComponent.m_InitialColliderBufferSize)), true);
                 EditorGUILayout.PropertyField(so.FindProperty(nameof(GridSensorComponent.m_MaxColliderBufferSize)), true);
+                EditorGUILayout.PropertyField(so.FindProperty(nameof(GridSensorComponent.m_UseSpatialHash)), true);
             }
             EditorGUI.EndDisabledGroup();
 
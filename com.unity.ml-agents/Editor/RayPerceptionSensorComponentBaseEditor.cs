@@ -61,6 +61,7 @@ namespace Unity.MLAgents.Editor
             {
                 EditorGUILayout.PropertyField(so.FindProperty("m_StartVerticalOffset"), true);
                 EditorGUILayout.PropertyField(so.FindProperty("m_EndVerticalOffset"), true);
+                EditorGUILayout.PropertyField(so.FindProperty("m_UseBatchedRaycasts"), true);
             }
 
             EditorGUILayout.PropertyField(so.FindProperty("rayHitColor"), true);
@@ -7,6 +7,7 @@ using UnityEditor;
 using Unity.MLAgents.Actuators;
 using Unity.MLAgents.Inference;
 using Unity.MLAgents.Policies;
+using Unity.MLAgents.Sensors;
 using Unity.MLAgents.SideChannels;
 using Unity.Barracuda;
 
@@ -164,6 +165,14 @@ namespace Unity.MLAgents
         bool m_Initialized;
         List<ModelRunner> m_ModelRunners = new List<ModelRunner>();
 
+        // Casts the rays of the ray perception sensors that use batched raycasts.
+        RayPerceptionBatch m_RayPerceptionBatch = new RayPerceptionBatch();
+
+        internal RayPerceptionBatch RayPerceptionBatch
+        {
+            get { return m_RayPerceptionBatch; }
+        }
+
         // Flag used to keep track of the first time the Academy is reset.
         bool m_HadFirstReset;
 
@@ -222,6 +231,11 @@ namespace Unity.MLAgents
         /// </summary>
         public event Action<int> AgentPreStep;
 
+        // Signals to all the agents at each environment step, before AgentSendState,
+        // so that the sensors of the agents that requested a decision can add their
+        // work to the batches that are executed before the agents send their state.
+        internal event Action AgentScheduleSensors;
+
         // Signals to all the agents at each environment step so they can send
         // their state to their Policy if they have requested a decision.
         internal event Action AgentSendState;
@@ -493,6 +507,7 @@ namespace Unity.MLAgents
             DecideAction = () => { };
             DestroyAction = () => { };
             AgentPreStep = i => { };
+            AgentScheduleSensors = () => { };
             AgentSendState = () => { };
             AgentAct = () => { };
             AgentForceReset = () => { };
@@ -576,6 +591,12 @@ namespace Unity.MLAgents
                 m_TotalStepCount += 1;
                 AgentIncrementStep?.Invoke();
 
+                using (TimerStack.Instance.Scoped("BatchedSensors"))
+                {
+                    AgentScheduleSensors?.Invoke();
+                    m_RayPerceptionBatch.Execute(m_TotalStepCount);
+                }
+
                 using (TimerStack.Instance.Scoped("AgentSendState"))
                 {
                     AgentSendState?.Invoke();
@@ -611,7 +632,9 @@ namespace Unity.MLAgents
 
         /// <summary>
         /// Creates or retrieves an existing ModelRunner that uses the same
-        /// NNModel and the InferenceDevice as provided.
+        /// NNModel, InferenceDevice and deterministic inference setting as provided.
+        /// The agents of all the behaviors sharing a ModelRunner are batched together
+        /// in a single inference call.
         /// </summary>
         /// <param name="model">The NNModel the ModelRunner must use.</param>
         /// <param name="actionSpec"> Description of the actions for the Agent.</param>
@@ -624,7 +647,7 @@ namespace Unity.MLAgents
         internal ModelRunner GetOrCreateModelRunner(
             NNModel model, ActionSpec actionSpec, InferenceDevice inferenceDevice, bool deterministicInference = false)
         {
-            var modelRunner = m_ModelRunners.Find(x => x.HasModel(model, inferenceDevice));
+            var modelRunner = m_ModelRunners.Find(x => x.HasModel(model, inferenceDevice, deterministicInference));
             if (modelRunner == null)
             {
                 modelRunner = new ModelRunner(model, actionSpec, inferenceDevice, m_InferenceSeed, deterministicInference);
@@ -661,6 +684,11 @@ namespace Unity.MLAgents
                 m_ModelRunners = null;
             }
 
+            m_RayPerceptionBatch.Dispose();
+#if MLA_UNITY_PHYSICS_MODULE
+            GridSpatialHash.ClearShared();
+#endif
+
             // Clear out the actions so we're not keeping references to any old objects
             ResetActions();
 
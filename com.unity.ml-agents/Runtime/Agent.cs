@@ -454,6 +454,7 @@ namespace Unity.MLAgents
             sensors = new List<ISensor>();
 
             Academy.Instance.AgentIncrementStep += AgentIncrementStep;
+            Academy.Instance.AgentScheduleSensors += ScheduleSensors;
             Academy.Instance.AgentSendState += SendInfo;
             Academy.Instance.DecideAction += DecideAction;
             Academy.Instance.AgentAct += AgentStep;
@@ -541,6 +542,7 @@ namespace Unity.MLAgents
             if (Academy.IsInitialized)
             {
                 Academy.Instance.AgentIncrementStep -= AgentIncrementStep;
+                Academy.Instance.AgentScheduleSensors -= ScheduleSensors;
                 Academy.Instance.AgentSendState -= SendInfo;
                 Academy.Instance.DecideAction -= DecideAction;
                 Academy.Instance.AgentAct -= AgentStep;
@@ -1111,6 +1113,22 @@ namespace Unity.MLAgents
             }
         }
 
+        /// <summary>
+        /// Lets the sensors that support it add their update to a batch, if the agent is about to send its state.
+        /// </summary>
+        void ScheduleSensors()
+        {
+            if (!m_RequestDecision || m_Brain == null)
+            {
+                return;
+            }
+
+            foreach (var sensor in sensors)
+            {
+                (sensor as IBatchedSensor)?.ScheduleUpdate();
+            }
+        }
+
         void UpdateSensors()
         {
             foreach (var sensor in sensors)
@@ -329,6 +329,7 @@ namespace Unity.MLAgents
         /// </summary>
         private static bool s_HaveWarnedTrainerCapabilitiesMultiPng;
         private static bool s_HaveWarnedTrainerCapabilitiesMapping;
+        private static bool s_HaveWarnedTrainerCapabilitiesUint8;
 
         /// <summary>
         /// Generate an ObservationProto for the sensor using the provided ObservationWriter.
@@ -337,14 +338,42 @@ namespace Unity.MLAgents
         /// </summary>
         /// <param name="sensor"></param>
         /// <param name="observationWriter"></param>
+        /// <param name="allowUnstacked">Whether a <see cref="StackingSensor"/> can only send its newest
+        /// observation, if the trainer stacks the observations itself.</param>
         /// <returns></returns>
-        public static ObservationProto GetObservationProto(this ISensor sensor, ObservationWriter observationWriter)
+        public static ObservationProto GetObservationProto(this ISensor sensor, ObservationWriter observationWriter, bool allowUnstacked = false)
         {
             var obsSpec = sensor.GetObservationSpec();
-            var shape = obsSpec.Shape;
+            var stackDepth = 1;
+            var stackingSensor = sensor as StackingSensor;
+            if (allowUnstacked && stackingSensor != null && Academy.Instance.TrainerCapabilities != null && Academy.Instance.TrainerCapabilities.UnstackedObservations)
+            {
+                // Only send the newest observation, with the stacked shape.
+                stackDepth = stackingSensor.NumStackedObservations;
+                sensor = stackingSensor.NewestObservationSensor;
+            }
+            var shape = sensor.GetObservationSpec().Shape;
             ObservationProto observationProto = null;
             var compressionSpec = sensor.GetCompressionSpec();
             var compressionType = compressionSpec.SensorCompressionType;
+            // Check capabilities if we need to send raw uint8 observations
+            if (compressionType == SensorCompressionType.Uint8)
+            {
+                var trainerCanHandle = Academy.Instance.TrainerCapabilities == null || Academy.Instance.TrainerCapabilities.Uint8Observations;
+                if (!trainerCanHandle)
+                {
+                    if (!s_HaveWarnedTrainerCapabilitiesUint8)
+                    {
+                        Debug.LogWarning(
+                            $"Attached trainer doesn't support uint8 observations. Switching to uncompressed observations for sensor {sensor.GetName()}. " +
+                            "Please find the versions that work best together from our release page: " +
+                            "https://github.com/Unity-Technologies/ml-agents/releases"
+                        );
+                        s_HaveWarnedTrainerCapabilitiesUint8 = true;
+                    }
+                    compressionType = SensorCompressionType.None;
+                }
+            }
             // Check capabilities if we need to concatenate PNGs
             if (compressionType == SensorCompressionType.PNG && shape.Length == 3 && shape[2] > 3)
             {
@@ -444,9 +473,14 @@ namespace Unity.MLAgents
                 }
             }
 
-            for (var i = 0; i < shape.Length; i++)
+            var stackedShape = obsSpec.Shape;
+            for (var i = 0; i < stackedShape.Length; i++)
+            {
+                observationProto.Shape.Add(stackedShape[i]);
+            }
+            if (stackDepth > 1)
             {
-                observationProto.Shape.Add(shape[i]);
+                observationProto.StackDepth = stackDepth;
             }
 
             var sensorName = sensor.GetName();
@@ -472,6 +506,8 @@ namespace Unity.MLAgents
                 TrainingAnalytics = proto.TrainingAnalytics,
                 VariableLengthObservation = proto.VariableLengthObservation,
                 MultiAgentGroups = proto.MultiAgentGroups,
+                Uint8Observations = proto.Uint8Observations,
+                UnstackedObservations = proto.UnstackedObservations,
             };
         }
 
@@ -486,6 +522,8 @@ namespace Unity.MLAgents
                 TrainingAnalytics = rlCaps.TrainingAnalytics,
                 VariableLengthObservation = rlCaps.VariableLengthObservation,
                 MultiAgentGroups = rlCaps.MultiAgentGroups,
+                Uint8Observations = rlCaps.Uint8Observations,
+                UnstackedObservations = rlCaps.UnstackedObservations,
             };
         }
 
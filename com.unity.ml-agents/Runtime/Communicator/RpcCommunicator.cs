@@ -344,7 +344,7 @@ namespace Unity.MLAgents
                 {
                     foreach (var sensor in sensors)
                     {
-                        var obsProto = sensor.GetObservationProto(m_ObservationWriter);
+                        var obsProto = sensor.GetObservationProto(m_ObservationWriter, true);
                         agentInfoProto.Observations.Add(obsProto);
                     }
                 }
@@ -11,6 +11,8 @@ namespace Unity.MLAgents
         public bool TrainingAnalytics;
         public bool VariableLengthObservation;
         public bool MultiAgentGroups;
+        public bool Uint8Observations;
+        public bool UnstackedObservations;
 
         /// <summary>
         /// A class holding the capabilities flags for Reinforcement Learning across C# and the Trainer codebase.  This
@@ -23,7 +25,9 @@ namespace Unity.MLAgents
             bool hybridActions = true,
             bool trainingAnalytics = true,
             bool variableLengthObservation = true,
-            bool multiAgentGroups = true)
+            bool multiAgentGroups = true,
+            bool uint8Observations = true,
+            bool unstackedObservations = true)
         {
             BaseRLCapabilities = baseRlCapabilities;
             ConcatenatedPngObservations = concatenatedPngObservations;
@@ -32,6 +36,8 @@ namespace Unity.MLAgents
             TrainingAnalytics = trainingAnalytics;
             VariableLengthObservation = variableLengthObservation;
             MultiAgentGroups = multiAgentGroups;
+            Uint8Observations = uint8Observations;
+            UnstackedObservations = unstackedObservations;
         }
 
         /// <summary>
@@ -25,18 +25,19 @@ namespace Unity.MLAgents.CommunicatorObjects {
       byte[] descriptorData = global::System.Convert.FromBase64String(
           string.Concat(
             "CjVtbGFnZW50c19lbnZzL2NvbW11bmljYXRvcl9vYmplY3RzL2NhcGFiaWxp",
-            "dGllcy5wcm90bxIUY29tbXVuaWNhdG9yX29iamVjdHMi7AEKGFVuaXR5UkxD",
+            "dGllcy5wcm90bxIUY29tbXVuaWNhdG9yX29iamVjdHMipgIKGFVuaXR5UkxD",
             "YXBhYmlsaXRpZXNQcm90bxIaChJiYXNlUkxDYXBhYmlsaXRpZXMYASABKAgS",
             "IwobY29uY2F0ZW5hdGVkUG5nT2JzZXJ2YXRpb25zGAIgASgIEiAKGGNvbXBy",
             "ZXNzZWRDaGFubmVsTWFwcGluZxgDIAEoCBIVCg1oeWJyaWRBY3Rpb25zGAQg",
             "ASgIEhkKEXRyYWluaW5nQW5hbHl0aWNzGAUgASgIEiEKGXZhcmlhYmxlTGVu",
             "Z3RoT2JzZXJ2YXRpb24YBiABKAgSGAoQbXVsdGlBZ2VudEdyb3VwcxgHIAEo",
-            "CEIlqgIiVW5pdHkuTUxBZ2VudHMuQ29tbXVuaWNhdG9yT2JqZWN0c2IGcHJv",
-            "dG8z"));
+            "CBIZChF1aW50OE9ic2VydmF0aW9ucxgIIAEoCBIdChV1bnN0YWNrZWRPYnNl",
+            "cnZhdGlvbnMYCSABKAhCJaoCIlVuaXR5Lk1MQWdlbnRzLkNvbW11bmljYXRv",
+            "ck9iamVjdHNiBnByb3RvMw=="));
       descriptor = pbr::FileDescriptor.FromGeneratedCode(descriptorData,
           new pbr::FileDescriptor[] { },
           new pbr::GeneratedClrTypeInfo(null, new pbr::GeneratedClrTypeInfo[] {
-            new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.UnityRLCapabilitiesProto), global::Unity.MLAgents.CommunicatorObjects.UnityRLCapabilitiesProto.Parser, new[]{ "BaseRLCapabilities", "ConcatenatedPngObservations", "CompressedChannelMapping", "HybridActions", "TrainingAnalytics", "VariableLengthObservation", "MultiAgentGroups" }, null, null, null)
+            new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.UnityRLCapabilitiesProto), global::Unity.MLAgents.CommunicatorObjects.UnityRLCapabilitiesProto.Parser, new[]{ "BaseRLCapabilities", "ConcatenatedPngObservations", "CompressedChannelMapping", "HybridActions", "TrainingAnalytics", "VariableLengthObservation", "MultiAgentGroups", "Uint8Observations", "UnstackedObservations" }, null, null, null)
           }));
     }
     #endregion
@@ -80,6 +81,8 @@ namespace Unity.MLAgents.CommunicatorObjects {
       trainingAnalytics_ = other.trainingAnalytics_;
       variableLengthObservation_ = other.variableLengthObservation_;
       multiAgentGroups_ = other.multiAgentGroups_;
+      uint8Observations_ = other.uint8Observations_;
+      unstackedObservations_ = other.unstackedObservations_;
       _unknownFields = pb::UnknownFieldSet.Clone(other._unknownFields);
     }
 
@@ -186,6 +189,34 @@ namespace Unity.MLAgents.CommunicatorObjects {
       }
     }
 
+    /// <summary>Field number for the "uint8Observations" field.</summary>
+    public const int Uint8ObservationsFieldNumber = 8;
+    private bool uint8Observations_;
+    /// <summary>
+    /// Support for uncompressed uint8 visual observations
+    /// </summary>
+    [global::System.Diagnostics.DebuggerNonUserCodeAttribute]
+    public bool Uint8Observations {
+      get { return uint8Observations_; }
+      set {
+        uint8Observations_ = value;
+      }
+    }
+
+    /// <summary>Field number for the "unstackedObservations" field.</summary>
+    public const int UnstackedObservationsFieldNumber = 9;
+    private bool unstackedObservations_;
+    /// <summary>
+    /// Support for stacked observations that only hold the newest frame
+    /// </summary>
+    [global::System.Diagnostics.DebuggerNonUserCodeAttribute]
+    public bool UnstackedObservations {
+      get { return unstackedObservations_; }
+      set {
+        unstackedObservations_ = value;
+      }
+    }
+
     [global::System.Diagnostics.DebuggerNonUserCodeAttribute]
     public override bool Equals(object other) {
       return Equals(other as UnityRLCapabilitiesProto);
@@ -206,6 +237,8 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (TrainingAnalytics != other.TrainingAnalytics) return false;
       if (VariableLengthObservation != other.VariableLengthObservation) return false;
       if (MultiAgentGroups != other.MultiAgentGroups) return false;
+      if (Uint8Observations != other.Uint8Observations) return false;
+      if (UnstackedObservations != other.UnstackedObservations) return false;
       return Equals(_unknownFields, other._unknownFields);
     }
 
@@ -219,6 +252,8 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (TrainingAnalytics != false) hash ^= TrainingAnalytics.GetHashCode();
       if (VariableLengthObservation != false) hash ^= VariableLengthObservation.GetHashCode();
       if (MultiAgentGroups != false) hash ^= MultiAgentGroups.GetHashCode();
+      if (Uint8Observations != false) hash ^= Uint8Observations.GetHashCode();
+      if (UnstackedObservations != false) hash ^= UnstackedObservations.GetHashCode();
       if (_unknownFields != null) {
         hash ^= _unknownFields.GetHashCode();
       }
@@ -260,6 +295,14 @@ namespace Unity.MLAgents.CommunicatorObjects {
         output.WriteRawTag(56);
         output.WriteBool(MultiAgentGroups);
       }
+      if (Uint8Observations != false) {
+        output.WriteRawTag(64);
+        output.WriteBool(Uint8Observations);
+      }
+      if (UnstackedObservations != false) {
+        output.WriteRawTag(72);
+        output.WriteBool(UnstackedObservations);
+      }
       if (_unknownFields != null) {
         _unknownFields.WriteTo(output);
       }
@@ -289,6 +332,12 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (MultiAgentGroups != false) {
         size += 1 + 1;
       }
+      if (Uint8Observations != false) {
+        size += 1 + 1;
+      }
+      if (UnstackedObservations != false) {
+        size += 1 + 1;
+      }
       if (_unknownFields != null) {
         size += _unknownFields.CalculateSize();
       }
@@ -321,6 +370,12 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (other.MultiAgentGroups != false) {
         MultiAgentGroups = other.MultiAgentGroups;
       }
+      if (other.Uint8Observations != false) {
+        Uint8Observations = other.Uint8Observations;
+      }
+      if (other.UnstackedObservations != false) {
+        UnstackedObservations = other.UnstackedObservations;
+      }
       _unknownFields = pb::UnknownFieldSet.MergeFrom(_unknownFields, other._unknownFields);
     }
 
@@ -360,6 +415,14 @@ namespace Unity.MLAgents.CommunicatorObjects {
             MultiAgentGroups = input.ReadBool();
             break;
           }
+          case 64: {
+            Uint8Observations = input.ReadBool();
+            break;
+          }
+          case 72: {
+            UnstackedObservations = input.ReadBool();
+            break;
+          }
         }
       }
     }
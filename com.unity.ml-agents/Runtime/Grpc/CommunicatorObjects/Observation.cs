@@ -25,7 +25,7 @@ namespace Unity.MLAgents.CommunicatorObjects {
       byte[] descriptorData = global::System.Convert.FromBase64String(
           string.Concat(
             "CjRtbGFnZW50c19lbnZzL2NvbW11bmljYXRvcl9vYmplY3RzL29ic2VydmF0",
-            "aW9uLnByb3RvEhRjb21tdW5pY2F0b3Jfb2JqZWN0cyKPAwoQT2JzZXJ2YXRp",
+            "aW9uLnByb3RvEhRjb21tdW5pY2F0b3Jfb2JqZWN0cyKkAwoQT2JzZXJ2YXRp",
             "b25Qcm90bxINCgVzaGFwZRgBIAMoBRJEChBjb21wcmVzc2lvbl90eXBlGAIg",
             "ASgOMiouY29tbXVuaWNhdG9yX29iamVjdHMuQ29tcHJlc3Npb25UeXBlUHJv",
             "dG8SGQoPY29tcHJlc3NlZF9kYXRhGAMgASgMSAASRgoKZmxvYXRfZGF0YRgE",
@@ -33,16 +33,16 @@ namespace Unity.MLAgents.CommunicatorObjects {
             "RmxvYXREYXRhSAASIgoaY29tcHJlc3NlZF9jaGFubmVsX21hcHBpbmcYBSAD",
             "KAUSHAoUZGltZW5zaW9uX3Byb3BlcnRpZXMYBiADKAUSRAoQb2JzZXJ2YXRp",
             "b25fdHlwZRgHIAEoDjIqLmNvbW11bmljYXRvcl9vYmplY3RzLk9ic2VydmF0",
-            "aW9uVHlwZVByb3RvEgwKBG5hbWUYCCABKAkaGQoJRmxvYXREYXRhEgwKBGRh",
-            "dGEYASADKAJCEgoQb2JzZXJ2YXRpb25fZGF0YSopChRDb21wcmVzc2lvblR5",
-            "cGVQcm90bxIICgROT05FEAASBwoDUE5HEAEqQAoUT2JzZXJ2YXRpb25UeXBl",
-            "UHJvdG8SCwoHREVGQVVMVBAAEg8KC0dPQUxfU0lHTkFMEAEiBAgCEAIiBAgD",
-            "EANCJaoCIlVuaXR5Lk1MQWdlbnRzLkNvbW11bmljYXRvck9iamVjdHNiBnBy",
-            "b3RvMw=="));
+            "aW9uVHlwZVByb3RvEgwKBG5hbWUYCCABKAkSEwoLc3RhY2tfZGVwdGgYCSAB",
+            "KAUaGQoJRmxvYXREYXRhEgwKBGRhdGEYASADKAJCEgoQb2JzZXJ2YXRpb25f",
+            "ZGF0YSo0ChRDb21wcmVzc2lvblR5cGVQcm90bxIICgROT05FEAASBwoDUE5H",
+            "EAESCQoFVUlOVDgQAipAChRPYnNlcnZhdGlvblR5cGVQcm90bxILCgdERUZB",
+            "VUxUEAASDwoLR09BTF9TSUdOQUwQASIECAIQAiIECAMQA0IlqgIiVW5pdHku",
+            "TUxBZ2VudHMuQ29tbXVuaWNhdG9yT2JqZWN0c2IGcHJvdG8z"));
       descriptor = pbr::FileDescriptor.FromGeneratedCode(descriptorData,
           new pbr::FileDescriptor[] { },
           new pbr::GeneratedClrTypeInfo(new[] {typeof(global::Unity.MLAgents.CommunicatorObjects.CompressionTypeProto), typeof(global::Unity.MLAgents.CommunicatorObjects.ObservationTypeProto), }, new pbr::GeneratedClrTypeInfo[] {
-            new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.ObservationProto), global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Parser, new[]{ "Shape", "CompressionType", "CompressedData", "FloatData", "CompressedChannelMapping", "DimensionProperties", "ObservationType", "Name" }, new[]{ "ObservationData" }, null, new pbr::GeneratedClrTypeInfo[] { new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Types.FloatData), global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Types.FloatData.Parser, new[]{ "Data" }, null, null, null)})
+            new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.ObservationProto), global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Parser, new[]{ "Shape", "CompressionType", "CompressedData", "FloatData", "CompressedChannelMapping", "DimensionProperties", "ObservationType", "Name", "StackDepth" }, new[]{ "ObservationData" }, null, new pbr::GeneratedClrTypeInfo[] { new pbr::GeneratedClrTypeInfo(typeof(global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Types.FloatData), global::Unity.MLAgents.CommunicatorObjects.ObservationProto.Types.FloatData.Parser, new[]{ "Data" }, null, null, null)})
           }));
     }
     #endregion
@@ -52,6 +52,7 @@ namespace Unity.MLAgents.CommunicatorObjects {
   internal enum CompressionTypeProto {
     [pbr::OriginalName("NONE")] None = 0,
     [pbr::OriginalName("PNG")] Png = 1,
+    [pbr::OriginalName("UINT8")] Uint8 = 2,
   }
 
   internal enum ObservationTypeProto {
@@ -93,6 +94,7 @@ namespace Unity.MLAgents.CommunicatorObjects {
       dimensionProperties_ = other.dimensionProperties_.Clone();
       observationType_ = other.observationType_;
       name_ = other.name_;
+      stackDepth_ = other.stackDepth_;
       switch (other.ObservationDataCase) {
         case ObservationDataOneofCase.CompressedData:
           CompressedData = other.CompressedData;
@@ -200,6 +202,22 @@ namespace Unity.MLAgents.CommunicatorObjects {
       }
     }
 
+    /// <summary>Field number for the "stack_depth" field.</summary>
+    public const int StackDepthFieldNumber = 9;
+    private int stackDepth_;
+    /// <summary>
+    /// Number of stacked frames in the shape, when only the newest frame
+    /// is sent and the trainer stacks the frames itself.
+    /// 0 or 1 means that the data holds the whole shape.
+    /// </summary>
+    [global::System.Diagnostics.DebuggerNonUserCodeAttribute]
+    public int StackDepth {
+      get { return stackDepth_; }
+      set {
+        stackDepth_ = value;
+      }
+    }
+
     private object observationData_;
     /// <summary>Enum of possible cases for the "observation_data" oneof.</summary>
     public enum ObservationDataOneofCase {
@@ -240,6 +258,7 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if(!dimensionProperties_.Equals(other.dimensionProperties_)) return false;
       if (ObservationType != other.ObservationType) return false;
       if (Name != other.Name) return false;
+      if (StackDepth != other.StackDepth) return false;
       if (ObservationDataCase != other.ObservationDataCase) return false;
       return Equals(_unknownFields, other._unknownFields);
     }
@@ -255,6 +274,7 @@ namespace Unity.MLAgents.CommunicatorObjects {
       hash ^= dimensionProperties_.GetHashCode();
       if (ObservationType != 0) hash ^= ObservationType.GetHashCode();
       if (Name.Length != 0) hash ^= Name.GetHashCode();
+      if (StackDepth != 0) hash ^= StackDepth.GetHashCode();
       hash ^= (int) observationDataCase_;
       if (_unknownFields != null) {
         hash ^= _unknownFields.GetHashCode();
@@ -292,6 +312,10 @@ namespace Unity.MLAgents.CommunicatorObjects {
         output.WriteRawTag(66);
         output.WriteString(Name);
       }
+      if (StackDepth != 0) {
+        output.WriteRawTag(72);
+        output.WriteInt32(StackDepth);
+      }
       if (_unknownFields != null) {
         _unknownFields.WriteTo(output);
       }
@@ -318,6 +342,9 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (Name.Length != 0) {
         size += 1 + pb::CodedOutputStream.ComputeStringSize(Name);
       }
+      if (StackDepth != 0) {
+        size += 1 + pb::CodedOutputStream.ComputeInt32Size(StackDepth);
+      }
       if (_unknownFields != null) {
         size += _unknownFields.CalculateSize();
       }
@@ -341,6 +368,9 @@ namespace Unity.MLAgents.CommunicatorObjects {
       if (other.Name.Length != 0) {
         Name = other.Name;
       }
+      if (other.StackDepth != 0) {
+        StackDepth = other.StackDepth;
+      }
       switch (other.ObservationDataCase) {
         case ObservationDataOneofCase.CompressedData:
           CompressedData = other.CompressedData;
@@ -404,6 +434,10 @@ namespace Unity.MLAgents.CommunicatorObjects {
             Name = input.ReadString();
             break;
           }
+          case 72: {
+            StackDepth = input.ReadInt32();
+            break;
+          }
         }
       }
     }
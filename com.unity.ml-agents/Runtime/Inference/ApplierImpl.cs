@@ -186,6 +186,13 @@ namespace Unity.MLAgents.Inference
             for (var i = 0; i < actionIds.Count; i++)
             {
                 var agentId = actionIds[i];
+                if (!lastActions.ContainsKey(agentId))
+                {
+                    // The agent is done and RecurrentInputGenerator already dropped its
+                    // memory, keeping it would leak one list per episode.
+                    agentIndex++;
+                    continue;
+                }
                 List<float> memory;
                 if (!m_Memories.TryGetValue(agentId, out memory)
                     || memory.Count < memorySize)
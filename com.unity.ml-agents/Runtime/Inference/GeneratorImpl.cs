@@ -41,8 +41,11 @@ namespace Unity.MLAgents.Inference
 
         public void Generate(TensorProxy tensorProxy, int batchSize, IList<AgentInfoSensorsPair> infos)
         {
-            tensorProxy.data?.Dispose();
-            tensorProxy.data = m_Allocator.Alloc(new TensorShape(1, 1));
+            // The tensor only holds one value, so it is allocated once and then overwritten.
+            if (tensorProxy.data == null)
+            {
+                tensorProxy.data = m_Allocator.Alloc(new TensorShape(1, 1));
+            }
             tensorProxy.data[0] = batchSize;
         }
     }
@@ -64,9 +67,11 @@ namespace Unity.MLAgents.Inference
 
         public void Generate(TensorProxy tensorProxy, int batchSize, IList<AgentInfoSensorsPair> infos)
         {
-            tensorProxy.shape = new long[0];
-            tensorProxy.data?.Dispose();
-            tensorProxy.data = m_Allocator.Alloc(new TensorShape(1, 1));
+            tensorProxy.shape = Array.Empty<long>();
+            if (tensorProxy.data == null)
+            {
+                tensorProxy.data = m_Allocator.Alloc(new TensorShape(1, 1));
+            }
             tensorProxy.data[0] = 1;
         }
     }
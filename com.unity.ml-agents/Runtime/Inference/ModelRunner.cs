@@ -152,11 +152,19 @@ namespace Unity.MLAgents.Inference
 
         void FetchBarracudaOutputs(string[] names)
         {
-            m_InferenceOutputs.Clear();
-            foreach (var n in names)
+            // The output proxies are created on the first step, and then only point at the
+            // new outputs of the engine.
+            for (var i = 0; i < names.Length; i++)
             {
-                var output = m_Engine.PeekOutput(n);
-                m_InferenceOutputs.Add(TensorUtils.TensorProxyFromBarracuda(output, n));
+                var output = m_Engine.PeekOutput(names[i]);
+                if (i < m_InferenceOutputs.Count)
+                {
+                    TensorUtils.UpdateTensorProxyFromBarracuda(m_InferenceOutputs[i], output);
+                }
+                else
+                {
+                    m_InferenceOutputs.Add(TensorUtils.TensorProxyFromBarracuda(output, names[i]));
+                }
             }
         }
 
@@ -236,9 +244,10 @@ namespace Unity.MLAgents.Inference
             m_OrderedAgentsRequestingDecisions.Clear();
         }
 
-        public bool HasModel(NNModel other, InferenceDevice otherInferenceDevice)
+        public bool HasModel(NNModel other, InferenceDevice otherInferenceDevice, bool otherDeterministicInference = false)
         {
-            return m_Model == other && m_InferenceDevice == otherInferenceDevice;
+            return m_Model == other && m_InferenceDevice == otherInferenceDevice
+                && m_DeterministicInference == otherDeterministicInference;
         }
 
         public ActionBuffers GetAction(int agentId)
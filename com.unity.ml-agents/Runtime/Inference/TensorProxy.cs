@@ -105,6 +105,40 @@ namespace Unity.MLAgents.Inference
             };
         }
 
+        /// <summary>
+        /// Points an existing TensorProxy at a Barracuda tensor, reusing its shape array when
+        /// the rank doesn't change, so that fetching the outputs of each step doesn't allocate.
+        /// </summary>
+        /// <param name="tensorProxy">The TensorProxy to update.</param>
+        /// <param name="src">The Barracuda tensor.</param>
+        public static void UpdateTensorProxyFromBarracuda(TensorProxy tensorProxy, Tensor src)
+        {
+            var srcShape = src.shape;
+            var shape = tensorProxy.shape;
+            if (srcShape.height == 1 && srcShape.width == 1)
+            {
+                if (shape == null || shape.Length != 2)
+                {
+                    shape = new long[2];
+                }
+                shape[0] = srcShape.batch;
+                shape[1] = srcShape.channels;
+            }
+            else
+            {
+                if (shape == null || shape.Length != 4)
+                {
+                    shape = new long[4];
+                }
+                shape[0] = srcShape.batch;
+                shape[1] = srcShape.height;
+                shape[2] = srcShape.width;
+                shape[3] = srcShape.channels;
+            }
+            tensorProxy.shape = shape;
+            tensorProxy.data = src;
+        }
+
         /// <summary>
         /// Fill a specific batch of a TensorProxy with a given value
         /// </summary>
@@ -8,19 +8,19 @@ namespace Unity.MLAgents.Sensors
     /// </summary>
     internal class BoxOverlapChecker : IGridPerception
     {
-        Vector3 m_CellScale;
-        Vector3Int m_GridSize;
+        protected Vector3 m_CellScale;
+        protected Vector3Int m_GridSize;
         bool m_RotateWithAgent;
-        LayerMask m_ColliderMask;
-        GameObject m_CenterObject;
+        protected LayerMask m_ColliderMask;
+        protected GameObject m_CenterObject;
         GameObject m_AgentGameObject;
-        string[] m_DetectableTags;
+        protected string[] m_DetectableTags;
         int m_InitialColliderBufferSize;
         int m_MaxColliderBufferSize;
 
-        int m_NumCells;
+        protected int m_NumCells;
         Vector3 m_HalfCellScale;
-        Vector3 m_CellCenterOffset;
+        protected Vector3 m_CellCenterOffset;
         Vector3[] m_CellLocalPositions;
 
 #if MLA_UNITY_PHYSICS_MODULE
@@ -111,7 +111,7 @@ namespace Unity.MLAgents.Sensors
             return m_RotateWithAgent ? m_CenterObject.transform.rotation : Quaternion.identity;
         }
 
-        public void Perceive()
+        public virtual void Perceive()
         {
 #if MLA_UNITY_PHYSICS_MODULE
             for (var cellIndex = 0; cellIndex < m_NumCells; cellIndex++)
@@ -119,19 +119,12 @@ namespace Unity.MLAgents.Sensors
                 var cellCenter = GetCellGlobalPosition(cellIndex);
                 var numFound = BufferResizingOverlapBoxNonAlloc(cellCenter, m_HalfCellScale, GetGridRotation());
 
-                if (GridOverlapDetectedAll != null)
-                {
-                    ParseCollidersAll(m_ColliderBuffer, numFound, cellIndex, cellCenter, GridOverlapDetectedAll);
-                }
-                if (GridOverlapDetectedClosest != null)
-                {
-                    ParseCollidersClosest(m_ColliderBuffer, numFound, cellIndex, cellCenter, GridOverlapDetectedClosest);
-                }
+                ParseCell(m_ColliderBuffer, numFound, cellIndex, cellCenter);
             }
 #endif
         }
 
-        public void UpdateGizmo()
+        public virtual void UpdateGizmo()
         {
 #if MLA_UNITY_PHYSICS_MODULE
             for (var cellIndex = 0; cellIndex < m_NumCells; cellIndex++)
@@ -139,12 +132,35 @@ namespace Unity.MLAgents.Sensors
                 var cellCenter = GetCellGlobalPosition(cellIndex);
                 var numFound = BufferResizingOverlapBoxNonAlloc(cellCenter, m_HalfCellScale, GetGridRotation());
 
-                ParseCollidersClosest(m_ColliderBuffer, numFound, cellIndex, cellCenter, GridOverlapDetectedDebug);
+                ParseCellDebug(m_ColliderBuffer, numFound, cellIndex, cellCenter);
             }
 #endif
         }
 
 #if MLA_UNITY_PHYSICS_MODULE
+        /// <summary>
+        /// Sends the colliders found within a cell to the registered sensors.
+        /// </summary>
+        protected void ParseCell(Collider[] foundColliders, int numFound, int cellIndex, Vector3 cellCenter)
+        {
+            if (GridOverlapDetectedAll != null)
+            {
+                ParseCollidersAll(foundColliders, numFound, cellIndex, cellCenter, GridOverlapDetectedAll);
+            }
+            if (GridOverlapDetectedClosest != null)
+            {
+                ParseCollidersClosest(foundColliders, numFound, cellIndex, cellCenter, GridOverlapDetectedClosest);
+            }
+        }
+
+        /// <summary>
+        /// Sends the closest collider found within a cell to the registered debug sensors.
+        /// </summary>
+        protected void ParseCellDebug(Collider[] foundColliders, int numFound, int cellIndex, Vector3 cellCenter)
+        {
+            ParseCollidersClosest(foundColliders, numFound, cellIndex, cellCenter, GridOverlapDetectedDebug);
+        }
+
         /// <summary>
         /// This method attempts to perform the Physics.OverlapBoxNonAlloc and will double the size of the Collider buffer
         /// if the number of Colliders in the buffer after the call is equal to the length of the buffer.
@@ -239,6 +255,8 @@ namespace Unity.MLAgents.Sensors
         }
 #endif
 
+        public virtual void Reset() { }
+
         public void RegisterSensor(GridSensorBase sensor)
         {
 #if MLA_UNITY_PHYSICS_MODULE
@@ -17,6 +17,7 @@ namespace Unity.MLAgents.Sensors
         private ObservationSpec m_ObservationSpec;
         SensorCompressionType m_CompressionType;
         Texture2D m_Texture;
+        byte[] m_Uint8Buffer;
 
         /// <summary>
         /// The Camera used for rendering the sensor observations.
@@ -90,6 +91,15 @@ namespace Unity.MLAgents.Sensors
             using (TimerStack.Instance.Scoped("CameraSensor.GetCompressedObservation"))
             {
                 ObservationToTexture(m_Camera, m_Texture, m_Width, m_Height);
+                if (m_CompressionType == SensorCompressionType.Uint8)
+                {
+                    if (m_Uint8Buffer == null)
+                    {
+                        m_Uint8Buffer = new byte[m_ObservationSpec.Shape[0] * m_ObservationSpec.Shape[1] * m_ObservationSpec.Shape[2]];
+                    }
+                    Utilities.TextureToUint8(m_Texture, m_Grayscale, m_Uint8Buffer);
+                    return m_Uint8Buffer;
+                }
                 // TODO support more types here, e.g. JPG
                 var compressed = m_Texture.EncodeToPNG();
                 return compressed;
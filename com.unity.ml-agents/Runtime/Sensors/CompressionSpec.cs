@@ -14,7 +14,14 @@ namespace Unity.MLAgents.Sensors
         /// <summary>
         /// PNG format. Data will be stored in binary format.
         /// </summary>
-        PNG
+        PNG,
+
+        /// <summary>
+        /// Raw bytes, one per value, in height x width x channels order. This avoids the cost of
+        /// encoding and decoding PNGs, at the price of sending more data. The observation values must
+        /// be between 0 and 1, and are quantized to 256 levels.
+        /// </summary>
+        Uint8
     }
 
     /// <summary>
@@ -39,6 +39,7 @@ namespace Unity.MLAgents.Sensors
         Color[] m_PerceptionColors;
         Texture2D m_PerceptionTexture;
         float[] m_CellDataBuffer;
+        byte[] m_Uint8Buffer;
 
         // Utility Constants Calculated on Init
         int m_NumCells;
@@ -89,7 +90,7 @@ namespace Unity.MLAgents.Sensors
             get { return m_CompressionType; }
             set
             {
-                if (!IsDataNormalized() && value == SensorCompressionType.PNG)
+                if (!IsDataNormalized() && value != SensorCompressionType.None)
                 {
                     Debug.LogWarning($"Compression type {value} is only supported with normalized data. " +
                         "The sensor will not compress the data.");
@@ -113,7 +114,10 @@ namespace Unity.MLAgents.Sensors
         }
 
         /// <inheritdoc/>
-        public void Reset() { }
+        public void Reset()
+        {
+            m_GridPerception?.Reset();
+        }
 
         /// <summary>
         /// Clears the perception buffer before loading in new data.
@@ -156,6 +160,10 @@ namespace Unity.MLAgents.Sensors
         {
             using (TimerStack.Instance.Scoped("GridSensor.GetCompressedObservation"))
             {
+                if (m_CompressionType == SensorCompressionType.Uint8)
+                {
+                    return GridValuesToUint8();
+                }
                 var allBytes = new List<byte>();
                 var numImages = (m_CellObservationSize + 2) / 3;
                 for (int i = 0; i < numImages; i++)
@@ -169,6 +177,30 @@ namespace Unity.MLAgents.Sensors
             }
         }
 
+        /// <summary>
+        /// Quantize the observation values to bytes, in the same order as <see cref="Write"/>.
+        /// </summary>
+        byte[] GridValuesToUint8()
+        {
+            var rowSize = m_GridSize.x * m_CellObservationSize;
+            if (m_Uint8Buffer == null || m_Uint8Buffer.Length != m_PerceptionBuffer.Length)
+            {
+                m_Uint8Buffer = new byte[m_PerceptionBuffer.Length];
+            }
+            var bytes = m_Uint8Buffer;
+            for (var h = 0; h < m_GridSize.z; h++)
+            {
+                var source = (m_GridSize.z - 1 - h) * rowSize;
+                var destination = h * rowSize;
+                for (var i = 0; i < rowSize; i++)
+                {
+                    var value = Mathf.Clamp01(m_PerceptionBuffer[source + i]);
+                    bytes[destination + i] = (byte)Mathf.RoundToInt(value * 255f);
+                }
+            }
+            return bytes;
+        }
+
         /// <summary>
         /// Convert observation values to texture for PNG compression.
         /// </summary>
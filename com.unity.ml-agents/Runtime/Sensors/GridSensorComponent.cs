@@ -15,6 +15,9 @@ namespace Unity.MLAgents.Sensors
         List<GridSensorBase> m_Sensors;
         internal IGridPerception m_GridPerception;
 
+        // The size of the buckets of the spatial hash, in number of cells.
+        const int k_SpatialHashBucketCells = 4;
+
         [HideInInspector, SerializeField]
         protected internal string m_SensorName = "GridSensor";
         /// <summary>
@@ -121,6 +124,24 @@ namespace Unity.MLAgents.Sensors
             set { m_MaxColliderBufferSize = value; }
         }
 
+        [HideInInspector, SerializeField]
+        [Tooltip("Whether to find the colliders in the cells with a spatial hash of the tagged objects shared by " +
+            "the grid sensors, instead of an overlap query for each cell.")]
+        internal bool m_UseSpatialHash;
+        /// <summary>
+        /// Whether to find the colliders in the cells with a spatial hash of the objects with the detectable tags,
+        /// shared by the grid sensors and updated once per step, instead of a Physics.OverlapBox query for each cell.
+        /// The cost of the perception then scales with the number of tagged objects near the grid instead of the
+        /// number of cells. The colliders are assigned to the cells that their bounds overlap, so a cell can detect
+        /// an object whose bounds, but not its exact shape, overlap the cell.
+        /// Note that changing this after the sensor is created has no effect.
+        /// </summary>
+        public bool UseSpatialHash
+        {
+            get { return m_UseSpatialHash; }
+            set { m_UseSpatialHash = value; }
+        }
+
         [HideInInspector, SerializeField]
         internal int m_InitialColliderBufferSize = 4;
         /// <summary>
@@ -197,17 +218,37 @@ namespace Unity.MLAgents.Sensors
         /// <inheritdoc/>
         public override ISensor[] CreateSensors()
         {
-            m_GridPerception = new BoxOverlapChecker(
-                m_CellScale,
-                m_GridSize,
-                m_RotateWithAgent,
-                m_ColliderMask,
-                gameObject,
-                AgentGameObject,
-                m_DetectableTags,
-                m_InitialColliderBufferSize,
-                m_MaxColliderBufferSize
-            );
+#if MLA_UNITY_PHYSICS_MODULE
+            if (m_UseSpatialHash)
+            {
+                m_GridPerception = new SpatialHashGridPerception(
+                    m_CellScale,
+                    m_GridSize,
+                    m_RotateWithAgent,
+                    m_ColliderMask,
+                    gameObject,
+                    AgentGameObject,
+                    m_DetectableTags,
+                    m_InitialColliderBufferSize,
+                    m_MaxColliderBufferSize,
+                    GridSpatialHash.GetShared(k_SpatialHashBucketCells * Mathf.Max(m_CellScale.x, m_CellScale.z))
+                );
+            }
+            else
+#endif
+            {
+                m_GridPerception = new BoxOverlapChecker(
+                    m_CellScale,
+                    m_GridSize,
+                    m_RotateWithAgent,
+                    m_ColliderMask,
+                    gameObject,
+                    AgentGameObject,
+                    m_DetectableTags,
+                    m_InitialColliderBufferSize,
+                    m_MaxColliderBufferSize
+                );
+            }
 
             // debug data is positive int value and will trigger data validation exception if SensorCompressionType is not None.
             m_DebugSensor = new GridSensorBase("DebugGridSensor", m_CellScale, m_GridSize, m_DetectableTags, SensorCompressionType.None);
@@ -0,0 +1,289 @@
+using System.Collections.Generic;
+using UnityEngine;
+
+namespace Unity.MLAgents.Sensors
+{
+#if MLA_UNITY_PHYSICS_MODULE
+    /// <summary>
+    /// A spatial hash of the colliders of the objects with the tags detected by the grid sensors that use it.
+    /// The world is divided in square buckets on the xz plane, and each collider is in the buckets that its bounds
+    /// overlap. The hash is shared by all the grid sensors with the same bucket size, and updated at most once per
+    /// Academy step.
+    /// The objects with the tags are found when tags are added and when the episode of an agent that uses the hash
+    /// begins. At each step, only the tracked objects whose transform changed are rehashed, so the cost of an update
+    /// scales with the number of tagged objects that move, not with the size of the grids or the number of agents.
+    /// </summary>
+    internal class GridSpatialHash
+    {
+        static Dictionary<float, GridSpatialHash> s_SharedHashes = new Dictionary<float, GridSpatialHash>();
+        // Incremented when the shared hashes are cleared, since the step count restarts with a new Academy.
+        static int s_AcademyGeneration;
+
+        class TrackedCollider
+        {
+            public Collider Collider;
+            // Whether the collider is in the buckets from MinBucket to MaxBucket.
+            public bool InBuckets;
+            public Vector2Int MinBucket;
+            public Vector2Int MaxBucket;
+        }
+
+        class TrackedObject
+        {
+            public string Tag;
+            public Transform Transform;
+            public Matrix4x4 LocalToWorld;
+            public TrackedCollider[] Colliders;
+        }
+
+        float m_BucketSize;
+        HashSet<string> m_Tags = new HashSet<string>();
+        Dictionary<Vector2Int, List<Collider>> m_Buckets = new Dictionary<Vector2Int, List<Collider>>();
+        Dictionary<GameObject, TrackedObject> m_TrackedObjects = new Dictionary<GameObject, TrackedObject>();
+        List<GameObject> m_RemovedObjects = new List<GameObject>();
+        HashSet<Collider> m_QueryResults = new HashSet<Collider>();
+        bool m_NeedsFindObjects = true;
+        int m_LastUpdateGeneration = -1;
+        int m_LastUpdateStep = -1;
+
+        /// <summary>
+        /// Returns the hash with the given bucket size shared by the grid sensors.
+        /// </summary>
+        internal static GridSpatialHash GetShared(float bucketSize)
+        {
+            if (!s_SharedHashes.TryGetValue(bucketSize, out var hash))
+            {
+                hash = new GridSpatialHash(bucketSize);
+                s_SharedHashes[bucketSize] = hash;
+            }
+            return hash;
+        }
+
+        /// <summary>
+        /// Drops the shared hashes and the objects that they track. Called when the Academy is disposed.
+        /// </summary>
+        internal static void ClearShared()
+        {
+            s_SharedHashes.Clear();
+            s_AcademyGeneration++;
+        }
+
+        internal GridSpatialHash(float bucketSize)
+        {
+            m_BucketSize = bucketSize;
+        }
+
+        /// <summary>
+        /// Adds tags to the tags of the objects in the hash.
+        /// </summary>
+        internal void AddTags(IEnumerable<string> tags)
+        {
+            foreach (var tag in tags)
+            {
+                if (!string.IsNullOrEmpty(tag) && m_Tags.Add(tag))
+                {
+                    // Make sure that the next query sees the objects with the new tag.
+                    m_NeedsFindObjects = true;
+                    m_LastUpdateStep = -1;
+                }
+            }
+        }
+
+        /// <summary>
+        /// Makes the next update look for new objects with the tags of the hash, for instance the ones created at the
+        /// beginning of an episode.
+        /// </summary>
+        internal void FindObjectsOnNextUpdate()
+        {
+            m_NeedsFindObjects = true;
+        }
+
+        /// <summary>
+        /// Updates the hash if it wasn't updated at this Academy step.
+        /// </summary>
+        internal void UpdateIfNeeded()
+        {
+            var step = Academy.IsInitialized ? Academy.Instance.TotalStepCount : -1;
+            if (step < 0 || step != m_LastUpdateStep || s_AcademyGeneration != m_LastUpdateGeneration)
+            {
+                Update();
+                m_LastUpdateStep = step;
+                m_LastUpdateGeneration = s_AcademyGeneration;
+            }
+        }
+
+        /// <summary>
+        /// Adds the new objects with the tags of the hash if they were requested, removes the tracked objects that
+        /// were destroyed or untagged, and moves the colliders of the objects whose transform changed.
+        /// </summary>
+        internal void Update()
+        {
+            if (m_NeedsFindObjects)
+            {
+                FindTaggedObjects();
+                m_NeedsFindObjects = false;
+            }
+
+            foreach (var entry in m_TrackedObjects)
+            {
+                var trackedObject = entry.Value;
+                if (entry.Key == null || !entry.Key.CompareTag(trackedObject.Tag))
+                {
+                    foreach (var trackedCollider in trackedObject.Colliders)
+                    {
+                        RemoveFromBuckets(trackedCollider);
+                    }
+                    m_RemovedObjects.Add(entry.Key);
+                    continue;
+                }
+
+                // Deactivated objects stay tracked, out of the buckets, until they are activated again.
+                var active = entry.Key.activeInHierarchy;
+                var localToWorld = trackedObject.Transform.localToWorldMatrix;
+                var moved = localToWorld != trackedObject.LocalToWorld;
+                trackedObject.LocalToWorld = localToWorld;
+                foreach (var trackedCollider in trackedObject.Colliders)
+                {
+                    var collider = trackedCollider.Collider;
+                    if (!active || collider == null || !collider.enabled)
+                    {
+                        RemoveFromBuckets(trackedCollider);
+                    }
+                    else if (moved || !trackedCollider.InBuckets)
+                    {
+                        UpdateBuckets(trackedCollider);
+                    }
+                }
+            }
+            foreach (var removedObject in m_RemovedObjects)
+            {
+                m_TrackedObjects.Remove(removedObject);
+            }
+            m_RemovedObjects.Clear();
+        }
+
+        /// <summary>
+        /// Starts tracking the active objects with the tags of the hash that aren't tracked yet.
+        /// </summary>
+        void FindTaggedObjects()
+        {
+            foreach (var tag in m_Tags)
+            {
+                GameObject[] taggedObjects;
+                try
+                {
+                    taggedObjects = GameObject.FindGameObjectsWithTag(tag);
+                }
+                catch (UnityException)
+                {
+                    // The tag isn't defined in the project, so no object has it.
+                    continue;
+                }
+                foreach (var taggedObject in taggedObjects)
+                {
+                    if (m_TrackedObjects.ContainsKey(taggedObject))
+                    {
+                        continue;
+                    }
+                    var colliders = taggedObject.GetComponents<Collider>();
+                    var trackedObject = new TrackedObject
+                    {
+                        Tag = tag,
+                        Transform = taggedObject.transform,
+                        Colliders = new TrackedCollider[colliders.Length],
+                    };
+                    for (var i = 0; i < colliders.Length; i++)
+                    {
+                        var trackedCollider = new TrackedCollider { Collider = colliders[i] };
+                        trackedObject.Colliders[i] = trackedCollider;
+                    }
+                    // The colliders are added to the buckets by the rest of the update.
+                    trackedObject.LocalToWorld = trackedObject.Transform.localToWorldMatrix;
+                    m_TrackedObjects[taggedObject] = trackedObject;
+                }
+            }
+        }
+
+        void UpdateBuckets(TrackedCollider trackedCollider)
+        {
+            var collider = trackedCollider.Collider;
+            var bounds = collider.bounds;
+            var minBucket = GetBucket(bounds.min);
+            var maxBucket = GetBucket(bounds.max);
+            if (trackedCollider.InBuckets && trackedCollider.MinBucket == minBucket && trackedCollider.MaxBucket == maxBucket)
+            {
+                // The collider didn't change buckets.
+                return;
+            }
+
+            RemoveFromBuckets(trackedCollider);
+            for (var x = minBucket.x; x <= maxBucket.x; x++)
+            {
+                for (var z = minBucket.y; z <= maxBucket.y; z++)
+                {
+                    var key = new Vector2Int(x, z);
+                    if (!m_Buckets.TryGetValue(key, out var bucket))
+                    {
+                        bucket = new List<Collider>();
+                        m_Buckets[key] = bucket;
+                    }
+                    bucket.Add(collider);
+                }
+            }
+            trackedCollider.InBuckets = true;
+            trackedCollider.MinBucket = minBucket;
+            trackedCollider.MaxBucket = maxBucket;
+        }
+
+        void RemoveFromBuckets(TrackedCollider trackedCollider)
+        {
+            if (!trackedCollider.InBuckets)
+            {
+                return;
+            }
+            for (var x = trackedCollider.MinBucket.x; x <= trackedCollider.MaxBucket.x; x++)
+            {
+                for (var z = trackedCollider.MinBucket.y; z <= trackedCollider.MaxBucket.y; z++)
+                {
+                    m_Buckets[new Vector2Int(x, z)].Remove(trackedCollider.Collider);
+                }
+            }
+            trackedCollider.InBuckets = false;
+        }
+
+        Vector2Int GetBucket(Vector3 position)
+        {
+            return new Vector2Int(
+                Mathf.FloorToInt(position.x / m_BucketSize),
+                Mathf.FloorToInt(position.z / m_BucketSize)
+            );
+        }
+
+        /// <summary>
+        /// Finds the colliders that are in the buckets overlapped by the area between min and max on the xz plane.
+        /// The results can include colliders that don't overlap the area.
+        /// </summary>
+        /// <returns>The colliders, which are valid until the next query.</returns>
+        internal HashSet<Collider> Query(Vector3 min, Vector3 max)
+        {
+            m_QueryResults.Clear();
+            var minBucket = GetBucket(min);
+            var maxBucket = GetBucket(max);
+            for (var x = minBucket.x; x <= maxBucket.x; x++)
+            {
+                for (var z = minBucket.y; z <= maxBucket.y; z++)
+                {
+                    if (m_Buckets.TryGetValue(new Vector2Int(x, z), out var bucket))
+                    {
+                        foreach (var collider in bucket)
+                        {
+                            m_QueryResults.Add(collider);
+                        }
+                    }
+                }
+            }
+            return m_QueryResults;
+        }
+    }
+#endif
+}
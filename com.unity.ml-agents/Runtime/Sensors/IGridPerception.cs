@@ -46,6 +46,11 @@ namespace Unity.MLAgents.Sensors
         /// </summary>
         void UpdateGizmo();
 
+        /// <summary>
+        /// Called when the episode of the agent that owns the grid sensors ends.
+        /// </summary>
+        void Reset();
+
         /// <summary>
         /// Register a sensor to this GridPerception to receive the grid perception results.
         /// When the GridPerception perceive a new observation, registered sensors will be triggered
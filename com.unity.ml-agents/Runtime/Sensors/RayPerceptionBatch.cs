@@ -0,0 +1,191 @@
+using System;
+using System.Collections.Generic;
+#if MLA_UNITY_PHYSICS_MODULE
+using Unity.Collections;
+using Unity.Jobs;
+#endif
+using UnityEngine;
+
+namespace Unity.MLAgents.Sensors
+{
+    /// <summary>
+    /// Interface for sensors that can do the work of their next <see cref="ISensor.Update"/> together with the
+    /// sensors of the other agents, before the agents send their observations.
+    /// </summary>
+    internal interface IBatchedSensor
+    {
+        /// <summary>
+        /// Called at each step before the agent that uses the sensor sends its observations, if it requested a
+        /// decision, so that the sensor can add its work to a batch. The sensor must still be able to update
+        /// itself when Update is called and the batch didn't do it.
+        /// </summary>
+        void ScheduleUpdate();
+    }
+
+    /// <summary>
+    /// Casts the rays of the 3D <see cref="RayPerceptionSensor"/>s that use batched raycasts, for all the agents
+    /// that request a decision at a step, with RaycastCommand and SpherecastCommand jobs. The commands and results
+    /// are kept in native arrays that only grow, so casting the rays doesn't allocate once the number of rays
+    /// stops increasing.
+    /// </summary>
+    internal class RayPerceptionBatch : IDisposable
+    {
+        // The minimum number of casts done by each job.
+        const int k_MinCommandsPerJob = 32;
+
+        readonly List<RayPerceptionSensor> m_Sensors = new List<RayPerceptionSensor>();
+
+#if MLA_UNITY_PHYSICS_MODULE
+        NativeArray<RaycastCommand> m_RaycastCommands;
+        NativeArray<RaycastHit> m_RaycastHits;
+        NativeArray<SpherecastCommand> m_SpherecastCommands;
+        NativeArray<RaycastHit> m_SpherecastHits;
+#endif
+
+        /// <summary>
+        /// The number of sensors whose rays will be cast by the next call to Execute.
+        /// </summary>
+        internal int Count
+        {
+            get { return m_Sensors.Count; }
+        }
+
+        /// <summary>
+        /// Adds the rays of the sensor to the next batch. Without the Physics module, the sensor casts its rays
+        /// itself in its Update.
+        /// </summary>
+        internal void Add(RayPerceptionSensor sensor)
+        {
+#if MLA_UNITY_PHYSICS_MODULE
+            m_Sensors.Add(sensor);
+#endif
+        }
+
+        /// <summary>
+        /// Casts the rays of the sensors that were added since the last call, and stores the results in the
+        /// RayPerceptionOutput of the sensors for their Update at this step.
+        /// </summary>
+        /// <param name="academyStep">The Academy.TotalStepCount of the step.</param>
+        internal void Execute(int academyStep)
+        {
+#if MLA_UNITY_PHYSICS_MODULE
+            if (m_Sensors.Count == 0)
+            {
+                return;
+            }
+
+            var numRaycasts = 0;
+            var numSpherecasts = 0;
+            foreach (var sensor in m_Sensors)
+            {
+                var input = sensor.RayPerceptionInput;
+                if (input.CastRadius > 0f)
+                {
+                    numSpherecasts += input.Angles.Count;
+                }
+                else
+                {
+                    numRaycasts += input.Angles.Count;
+                }
+            }
+            EnsureCapacity(ref m_RaycastCommands, numRaycasts);
+            EnsureCapacity(ref m_RaycastHits, numRaycasts);
+            EnsureCapacity(ref m_SpherecastCommands, numSpherecasts);
+            EnsureCapacity(ref m_SpherecastHits, numSpherecasts);
+
+            // Compute the start and end of the rays in their outputs, and create their commands.
+            var raycastIndex = 0;
+            var spherecastIndex = 0;
+            foreach (var sensor in m_Sensors)
+            {
+                var input = sensor.RayPerceptionInput;
+                var rayOutputs = sensor.PrepareRayOutputs();
+                for (var rayIndex = 0; rayIndex < rayOutputs.Length; rayIndex++)
+                {
+                    var rayOutput = RayPerceptionSensor.CreateRayOutput(input, rayIndex);
+                    rayOutputs[rayIndex] = rayOutput;
+                    var rayDirection = rayOutput.EndPositionWorld - rayOutput.StartPositionWorld;
+                    if (input.CastRadius > 0f)
+                    {
+                        m_SpherecastCommands[spherecastIndex++] = new SpherecastCommand(
+                            rayOutput.StartPositionWorld, rayOutput.ScaledCastRadius, rayDirection.normalized,
+                            rayDirection.magnitude, input.LayerMask);
+                    }
+                    else
+                    {
+                        m_RaycastCommands[raycastIndex++] = new RaycastCommand(
+                            rayOutput.StartPositionWorld, rayDirection.normalized, rayDirection.magnitude,
+                            input.LayerMask);
+                    }
+                }
+            }
+
+            var raycastJob = RaycastCommand.ScheduleBatch(
+                m_RaycastCommands.GetSubArray(0, numRaycasts), m_RaycastHits.GetSubArray(0, numRaycasts),
+                k_MinCommandsPerJob);
+            var spherecastJob = SpherecastCommand.ScheduleBatch(
+                m_SpherecastCommands.GetSubArray(0, numSpherecasts), m_SpherecastHits.GetSubArray(0, numSpherecasts),
+                k_MinCommandsPerJob);
+            JobHandle.CombineDependencies(raycastJob, spherecastJob).Complete();
+
+            raycastIndex = 0;
+            spherecastIndex = 0;
+            foreach (var sensor in m_Sensors)
+            {
+                var input = sensor.RayPerceptionInput;
+                var rayOutputs = sensor.RayPerceptionOutput.RayOutputs;
+                for (var rayIndex = 0; rayIndex < rayOutputs.Length; rayIndex++)
+                {
+                    var rayHit = input.CastRadius > 0f ?
+                        m_SpherecastHits[spherecastIndex++] :
+                        m_RaycastHits[raycastIndex++];
+                    // The collider of the results of the commands is null when the ray didn't hit anything.
+                    var castHit = rayHit.collider != null;
+                    var scaledRayLength = rayOutputs[rayIndex].ScaledRayLength;
+                    var hitFraction = castHit ? (scaledRayLength > 0 ? rayHit.distance / scaledRayLength : 0.0f) : 1.0f;
+                    var hitObject = castHit ? rayHit.collider.gameObject : null;
+                    RayPerceptionSensor.SetHit(input, ref rayOutputs[rayIndex], castHit, hitFraction, hitObject);
+                }
+                sensor.OnBatchCast(academyStep);
+            }
+#endif
+            m_Sensors.Clear();
+        }
+
+#if MLA_UNITY_PHYSICS_MODULE
+        static void EnsureCapacity<T>(ref NativeArray<T> array, int length) where T : struct
+        {
+            if (array.IsCreated && array.Length >= length)
+            {
+                return;
+            }
+            var capacity = Math.Max(length, array.IsCreated ? 2 * array.Length : 64);
+            if (array.IsCreated)
+            {
+                array.Dispose();
+            }
+            array = new NativeArray<T>(capacity, Allocator.Persistent, NativeArrayOptions.UninitializedMemory);
+        }
+
+        static void DisposeIfCreated<T>(ref NativeArray<T> array) where T : struct
+        {
+            if (array.IsCreated)
+            {
+                array.Dispose();
+            }
+        }
+#endif
+
+        /// <inheritdoc/>
+        public void Dispose()
+        {
+            m_Sensors.Clear();
+#if MLA_UNITY_PHYSICS_MODULE
+            DisposeIfCreated(ref m_RaycastCommands);
+            DisposeIfCreated(ref m_RaycastHits);
+            DisposeIfCreated(ref m_SpherecastCommands);
+            DisposeIfCreated(ref m_SpherecastHits);
+#endif
+        }
+    }
+}
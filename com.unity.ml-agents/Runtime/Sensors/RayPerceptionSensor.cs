@@ -236,7 +236,7 @@ namespace Unity.MLAgents.Sensors
     /// <summary>
     /// A sensor implementation that supports ray cast-based observations.
     /// </summary>
-    public class RayPerceptionSensor : ISensor, IBuiltInSensor
+    public class RayPerceptionSensor : ISensor, IBuiltInSensor, IBatchedSensor
     {
         float[] m_Observations;
         ObservationSpec m_ObservationSpec;
@@ -245,6 +245,11 @@ namespace Unity.MLAgents.Sensors
         RayPerceptionInput m_RayPerceptionInput;
         RayPerceptionOutput m_RayPerceptionOutput;
 
+        /// <summary>
+        /// Academy.TotalStepCount when the RayPerceptionBatch last cast the rays of the sensor, or -1.
+        /// </summary>
+        int m_BatchCastStep = -1;
+
         /// <summary>
         /// Time.frameCount at the last time Update() was called. This is only used for display in gizmos.
         /// </summary>
@@ -279,6 +284,18 @@ namespace Unity.MLAgents.Sensors
             get { return m_RayPerceptionOutput; }
         }
 
+        /// <summary>
+        /// Whether the rays of the sensor are cast together with the rays of the other sensors that use batched
+        /// raycasts, in RaycastCommand and SpherecastCommand jobs, before the agents send their observations.
+        /// This is only supported for 3D casts; the rays of 2D sensors are always cast one at a time.
+        /// </summary>
+        public bool UseBatchedRaycasts { get; set; }
+
+        internal RayPerceptionInput RayPerceptionInput
+        {
+            get { return m_RayPerceptionInput; }
+        }
+
         void SetNumObservations(int numObservations)
         {
             m_ObservationSpec = ObservationSpec.Vector(numObservations);
@@ -332,18 +349,52 @@ namespace Unity.MLAgents.Sensors
         public void Update()
         {
             m_DebugLastFrameCount = Time.frameCount;
-            var numRays = m_RayPerceptionInput.Angles.Count;
-
-            if (m_RayPerceptionOutput.RayOutputs == null || m_RayPerceptionOutput.RayOutputs.Length != numRays)
+            if (m_BatchCastStep >= 0 && Academy.IsInitialized && m_BatchCastStep == Academy.Instance.TotalStepCount)
             {
-                m_RayPerceptionOutput.RayOutputs = new RayPerceptionOutput.RayOutput[numRays];
+                // The RayPerceptionBatch already cast the rays for this step.
+                m_BatchCastStep = -1;
+                return;
             }
 
+            var numRays = m_RayPerceptionInput.Angles.Count;
+            var rayOutputs = PrepareRayOutputs();
+
             // For each ray, do the casting and save the results.
             for (var rayIndex = 0; rayIndex < numRays; rayIndex++)
             {
-                m_RayPerceptionOutput.RayOutputs[rayIndex] = PerceiveSingleRay(m_RayPerceptionInput, rayIndex);
+                rayOutputs[rayIndex] = PerceiveSingleRay(m_RayPerceptionInput, rayIndex);
+            }
+        }
+
+        /// <inheritdoc/>
+        void IBatchedSensor.ScheduleUpdate()
+        {
+            if (UseBatchedRaycasts && m_RayPerceptionInput.CastType == RayPerceptionCastType.Cast3D)
+            {
+                Academy.Instance.RayPerceptionBatch.Add(this);
+            }
+        }
+
+        /// <summary>
+        /// Makes sure that RayPerceptionOutput.RayOutputs has one element per ray, and returns it.
+        /// </summary>
+        internal RayPerceptionOutput.RayOutput[] PrepareRayOutputs()
+        {
+            var numRays = m_RayPerceptionInput.Angles.Count;
+            if (m_RayPerceptionOutput.RayOutputs == null || m_RayPerceptionOutput.RayOutputs.Length != numRays)
+            {
+                m_RayPerceptionOutput.RayOutputs = new RayPerceptionOutput.RayOutput[numRays];
             }
+            return m_RayPerceptionOutput.RayOutputs;
+        }
+
+        /// <summary>
+        /// Called by the RayPerceptionBatch once it stored the results of the rays in RayPerceptionOutput, so that
+        /// the next Update of this step doesn't cast them again.
+        /// </summary>
+        internal void OnBatchCast(int academyStep)
+        {
+            m_BatchCastStep = academyStep;
         }
 
         /// <inheritdoc/>
@@ -408,22 +459,11 @@ namespace Unity.MLAgents.Sensors
             int rayIndex
         )
         {
-            var unscaledRayLength = input.RayLength;
-            var unscaledCastRadius = input.CastRadius;
-
-            var extents = input.RayExtents(rayIndex);
-            var startPositionWorld = extents.StartPositionWorld;
-            var endPositionWorld = extents.EndPositionWorld;
-
-            var rayDirection = endPositionWorld - startPositionWorld;
-            // If there is non-unity scale, |rayDirection| will be different from rayLength.
-            // We want to use this transformed ray length for determining cast length, hit fraction etc.
-            // We also it to scale up or down the sphere or circle radii
+            var rayOutput = CreateRayOutput(input, rayIndex);
+            var startPositionWorld = rayOutput.StartPositionWorld;
+            var rayDirection = rayOutput.EndPositionWorld - startPositionWorld;
             var scaledRayLength = rayDirection.magnitude;
-            // Avoid 0/0 if unscaledRayLength is 0
-            var scaledCastRadius = unscaledRayLength > 0 ?
-                unscaledCastRadius * scaledRayLength / unscaledRayLength :
-                unscaledCastRadius;
+            var scaledCastRadius = rayOutput.ScaledCastRadius;
 
             // Do the cast and assign the hit information for each detectable tag.
             var castHit = false;
@@ -471,17 +511,65 @@ namespace Unity.MLAgents.Sensors
 #endif
             }
 
-            var rayOutput = new RayPerceptionOutput.RayOutput
+            SetHit(input, ref rayOutput, castHit, hitFraction, hitObject);
+            return rayOutput;
+        }
+
+        /// <summary>
+        /// Creates the output of a ray that wasn't cast yet, with its positions and scaled cast radius.
+        /// </summary>
+        /// <param name="input"></param>
+        /// <param name="rayIndex"></param>
+        /// <returns></returns>
+        internal static RayPerceptionOutput.RayOutput CreateRayOutput(RayPerceptionInput input, int rayIndex)
+        {
+            var unscaledRayLength = input.RayLength;
+            var unscaledCastRadius = input.CastRadius;
+
+            var extents = input.RayExtents(rayIndex);
+            var startPositionWorld = extents.StartPositionWorld;
+            var endPositionWorld = extents.EndPositionWorld;
+
+            var rayDirection = endPositionWorld - startPositionWorld;
+            // If there is non-unity scale, |rayDirection| will be different from rayLength.
+            // We want to use this transformed ray length for determining cast length, hit fraction etc.
+            // We also it to scale up or down the sphere or circle radii
+            var scaledRayLength = rayDirection.magnitude;
+            // Avoid 0/0 if unscaledRayLength is 0
+            var scaledCastRadius = unscaledRayLength > 0 ?
+                unscaledCastRadius * scaledRayLength / unscaledRayLength :
+                unscaledCastRadius;
+
+            return new RayPerceptionOutput.RayOutput
             {
-                HasHit = castHit,
-                HitFraction = hitFraction,
+                HasHit = false,
+                HitFraction = 1.0f,
                 HitTaggedObject = false,
                 HitTagIndex = -1,
-                HitGameObject = hitObject,
+                HitGameObject = null,
                 StartPositionWorld = startPositionWorld,
                 EndPositionWorld = endPositionWorld,
                 ScaledCastRadius = scaledCastRadius
             };
+        }
+
+        /// <summary>
+        /// Stores the result of the cast of a ray in its output, including the index of the tag of the object that
+        /// was hit.
+        /// </summary>
+        internal static void SetHit(
+            RayPerceptionInput input,
+            ref RayPerceptionOutput.RayOutput rayOutput,
+            bool castHit,
+            float hitFraction,
+            GameObject hitObject
+        )
+        {
+            rayOutput.HasHit = castHit;
+            rayOutput.HitFraction = hitFraction;
+            rayOutput.HitGameObject = hitObject;
+            rayOutput.HitTaggedObject = false;
+            rayOutput.HitTagIndex = -1;
 
             if (castHit)
             {
@@ -511,9 +599,6 @@ namespace Unity.MLAgents.Sensors
                     }
                 }
             }
-
-
-            return rayOutput;
         }
     }
 }
@@ -37,6 +37,37 @@ namespace Unity.MLAgents.Sensors
             set { m_EndVerticalOffset = value; UpdateSensor(); }
         }
 
+        [HideInInspector, SerializeField]
+        [Tooltip("Cast the rays together with the rays of the other agents, in RaycastCommand and " +
+            "SpherecastCommand jobs, instead of one at a time.")]
+        bool m_UseBatchedRaycasts;
+
+        /// <summary>
+        /// Whether the rays are cast together with the rays of the other agents' sensors that use batched
+        /// raycasts, in RaycastCommand and SpherecastCommand jobs, instead of one at a time. This is faster with
+        /// many agents.
+        /// </summary>
+        public bool UseBatchedRaycasts
+        {
+            get => m_UseBatchedRaycasts;
+            set
+            {
+                m_UseBatchedRaycasts = value;
+                if (RaySensor != null)
+                {
+                    RaySensor.UseBatchedRaycasts = value;
+                }
+            }
+        }
+
+        /// <inheritdoc/>
+        public override ISensor[] CreateSensors()
+        {
+            var sensors = base.CreateSensors();
+            RaySensor.UseBatchedRaycasts = m_UseBatchedRaycasts;
+            return sensors;
+        }
+
         /// <inheritdoc/>
         public override RayPerceptionCastType GetCastType()
         {
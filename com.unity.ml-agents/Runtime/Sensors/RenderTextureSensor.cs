@@ -14,6 +14,7 @@ namespace Unity.MLAgents.Sensors
         private ObservationSpec m_ObservationSpec;
         SensorCompressionType m_CompressionType;
         Texture2D m_Texture;
+        byte[] m_Uint8Buffer;
 
         /// <summary>
         /// The compression type used by the sensor.
@@ -65,6 +66,15 @@ namespace Unity.MLAgents.Sensors
             using (TimerStack.Instance.Scoped("RenderTextureSensor.GetCompressedObservation"))
             {
                 ObservationToTexture(m_RenderTexture, m_Texture);
+                if (m_CompressionType == SensorCompressionType.Uint8)
+                {
+                    if (m_Uint8Buffer == null)
+                    {
+                        m_Uint8Buffer = new byte[m_ObservationSpec.Shape[0] * m_ObservationSpec.Shape[1] * m_ObservationSpec.Shape[2]];
+                    }
+                    Utilities.TextureToUint8(m_Texture, m_Grayscale, m_Uint8Buffer);
+                    return m_Uint8Buffer;
+                }
                 // TODO support more types here, e.g. JPG
                 var compressed = m_Texture.EncodeToPNG();
                 return compressed;
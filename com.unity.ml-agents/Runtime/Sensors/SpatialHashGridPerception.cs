@@ -0,0 +1,177 @@
+using System;
+using System.Collections.Generic;
+using UnityEngine;
+
+namespace Unity.MLAgents.Sensors
+{
+#if MLA_UNITY_PHYSICS_MODULE
+    /// <summary>
+    /// Grid perception that finds the colliders in the cells of the grid with a <see cref="GridSpatialHash"/>
+    /// shared by the grid sensors, instead of an overlap query for each cell. The colliders near the grid are
+    /// assigned to the cells that their bounds overlap, so the cost of a perception scales with the number of
+    /// tagged objects around the grid, not with the number of cells.
+    /// </summary>
+    internal class SpatialHashGridPerception : BoxOverlapChecker
+    {
+        GridSpatialHash m_SpatialHash;
+
+        // The colliders in each cell, and the cells that have at least one collider.
+        List<Collider>[] m_CellColliders;
+        List<int> m_UsedCells = new List<int>();
+        Collider[] m_CellBuffer = new Collider[16];
+
+        public SpatialHashGridPerception(
+            Vector3 cellScale,
+            Vector3Int gridSize,
+            bool rotateWithAgent,
+            LayerMask colliderMask,
+            GameObject centerObject,
+            GameObject agentGameObject,
+            string[] detectableTags,
+            int initialColliderBufferSize,
+            int maxColliderBufferSize,
+            GridSpatialHash spatialHash)
+            : base(cellScale, gridSize, rotateWithAgent, colliderMask, centerObject, agentGameObject, detectableTags,
+                initialColliderBufferSize, maxColliderBufferSize)
+        {
+            m_SpatialHash = spatialHash;
+            m_SpatialHash.AddTags(detectableTags);
+            m_CellColliders = new List<Collider>[m_NumCells];
+        }
+
+        public override void Perceive()
+        {
+            AssignCollidersToCells();
+            foreach (var cellIndex in m_UsedCells)
+            {
+                var numFound = CopyCellColliders(cellIndex);
+                ParseCell(m_CellBuffer, numFound, cellIndex, GetCellGlobalPosition(cellIndex));
+            }
+        }
+
+        public override void UpdateGizmo()
+        {
+            AssignCollidersToCells();
+            foreach (var cellIndex in m_UsedCells)
+            {
+                var numFound = CopyCellColliders(cellIndex);
+                ParseCellDebug(m_CellBuffer, numFound, cellIndex, GetCellGlobalPosition(cellIndex));
+            }
+        }
+
+        public override void Reset()
+        {
+            // The objects of the next episode can be created in OnEpisodeBegin.
+            m_SpatialHash.FindObjectsOnNextUpdate();
+        }
+
+        /// <summary>
+        /// Finds the colliders near the grid in the spatial hash, and adds each of them to the cells that its bounds
+        /// overlap in the frame of the grid.
+        /// </summary>
+        void AssignCollidersToCells()
+        {
+            foreach (var cellIndex in m_UsedCells)
+            {
+                m_CellColliders[cellIndex].Clear();
+            }
+            m_UsedCells.Clear();
+
+            m_SpatialHash.UpdateIfNeeded();
+
+            // The cells overlap boxes that extend by the cell height above and below the center object.
+            var transform = m_CenterObject.transform;
+            var gridExtents = new Vector3(m_GridSize.x * m_CellScale.x / 2f, m_CellScale.y, m_GridSize.z * m_CellScale.z / 2f);
+            var gridCenter = transform.position;
+            var worldGridExtents = RotateWithAgent ?
+                TransformExtents(transform.localToWorldMatrix, gridExtents) :
+                gridExtents;
+            var candidates = m_SpatialHash.Query(gridCenter - worldGridExtents, gridCenter + worldGridExtents);
+
+            var worldToLocal = transform.worldToLocalMatrix;
+            foreach (var collider in candidates)
+            {
+                if (collider == null || (m_ColliderMask.value & (1 << collider.gameObject.layer)) == 0)
+                {
+                    continue;
+                }
+
+                // The bounds of the collider relative to the grid.
+                var bounds = collider.bounds;
+                Vector3 localCenter;
+                Vector3 localExtents;
+                if (RotateWithAgent)
+                {
+                    localCenter = worldToLocal.MultiplyPoint3x4(bounds.center);
+                    localExtents = TransformExtents(worldToLocal, bounds.extents);
+                }
+                else
+                {
+                    localCenter = bounds.center - gridCenter;
+                    localExtents = bounds.extents;
+                }
+                if (localCenter.y - localExtents.y > m_CellScale.y || localCenter.y + localExtents.y < -m_CellScale.y)
+                {
+                    continue;
+                }
+
+                var minX = Math.Max(GetCellCoordinate(localCenter.x - localExtents.x, m_CellScale.x, m_CellCenterOffset.x), 0);
+                var maxX = Math.Min(GetCellCoordinate(localCenter.x + localExtents.x, m_CellScale.x, m_CellCenterOffset.x), m_GridSize.x - 1);
+                var minZ = Math.Max(GetCellCoordinate(localCenter.z - localExtents.z, m_CellScale.z, m_CellCenterOffset.z), 0);
+                var maxZ = Math.Min(GetCellCoordinate(localCenter.z + localExtents.z, m_CellScale.z, m_CellCenterOffset.z), m_GridSize.z - 1);
+                for (var x = minX; x <= maxX; x++)
+                {
+                    for (var z = minZ; z <= maxZ; z++)
+                    {
+                        var cellIndex = x * m_GridSize.z + z;
+                        var cellColliders = m_CellColliders[cellIndex];
+                        if (cellColliders == null)
+                        {
+                            cellColliders = new List<Collider>();
+                            m_CellColliders[cellIndex] = cellColliders;
+                        }
+                        if (cellColliders.Count == 0)
+                        {
+                            m_UsedCells.Add(cellIndex);
+                        }
+                        cellColliders.Add(collider);
+                    }
+                }
+            }
+        }
+
+        /// <summary>
+        /// Returns the index along an axis of the grid of the cell that contains a local coordinate.
+        /// This is the inverse of <see cref="BoxOverlapChecker.GetCellLocalPosition"/>.
+        /// </summary>
+        static int GetCellCoordinate(float localPosition, float cellScale, float cellCenterOffset)
+        {
+            return Mathf.FloorToInt(localPosition / cellScale + cellCenterOffset + 0.5f);
+        }
+
+        /// <summary>
+        /// Returns the extents of the axis-aligned box that contains a box with the given extents transformed by
+        /// the matrix.
+        /// </summary>
+        static Vector3 TransformExtents(Matrix4x4 matrix, Vector3 extents)
+        {
+            return new Vector3(
+                Mathf.Abs(matrix.m00) * extents.x + Mathf.Abs(matrix.m01) * extents.y + Mathf.Abs(matrix.m02) * extents.z,
+                Mathf.Abs(matrix.m10) * extents.x + Mathf.Abs(matrix.m11) * extents.y + Mathf.Abs(matrix.m12) * extents.z,
+                Mathf.Abs(matrix.m20) * extents.x + Mathf.Abs(matrix.m21) * extents.y + Mathf.Abs(matrix.m22) * extents.z
+            );
+        }
+
+        int CopyCellColliders(int cellIndex)
+        {
+            var cellColliders = m_CellColliders[cellIndex];
+            if (m_CellBuffer.Length < cellColliders.Count)
+            {
+                m_CellBuffer = new Collider[Math.Max(cellColliders.Count, 2 * m_CellBuffer.Length)];
+            }
+            cellColliders.CopyTo(m_CellBuffer);
+            return cellColliders.Count;
+        }
+    }
+#endif
+}
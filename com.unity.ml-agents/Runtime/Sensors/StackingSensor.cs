@@ -15,7 +15,7 @@ namespace Unity.MLAgents.Sensors
     /// Internally, a circular buffer of arrays is used. The m_CurrentIndex represents the most recent observation.
     /// Currently, observations are stacked on the last dimension.
     /// </summary>
-    public class StackingSensor : ISensor, IBuiltInSensor
+    public class StackingSensor : ISensor, IBuiltInSensor, IBatchedSensor
     {
         /// <summary>
         /// The wrapped sensor.
@@ -45,6 +45,7 @@ namespace Unity.MLAgents.Sensors
         byte[] m_EmptyCompressedObservation;
         int[] m_CompressionMapping;
         TensorShape m_tensorShape;
+        NewestObservationSensor m_NewestObservationSensor;
 
         /// <summary>
         /// Initializes the sensor.
@@ -79,7 +80,17 @@ namespace Unity.MLAgents.Sensors
                 m_StackedObservations[i] = new float[m_UnstackedObservationSize];
             }
 
-            if (m_WrappedSensor.GetCompressionSpec().SensorCompressionType != SensorCompressionType.None)
+            var wrappedCompressionType = m_WrappedSensor.GetCompressionSpec().SensorCompressionType;
+            if (wrappedCompressionType == SensorCompressionType.Uint8)
+            {
+                // Raw bytes are interleaved along the channels, so they don't need a mapping.
+                m_StackedCompressedObservations = new byte[numStackedObservations][];
+                for (var i = 0; i < numStackedObservations; i++)
+                {
+                    m_StackedCompressedObservations[i] = new byte[m_UnstackedObservationSize];
+                }
+            }
+            else if (wrappedCompressionType != SensorCompressionType.None)
             {
                 m_StackedCompressedObservations = new byte[numStackedObservations][];
                 m_EmptyCompressedObservation = CreateEmptyPNG();
@@ -95,8 +106,23 @@ namespace Unity.MLAgents.Sensors
                 var wrappedShape = m_WrappedSpec.Shape;
                 m_tensorShape = new TensorShape(0, wrappedShape[0], wrappedShape[1], wrappedShape[2]);
             }
+
+            m_NewestObservationSensor = new NewestObservationSensor(this);
         }
 
+        /// <summary>
+        /// Number of stacked observations.
+        /// </summary>
+        internal int NumStackedObservations => m_NumStackedObservations;
+
+        /// <summary>
+        /// A sensor that only outputs the most recent observation of the wrapped sensor, for the
+        /// trainers that stack the observations themselves. The observation is still added to
+        /// the stack, so it must be used instead of this sensor's Write or
+        /// GetCompressedObservation, not in addition to them.
+        /// </summary>
+        internal ISensor NewestObservationSensor => m_NewestObservationSensor;
+
         /// <inheritdoc/>
         public int Write(ObservationWriter writer)
         {
@@ -137,6 +163,35 @@ namespace Unity.MLAgents.Sensors
             return numWritten;
         }
 
+        /// <summary>
+        /// Writes the observation of the wrapped sensor to the stack, and only outputs this one.
+        /// </summary>
+        int WriteNewest(ObservationWriter writer)
+        {
+            m_LocalWriter.SetTarget(m_StackedObservations[m_CurrentIndex], m_WrappedSpec, 0);
+            m_WrappedSensor.Write(m_LocalWriter);
+
+            var newestObs = m_StackedObservations[m_CurrentIndex];
+            if (m_WrappedSpec.Rank == 1)
+            {
+                writer.AddList(newestObs);
+            }
+            else
+            {
+                for (var h = 0; h < m_WrappedSpec.Shape[0]; h++)
+                {
+                    for (var w = 0; w < m_WrappedSpec.Shape[1]; w++)
+                    {
+                        for (var c = 0; c < m_WrappedSpec.Shape[2]; c++)
+                        {
+                            writer[h, w, c] = newestObs[m_tensorShape.Index(0, h, w, c)];
+                        }
+                    }
+                }
+            }
+            return m_UnstackedObservationSize;
+        }
+
         /// <summary>
         /// Updates the index of the "current" buffer.
         /// </summary>
@@ -146,6 +201,12 @@ namespace Unity.MLAgents.Sensors
             m_CurrentIndex = (m_CurrentIndex + 1) % m_NumStackedObservations;
         }
 
+        /// <inheritdoc/>
+        void IBatchedSensor.ScheduleUpdate()
+        {
+            (m_WrappedSensor as IBatchedSensor)?.ScheduleUpdate();
+        }
+
         /// <inheritdoc/>
         public void Reset()
         {
@@ -155,7 +216,15 @@ namespace Unity.MLAgents.Sensors
             {
                 Array.Clear(m_StackedObservations[i], 0, m_StackedObservations[i].Length);
             }
-            if (m_WrappedSensor.GetCompressionSpec().SensorCompressionType != SensorCompressionType.None)
+            var wrappedCompressionType = m_WrappedSensor.GetCompressionSpec().SensorCompressionType;
+            if (wrappedCompressionType == SensorCompressionType.Uint8)
+            {
+                for (var i = 0; i < m_NumStackedObservations; i++)
+                {
+                    Array.Clear(m_StackedCompressedObservations[i], 0, m_StackedCompressedObservations[i].Length);
+                }
+            }
+            else if (wrappedCompressionType != SensorCompressionType.None)
             {
                 for (var i = 0; i < m_NumStackedObservations; i++)
                 {
@@ -180,6 +249,10 @@ namespace Unity.MLAgents.Sensors
         public byte[] GetCompressedObservation()
         {
             var compressed = m_WrappedSensor.GetCompressedObservation();
+            if (m_WrappedSensor.GetCompressionSpec().SensorCompressionType == SensorCompressionType.Uint8)
+            {
+                return StackUint8Observations(compressed);
+            }
             m_StackedCompressedObservations[m_CurrentIndex] = compressed;
 
             int bytesLength = 0;
@@ -205,9 +278,60 @@ namespace Unity.MLAgents.Sensors
         public CompressionSpec GetCompressionSpec()
         {
             var wrappedSpec = m_WrappedSensor.GetCompressionSpec();
+            if (wrappedSpec.SensorCompressionType == SensorCompressionType.Uint8)
+            {
+                return new CompressionSpec(SensorCompressionType.Uint8);
+            }
             return new CompressionSpec(wrappedSpec.SensorCompressionType, m_CompressionMapping);
         }
 
+        /// <summary>
+        /// Adds the compressed observation of the wrapped sensor to the stack, and only returns
+        /// this one.
+        /// </summary>
+        byte[] GetNewestCompressedObservation()
+        {
+            var compressed = m_WrappedSensor.GetCompressedObservation();
+            if (m_WrappedSensor.GetCompressionSpec().SensorCompressionType == SensorCompressionType.Uint8)
+            {
+                // The wrapped sensor may reuse its buffer, so keep a copy.
+                Buffer.BlockCopy(compressed, 0, m_StackedCompressedObservations[m_CurrentIndex], 0, m_UnstackedObservationSize);
+            }
+            else
+            {
+                m_StackedCompressedObservations[m_CurrentIndex] = compressed;
+            }
+            return compressed;
+        }
+
+        /// <summary>
+        /// Stack uint8 observations along the last dimension, so that they have the same layout
+        /// as the uncompressed stacked observations.
+        /// </summary>
+        byte[] StackUint8Observations(byte[] compressed)
+        {
+            // The wrapped sensor may reuse its buffer, so keep a copy.
+            Buffer.BlockCopy(compressed, 0, m_StackedCompressedObservations[m_CurrentIndex], 0, m_UnstackedObservationSize);
+
+            var numChannels = m_WrappedSpec.Shape[m_WrappedSpec.Rank - 1];
+            var numCells = m_UnstackedObservationSize / numChannels;
+            var outputBytes = new byte[m_UnstackedObservationSize * m_NumStackedObservations];
+            for (var i = 0; i < m_NumStackedObservations; i++)
+            {
+                var obsIndex = (m_CurrentIndex + 1 + i) % m_NumStackedObservations;
+                var stackedObs = m_StackedCompressedObservations[obsIndex];
+                for (var cell = 0; cell < numCells; cell++)
+                {
+                    Buffer.BlockCopy(
+                        stackedObs, cell * numChannels,
+                        outputBytes, (cell * m_NumStackedObservations + i) * numChannels,
+                        numChannels
+                    );
+                }
+            }
+            return outputBytes;
+        }
+
         /// <summary>
         /// Create Empty PNG for initializing the buffer for stacking.
         /// </summary>
@@ -296,5 +420,47 @@ namespace Unity.MLAgents.Sensors
             }
             return observations.AsReadOnly();
         }
+
+        /// <summary>
+        /// Outputs the most recent observation of the wrapped sensor of a StackingSensor.
+        /// </summary>
+        class NewestObservationSensor : ISensor
+        {
+            StackingSensor m_StackingSensor;
+
+            public NewestObservationSensor(StackingSensor stackingSensor)
+            {
+                m_StackingSensor = stackingSensor;
+            }
+
+            public ObservationSpec GetObservationSpec()
+            {
+                return m_StackingSensor.m_WrappedSpec;
+            }
+
+            public int Write(ObservationWriter writer)
+            {
+                return m_StackingSensor.WriteNewest(writer);
+            }
+
+            public byte[] GetCompressedObservation()
+            {
+                return m_StackingSensor.GetNewestCompressedObservation();
+            }
+
+            public void Update() { }
+
+            public void Reset() { }
+
+            public CompressionSpec GetCompressionSpec()
+            {
+                return m_StackingSensor.m_WrappedSensor.GetCompressionSpec();
+            }
+
+            public string GetName()
+            {
+                return m_StackingSensor.m_Name;
+            }
+        }
     }
 }
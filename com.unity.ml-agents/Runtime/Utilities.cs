@@ -44,6 +44,58 @@ namespace Unity.MLAgents
             }
         }
 
+        /// <summary>
+        /// Copies the pixels of a texture into a buffer of bytes in height x width x channels order,
+        /// with the top row first. This is the layout of the uint8 observations sent to the trainer.
+        /// </summary>
+        /// <param name="texture">The texture to read.</param>
+        /// <param name="grayScale">Whether to average the color channels into a single one.</param>
+        /// <param name="output">The buffer to fill. It must hold height * width * (grayScale ? 1 : 3) bytes.</param>
+        internal static void TextureToUint8(Texture2D texture, bool grayScale, byte[] output)
+        {
+            var width = texture.width;
+            var height = texture.height;
+            var numChannels = grayScale ? 1 : 3;
+            var isRgb24 = texture.format == TextureFormat.RGB24;
+            var rawBytes = isRgb24 ? texture.GetRawTextureData<byte>() : default;
+            var pixels = isRgb24 ? null : texture.GetPixels32();
+            var index = 0;
+            // Textures start with the bottom row.
+            for (var h = height - 1; h >= 0; h--)
+            {
+                for (var w = 0; w < width; w++)
+                {
+                    var offset = h * width + w;
+                    byte r, g, b;
+                    if (isRgb24)
+                    {
+                        r = rawBytes[3 * offset];
+                        g = rawBytes[3 * offset + 1];
+                        b = rawBytes[3 * offset + 2];
+                    }
+                    else
+                    {
+                        var pixel = pixels[offset];
+                        r = pixel.r;
+                        g = pixel.g;
+                        b = pixel.b;
+                    }
+
+                    if (grayScale)
+                    {
+                        output[index] = (byte)((r + g + b) / 3);
+                    }
+                    else
+                    {
+                        output[index] = r;
+                        output[index + 1] = g;
+                        output[index + 2] = b;
+                    }
+                    index += numChannels;
+                }
+            }
+        }
+
         [Conditional("DEBUG")]
         internal static void DebugCheckNanAndInfinity(float value, string valueCategory, string caller)
         {
@@ -247,6 +247,62 @@ namespace Unity.MLAgents.Tests
             }
         }
 
+        [Test]
+        public void TestGetObservationProtoUint8()
+        {
+            var dummySensor = new DummySensor
+            {
+                ObservationSpec = ObservationSpec.Visual(4, 4, 4),
+                CompressionType = SensorCompressionType.Uint8
+            };
+            var obsWriter = new ObservationWriter();
+            obsWriter.SetTarget(new float[128], dummySensor.ObservationSpec, 0);
+
+            var obsProto = dummySensor.GetObservationProto(obsWriter);
+            Assert.AreEqual(CompressionTypeProto.Uint8, obsProto.CompressionType);
+            Assert.AreEqual(new byte[] { 13, 37 }, obsProto.CompressedData.ToByteArray());
+            Assert.AreEqual(0, obsProto.CompressedChannelMapping.Count);
+
+            // Fall back to uncompressed observations if the trainer doesn't support uint8.
+            Academy.Instance.TrainerCapabilities = new UnityRLCapabilities
+            {
+                Uint8Observations = false
+            };
+            obsProto = dummySensor.GetObservationProto(obsWriter);
+            Assert.AreEqual(CompressionTypeProto.None, obsProto.CompressionType);
+            Assert.AreEqual(0, obsProto.CompressedData.Length);
+            LogAssert.Expect(LogType.Warning, new Regex(".+"));
+        }
+
+        [Test]
+        public void TestGetObservationProtoUnstacked()
+        {
+            var wrapped = new VectorSensor(2);
+            var sensor = new StackingSensor(wrapped, 3);
+            var obsWriter = new ObservationWriter();
+            wrapped.AddObservation(new[] { 1f, 2f });
+
+            // Only the newest observation is sent, with the stacked shape.
+            var obsProto = sensor.GetObservationProto(obsWriter, true);
+            Assert.AreEqual(new[] { 6 }, obsProto.Shape);
+            Assert.AreEqual(3, obsProto.StackDepth);
+            Assert.AreEqual(new[] { 1f, 2f }, obsProto.FloatData.Data);
+
+            // Demonstrations keep the stacked observations.
+            obsProto = sensor.GetObservationProto(obsWriter);
+            Assert.AreEqual(0, obsProto.StackDepth);
+            Assert.AreEqual(new[] { 0f, 0f, 0f, 0f, 1f, 2f }, obsProto.FloatData.Data);
+
+            // Send the stacked observations if the trainer doesn't stack them.
+            Academy.Instance.TrainerCapabilities = new UnityRLCapabilities
+            {
+                UnstackedObservations = false
+            };
+            obsProto = sensor.GetObservationProto(obsWriter, true);
+            Assert.AreEqual(0, obsProto.StackDepth);
+            Assert.AreEqual(new[] { 0f, 0f, 0f, 0f, 1f, 2f }, obsProto.FloatData.Data);
+        }
+
         [Test]
         public void TestDefaultTrainingEvents()
         {
@@ -2,12 +2,14 @@ using System;
 using System.Linq;
 using NUnit.Framework;
 using UnityEngine;
+using UnityEngine.Profiling;
 using UnityEditor;
 using Unity.Barracuda;
 using Unity.MLAgents.Actuators;
 using Unity.MLAgents.Inference;
 using Unity.MLAgents.Policies;
 using System.Collections.Generic;
+using Is = UnityEngine.TestTools.Constraints.Is;
 
 namespace Unity.MLAgents.Tests
 {
@@ -147,6 +149,7 @@ namespace Unity.MLAgents.Tests
             Assert.True(modelRunner.HasModel(continuousONNXModel, InferenceDevice.CPU));
             Assert.False(modelRunner.HasModel(continuousONNXModel, InferenceDevice.GPU));
             Assert.False(modelRunner.HasModel(discreteONNXModel, InferenceDevice.CPU));
+            Assert.False(modelRunner.HasModel(continuousONNXModel, InferenceDevice.CPU, true));
             modelRunner.Dispose();
         }
 
@@ -178,6 +181,100 @@ namespace Unity.MLAgents.Tests
             modelRunner.Dispose();
         }
 
+        [Test]
+        public void TestGenerateAndApplyTensorsDontAllocate()
+        {
+            var actionSpec = GetContinuous2vis8vec2actionActionSpec();
+            var barracudaModel = ModelLoader.Load(continuousONNXModel);
+            var alloc = new TensorCachingAllocator();
+            var memories = new Dictionary<int, List<float>>();
+            var generator = new TensorGenerator(0, alloc, memories, barracudaModel);
+            var applier = new TensorApplier(actionSpec, 0, alloc, memories, barracudaModel);
+            var sensors = new[] {
+                new Sensors.VectorSensor(8, "VectorSensor8"),
+                sensor_21_20_3.CreateSensors()[0],
+                sensor_20_22_3.CreateSensors()[0] }.ToList();
+            var infos = new List<AgentInfoSensorsPair>
+            {
+                new AgentInfoSensorsPair { agentInfo = new AgentInfo { episodeId = 1 }, sensors = sensors },
+                new AgentInfoSensorsPair { agentInfo = new AgentInfo { episodeId = 2 }, sensors = sensors },
+            };
+            var agentIds = new List<int> { 1, 2 };
+            var lastActions = new Dictionary<int, ActionBuffers>
+            {
+                { 1, ActionBuffers.Empty },
+                { 2, ActionBuffers.Empty },
+            };
+            var inputs = barracudaModel.GetInputTensors();
+            var outputs = new List<TensorProxy>
+            {
+                new TensorProxy
+                {
+                    name = barracudaModel.ContinuousOutputName(),
+                    valueType = TensorProxy.TensorType.FloatingPoint,
+                    shape = new long[] { 2, actionSpec.NumContinuousActions },
+                    data = alloc.Alloc(new TensorShape(2, actionSpec.NumContinuousActions))
+                }
+            };
+            generator.InitializeObservations(sensors, alloc);
+
+            // The first step allocates the tensors and the action buffers of the agents.
+            generator.GenerateTensors(inputs, infos.Count, infos);
+            applier.ApplyTensors(outputs, agentIds, lastActions);
+
+            Assert.That(() =>
+            {
+                generator.GenerateTensors(inputs, infos.Count, infos);
+                applier.ApplyTensors(outputs, agentIds, lastActions);
+            }, Is.Not.AllocatingGCMemory());
+            alloc.Dispose();
+        }
+
+        // What DecideBatch may still allocate per step. The ML-Agents side of a step doesn't
+        // allocate (see TestGenerateAndApplyTensorsDontAllocate), so this is Barracuda's share:
+        // the worker allocates a few objects each time it executes the model.
+        const int k_MaxBarracudaAllocationsPerStep = 32;
+
+        [Test]
+        public void TestDecideBatchAllocationsPerStep()
+        {
+            var actionSpec = GetContinuous2vis8vec2actionActionSpec();
+            var modelRunner = new ModelRunner(continuousONNXModel, actionSpec, InferenceDevice.Burst);
+            var sensors = new[] {
+                new Sensors.VectorSensor(8, "VectorSensor8"),
+                sensor_21_20_3.CreateSensors()[0],
+                sensor_20_22_3.CreateSensors()[0] }.ToList();
+            var info1 = new AgentInfo { episodeId = 1 };
+            var info2 = new AgentInfo { episodeId = 2 };
+            const int numSteps = 10;
+            // The first steps allocate the tensors, the action buffers and Barracuda's caches.
+            for (var step = 0; step < numSteps; step++)
+            {
+                modelRunner.PutObservations(info1, sensors);
+                modelRunner.PutObservations(info2, sensors);
+                modelRunner.DecideBatch();
+            }
+
+            // Only count the allocations of this thread. Disabling the recorder makes its count
+            // cover the calls since it was enabled, rather than the previous frame.
+            var recorder = Recorder.Get("GC.Alloc");
+            recorder.enabled = false;
+            recorder.FilterToCurrentThread();
+            recorder.enabled = true;
+            for (var step = 0; step < numSteps; step++)
+            {
+                modelRunner.PutObservations(info1, sensors);
+                modelRunner.PutObservations(info2, sensors);
+                modelRunner.DecideBatch();
+            }
+            recorder.enabled = false;
+            var allocationsPerStep = (float)recorder.sampleBlockCount / numSteps;
+
+            Assert.LessOrEqual(allocationsPerStep, k_MaxBarracudaAllocationsPerStep);
+            Assert.IsFalse(modelRunner.GetAction(1).Equals(ActionBuffers.Empty));
+            modelRunner.Dispose();
+        }
+
 
         [Test]
         public void TestRunModel_stochastic()
@@ -152,6 +152,29 @@ namespace Unity.MLAgents.Tests
             GridObsTestUtils.AssertSubarraysAtIndex(gridSensor.PerceptionBuffer, subarrayIndicies, expectedSubarrays, expectedDefault);
         }
 
+        [Test]
+        public void TestUint8Compression()
+        {
+            testGo.tag = k_Tag2;
+            string[] tags = { k_Tag1, k_Tag2 };
+            gridSensorComponent.SetComponentParameters(tags, useOneHotTag: true, compression: SensorCompressionType.Uint8);
+            var gridSensor = (OneHotGridSensor)gridSensorComponent.CreateSensors()[0];
+            gridSensor.Update();
+
+            var bytes = gridSensor.GetCompressedObservation();
+            Assert.AreEqual(10 * 10 * 2, bytes.Length);
+            // The box is detected in 4 cells, with one-hot values of 1 quantized to 255.
+            var numDetected = 0;
+            foreach (var b in bytes)
+            {
+                numDetected += b == 255 ? 1 : 0;
+            }
+            Assert.AreEqual(4, numDetected);
+            // The buffer is reused between steps.
+            gridSensor.Update();
+            Assert.AreSame(bytes, gridSensor.GetCompressedObservation());
+        }
+
         [Test]
         public void TestCustomSensorInvalidData()
         {
@@ -87,6 +87,52 @@ namespace Unity.MLAgents.Tests
             Physics.SyncTransforms();
         }
 
+        [Test]
+        public void TestBatchedRaycasts()
+        {
+            SetupScene();
+            var obj = new GameObject("agent");
+            var perception = obj.AddComponent<RayPerceptionSensorComponent3D>();
+
+            perception.RaysPerDirection = 2;
+            perception.MaxRayDegrees = 60;
+            perception.RayLength = 20;
+            perception.DetectableTags = new List<string>();
+            perception.DetectableTags.Add(k_CubeTag);
+            perception.DetectableTags.Add(k_SphereTag);
+            perception.UseBatchedRaycasts = true;
+
+            var batch = new RayPerceptionBatch();
+            var radii = new[] { 0f, .5f };
+            foreach (var castRadius in radii)
+            {
+                perception.SphereCastRadius = castRadius;
+                perception.CreateSensors();
+                var sensor = perception.RaySensor;
+                Assert.IsTrue(sensor.UseBatchedRaycasts);
+
+                // Cast the rays one at a time, then in a batch, and compare the results.
+                sensor.Update();
+                var expectedOutputs = (RayPerceptionOutput.RayOutput[])sensor.RayPerceptionOutput.RayOutputs.Clone();
+                batch.Add(sensor);
+                Assert.AreEqual(1, batch.Count);
+                batch.Execute(0);
+                Assert.AreEqual(0, batch.Count);
+
+                var rayOutputs = sensor.RayPerceptionOutput.RayOutputs;
+                Assert.AreEqual(expectedOutputs.Length, rayOutputs.Length);
+                for (var i = 0; i < rayOutputs.Length; i++)
+                {
+                    Assert.AreEqual(expectedOutputs[i].HasHit, rayOutputs[i].HasHit);
+                    Assert.AreEqual(expectedOutputs[i].HitTagIndex, rayOutputs[i].HitTagIndex);
+                    Assert.AreEqual(expectedOutputs[i].HitGameObject, rayOutputs[i].HitGameObject);
+                    Assert.AreEqual(expectedOutputs[i].HitFraction, rayOutputs[i].HitFraction, .0005f);
+                    Assert.AreEqual(expectedOutputs[i].EndPositionWorld, rayOutputs[i].EndPositionWorld);
+                }
+            }
+            batch.Dispose();
+        }
+
         [Test]
         public void TestRaycasts()
         {
@@ -0,0 +1,203 @@
+#if MLA_UNITY_PHYSICS_MODULE
+using System.Collections.Generic;
+using System.Linq;
+using NUnit.Framework;
+using UnityEngine;
+using Unity.MLAgents.Sensors;
+
+namespace Unity.MLAgents.Tests
+{
+    public class SpatialHashGridPerceptionTests
+    {
+        const string k_Tag1 = "Player";
+        const string k_Tag2 = "Respawn";
+
+        GameObject m_AgentGo;
+        List<GameObject> m_TestObjects = new List<GameObject>();
+
+        class DetectionRecorder
+        {
+            public HashSet<(GameObject, int)> Detections = new HashSet<(GameObject, int)>();
+
+            public void DetectedAction(GameObject go, int cellIndex)
+            {
+                Detections.Add((go, cellIndex));
+            }
+        }
+
+        [SetUp]
+        public void SetUp()
+        {
+            m_AgentGo = new GameObject("agent");
+            m_AgentGo.transform.position = Vector3.zero;
+            m_AgentGo.tag = k_Tag1;
+            m_AgentGo.AddComponent<BoxCollider>();
+
+            // Unit boxes whose faces aren't on the borders of the cells, so that their bounds and their shapes
+            // overlap the same cells.
+            var positions = new[]
+            {
+                new Vector3(2.3f, 0f, 1.2f),
+                new Vector3(-3.8f, 0f, 4.1f),
+                new Vector3(-1.2f, .3f, -2.9f),
+                new Vector3(1.1f, 0f, 1.4f),
+                new Vector3(4.2f, 5f, 0.2f), // above the grid
+                new Vector3(30.2f, 0f, 0.2f), // outside of the grid
+                new Vector3(4.8f, 0f, -.3f), // partially outside of the grid without rotation
+            };
+            for (var i = 0; i < positions.Length; i++)
+            {
+                var boxGo = new GameObject("box" + i);
+                boxGo.transform.position = positions[i];
+                boxGo.AddComponent<BoxCollider>();
+                boxGo.tag = i % 2 == 0 ? k_Tag1 : k_Tag2;
+                m_TestObjects.Add(boxGo);
+            }
+            Physics.SyncTransforms();
+        }
+
+        [TearDown]
+        public void TearDown()
+        {
+            Object.DestroyImmediate(m_AgentGo);
+            foreach (var go in m_TestObjects)
+            {
+                Object.DestroyImmediate(go);
+            }
+            m_TestObjects.Clear();
+        }
+
+        BoxOverlapChecker CreatePerception(bool useSpatialHash, bool rotateWithAgent, GridSpatialHash spatialHash = null)
+        {
+            var cellScale = new Vector3(1f, 0.01f, 1f);
+            var gridSize = new Vector3Int(10, 1, 12);
+            var tags = new[] { k_Tag1, k_Tag2 };
+            if (useSpatialHash)
+            {
+                return new SpatialHashGridPerception(cellScale, gridSize, rotateWithAgent, LayerMask.GetMask("Default"),
+                    m_AgentGo, m_AgentGo, tags, 4, 500, spatialHash ?? new GridSpatialHash(4f));
+            }
+            return new BoxOverlapChecker(cellScale, gridSize, rotateWithAgent, LayerMask.GetMask("Default"),
+                m_AgentGo, m_AgentGo, tags, 4, 500);
+        }
+
+        static HashSet<(GameObject, int)> PerceiveAll(BoxOverlapChecker perception)
+        {
+            var recorder = new DetectionRecorder();
+            perception.GridOverlapDetectedAll += recorder.DetectedAction;
+            perception.Perceive();
+            perception.GridOverlapDetectedAll -= recorder.DetectedAction;
+            return recorder.Detections;
+        }
+
+        static HashSet<(GameObject, int)> PerceiveClosest(BoxOverlapChecker perception)
+        {
+            var recorder = new DetectionRecorder();
+            perception.GridOverlapDetectedClosest += recorder.DetectedAction;
+            perception.Perceive();
+            perception.GridOverlapDetectedClosest -= recorder.DetectedAction;
+            return recorder.Detections;
+        }
+
+        [Test]
+        public void TestSameCellsAsOverlapBox([Values(false, true)] bool rotateWithAgent)
+        {
+            m_AgentGo.transform.rotation = Quaternion.Euler(0, 90, 0);
+            var boxOverlap = CreatePerception(false, rotateWithAgent);
+            var spatialHash = CreatePerception(true, rotateWithAgent);
+
+            var expected = PerceiveAll(boxOverlap);
+            Assert.AreEqual(rotateWithAgent ? 20 : 18, expected.Count);
+            CollectionAssert.AreEquivalent(expected, PerceiveAll(spatialHash));
+            CollectionAssert.AreEquivalent(PerceiveClosest(boxOverlap), PerceiveClosest(spatialHash));
+        }
+
+        [Test]
+        public void TestUpdateMovedAndDestroyedObjects()
+        {
+            var hash = new GridSpatialHash(4f);
+            var boxOverlap = CreatePerception(false, true);
+            var spatialHash = CreatePerception(true, true, hash);
+            CollectionAssert.AreEquivalent(PerceiveAll(boxOverlap), PerceiveAll(spatialHash));
+
+            // Move an object to another bucket, one out of the grid, and one into the grid.
+            m_TestObjects[0].transform.position = new Vector3(-4.3f, 0f, -3.2f);
+            m_TestObjects[1].transform.position = new Vector3(-20.3f, 0f, 3.2f);
+            m_TestObjects[5].transform.position = new Vector3(3.3f, 0f, 5.4f);
+            Object.DestroyImmediate(m_TestObjects[3]);
+            m_TestObjects.RemoveAt(3);
+            Physics.SyncTransforms();
+
+            var expected = PerceiveAll(boxOverlap);
+            CollectionAssert.AreEquivalent(expected, PerceiveAll(spatialHash));
+
+            // Untagged objects are removed from the hash.
+            m_TestObjects[0].tag = "Untagged";
+            hash.Update();
+            var detections = PerceiveAll(spatialHash);
+            expected.RemoveWhere(detection => detection.Item1 == m_TestObjects[0]);
+            CollectionAssert.AreEquivalent(expected, detections);
+        }
+
+        [Test]
+        public void TestFindNewObjectsAtEpisodeEnd()
+        {
+            var boxOverlap = CreatePerception(false, true);
+            var spatialHash = CreatePerception(true, true);
+            CollectionAssert.AreEquivalent(PerceiveAll(boxOverlap), PerceiveAll(spatialHash));
+
+            // Deactivated objects are dropped at the next update, and found again once they are activated.
+            m_TestObjects[0].SetActive(false);
+            CollectionAssert.AreEquivalent(PerceiveAll(boxOverlap), PerceiveAll(spatialHash));
+            m_TestObjects[0].SetActive(true);
+            CollectionAssert.AreEquivalent(PerceiveAll(boxOverlap), PerceiveAll(spatialHash));
+
+            // New objects are only looked for when an episode ends.
+            var newBox = new GameObject("newBox");
+            newBox.transform.position = new Vector3(-2.3f, 0f, -1.2f);
+            newBox.AddComponent<BoxCollider>();
+            newBox.tag = k_Tag2;
+            m_TestObjects.Add(newBox);
+            Physics.SyncTransforms();
+            Assert.IsTrue(PerceiveAll(boxOverlap).Any(detection => detection.Item1 == newBox));
+            Assert.IsFalse(PerceiveAll(spatialHash).Any(detection => detection.Item1 == newBox));
+            spatialHash.Reset();
+            CollectionAssert.AreEquivalent(PerceiveAll(boxOverlap), PerceiveAll(spatialHash));
+        }
+
+        [Test]
+        public void TestClearSharedHashes()
+        {
+            var hash = GridSpatialHash.GetShared(4f);
+            Assert.AreSame(hash, GridSpatialHash.GetShared(4f));
+            GridSpatialHash.ClearShared();
+            Assert.AreNotSame(hash, GridSpatialHash.GetShared(4f));
+            GridSpatialHash.ClearShared();
+        }
+
+        [Test]
+        public void TestQueryBuckets()
+        {
+            var hash = new GridSpatialHash(4f);
+            hash.AddTags(new[] { k_Tag2 });
+            hash.Update();
+
+            // Only the objects with the tags of the hash are in it.
+            var results = hash.Query(new Vector3(-5f, 0f, -5f), new Vector3(5f, 0f, 5f));
+            CollectionAssert.AreEquivalent(
+                new[] { m_TestObjects[1].GetComponent<Collider>(), m_TestObjects[3].GetComponent<Collider>() },
+                results
+            );
+
+            // The objects are found in every bucket that their bounds overlap.
+            results = hash.Query(new Vector3(-3.2f, 0f, 3.7f), new Vector3(-3.1f, 0f, 3.8f));
+            CollectionAssert.AreEquivalent(new[] { m_TestObjects[1].GetComponent<Collider>() }, results);
+            results = hash.Query(new Vector3(-3.2f, 0f, 4.4f), new Vector3(-3.1f, 0f, 4.5f));
+            CollectionAssert.AreEquivalent(new[] { m_TestObjects[1].GetComponent<Collider>() }, results);
+
+            results = hash.Query(new Vector3(10f, 0f, 10f), new Vector3(11f, 0f, 11f));
+            Assert.AreEqual(0, results.Count);
+        }
+    }
+}
+#endif
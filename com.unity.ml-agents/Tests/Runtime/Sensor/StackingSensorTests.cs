@@ -271,6 +271,69 @@ namespace Unity.MLAgents.Tests
             Assert.AreEqual(sensor.GetCompressedObservation(), expected4);
         }
 
+        [Test]
+        public void TestStackedGetUint8Observation()
+        {
+            var wrapped = new Dummy3DSensor();
+            wrapped.CompressionType = SensorCompressionType.Uint8;
+            wrapped.ObservationSpec = ObservationSpec.Visual(2, 1, 2);
+            var sensor = new StackingSensor(wrapped, 2);
+            Assert.AreEqual(sensor.GetCompressionSpec().SensorCompressionType, SensorCompressionType.Uint8);
+            Assert.IsNull(sensor.GetCompressionSpec().CompressedChannelMapping);
+
+            // The bytes are stacked on the last dimension, like the uncompressed observations.
+            wrapped.CurrentObservation = new[, ,] { { { 1f, 2f } }, { { 3f, 4f } } };
+            Assert.AreEqual(sensor.GetCompressedObservation(), new byte[] { 0, 0, 1, 2, 0, 0, 3, 4 });
+
+            sensor.Update();
+            wrapped.CurrentObservation = new[, ,] { { { 5f, 6f } }, { { 7f, 8f } } };
+            Assert.AreEqual(sensor.GetCompressedObservation(), new byte[] { 1, 2, 5, 6, 3, 4, 7, 8 });
+
+            // Test reset
+            sensor.Reset();
+            wrapped.CurrentObservation = new[, ,] { { { 9f, 10f } }, { { 11f, 12f } } };
+            Assert.AreEqual(sensor.GetCompressedObservation(), new byte[] { 0, 0, 9, 10, 0, 0, 11, 12 });
+        }
+
+        [Test]
+        public void TestNewestObservationSensor()
+        {
+            var wrapped = new Dummy3DSensor();
+            wrapped.ObservationSpec = ObservationSpec.Visual(2, 1, 2);
+            var sensor = new StackingSensor(wrapped, 2);
+            var newestSensor = sensor.NewestObservationSensor;
+            Assert.AreEqual(2, sensor.NumStackedObservations);
+            Assert.AreEqual(wrapped.ObservationSpec.Shape, newestSensor.GetObservationSpec().Shape);
+
+            // Only the newest observation is written, but it is still added to the stack.
+            wrapped.CurrentObservation = new[, ,] { { { 1f, 2f } }, { { 3f, 4f } } };
+            SensorTestHelper.CompareObservation(newestSensor, new[, ,] { { { 1f, 2f } }, { { 3f, 4f } } });
+
+            sensor.Update();
+            wrapped.CurrentObservation = new[, ,] { { { 5f, 6f } }, { { 7f, 8f } } };
+            SensorTestHelper.CompareObservation(newestSensor, new[, ,] { { { 5f, 6f } }, { { 7f, 8f } } });
+            SensorTestHelper.CompareObservation(sensor, new[, ,] { { { 1f, 2f, 5f, 6f } }, { { 3f, 4f, 7f, 8f } } });
+        }
+
+        [Test]
+        public void TestNewestObservationSensorUint8()
+        {
+            var wrapped = new Dummy3DSensor();
+            wrapped.CompressionType = SensorCompressionType.Uint8;
+            wrapped.ObservationSpec = ObservationSpec.Visual(2, 1, 2);
+            var sensor = new StackingSensor(wrapped, 2);
+            var newestSensor = sensor.NewestObservationSensor;
+            Assert.AreEqual(SensorCompressionType.Uint8, newestSensor.GetCompressionSpec().SensorCompressionType);
+
+            wrapped.CurrentObservation = new[, ,] { { { 1f, 2f } }, { { 3f, 4f } } };
+            Assert.AreEqual(newestSensor.GetCompressedObservation(), new byte[] { 1, 2, 3, 4 });
+
+            sensor.Update();
+            wrapped.CurrentObservation = new[, ,] { { { 5f, 6f } }, { { 7f, 8f } } };
+            Assert.AreEqual(newestSensor.GetCompressedObservation(), new byte[] { 5, 6, 7, 8 });
+            Assert.AreEqual(sensor.GetCompressedObservation(), new byte[] { 1, 2, 5, 6, 3, 4, 7, 8 });
+        }
+
         [Test]
         public void TestStackingSensorBuiltInSensorType()
         {
@@ -1,4 +1,5 @@
 from typing import Callable, Optional
+from mlagents_envs.exception import UnityCommunicationException
 from mlagents_envs.communicator_objects.unity_output_pb2 import UnityOutputProto
 from mlagents_envs.communicator_objects.unity_input_pb2 import UnityInputProto
 
@@ -16,6 +17,7 @@ class Communicator:
         :int worker_id: Offset from base_port. Used for training multiple environments simultaneously.
         :int base_port: Baseline port number to connect to Unity environment over. worker_id increments over this.
         """
+        self._pending_inputs: Optional[UnityInputProto] = None
 
     def initialize(
         self, inputs: UnityInputProto, poll_callback: Optional[PollCallback] = None
@@ -37,6 +39,31 @@ class Communicator:
         :return: The UnityOutputs generated by the Environment
         """
 
+    def exchange_async(self, inputs: UnityInputProto) -> None:
+        """
+        Sends an input to the Environment without waiting for its output, which exchange_wait
+        returns. This lets several environments step concurrently. By default, the exchange
+        only happens in exchange_wait.
+        :param inputs: The UnityInput that needs to be sent the Environment
+        """
+        self._pending_inputs = inputs
+
+    def exchange_wait(
+        self, poll_callback: Optional[PollCallback] = None
+    ) -> Optional[UnityOutputProto]:
+        """
+        Waits for the output of the input sent by exchange_async.
+        :param poll_callback: Optional callback to be used while polling the connection.
+        :return: The UnityOutputs generated by the Environment
+        """
+        inputs = self._pending_inputs
+        if inputs is None:
+            raise UnityCommunicationException(
+                "exchange_wait was called without a pending exchange_async."
+            )
+        self._pending_inputs = None
+        return self.exchange(inputs, poll_callback)
+
     def close(self):
         """
         Sends a shutdown signal to the unity environment, and closes the connection.
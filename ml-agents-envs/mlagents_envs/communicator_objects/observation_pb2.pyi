@@ -48,8 +48,10 @@ class CompressionTypeProto(builtin___int):
     def items(cls) -> typing___List[typing___Tuple[builtin___str, 'CompressionTypeProto']]: ...
     NONE = typing___cast('CompressionTypeProto', 0)
     PNG = typing___cast('CompressionTypeProto', 1)
+    UINT8 = typing___cast('CompressionTypeProto', 2)
 NONE = typing___cast('CompressionTypeProto', 0)
 PNG = typing___cast('CompressionTypeProto', 1)
+UINT8 = typing___cast('CompressionTypeProto', 2)
 
 class ObservationTypeProto(builtin___int):
     DESCRIPTOR: google___protobuf___descriptor___EnumDescriptor = ...
@@ -94,6 +96,7 @@ class ObservationProto(google___protobuf___message___Message):
     dimension_properties = ... # type: google___protobuf___internal___containers___RepeatedScalarFieldContainer[builtin___int]
     observation_type = ... # type: ObservationTypeProto
     name = ... # type: typing___Text
+    stack_depth = ... # type: builtin___int
 
     @property
     def float_data(self) -> ObservationProto.FloatData: ...
@@ -108,6 +111,7 @@ class ObservationProto(google___protobuf___message___Message):
         dimension_properties : typing___Optional[typing___Iterable[builtin___int]] = None,
         observation_type : typing___Optional[ObservationTypeProto] = None,
         name : typing___Optional[typing___Text] = None,
+        stack_depth : typing___Optional[builtin___int] = None,
         ) -> None: ...
     @classmethod
     def FromString(cls, s: builtin___bytes) -> ObservationProto: ...
@@ -115,8 +119,8 @@ class ObservationProto(google___protobuf___message___Message):
     def CopyFrom(self, other_msg: google___protobuf___message___Message) -> None: ...
     if sys.version_info >= (3,):
         def HasField(self, field_name: typing_extensions___Literal[u"compressed_data",u"float_data",u"observation_data"]) -> builtin___bool: ...
-        def ClearField(self, field_name: typing_extensions___Literal[u"compressed_channel_mapping",u"compressed_data",u"compression_type",u"dimension_properties",u"float_data",u"name",u"observation_data",u"observation_type",u"shape"]) -> None: ...
+        def ClearField(self, field_name: typing_extensions___Literal[u"compressed_channel_mapping",u"compressed_data",u"compression_type",u"dimension_properties",u"float_data",u"name",u"observation_data",u"observation_type",u"shape",u"stack_depth"]) -> None: ...
     else:
         def HasField(self, field_name: typing_extensions___Literal[u"compressed_data",b"compressed_data",u"float_data",b"float_data",u"observation_data",b"observation_data"]) -> builtin___bool: ...
-        def ClearField(self, field_name: typing_extensions___Literal[u"compressed_channel_mapping",b"compressed_channel_mapping",u"compressed_data",b"compressed_data",u"compression_type",b"compression_type",u"dimension_properties",b"dimension_properties",u"float_data",b"float_data",u"name",b"name",u"observation_data",b"observation_data",u"observation_type",b"observation_type",u"shape",b"shape"]) -> None: ...
+        def ClearField(self, field_name: typing_extensions___Literal[u"compressed_channel_mapping",b"compressed_channel_mapping",u"compressed_data",b"compressed_data",u"compression_type",b"compression_type",u"dimension_properties",b"dimension_properties",u"float_data",b"float_data",u"name",b"name",u"observation_data",b"observation_data",u"observation_type",b"observation_type",u"shape",b"shape",u"stack_depth",b"stack_depth"]) -> None: ...
     def WhichOneof(self, oneof_group: typing_extensions___Literal[u"observation_data",b"observation_data"]) -> typing_extensions___Literal["compressed_data","float_data"]: ...
@@ -33,7 +33,11 @@ from mlagents_envs.exception import (
 )
 
 from mlagents_envs.communicator_objects.command_pb2 import STEP, RESET
-from mlagents_envs.rpc_utils import behavior_spec_from_proto, steps_from_proto
+from mlagents_envs.rpc_utils import (
+    behavior_spec_from_proto,
+    steps_from_proto,
+    FrameStacker,
+)
 
 from mlagents_envs.communicator_objects.unity_rl_input_pb2 import UnityRLInputProto
 from mlagents_envs.communicator_objects.unity_rl_output_pb2 import UnityRLOutputProto
@@ -126,6 +130,8 @@ class UnityEnvironment(BaseEnv):
         capabilities.trainingAnalytics = True
         capabilities.variableLengthObservation = True
         capabilities.multiAgentGroups = True
+        capabilities.uint8Observations = True
+        capabilities.unstackedObservations = True
         return capabilities
 
     @staticmethod
@@ -154,6 +160,7 @@ class UnityEnvironment(BaseEnv):
         side_channels: Optional[List[SideChannel]] = None,
         log_folder: Optional[str] = None,
         num_areas: int = 1,
+        keep_uint8_observations: bool = False,
     ):
         """
         Starts a new unity environment and establishes a connection with the environment.
@@ -169,6 +176,8 @@ class UnityEnvironment(BaseEnv):
         :list args: Addition Unity command line arguments
         :list side_channels: Additional side channel for no-rl communication with Unity
         :str log_folder: Optional folder to write the Unity Player log file into.  Requires absolute path.
+        :bool keep_uint8_observations: If True, the visual observations that Unity sends as uint8
+        are returned as uint8 arrays, instead of floats between 0 and 1.
         """
         atexit.register(self._close)
         self._additional_args = additional_args or []
@@ -200,6 +209,7 @@ class UnityEnvironment(BaseEnv):
             side_channels.append(default_training_side_channel)
         self._side_channel_manager = SideChannelManager(side_channels)
         self._log_folder = log_folder
+        self._keep_uint8_observations = keep_uint8_observations
         self.academy_capabilities: UnityRLCapabilitiesProto = None  # type: ignore
 
         # If the environment name is None, a new environment will not be launched
@@ -255,8 +265,10 @@ class UnityEnvironment(BaseEnv):
 
         self._env_state: Dict[str, Tuple[DecisionSteps, TerminalSteps]] = {}
         self._env_specs: Dict[str, BehaviorSpec] = {}
+        self._frame_stackers: Dict[str, FrameStacker] = {}
         self._env_actions: Dict[str, ActionTuple] = {}
         self._is_first_message = True
+        self._waiting_for_step = False
         self._update_behavior_specs(aca_output)
         self.academy_capabilities = aca_params.capabilities
         if default_training_side_channel is not None:
@@ -303,8 +315,13 @@ class UnityEnvironment(BaseEnv):
         for brain_name in self._env_specs.keys():
             if brain_name in output.agentInfos:
                 agent_info_list = output.agentInfos[brain_name].value
+                if brain_name not in self._frame_stackers:
+                    self._frame_stackers[brain_name] = FrameStacker()
                 self._env_state[brain_name] = steps_from_proto(
-                    agent_info_list, self._env_specs[brain_name]
+                    agent_info_list,
+                    self._env_specs[brain_name],
+                    self._keep_uint8_observations,
+                    self._frame_stackers[brain_name],
                 )
             else:
                 self._env_state[brain_name] = (
@@ -332,6 +349,38 @@ class UnityEnvironment(BaseEnv):
     def step(self) -> None:
         if self._is_first_message:
             return self.reset()
+        step_input = self._get_step_input()
+        with hierarchical_timer("communicator.exchange"):
+            outputs = self._communicator.exchange(step_input, self._poll_process)
+        self._process_step_output(outputs)
+
+    @timed
+    def step_async(self) -> None:
+        """
+        Sends the actions to the environment and returns without waiting for the environment to
+        step, so that several environments can step at the same time. step_wait() must be
+        called before any other method of the environment.
+        """
+        if self._is_first_message:
+            self.reset()
+            return
+        step_input = self._get_step_input()
+        self._communicator.exchange_async(step_input)
+        self._waiting_for_step = True
+
+    @timed
+    def step_wait(self) -> None:
+        """
+        Waits for the step started by step_async() to complete.
+        """
+        if not self._waiting_for_step:
+            return
+        self._waiting_for_step = False
+        with hierarchical_timer("communicator.exchange"):
+            outputs = self._communicator.exchange_wait(self._poll_process)
+        self._process_step_output(outputs)
+
+    def _get_step_input(self) -> UnityInputProto:
         if not self._loaded:
             raise UnityEnvironmentException("No Unity environment is loaded.")
         # fill the blanks for missing actions
@@ -343,9 +392,9 @@ class UnityEnvironment(BaseEnv):
                 self._env_actions[group_name] = self._env_specs[
                     group_name
                 ].action_spec.empty_action(n_agents)
-        step_input = self._generate_step_input(self._env_actions)
-        with hierarchical_timer("communicator.exchange"):
-            outputs = self._communicator.exchange(step_input, self._poll_process)
+        return self._generate_step_input(self._env_actions)
+
+    def _process_step_output(self, outputs: Optional[UnityOutputProto]) -> None:
         if outputs is None:
             raise UnityCommunicatorStoppedException("Communicator has exited.")
         self._update_behavior_specs(outputs)
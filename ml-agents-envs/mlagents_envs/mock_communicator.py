@@ -66,7 +66,7 @@ class MockCommunicator(Communicator):
     def _get_agent_infos(self):
         dict_agent_info = {}
         list_agent_info = []
-        vector_obs = [1, 2, 3]
+        vector_obs = list(range(1, self.vec_obs_size + 1))
 
         observations = [
             ObservationProto(
@@ -135,10 +135,19 @@ class RpcCommunicator(Communicator):
     def exchange(
         self, inputs: UnityInputProto, poll_callback: Optional[PollCallback] = None
     ) -> Optional[UnityOutputProto]:
+        self.exchange_async(inputs)
+        return self.exchange_wait(poll_callback)
+
+    def exchange_async(self, inputs: UnityInputProto) -> None:
         message = UnityMessageProto()
         message.header.status = 200
         message.unity_input.CopyFrom(inputs)
+        # The servicer thread answers the pending Exchange call of Unity with this message.
         self.unity_to_external.parent_conn.send(message)
+
+    def exchange_wait(
+        self, poll_callback: Optional[PollCallback] = None
+    ) -> Optional[UnityOutputProto]:
         self.poll_for_timeout(poll_callback)
         output = self.unity_to_external.parent_conn.recv()
         if output.header.status != 200:
@@ -13,11 +13,12 @@ from mlagents_envs.communicator_objects.agent_info_pb2 import AgentInfoProto
 from mlagents_envs.communicator_objects.observation_pb2 import (
     ObservationProto,
     NONE as COMPRESSION_TYPE_NONE,
+    UINT8 as COMPRESSION_TYPE_UINT8,
 )
 from mlagents_envs.communicator_objects.brain_parameters_pb2 import BrainParametersProto
 import numpy as np
 import io
-from typing import cast, List, Tuple, Collection, Optional, Iterable
+from typing import cast, Dict, List, Tuple, Collection, Optional, Iterable
 from PIL import Image
 
 
@@ -210,35 +211,109 @@ def _check_observations_match_spec(
             )
 
 
+def _frame_shape(obs: ObservationProto) -> List[int]:
+    """
+    The shape of the data of an observation proto, which only holds the newest frame of
+    the stacked shape when its stack_depth is more than 1.
+    """
+    shape = list(obs.shape)
+    if obs.stack_depth > 1:
+        shape[-1] //= obs.stack_depth
+    return shape
+
+
+class FrameStacker:
+    """
+    Rebuilds the stacked observations of the StackingSensors that only send their
+    newest frame, from the previous frames of each agent. The frames are stacked along
+    the last dimension, oldest first, as in the StackingSensor, and the stacks of a new
+    agent start with zeros as the StackingSensor does after a reset.
+    """
+
+    def __init__(self) -> None:
+        # agent_id -> observation index -> stacked observation
+        self._stacks: Dict[int, Dict[int, np.ndarray]] = {}
+
+    def push(
+        self,
+        agent_id: int,
+        obs_index: int,
+        frame: np.ndarray,
+        stacked_shape: Tuple[int, ...],
+    ) -> np.ndarray:
+        """
+        Adds the newest frame of an observation of an agent to its stack.
+        :param frame: The newest frame, which has the stacked shape except for the
+            last dimension.
+        :return: The stacked observation. It is only valid until the next push for the
+            same agent and observation.
+        """
+        agent_stacks = self._stacks.setdefault(agent_id, {})
+        stack = agent_stacks.get(obs_index)
+        if stack is None or stack.dtype != frame.dtype:
+            stack = np.zeros(stacked_shape, dtype=frame.dtype)
+            agent_stacks[obs_index] = stack
+        frame_size = frame.shape[-1]
+        stack[..., :-frame_size] = stack[..., frame_size:]
+        stack[..., -frame_size:] = frame
+        return stack
+
+    def remove_agents(self, agent_ids: Iterable[int]) -> None:
+        """
+        Drops the stacks of the agents whose episode is done.
+        """
+        for agent_id in agent_ids:
+            self._stacks.pop(agent_id, None)
+
+    def clear(self) -> None:
+        self._stacks.clear()
+
+
 @timed
 def _observation_to_np_array(
-    obs: ObservationProto, expected_shape: Optional[Iterable[int]] = None
+    obs: ObservationProto,
+    expected_shape: Optional[Iterable[int]] = None,
+    keep_uint8: bool = False,
 ) -> np.ndarray:
     """
     Converts observation proto into numpy array of the appropriate size.
     :param obs: observation proto to be converted
     :param expected_shape: optional shape information, used for sanity checks.
-    :return: processed numpy array of observation from environment
+    :param keep_uint8: If True, uint8 observations are returned as uint8 arrays instead of
+        being scaled to floats between 0 and 1.
+    :return: processed numpy array of observation from environment. If the proto only
+        holds the newest frame of a stacked observation, this is the newest frame.
     """
     if expected_shape is not None:
         if list(obs.shape) != list(expected_shape):
             raise UnityObservationException(
                 f"Observation did not have the expected shape - got {obs.shape} but expected {expected_shape}"
             )
-    expected_channels = obs.shape[2]
+    shape = _frame_shape(obs)
+    expected_channels = shape[2]
     if obs.compression_type == COMPRESSION_TYPE_NONE:
         img = np.array(obs.float_data.data, dtype=np.float32)
-        img = np.reshape(img, obs.shape)
+        img = np.reshape(img, shape)
         return img
+    elif obs.compression_type == COMPRESSION_TYPE_UINT8:
+        img = np.frombuffer(obs.compressed_data, dtype=np.uint8)
+        if img.size != np.prod(shape):
+            raise UnityObservationException(
+                f"Uint8 observation had {img.size} values but expected {shape}"
+            )
+        img = img.reshape(shape)
+        if keep_uint8:
+            return img
+        return img.astype(np.float32) / 255.0
     else:
         img = process_pixels(
             obs.compressed_data, expected_channels, list(obs.compressed_channel_mapping)
         )
         # Compare decompressed image size to observation shape and make sure they match
-        if list(obs.shape) != list(img.shape):
+        if shape != list(img.shape):
             raise UnityObservationException(
                 f"Decompressed observation did not have the expected shape - "
-                f"decompressed had {img.shape} but expected {obs.shape}"
+                f"decompressed had {img.shape} but expected {shape}"
             )
         return img
 
@@ -248,6 +323,7 @@ def _process_maybe_compressed_observation(
     obs_index: int,
     observation_spec: ObservationSpec,
     agent_info_list: Collection[AgentInfoProto],
+    keep_uint8: bool = False,
 ) -> np.ndarray:
     shape = cast(Tuple[int, int, int], observation_spec.shape)
     if len(agent_info_list) == 0:
@@ -255,7 +331,9 @@ def _process_maybe_compressed_observation(
 
     try:
         batched_visual = [
-            _observation_to_np_array(agent_obs.observations[obs_index], shape)
+            _observation_to_np_array(
+                agent_obs.observations[obs_index], shape, keep_uint8
+            )
             for agent_obs in agent_info_list
         ]
     except ValueError:
@@ -263,6 +341,8 @@ def _process_maybe_compressed_observation(
         _check_observations_match_spec(obs_index, observation_spec, agent_info_list)
         # If that didn't raise anything, raise the original error
         raise
+    if keep_uint8 and all(obs.dtype == np.uint8 for obs in batched_visual):
+        return np.array(batched_visual, dtype=np.uint8)
     return np.array(batched_visual, dtype=np.float32)
 
 
@@ -311,113 +391,204 @@ def _process_rank_one_or_two_observation(
     return np_obs
 
 
-@timed
-def steps_from_proto(
-    agent_info_list: Collection[AgentInfoProto], behavior_spec: BehaviorSpec
-) -> Tuple[DecisionSteps, TerminalSteps]:
-    decision_agent_info_list = [
-        agent_info for agent_info in agent_info_list if not agent_info.done
-    ]
-    terminal_agent_info_list = [
-        agent_info for agent_info in agent_info_list if agent_info.done
-    ]
-    decision_obs_list: List[np.ndarray] = []
-    terminal_obs_list: List[np.ndarray] = []
-    for obs_index, observation_spec in enumerate(behavior_spec.observation_specs):
-        is_visual = len(observation_spec.shape) == 3
-        if is_visual:
-            decision_obs_list.append(
-                _process_maybe_compressed_observation(
-                    obs_index, observation_spec, decision_agent_info_list
+class _AgentInfoArrays:
+    """
+    The arrays decoded from a list of AgentInfoProtos, which are allocated once from the
+    BehaviorSpec and the number of agents and then filled in a single pass over the agents.
+    """
+
+    def __init__(
+        self,
+        agent_info_list: Collection[AgentInfoProto],
+        behavior_spec: BehaviorSpec,
+        keep_uint8_observations: bool,
+        frame_stacker: Optional[FrameStacker],
+    ):
+        n_agents = len(agent_info_list)
+        observation_specs = behavior_spec.observation_specs
+        # All the vector (rank one or two) observations share one block, and the rewards
+        # and group rewards another, so that each block is checked for NaNs at once.
+        self.vector_slices: List[Tuple[int, int, int]] = []
+        vector_size = 0
+        for obs_index, observation_spec in enumerate(observation_specs):
+            if len(observation_spec.shape) != 3:
+                size = int(np.prod(observation_spec.shape))
+                self.vector_slices.append((obs_index, vector_size, vector_size + size))
+                vector_size += size
+        self.vector_block = np.zeros((n_agents, vector_size), dtype=np.float32)
+        self.visual_obs: List[Tuple[int, np.ndarray]] = []
+        for obs_index, observation_spec in enumerate(observation_specs):
+            if len(observation_spec.shape) == 3:
+                uint8 = keep_uint8_observations and all(
+                    agent_info.observations[obs_index].compression_type
+                    == COMPRESSION_TYPE_UINT8
+                    for agent_info in agent_info_list
                 )
-            )
-            terminal_obs_list.append(
-                _process_maybe_compressed_observation(
-                    obs_index, observation_spec, terminal_agent_info_list
+                self.visual_obs.append(
+                    (
+                        obs_index,
+                        np.zeros(
+                            (n_agents,) + observation_spec.shape,
+                            dtype=np.uint8 if uint8 else np.float32,
+                        ),
+                    )
                 )
-            )
-        else:
-            decision_obs_list.append(
-                _process_rank_one_or_two_observation(
-                    obs_index, observation_spec, decision_agent_info_list
+        self.rewards = np.zeros((2, n_agents), dtype=np.float32)
+        self.agent_id = np.zeros(n_agents, dtype=np.int32)
+        self.group_id = np.zeros(n_agents, dtype=np.int32)
+        self.max_step = np.zeros(n_agents, dtype=np.bool)
+        self._frame_stacker = frame_stacker
+
+        try:
+            self._fill(agent_info_list, observation_specs)
+        except ValueError:
+            # Try to get a more useful error message
+            for obs_index, observation_spec in enumerate(observation_specs):
+                _check_observations_match_spec(
+                    obs_index, observation_spec, agent_info_list
                 )
-            )
-            terminal_obs_list.append(
-                _process_rank_one_or_two_observation(
-                    obs_index, observation_spec, terminal_agent_info_list
+            # If that didn't raise anything, raise the original error
+            raise
+        _raise_on_nan_and_inf(self.vector_block, "observations")
+        if self.rewards.size > 0 and not np.isfinite(np.mean(self.rewards)):
+            _raise_on_nan_and_inf(self.rewards[0], "rewards")
+            _raise_on_nan_and_inf(self.rewards[1], "group_rewards")
+
+    def _fill(
+        self,
+        agent_info_list: Collection[AgentInfoProto],
+        observation_specs: List[ObservationSpec],
+    ) -> None:
+        vector_block = self.vector_block
+        rewards = self.rewards
+        for i, agent_info in enumerate(agent_info_list):
+            rewards[0, i] = agent_info.reward
+            rewards[1, i] = agent_info.group_reward
+            self.agent_id[i] = agent_info.id
+            self.group_id[i] = agent_info.group_id
+            self.max_step[i] = agent_info.max_step_reached
+            observations = agent_info.observations
+            for obs_index, start, end in self.vector_slices:
+                obs = observations[obs_index]
+                if obs.stack_depth > 1:
+                    frame = np.array(obs.float_data.data, dtype=np.float32)
+                    vector_block[i, start:end] = self._stack_frame(
+                        agent_info.id,
+                        obs_index,
+                        frame.reshape(_frame_shape(obs)),
+                        observation_specs[obs_index].shape,
+                    ).ravel()
+                else:
+                    vector_block[i, start:end] = obs.float_data.data
+            for obs_index, visual_obs in self.visual_obs:
+                obs = observations[obs_index]
+                frame = _observation_to_np_array(
+                    obs,
+                    observation_specs[obs_index].shape,
+                    keep_uint8=visual_obs.dtype == np.uint8,
                 )
+                if obs.stack_depth > 1:
+                    frame = self._stack_frame(
+                        agent_info.id,
+                        obs_index,
+                        frame,
+                        observation_specs[obs_index].shape,
+                    )
+                visual_obs[i] = frame
+
+    def _stack_frame(
+        self,
+        agent_id: int,
+        obs_index: int,
+        frame: np.ndarray,
+        stacked_shape: Tuple[int, ...],
+    ) -> np.ndarray:
+        if self._frame_stacker is None:
+            raise UnityObservationException(
+                f"Observation at index={obs_index} for agent with id={agent_id} only "
+                "holds its newest frame, but there is no FrameStacker to stack it."
             )
-    decision_rewards = np.array(
-        [agent_info.reward for agent_info in decision_agent_info_list], dtype=np.float32
-    )
-    terminal_rewards = np.array(
-        [agent_info.reward for agent_info in terminal_agent_info_list], dtype=np.float32
-    )
+        return self._frame_stacker.push(agent_id, obs_index, frame, stacked_shape)
+
+    def observations(
+        self, observation_specs: List[ObservationSpec]
+    ) -> List[np.ndarray]:
+        obs_list: List[np.ndarray] = [None] * len(observation_specs)  # type: ignore
+        n_agents = self.vector_block.shape[0]
+        for obs_index, start, end in self.vector_slices:
+            obs_list[obs_index] = self.vector_block[:, start:end].reshape(
+                (n_agents,) + observation_specs[obs_index].shape
+            )
+        for obs_index, visual_obs in self.visual_obs:
+            obs_list[obs_index] = visual_obs
+        return obs_list
 
-    decision_group_rewards = np.array(
-        [agent_info.group_reward for agent_info in decision_agent_info_list],
-        dtype=np.float32,
-    )
-    terminal_group_rewards = np.array(
-        [agent_info.group_reward for agent_info in terminal_agent_info_list],
-        dtype=np.float32,
-    )
 
-    _raise_on_nan_and_inf(decision_rewards, "rewards")
-    _raise_on_nan_and_inf(terminal_rewards, "rewards")
-    _raise_on_nan_and_inf(decision_group_rewards, "group_rewards")
-    _raise_on_nan_and_inf(terminal_group_rewards, "group_rewards")
+def _action_mask_from_proto(
+    decision_agent_info_list: Collection[AgentInfoProto], behavior_spec: BehaviorSpec
+) -> Optional[List[np.ndarray]]:
+    if (
+        behavior_spec.action_spec.discrete_size == 0
+        or len(decision_agent_info_list) == 0
+    ):
+        return None
+    a_size = int(np.sum(behavior_spec.action_spec.discrete_branches))
+    # Agents that didn't send a mask of the right size aren't masked.
+    action_mask = np.zeros((len(decision_agent_info_list), a_size), dtype=np.bool)
+    for agent_index, agent_info in enumerate(decision_agent_info_list):
+        if len(agent_info.action_mask) == a_size:
+            action_mask[agent_index] = agent_info.action_mask
+    indices = _generate_split_indices(behavior_spec.action_spec.discrete_branches)
+    return np.split(action_mask, indices, axis=1)
 
-    decision_group_id = [agent_info.group_id for agent_info in decision_agent_info_list]
-    terminal_group_id = [agent_info.group_id for agent_info in terminal_agent_info_list]
 
-    max_step = np.array(
-        [agent_info.max_step_reached for agent_info in terminal_agent_info_list],
-        dtype=np.bool,
-    )
-    decision_agent_id = np.array(
-        [agent_info.id for agent_info in decision_agent_info_list], dtype=np.int32
+@timed
+def steps_from_proto(
+    agent_info_list: Collection[AgentInfoProto],
+    behavior_spec: BehaviorSpec,
+    keep_uint8_observations: bool = False,
+    frame_stacker: Optional[FrameStacker] = None,
+) -> Tuple[DecisionSteps, TerminalSteps]:
+    """
+    Converts the AgentInfoProtos of a behavior into DecisionSteps and TerminalSteps.
+    :param keep_uint8_observations: If True, uint8 observations are returned as uint8
+        arrays instead of being scaled to floats between 0 and 1.
+    :param frame_stacker: Stacks the observations that only hold their newest frame.
+        It must be the same for all the steps of the behavior.
+    """
+    decision_agent_info_list = [
+        agent_info for agent_info in agent_info_list if not agent_info.done
+    ]
+    terminal_agent_info_list = [
+        agent_info for agent_info in agent_info_list if agent_info.done
+    ]
+    observation_specs = behavior_spec.observation_specs
+    # An agent can be done and start its next episode in the same message, so the
+    # last frames of its episode are stacked before its new stacks are started.
+    terminal = _AgentInfoArrays(
+        terminal_agent_info_list, behavior_spec, keep_uint8_observations, frame_stacker
     )
-    terminal_agent_id = np.array(
-        [agent_info.id for agent_info in terminal_agent_info_list], dtype=np.int32
+    if frame_stacker is not None:
+        frame_stacker.remove_agents(terminal.agent_id)
+    decision = _AgentInfoArrays(
+        decision_agent_info_list, behavior_spec, keep_uint8_observations, frame_stacker
     )
-    action_mask = None
-    if behavior_spec.action_spec.discrete_size > 0:
-        if any(
-            [agent_info.action_mask is not None]
-            for agent_info in decision_agent_info_list
-        ):
-            n_agents = len(decision_agent_info_list)
-            a_size = np.sum(behavior_spec.action_spec.discrete_branches)
-            mask_matrix = np.ones((n_agents, a_size), dtype=np.bool)
-            for agent_index, agent_info in enumerate(decision_agent_info_list):
-                if agent_info.action_mask is not None:
-                    if len(agent_info.action_mask) == a_size:
-                        mask_matrix[agent_index, :] = [
-                            False if agent_info.action_mask[k] else True
-                            for k in range(a_size)
-                        ]
-            action_mask = (1 - mask_matrix).astype(np.bool)
-            indices = _generate_split_indices(
-                behavior_spec.action_spec.discrete_branches
-            )
-            action_mask = np.split(action_mask, indices, axis=1)
     return (
         DecisionSteps(
-            decision_obs_list,
-            decision_rewards,
-            decision_agent_id,
-            action_mask,
-            decision_group_id,
-            decision_group_rewards,
+            decision.observations(observation_specs),
+            decision.rewards[0],
+            decision.agent_id,
+            _action_mask_from_proto(decision_agent_info_list, behavior_spec),
+            decision.group_id,
+            decision.rewards[1],
         ),
         TerminalSteps(
-            terminal_obs_list,
-            terminal_rewards,
-            max_step,
-            terminal_agent_id,
-            terminal_group_id,
-            terminal_group_rewards,
+            terminal.observations(observation_specs),
+            terminal.rewards[0],
+            terminal.max_step,
+            terminal.agent_id,
+            terminal.group_id,
+            terminal.rewards[1],
         ),
     )
 
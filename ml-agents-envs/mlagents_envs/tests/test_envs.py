@@ -3,7 +3,11 @@ import pytest
 
 from mlagents_envs.environment import UnityEnvironment
 from mlagents_envs.base_env import DecisionSteps, TerminalSteps, ActionTuple
-from mlagents_envs.exception import UnityEnvironmentException, UnityActionException
+from mlagents_envs.exception import (
+    UnityEnvironmentException,
+    UnityActionException,
+    UnityCommunicationException,
+)
 from mlagents_envs.mock_communicator import MockCommunicator
 
 
@@ -117,6 +121,41 @@ def test_step(mock_communicator, mock_launcher):
     assert 2 in terminal_steps
 
 
+@mock.patch("mlagents_envs.env_utils.launch_executable")
+@mock.patch("mlagents_envs.environment.UnityEnvironment._get_communicator")
+def test_step_async(mock_communicator, mock_launcher):
+    envs = []
+    for _ in range(2):
+        mock_communicator.return_value = MockCommunicator(
+            discrete_action=True, visual_inputs=0
+        )
+        envs.append(UnityEnvironment(" "))
+    # The first step resets the environments.
+    for env in envs:
+        env.step_async()
+    for env in envs:
+        env.step_wait()
+    for env in envs:
+        decision_steps, _ = env.get_steps("RealFakeBrain")
+        spec = env.behavior_specs["RealFakeBrain"]
+        env.set_actions(
+            "RealFakeBrain", spec.action_spec.empty_action(len(decision_steps))
+        )
+        env.step_async()
+    for env in envs:
+        env.step_wait()
+        decision_steps, terminal_steps = env.get_steps("RealFakeBrain")
+        assert 0 in decision_steps
+        assert 2 in terminal_steps
+        env.close()
+
+
+def test_exchange_wait_without_exchange_async():
+    comm = MockCommunicator(discrete_action=True, visual_inputs=0)
+    with pytest.raises(UnityCommunicationException):
+        comm.exchange_wait()
+
+
 @mock.patch("mlagents_envs.env_utils.launch_executable")
 @mock.patch("mlagents_envs.environment.UnityEnvironment._get_communicator")
 def test_close(mock_communicator, mock_launcher):
@@ -8,6 +8,7 @@ from mlagents_envs.communicator_objects.observation_pb2 import (
     ObservationProto,
     NONE,
     PNG,
+    UINT8,
 )
 from mlagents_envs.communicator_objects.brain_parameters_pb2 import BrainParametersProto
 from mlagents_envs.communicator_objects.agent_info_action_pair_pb2 import (
@@ -27,6 +28,7 @@ from mlagents_envs.rpc_utils import (
     _process_maybe_compressed_observation,
     _process_rank_one_or_two_observation,
     steps_from_proto,
+    FrameStacker,
 )
 from PIL import Image
 from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
@@ -119,6 +121,14 @@ def generate_compressed_proto_obs_with_mapping(
     return obs_proto
 
 
+def generate_uint8_proto_obs(in_array: np.ndarray) -> ObservationProto:
+    obs_proto = ObservationProto()
+    obs_proto.compressed_data = in_array.astype(np.uint8).tobytes()
+    obs_proto.compression_type = UINT8
+    obs_proto.shape.extend(in_array.shape)
+    return obs_proto
+
+
 def generate_uncompressed_proto_obs(in_array: np.ndarray) -> ObservationProto:
     obs_proto = ObservationProto()
     obs_proto.float_data.data.extend(in_array.flatten().tolist())
@@ -340,6 +350,33 @@ def test_process_visual_observation_padded_channels():
     assert np.allclose(arr[0, :, :, :], expected_out_array_1, atol=0.01)
 
 
+def test_process_visual_observation_uint8():
+    shape = (16, 8, 4)
+    in_array = np.random.randint(0, 256, size=(2,) + shape)
+    ap_list = []
+    for i in range(2):
+        ap = AgentInfoProto()
+        ap.observations.extend([generate_uint8_proto_obs(in_array[i])])
+        ap_list.append(ap)
+    obs_spec = create_observation_specs_with_shapes([shape])[0]
+
+    arr = _process_maybe_compressed_observation(0, obs_spec, ap_list)
+    assert arr.dtype == np.float32
+    assert np.allclose(arr, in_array / 255.0)
+
+    arr = _process_maybe_compressed_observation(0, obs_spec, ap_list, keep_uint8=True)
+    assert arr.dtype == np.uint8
+    np.testing.assert_array_equal(arr, in_array)
+
+    # The number of bytes must match the shape.
+    bad_obs = generate_uint8_proto_obs(in_array[0])
+    bad_obs.compressed_data = bad_obs.compressed_data[:-1]
+    ap = AgentInfoProto()
+    ap.observations.extend([bad_obs])
+    with pytest.raises(UnityObservationException):
+        _process_maybe_compressed_observation(0, obs_spec, [ap])
+
+
 def test_process_visual_observation_bad_shape():
     in_array_1 = np.random.rand(128, 64, 3)
     proto_obs_1 = generate_compressed_proto_obs(in_array_1)
@@ -501,3 +538,138 @@ def test_batched_step_result_from_proto_raises_on_nan():
     ap_list = generate_list_agent_proto(n_agents, shapes, nan_observations=True)
     with pytest.raises(RuntimeError):
         steps_from_proto(ap_list, behavior_spec)
+
+
+def test_batched_step_result_from_proto_matches_per_observation():
+    n_agents = 10
+    shapes = [(3,), (2, 4), (4, 5, 3)]
+    spec = BehaviorSpec(
+        create_observation_specs_with_shapes(shapes), ActionSpec.create_continuous(3)
+    )
+    ap_list = generate_list_agent_proto(n_agents, shapes)
+    rng = np.random.RandomState(0)
+    for ap in ap_list:
+        for obs_proto in ap.observations:
+            for i in range(len(obs_proto.float_data.data)):
+                obs_proto.float_data.data[i] = rng.rand()
+        ap.group_reward = rng.rand()
+    decision_steps, terminal_steps = steps_from_proto(ap_list, spec)
+    decision_list = [ap for ap in ap_list if not ap.done]
+    terminal_list = [ap for ap in ap_list if ap.done]
+    for steps, agent_list in (
+        (decision_steps, decision_list),
+        (terminal_steps, terminal_list),
+    ):
+        for obs_index, obs_spec in enumerate(spec.observation_specs):
+            if len(obs_spec.shape) == 3:
+                expected = _process_maybe_compressed_observation(
+                    obs_index, obs_spec, agent_list
+                )
+            else:
+                expected = _process_rank_one_or_two_observation(
+                    obs_index, obs_spec, agent_list
+                )
+            assert steps.obs[obs_index].dtype == np.float32
+            np.testing.assert_array_equal(steps.obs[obs_index], expected)
+        np.testing.assert_array_equal(
+            steps.group_reward,
+            np.array([ap.group_reward for ap in agent_list], dtype=np.float32),
+        )
+        assert list(steps.group_id) == [ap.group_id for ap in agent_list]
+
+
+def test_batched_step_result_from_proto_raises_on_nan_group_rewards():
+    n_agents = 10
+    shapes = [(3,), (4,)]
+    behavior_spec = BehaviorSpec(
+        create_observation_specs_with_shapes(shapes), ActionSpec.create_continuous(3)
+    )
+    ap_list = generate_list_agent_proto(n_agents, shapes)
+    ap_list[3].group_reward = float("nan")
+    with pytest.raises(RuntimeError, match="group_rewards"):
+        steps_from_proto(ap_list, behavior_spec)
+
+
+def generate_unstacked_agent_proto(
+    agent_id: int, done: bool, frames: List[np.ndarray], stack_depths: List[int]
+) -> AgentInfoProto:
+    ap = AgentInfoProto()
+    ap.id = agent_id
+    ap.done = done
+    vector_frame, uint8_frame, png_frame = frames
+    obs_protos = [
+        generate_uncompressed_proto_obs(vector_frame),
+        generate_uint8_proto_obs(uint8_frame),
+        generate_compressed_proto_obs(png_frame),
+    ]
+    for obs_proto, stack_depth in zip(obs_protos, stack_depths):
+        # Only the newest frame is sent, with the stacked shape
+        obs_proto.shape[-1] *= stack_depth
+        obs_proto.stack_depth = stack_depth
+    ap.observations.extend(obs_protos)
+    return ap
+
+
+def test_steps_from_proto_stacks_newest_frames():
+    stack_depths = [3, 2, 2]
+    frame_shapes = [(2,), (2, 1, 4), (2, 2, 3)]
+    stacked_shapes = [
+        shape[:-1] + (shape[-1] * depth,)
+        for shape, depth in zip(frame_shapes, stack_depths)
+    ]
+    spec = BehaviorSpec(
+        create_observation_specs_with_shapes(stacked_shapes),
+        ActionSpec.create_continuous(3),
+    )
+    rng = np.random.RandomState(0)
+    frame_stacker = FrameStacker()
+    # The frames sent in each episode of each agent, to stack them the way the
+    # StackingSensor does
+    sent_frames = {}
+    episode_counts = {}
+    # Agent 0 is done in the second step, whose message also holds the first decision
+    # of its next episode.
+    steps = [
+        [(0, False), (1, False)],
+        [(0, True), (0, False), (1, False)],
+        [(0, False), (1, True)],
+    ]
+    for step in steps:
+        ap_list = []
+        episodes = []
+        for agent_id, done in step:
+            episode = (agent_id, episode_counts.get(agent_id, 0))
+            if done:
+                episode_counts[agent_id] = episode[1] + 1
+            frames = [
+                rng.rand(*frame_shapes[0]).astype(np.float32),
+                rng.randint(0, 256, size=frame_shapes[1]).astype(np.uint8),
+                rng.rand(*frame_shapes[2]),
+            ]
+            sent_frames.setdefault(episode, []).append(frames)
+            episodes.append(episode)
+            ap_list.append(
+                generate_unstacked_agent_proto(agent_id, done, frames, stack_depths)
+            )
+        decision_steps, terminal_steps = steps_from_proto(
+            ap_list, spec, keep_uint8_observations=True, frame_stacker=frame_stacker
+        )
+        for (agent_id, done), episode in zip(step, episodes):
+            agent_step = terminal_steps[agent_id] if done else decision_steps[agent_id]
+            for obs_index, stack_depth in enumerate(stack_depths):
+                frames = [f[obs_index] for f in sent_frames[episode][-stack_depth:]]
+                padding = [np.zeros_like(frames[0])] * (stack_depth - len(frames))
+                expected = np.concatenate(padding + frames, axis=-1)
+                assert agent_step.obs[obs_index].shape == stacked_shapes[obs_index]
+                if obs_index == 1:
+                    assert agent_step.obs[obs_index].dtype == np.uint8
+                np.testing.assert_allclose(
+                    agent_step.obs[obs_index], expected, atol=0.01
+                )
+
+    # The stacks of the agents that are done are dropped
+    assert set(frame_stacker._stacks.keys()) == {0}
+
+    # The newest frames can't be used without a FrameStacker
+    with pytest.raises(UnityObservationException):
+        steps_from_proto(ap_list, spec)
@@ -90,3 +90,91 @@ def test_timers() -> None:
         }
 
         assert timer_tree == expected_tree
+
+
+def test_throughput_and_queue_depth_gauges() -> None:
+    test_timer = timers.TimerStack()
+    with mock.patch("mlagents_envs.timers.time.perf_counter") as mock_perf_counter:
+        # The gauge is only updated once a full window has passed.
+        mock_perf_counter.side_effect = [10.0, 10.5, 12.0]
+        timers.record_throughput("stage", 10, test_timer)
+        timers.record_throughput("stage", 10, test_timer)
+        assert "stage.items_per_second" not in test_timer.gauges
+        timers.record_throughput("stage", 20, test_timer)
+    assert test_timer.gauges["stage.items_per_second"].value == 20.0
+
+    timers.set_queue_depth("stage", 3, test_timer)
+    timers.set_queue_depth("stage", 1, test_timer)
+    queue_depth = test_timer.gauges["stage.queue_depth"]
+    assert queue_depth.value == 1
+    assert queue_depth.max_value == 3
+
+
+def test_timer_sampling() -> None:
+    test_timer = timers.TimerStack()
+    test_timer.sample_rate = 0.5
+    # Records the sample rate in the metadata.
+    test_timer.reset()
+    with mock.patch("mlagents_envs.timers.random.random") as mock_random:
+        # Every other call is sampled.
+        mock_random.side_effect = [0.9, 0.1] * 50
+        for _ in range(timers.MIN_SAMPLED_CALLS + 100):
+            with timers.hierarchical_timer("step", test_timer):
+                with timers.hierarchical_timer("inner", test_timer):
+                    pass
+
+    step = test_timer.root.children["step"]
+    # Each sampled call counts for 1 / sample_rate calls.
+    assert step.count == timers.MIN_SAMPLED_CALLS + 100
+    # The blocks in a sampled block are timed with it.
+    assert step.children["inner"].count == step.count
+    assert len(test_timer.stack) == 1
+    assert test_timer.get_timing_tree()["metadata"]["sample_rate"] == "0.5"
+
+
+def test_timer_sampling_self_time() -> None:
+    test_timer = timers.TimerStack()
+    test_timer.sample_rate = 0.5
+    clock = [0.0]
+    num_steps = timers.MIN_SAMPLED_CALLS + 100
+    with mock.patch("mlagents_envs.timers.random.random") as mock_random, mock.patch(
+        "mlagents_envs.timers.time.perf_counter", side_effect=lambda: clock[0]
+    ):
+        mock_random.side_effect = [0.9, 0.1] * 50
+        with timers.hierarchical_timer("epoch", test_timer):
+            for _ in range(num_steps):
+                with timers.hierarchical_timer("step", test_timer):
+                    # Each step takes a second, and the epoch nothing else.
+                    clock[0] += 1.0
+
+    epoch_tree = test_timer.get_timing_tree()["children"]["epoch"]
+    assert epoch_tree["total"] == num_steps
+    assert epoch_tree["children"]["step"]["total"] == num_steps
+    assert epoch_tree["children"]["step"]["count"] == num_steps
+    # The calls of step that weren't timed don't count as time spent in epoch itself.
+    assert epoch_tree["self"] == 0.0
+    assert "root;epoch " not in "\n".join(timers.get_folded_stacks(test_timer))
+    events = timers.get_chrome_trace(test_timer)["traceEvents"]
+    durations = {event["name"]: event["dur"] for event in events}
+    assert durations["step"] == durations["epoch"]
+
+
+def test_trace_exports() -> None:
+    test_timer = timers.TimerStack()
+    with timers.hierarchical_timer("top_level", test_timer) as top_level:
+        with timers.hierarchical_timer("a", test_timer) as a:
+            pass
+        with timers.hierarchical_timer("b", test_timer) as b:
+            pass
+    top_level.total, a.total, b.total = 3.0, 1.0, 0.5
+
+    events = timers.get_chrome_trace(test_timer)["traceEvents"]
+    starts = {event["name"]: (event["ts"], event["dur"]) for event in events}
+    assert starts["top_level"] == (0.0, 3e6)
+    assert starts["a"] == (0.0, 1e6)
+    assert starts["b"] == (1e6, 0.5e6)
+
+    folded = timers.get_folded_stacks(test_timer)
+    assert "root;top_level 1500000" in folded
+    assert "root;top_level;a 1000000" in folded
+    assert "root;top_level;b 500000" in folded
@@ -28,16 +28,28 @@ The decorator and contextmanager are equivalent; the context manager may be more
 over the timer name, or are splitting up multiple sections of a large function.
 """
 
+import json
 import math
+import random
 import sys
 import time
 import threading
 
 from contextlib import contextmanager
-from typing import Any, Callable, Dict, Generator, Optional, TypeVar
+from typing import Any, Callable, Dict, Generator, List, Optional, Tuple, TypeVar
 
 TIMER_FORMAT_VERSION = "0.1.0"
 
+# How often the throughput gauges are updated.
+THROUGHPUT_WINDOW_SECONDS = 1.0
+
+# When sampling, the number of calls of each block that are timed before it is sampled, so that
+# rare blocks (like saving a model) are always timed.
+MIN_SAMPLED_CALLS = 10
+
+# The sample rate of new TimerStacks, see set_sample_rate.
+_default_sample_rate = 1.0
+
 
 class TimerNode:
     """
@@ -50,7 +62,8 @@ class TimerNode:
         # Note that since dictionary keys are the node names, we don't explicitly store the name on the TimerNode.
         self.children: Dict[str, TimerNode] = {}
         self.total: float = 0.0
-        self.count: int = 0
+        # The number of calls. It is an estimate, and can be fractional, once the node is sampled.
+        self.count: float = 0
         self.is_parallel = False
 
     def get_child(self, name: str) -> "TimerNode":
@@ -63,12 +76,14 @@ class TimerNode:
             self.children[name] = child
         return child
 
-    def add_time(self, elapsed: float) -> None:
+    def add_time(self, elapsed: float, weight: float = 1) -> None:
         """
         Accumulate the time spent in the node (and increment the count).
+        :param weight: How many calls the timed call stands for, 1 / sample rate when it was
+            sampled.
         """
-        self.total += elapsed
-        self.count += 1
+        self.total += elapsed * weight
+        self.count += weight
 
     def merge(
         self, other: "TimerNode", root_name: str = None, is_parallel: bool = True
@@ -139,7 +154,17 @@ class TimerStack:
     sure that pushes and pops are already matched.
     """
 
-    __slots__ = ["root", "stack", "start_time", "gauges", "metadata"]
+    __slots__ = [
+        "root",
+        "stack",
+        "start_time",
+        "gauges",
+        "metadata",
+        "throughput",
+        "sample_rate",
+        "_sampled_depth",
+        "_skip_depth",
+    ]
 
     def __init__(self):
         self.root = TimerNode()
@@ -147,6 +172,14 @@ class TimerStack:
         self.start_time = time.perf_counter()
         self.gauges: Dict[str, GaugeNode] = {}
         self.metadata: Dict[str, str] = {}
+        # Start time and item count of the current throughput window, per stage.
+        self.throughput: Dict[str, Tuple[float, int]] = {}
+        # The fraction of the calls of frequently called blocks that are timed.
+        self.sample_rate = _default_sample_rate
+        # The depth of the stack in the block that was sampled, or 0 outside of sampled blocks.
+        self._sampled_depth = 0
+        # How deep the stack is inside a block that wasn't sampled.
+        self._skip_depth = 0
         self._add_default_metadata()
 
     def reset(self):
@@ -155,21 +188,54 @@ class TimerStack:
         self.start_time = time.perf_counter()
         self.gauges: Dict[str, GaugeNode] = {}
         self.metadata: Dict[str, str] = {}
+        self.throughput: Dict[str, Tuple[float, int]] = {}
+        self._sampled_depth = 0
+        self._skip_depth = 0
         self._add_default_metadata()
 
-    def push(self, name: str) -> TimerNode:
+    def push(self, name: str) -> Optional[TimerNode]:
         """
         Called when entering a new block of code that is timed (e.g. with a contextmanager).
+        Returns None if the block isn't timed because it, or the block it is in, wasn't sampled.
         """
+        if self._skip_depth > 0:
+            self._skip_depth += 1
+            return None
         current_node: TimerNode = self.stack[-1]
         next_node = current_node.get_child(name)
+        if (
+            self.sample_rate < 1.0
+            and self._sampled_depth == 0
+            and next_node.count >= MIN_SAMPLED_CALLS
+        ):
+            # The outermost frequently called blocks are sampled, and the blocks they contain
+            # are timed whenever they are.
+            if random.random() >= self.sample_rate:
+                self._skip_depth = 1
+                return None
+            self._sampled_depth = len(self.stack) + 1
         self.stack.append(next_node)
         return next_node
 
+    @property
+    def sample_weight(self) -> float:
+        """
+        How many calls the block being timed stands for: 1 / sample_rate in a sampled block, so
+        that the totals and counts estimate all the calls, and 1 otherwise.
+        """
+        if self._sampled_depth > 0:
+            return 1.0 / self.sample_rate
+        return 1
+
     def pop(self) -> None:
         """
         Called when exiting a new block of code that is timed (e.g. with a contextmanager).
         """
+        if self._skip_depth > 0:
+            self._skip_depth -= 1
+            return
+        if len(self.stack) == self._sampled_depth:
+            self._sampled_depth = 0
         self.stack.pop()
 
     def get_root(self) -> TimerNode:
@@ -200,7 +266,7 @@ class TimerStack:
                 res["metadata"] = self.metadata
 
         res["total"] = node.total
-        res["count"] = node.count
+        res["count"] = round(node.count)
 
         if node.is_parallel:
             # Note when the block ran in parallel, so that it's less confusing that a timer is less that its children.
@@ -229,6 +295,17 @@ class TimerStack:
         else:
             self.gauges[name] = GaugeNode(value)
 
+    def record_throughput(self, name: str, num_items: int) -> None:
+        now = time.perf_counter()
+        window_start, window_items = self.throughput.get(name, (now, 0))
+        window_items += num_items
+        elapsed = now - window_start
+        if elapsed >= THROUGHPUT_WINDOW_SECONDS and elapsed > 0:
+            self.set_gauge(f"{name}.items_per_second", window_items / elapsed)
+            self.throughput[name] = (now, 0)
+        else:
+            self.throughput[name] = (window_start, window_items)
+
     def add_metadata(self, key: str, value: str) -> None:
         self.metadata[key] = value
 
@@ -240,6 +317,10 @@ class TimerStack:
 
     def _add_default_metadata(self):
         self.metadata["timer_format_version"] = TIMER_FORMAT_VERSION
+        if self.sample_rate < 1.0:
+            self.metadata["sample_rate"] = str(self.sample_rate)
+        else:
+            self.metadata.pop("sample_rate", None)
         self.metadata["start_time_seconds"] = str(int(time.time()))
         self.metadata["python_version"] = sys.version
         self.metadata["command_line_arguments"] = " ".join(sys.argv)
@@ -272,6 +353,13 @@ def hierarchical_timer(name: str, timer_stack: TimerStack = None) -> Generator:
     """
     timer_stack = timer_stack or _get_thread_timer()
     timer_node = timer_stack.push(name)
+    if timer_node is None:
+        # The block isn't sampled. Callers can still use the node, but it isn't in the tree.
+        try:
+            yield TimerNode()
+        finally:
+            timer_stack.pop()
+        return
     start_time = time.perf_counter()
 
     try:
@@ -281,7 +369,7 @@ def hierarchical_timer(name: str, timer_stack: TimerStack = None) -> Generator:
         # This will trigger either when the context manager exits, or an exception is raised.
         # We'll accumulate the time, and the exception (if any) gets raised automatically.
         elapsed = time.perf_counter() - start_time
-        timer_node.add_time(elapsed)
+        timer_node.add_time(elapsed, timer_stack.sample_weight)
         timer_stack.pop()
 
 
@@ -299,10 +387,26 @@ def timed(func: FuncT) -> FuncT:
             return x + y
     Note that because this doesn't take arguments, the global timer stack is always used.
     """
+    name = func.__qualname__
 
+    # This is equivalent to hierarchical_timer, without the cost of a context manager, since
+    # timed functions can be called on every step.
     def wrapped(*args, **kwargs):
-        with hierarchical_timer(func.__qualname__):
+        timer_stack = _get_thread_timer()
+        timer_node = timer_stack.push(name)
+        if timer_node is None:
+            try:
+                return func(*args, **kwargs)
+            finally:
+                timer_stack.pop()
+        start_time = time.perf_counter()
+        try:
             return func(*args, **kwargs)
+        finally:
+            timer_node.add_time(
+                time.perf_counter() - start_time, timer_stack.sample_weight
+            )
+            timer_stack.pop()
 
     return wrapped  # type: ignore
 
@@ -315,6 +419,25 @@ def set_gauge(name: str, value: float, timer_stack: TimerStack = None) -> None:
     timer_stack.set_gauge(name, value)
 
 
+def record_throughput(
+    name: str, num_items: int, timer_stack: TimerStack = None
+) -> None:
+    """
+    Counts num_items as having gone through the named stage. About once per second, the
+    "<name>.items_per_second" gauge is updated with the rate since its last update.
+    """
+    timer_stack = timer_stack or _get_thread_timer()
+    timer_stack.record_throughput(name, num_items)
+
+
+def set_queue_depth(name: str, depth: int, timer_stack: TimerStack = None) -> None:
+    """
+    Updates the "<name>.queue_depth" gauge with the number of items waiting in front of
+    the named stage.
+    """
+    set_gauge(f"{name}.queue_depth", depth, timer_stack)
+
+
 def merge_gauges(gauges: Dict[str, GaugeNode], timer_stack: TimerStack = None) -> None:
     """
     Merge the gauges from another TimerStack with the provided one (or the
@@ -360,3 +483,84 @@ def reset_timers(timer_stack: TimerStack = None) -> None:
     """
     timer_stack = timer_stack or _get_thread_timer()
     timer_stack.reset()
+
+
+def set_sample_rate(sample_rate: float) -> None:
+    """
+    Sets the fraction of the calls of frequently called blocks that the TimerStacks of all the
+    threads time. A block is sampled once it was timed MIN_SAMPLED_CALLS times, unless it is in
+    a block that was sampled: the blocks in a sampled block are all timed, and those in a
+    block that wasn't sampled aren't. Each timed call of a sampled block counts for
+    1 / sample_rate calls, so that the totals and counts of the sampled blocks, and the self
+    time of the blocks that contain them, estimate all the calls. Timing only a sample of the
+    calls reduces the overhead of the timers in the code that runs on every step.
+    """
+    global _default_sample_rate
+    if not 0.0 < sample_rate <= 1.0:
+        raise ValueError(f"The timer sample rate must be in (0, 1], got {sample_rate}.")
+    _default_sample_rate = sample_rate
+    for timer_stack in list(_thread_timer_stacks.values()):
+        timer_stack.sample_rate = sample_rate
+        timer_stack._add_default_metadata()
+
+
+def get_chrome_trace(timer_stack: TimerStack = None) -> Dict[str, Any]:
+    """
+    Converts the tree of timings to the Chrome trace event format, which chrome://tracing,
+    Perfetto and speedscope can open. The timers only keep the total time of each block, so
+    each block is shown as a single event that lasts its total time, with its children laid
+    out one after the other from its start.
+    """
+    timer_stack = timer_stack or _get_thread_timer()
+    events: List[Dict[str, Any]] = []
+
+    def _add_events(name: str, node: TimerNode, start_us: float) -> None:
+        events.append(
+            {
+                "name": name,
+                "ph": "X",
+                "ts": start_us,
+                "dur": node.total * 1e6,
+                "pid": 0,
+                "tid": 0,
+                "args": {"count": round(node.count), "is_parallel": node.is_parallel},
+            }
+        )
+        child_start_us = start_us
+        for child_name, child_node in node.children.items():
+            _add_events(child_name, child_node, child_start_us)
+            child_start_us += child_node.total * 1e6
+
+    _add_events("root", timer_stack.get_root(), 0.0)
+    return {"traceEvents": events, "otherData": dict(timer_stack.metadata)}
+
+
+def get_folded_stacks(timer_stack: TimerStack = None) -> List[str]:
+    """
+    Converts the tree of timings to the "folded" stack format of flamegraph.pl and speedscope:
+    one line per block, with the names of the blocks from the root separated by semicolons,
+    followed by the time spent in the block but not in its children, in microseconds.
+    """
+    timer_stack = timer_stack or _get_thread_timer()
+    lines: List[str] = []
+
+    def _add_lines(path: str, node: TimerNode) -> None:
+        child_total = sum(child.total for child in node.children.values())
+        self_us = int(max(0.0, node.total - child_total) * 1e6)
+        if self_us > 0:
+            lines.append(f"{path} {self_us}")
+        for child_name, child_node in node.children.items():
+            _add_lines(f"{path};{child_name.replace(';', ':')}", child_node)
+
+    _add_lines("root", timer_stack.get_root())
+    return lines
+
+
+def write_chrome_trace(path: str, timer_stack: TimerStack = None) -> None:
+    with open(path, "w") as f:
+        json.dump(get_chrome_trace(timer_stack), f)
+
+
+def write_folded_stacks(path: str, timer_stack: TimerStack = None) -> None:
+    with open(path, "w") as f:
+        f.write("\n".join(get_folded_stacks(timer_stack)) + "\n")
@@ -0,0 +1,132 @@
+"""
+Batched versions of the discounted return, GAE and lambda return computations. Rather than
+looping over each trajectory separately, the trajectories are padded into a single
+(max_length, num_trajectories) array and scanned backwards in time once, with every step
+vectorized across the trajectories.
+
+Trajectories are padded at the start, so that all of them end on the last row. The bootstrap
+values then all apply to the same row and the scan needs no masking; the values computed for
+the padding are discarded.
+"""
+from typing import List, Optional, Sequence
+
+import numpy as np
+
+
+def _pad_left(sequences: Sequence[Sequence[float]]) -> np.ndarray:
+    max_length = max(len(sequence) for sequence in sequences)
+    padded = np.zeros((max_length, len(sequences)), dtype=np.float32)
+    for i, sequence in enumerate(sequences):
+        if len(sequence) > 0:
+            padded[max_length - len(sequence) :, i] = sequence
+    return padded
+
+
+def _unpad(padded: np.ndarray, sequences: Sequence[Sequence[float]]) -> List[np.ndarray]:
+    max_length = padded.shape[0]
+    return [
+        np.ascontiguousarray(padded[max_length - len(sequence) :, i])
+        for i, sequence in enumerate(sequences)
+    ]
+
+
+def _bootstrap_values(value_next: Sequence[float]) -> np.ndarray:
+    # Value estimates may be floats or single-element arrays, as returned by the critic.
+    return np.array([np.ravel(v)[0] for v in value_next], dtype=np.float32)
+
+
+def _next_values(values: np.ndarray, value_next: np.ndarray) -> np.ndarray:
+    next_values = np.empty_like(values)
+    next_values[:-1] = values[1:]
+    next_values[-1] = value_next
+    return next_values
+
+
+def _discounted_scan(x: np.ndarray, discount: float, initial: np.ndarray) -> np.ndarray:
+    """
+    Computes y[t] = x[t] + discount * y[t + 1] for every column, with y[T] = initial.
+    :param x: Time-major array of shape (T, num_trajectories).
+    :param discount: Discount applied at each step.
+    :param initial: Value after the last step, one per trajectory.
+    """
+    out = np.empty_like(x)
+    running = np.array(initial, dtype=x.dtype)
+    for t in range(x.shape[0] - 1, -1, -1):
+        running *= discount
+        running += x[t]
+        out[t] = running
+    return out
+
+
+def discount_rewards_batch(
+    rewards: Sequence[Sequence[float]],
+    gamma: float = 0.99,
+    value_next: Optional[Sequence[float]] = None,
+) -> List[np.ndarray]:
+    """
+    Computes the discounted sum of future rewards of several trajectories.
+    :param rewards: List of the rewards of each trajectory.
+    :param gamma: Discount factor.
+    :param value_next: T+1 value estimate of each trajectory, 0 if None.
+    :return: The discounted sums of future rewards, one array per trajectory.
+    """
+    if not rewards:
+        return []
+    if value_next is None:
+        value_next = np.zeros(len(rewards), dtype=np.float32)
+    returns = _discounted_scan(_pad_left(rewards), gamma, _bootstrap_values(value_next))
+    return _unpad(returns, rewards)
+
+
+def get_gae_batch(
+    rewards: Sequence[Sequence[float]],
+    value_estimates: Sequence[Sequence[float]],
+    value_next: Sequence[float],
+    gamma: float = 0.99,
+    lambd: float = 0.95,
+) -> List[np.ndarray]:
+    """
+    Computes the generalized advantage estimates of several trajectories.
+    :param rewards: List of the rewards of each trajectory, for time-steps t to T.
+    :param value_estimates: List of the value estimates of each trajectory, for time-steps t to T.
+    :param value_next: Value estimate for time-step T+1 of each trajectory.
+    :param gamma: Discount factor.
+    :param lambd: GAE weighing factor.
+    :return: The advantage estimates, one array per trajectory.
+    """
+    if not rewards:
+        return []
+    padded_rewards = _pad_left(rewards)
+    padded_values = _pad_left(value_estimates)
+    next_values = _next_values(padded_values, _bootstrap_values(value_next))
+    delta_t = padded_rewards + gamma * next_values - padded_values
+    advantages = _discounted_scan(
+        delta_t, gamma * lambd, np.zeros(len(rewards), dtype=np.float32)
+    )
+    return _unpad(advantages, rewards)
+
+
+def lambda_return_batch(
+    rewards: Sequence[Sequence[float]],
+    value_estimates: Sequence[Sequence[float]],
+    value_next: Sequence[float],
+    gamma: float = 0.99,
+    lambd: float = 0.8,
+) -> List[np.ndarray]:
+    """
+    Computes the lambda returns of several trajectories.
+    :param rewards: List of the rewards of each trajectory, for time-steps t to T.
+    :param value_estimates: List of the value estimates of each trajectory, for time-steps t to T.
+    :param value_next: Value estimate for time-step T+1 of each trajectory.
+    :param gamma: Discount factor.
+    :param lambd: Lambda weighing factor.
+    :return: The lambda returns, one array per trajectory.
+    """
+    if not rewards:
+        return []
+    bootstrap_values = _bootstrap_values(value_next)
+    next_values = _next_values(_pad_left(value_estimates), bootstrap_values)
+    # R[t] = r[t] + gamma * ((1 - lambd) * V[t + 1] + lambd * R[t + 1]), with R[T + 1] = V[T + 1]
+    x = _pad_left(rewards) + gamma * (1 - lambd) * next_values
+    returns = _discounted_scan(x, gamma * lambd, bootstrap_values)
+    return _unpad(returns, rewards)
@@ -1,6 +1,6 @@
 import sys
 import numpy as np
-from typing import List, Dict, TypeVar, Generic, Tuple, Any, Union
+from typing import List, Dict, TypeVar, Generic, Tuple, Any, Union, Optional
 from collections import defaultdict, Counter
 import queue
 
@@ -16,6 +16,7 @@ from mlagents_envs.side_channel.stats_side_channel import (
     EnvironmentStats,
 )
 from mlagents.trainers.exception import UnityTrainerException
+from mlagents.trainers.experience_staging import ExperienceStaging
 from mlagents.trainers.trajectory import AgentStatus, Trajectory, AgentExperience
 from mlagents.trainers.policy import Policy
 from mlagents.trainers.action_info import ActionInfo, ActionInfoOutputs
@@ -29,6 +30,7 @@ from mlagents.trainers.behavior_id_utils import (
 )
 
 T = TypeVar("T")
+ActionTupleT = TypeVar("ActionTupleT", ActionTuple, LogProbsTuple)
 
 
 class AgentProcessor:
@@ -44,6 +46,7 @@ class AgentProcessor:
         behavior_id: str,
         stats_reporter: StatsReporter,
         max_trajectory_length: int = sys.maxsize,
+        batched: bool = False,
     ):
         """
         Create an AgentProcessor.
@@ -53,6 +56,8 @@ class AgentProcessor:
         :param policy: Policy instance associated with this AgentProcessor.
         :param max_trajectory_length: Maximum length of a trajectory before it is added to the trainer.
         :param stats_category: The category under which to write the stats. Usually, this comes from the Trainer.
+        :param batched: Whether to stage the experiences of the agents without group in columnar arrays,
+        a whole DecisionSteps at a time, rather than one AgentExperience at a time.
         """
         self._experience_buffers: Dict[
             GlobalAgentId, List[AgentExperience]
@@ -80,6 +85,9 @@ class AgentProcessor:
         self._max_trajectory_length = max_trajectory_length
         self._trajectory_queues: List[AgentManagerQueue[Trajectory]] = []
         self._behavior_id = behavior_id
+        self._batched = batched
+        # The staged experiences of the agents without group of each worker, when batched.
+        self._staging: Dict[int, ExperienceStaging] = {}
 
         # Note: In the future this policy reference will be the policy of the env_manager and not the trainer.
         # We can in that case just grab the action from the policy rather than having it passed in.
@@ -100,13 +108,41 @@ class AgentProcessor:
         """
         take_action_outputs = previous_action.outputs
         if take_action_outputs:
-            for _entropy in take_action_outputs["entropy"]:
-                self._stats_reporter.add_stat("Policy/Entropy", _entropy)
+            self._stats_reporter.add_stats(
+                "Policy/Entropy", take_action_outputs["entropy"]
+            )
 
-        # Make unique agent_ids that are global across workers
-        action_global_agent_ids = [
-            get_global_agent_id(worker_id, ag_id) for ag_id in previous_action.agent_ids
-        ]
+        # When batched, the agents without group are staged a block at a time, and only the
+        # agents of a group go through the per-step path below.
+        if self._batched:
+            staged_terminals = np.asarray(terminal_steps.group_id) == 0
+            staged_decisions = np.asarray(decision_steps.group_id) == 0
+            terminal_list = [
+                (terminal_steps[terminal_steps.agent_id[index]], index)
+                for index in np.flatnonzero(~staged_terminals)
+            ]
+            decision_list = [
+                (decision_steps[decision_steps.agent_id[index]], index)
+                for index in np.flatnonzero(~staged_decisions)
+            ]
+        else:
+            terminal_list = [
+                (terminal_step, terminal_steps.agent_id_to_index[local_id])
+                for local_id, terminal_step in terminal_steps.items()
+            ]
+            decision_list = [
+                (ongoing_step, decision_steps.agent_id_to_index[local_id])
+                for local_id, ongoing_step in decision_steps.items()
+            ]
+
+        # Make unique agent_ids that are global across workers. Only the agents of the
+        # per-step path can have a last step result.
+        action_global_agent_ids: List[GlobalAgentId] = []
+        if self._last_step_result or decision_list:
+            action_global_agent_ids = [
+                get_global_agent_id(worker_id, ag_id)
+                for ag_id in previous_action.agent_ids
+            ]
         for global_id in action_global_agent_ids:
             if global_id in self._last_step_result:  # Don't store if agent just reset
                 self._last_take_action_outputs[global_id] = take_action_outputs
@@ -114,40 +150,258 @@ class AgentProcessor:
         # Iterate over all the terminal steps, first gather all the group obs
         # and then create the AgentExperiences/Trajectories. _add_to_group_status
         # stores Group statuses in a common data structure self.group_status
-        for terminal_step in terminal_steps.values():
+        for terminal_step, _ in terminal_list:
             self._add_group_status_and_obs(terminal_step, worker_id)
-        for terminal_step in terminal_steps.values():
-            local_id = terminal_step.agent_id
-            global_id = get_global_agent_id(worker_id, local_id)
-            self._process_step(
-                terminal_step, worker_id, terminal_steps.agent_id_to_index[local_id]
-            )
+        for terminal_step, index in terminal_list:
+            self._process_step(terminal_step, worker_id, index)
 
         # Iterate over all the decision steps, first gather all the group obs
         # and then create the trajectories. _add_to_group_status
         # stores Group statuses in a common data structure self.group_status
-        for ongoing_step in decision_steps.values():
+        for ongoing_step, _ in decision_list:
             self._add_group_status_and_obs(ongoing_step, worker_id)
-        for ongoing_step in decision_steps.values():
-            local_id = ongoing_step.agent_id
-            self._process_step(
-                ongoing_step, worker_id, decision_steps.agent_id_to_index[local_id]
-            )
+        for ongoing_step, index in decision_list:
+            self._process_step(ongoing_step, worker_id, index)
         # Clear the last seen group obs when agents die, but only after all of the group
         # statuses were added to the trajectory.
-        for terminal_step in terminal_steps.values():
-            local_id = terminal_step.agent_id
-            global_id = get_global_agent_id(worker_id, local_id)
+        for terminal_step, _ in terminal_list:
+            global_id = get_global_agent_id(worker_id, terminal_step.agent_id)
             self._clear_group_status_and_obs(global_id)
 
-        for _gid in action_global_agent_ids:
+        if "action" in take_action_outputs:
             # If the ID doesn't have a last step result, the agent just reset,
             # don't store the action.
-            if _gid in self._last_step_result:
-                if "action" in take_action_outputs:
-                    self.policy.save_previous_action(
-                        [_gid], take_action_outputs["action"]
-                    )
+            saved_indices = [
+                index
+                for index, _gid in enumerate(action_global_agent_ids)
+                if _gid in self._last_step_result
+            ]
+            if saved_indices:
+                self.policy.save_previous_action(
+                    [action_global_agent_ids[index] for index in saved_indices],
+                    self._select_actions(take_action_outputs["action"], saved_indices),
+                )
+
+        if self._batched:
+            self._add_staged_experiences(
+                decision_steps,
+                terminal_steps,
+                staged_decisions,
+                staged_terminals,
+                worker_id,
+                previous_action,
+            )
+
+    @staticmethod
+    def _select_actions(
+        action_tuple: ActionTupleT, indices: Union[List[int], np.ndarray]
+    ) -> ActionTupleT:
+        """
+        Returns the rows of action_tuple at indices, or action_tuple itself if that's all of them.
+        """
+        if len(indices) == len(action_tuple.continuous):
+            return action_tuple
+        return type(action_tuple)(
+            continuous=action_tuple.continuous[indices],
+            discrete=action_tuple.discrete[indices],
+        )
+
+    def _get_staging(
+        self,
+        worker_id: int,
+        decision_steps: DecisionSteps,
+        terminal_steps: TerminalSteps,
+    ) -> Optional[ExperienceStaging]:
+        """
+        Returns the ExperienceStaging of the worker, created from the observations of the first
+        non-empty steps. None until then.
+        """
+        staging = self._staging.get(worker_id)
+        if staging is None:
+            steps = decision_steps if len(decision_steps) > 0 else terminal_steps
+            if len(steps) == 0:
+                return None
+            staging = ExperienceStaging(
+                [obs.shape[1:] for obs in steps.obs],
+                [obs.dtype for obs in steps.obs],
+                self.policy.behavior_spec.action_spec,
+                self.policy.m_size if self.policy.use_recurrent else 0,
+                self._max_trajectory_length,
+            )
+            self._staging[worker_id] = staging
+        return staging
+
+    def _add_staged_experiences(
+        self,
+        decision_steps: DecisionSteps,
+        terminal_steps: TerminalSteps,
+        staged_decisions: np.ndarray,
+        staged_terminals: np.ndarray,
+        worker_id: int,
+        previous_action: ActionInfo,
+    ) -> None:
+        """
+        The batched counterpart of the per-step path of add_experiences, for the agents without
+        group. The experiences are built from the pending observation and action of each agent
+        and from the current steps, for all the agents of a block at once.
+        :param staged_decisions: Whether each agent of decision_steps is staged.
+        :param staged_terminals: Whether each agent of terminal_steps is staged.
+        """
+        staging = self._get_staging(worker_id, decision_steps, terminal_steps)
+        if staging is None:
+            return
+        take_action_outputs = previous_action.outputs
+
+        # An agent that joins a group restarts its trajectory in the per-step path.
+        if not staged_decisions.all():
+            staging.remove(decision_steps.agent_id[~staged_decisions])
+
+        # The actions in take_action_outputs were taken from the pending observations.
+        if take_action_outputs:
+            action_slots = staging.find(previous_action.agent_ids)
+            acted = np.flatnonzero(action_slots >= 0)
+            if len(acted) > 0:
+                staging.set_pending_actions(
+                    action_slots[acted],
+                    self._select_actions(take_action_outputs["action"], acted),
+                    self._select_actions(take_action_outputs["log_probs"], acted),
+                )
+
+        terminal_rows = np.flatnonzero(staged_terminals)
+        terminal_slots = staging.find(terminal_steps.agent_id[terminal_rows])
+        terminal_rows = terminal_rows[terminal_slots >= 0]
+        terminal_slots = terminal_slots[terminal_slots >= 0]
+        if len(terminal_slots) > 0:
+            terminal_ids = terminal_steps.agent_id[terminal_rows]
+            ready = staging.pending["has_action"][terminal_slots]
+            self._append_staged(
+                staging,
+                terminal_steps,
+                terminal_rows[ready],
+                terminal_slots[ready],
+                worker_id,
+                done=True,
+            )
+            # An agent whose last decision wasn't acted on has no terminal experience, so its
+            # unfinished trajectory would end without done. It is dropped with its data.
+            for row, slot in zip(terminal_rows[ready], terminal_slots[ready]):
+                if staging.pending["length"][slot] > 0:
+                    self._publish_staged(staging, terminal_steps, row, slot, worker_id)
+            # Record episode lengths.
+            self._stats_reporter.add_stats(
+                "Environment/Episode Length",
+                staging.pending["episode_steps"][terminal_slots[ready]],
+            )
+            global_ids = [
+                get_global_agent_id(worker_id, agent_id) for agent_id in terminal_ids
+            ]
+            self.policy.remove_previous_action(global_ids)
+            self.policy.remove_memories(global_ids)
+            staging.remove(terminal_ids)
+
+        decision_rows = np.flatnonzero(staged_decisions)
+        if len(decision_rows) > 0:
+            decision_slots = staging.allocate(decision_steps.agent_id[decision_rows])
+            ready = staging.pending["has_action"][decision_slots]
+            lengths = self._append_staged(
+                staging,
+                decision_steps,
+                decision_rows[ready],
+                decision_slots[ready],
+                worker_id,
+                done=False,
+            )
+            # Add a trajectory segment if the length has reached the time horizon
+            for row, slot in zip(
+                decision_rows[ready][lengths >= self._max_trajectory_length],
+                decision_slots[ready][lengths >= self._max_trajectory_length],
+            ):
+                self._publish_staged(staging, decision_steps, row, slot, worker_id)
+            all_rows = len(decision_rows) == len(decision_steps)
+            staging.set_pending_obs(
+                decision_slots,
+                [obs if all_rows else obs[decision_rows] for obs in decision_steps.obs],
+                None
+                if decision_steps.action_mask is None
+                else [
+                    mask if all_rows else mask[decision_rows]
+                    for mask in decision_steps.action_mask
+                ],
+            )
+
+        if (
+            "action" in take_action_outputs
+            and self.policy.behavior_spec.action_spec.discrete_size > 0
+        ):
+            # Terminated agents don't store their action.
+            action_slots = staging.find(previous_action.agent_ids)
+            acted = np.flatnonzero(action_slots >= 0)
+            if len(acted) > 0:
+                self.policy.save_previous_action(
+                    [
+                        get_global_agent_id(worker_id, agent_id)
+                        for agent_id in np.asarray(previous_action.agent_ids)[acted]
+                    ],
+                    self._select_actions(take_action_outputs["action"], acted),
+                )
+
+    def _append_staged(
+        self,
+        staging: ExperienceStaging,
+        steps: Union[DecisionSteps, TerminalSteps],
+        rows: np.ndarray,
+        slots: np.ndarray,
+        worker_id: int,
+        done: bool,
+    ) -> np.ndarray:
+        """
+        Appends the experiences of the agents at rows of steps to their staged trajectories.
+        :return: The length of the trajectory of each agent.
+        """
+        num_discrete = self.policy.behavior_spec.action_spec.discrete_size
+        global_ids: List[GlobalAgentId] = []
+        if num_discrete > 0 or self.policy.use_recurrent:
+            global_ids = [
+                get_global_agent_id(worker_id, agent_id)
+                for agent_id in steps.agent_id[rows]
+            ]
+        if num_discrete > 0:
+            prev_action = self.policy.retrieve_previous_action(global_ids)
+        else:
+            prev_action = np.zeros((len(rows), 0), dtype=np.int32)
+        memory = None
+        if self.policy.use_recurrent:
+            memory = self.policy.retrieve_previous_memories(global_ids)
+        return staging.append(
+            slots,
+            reward=steps.reward[rows],
+            group_reward=steps.group_reward[rows],
+            done=done,
+            interrupted=steps.interrupted[rows] if done else False,
+            prev_action=prev_action,
+            memory=memory,
+        )
+
+    def _publish_staged(
+        self,
+        staging: ExperienceStaging,
+        steps: Union[DecisionSteps, TerminalSteps],
+        row: int,
+        slot: int,
+        worker_id: int,
+    ) -> None:
+        """
+        Puts the staged trajectory of the agent at row of steps in the trajectory queues.
+        """
+        trajectory = Trajectory(
+            steps=staging.pop_steps(slot),
+            agent_id=get_global_agent_id(worker_id, steps.agent_id[row]),
+            next_obs=[obs[row] for obs in steps.obs],
+            next_group_obs=[],
+            behavior_id=self._behavior_id,
+        )
+        for traj_queue in self._trajectory_queues:
+            traj_queue.put(trajectory)
 
     def _add_group_status_and_obs(
         self, step: Union[TerminalStep, DecisionStep], worker_id: int
@@ -334,6 +588,14 @@ class AgentProcessor:
         all_gids = list(self._experience_buffers.keys())  # Need to make copy
         for _gid in all_gids:
             self._clean_agent_data(_gid)
+        for worker_id, staging in self._staging.items():
+            agent_ids = staging.agent_ids()
+            global_ids = [
+                get_global_agent_id(worker_id, agent_id) for agent_id in agent_ids
+            ]
+            self.policy.remove_previous_action(global_ids)
+            self.policy.remove_memories(global_ids)
+            staging.remove(agent_ids)
 
 
 class AgentManagerQueue(Generic[T]):
@@ -412,8 +674,11 @@ class AgentManager(AgentProcessor):
         stats_reporter: StatsReporter,
         max_trajectory_length: int = sys.maxsize,
         threaded: bool = True,
+        batched: bool = False,
     ):
-        super().__init__(policy, behavior_id, stats_reporter, max_trajectory_length)
+        super().__init__(
+            policy, behavior_id, stats_reporter, max_trajectory_length, batched
+        )
         trajectory_queue_len = 20 if threaded else 0
         self.trajectory_queue: AgentManagerQueue[Trajectory] = AgentManagerQueue(
             self._behavior_id, maxlen=trajectory_queue_len
@@ -454,3 +719,13 @@ class AgentManager(AgentProcessor):
                     raise UnityTrainerException(
                         f"Unknown StatsAggregationMethod encountered. {agg_type}"
                     )
+
+    def record_policy_staleness(self, staleness: int) -> None:
+        """
+        Records how many policy updates the trainer has published since the policy that chose
+        the actions of a step was current. With on-policy trainers, this should stay close to 0.
+        :param staleness: Number of policy versions between the acting and the current policy.
+        """
+        self._stats_reporter.add_stat(
+            "Policy/Staleness", staleness, StatsAggregationMethod.AVERAGE
+        )
@@ -49,6 +49,9 @@ class BufferKey(enum.Enum):
     GROUP_NEXT_CONT_ACTION = "group_next_cont_action"
     GROUP_NEXT_DISC_ACTION = "group_next_disc_action"
 
+    # Prioritized replay
+    IMPORTANCE_WEIGHTS = "importance_weights"
+
 
 class ObservationKeyPrefix(enum.Enum):
     OBSERVATION = "obs"
@@ -423,13 +426,23 @@ class AgentBuffer(MutableMapping):
             Number of sequences to sample will be batch_size/sequence_length.
         """
         num_seq_to_sample = batch_size // sequence_length
-        mini_batch = AgentBuffer()
         buff_len = self.num_experiences
         num_sequences_in_buffer = buff_len // sequence_length
         start_idxes = (
             np.random.randint(num_sequences_in_buffer, size=num_seq_to_sample)
             * sequence_length
         )  # Sample random sequence starts
+        return self.make_sequence_mini_batch(start_idxes, sequence_length)
+
+    def make_sequence_mini_batch(
+        self, start_idxes: np.ndarray, sequence_length: int = 1
+    ) -> "AgentBuffer":
+        """
+        Creates a mini-batch from the sequences that start at the given indices.
+        :param start_idxes: The indices of the first experience of each sequence.
+        :param sequence_length: Length of the sequences.
+        """
+        mini_batch = AgentBuffer()
         for key in self:
             buffer_field = self[key]
             mb_list = (buffer_field[i : i + sequence_length] for i in start_idxes)
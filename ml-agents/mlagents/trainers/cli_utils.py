@@ -214,6 +214,80 @@ def _create_parser() -> argparse.ArgumentParser:
         help="The period of time --restarts-rate-limit-n applies to.",
         action=DetectDefault,
     )
+    argparser.add_argument(
+        "--shared-memory-transport",
+        default=False,
+        action=DetectDefaultStoreTrue,
+        help="Whether environment workers send observations, rewards and masks to the trainer through "
+        "shared memory instead of pickling them. Requires Python 3.8 or later.",
+    )
+    argparser.add_argument(
+        "--env-step-batch-size",
+        default=1,
+        type=int,
+        help="The number of environment workers the trainer waits for before processing their steps. "
+        "Steps from all workers that are ready by then are processed together.",
+        action=DetectDefault,
+    )
+    argparser.add_argument(
+        "--env-step-batch-timeout-s",
+        default=0.05,
+        type=float,
+        help="How long the trainer waits, after the first environment worker is ready, for "
+        "--env-step-batch-size workers to be ready before processing the ones that are.",
+        action=DetectDefault,
+    )
+    argparser.add_argument(
+        "--pipelined-inference",
+        default=False,
+        action=DetectDefaultStoreTrue,
+        help="Whether to compute and send the next actions of environment workers as soon as their "
+        "steps are processed, instead of at the start of the next environment step. Workers then keep "
+        "simulating while the trainers update, at the cost of actions sometimes coming from a policy "
+        "that is one update old (reported as Policy/Staleness).",
+    )
+    argparser.add_argument(
+        "--inference-batch-size",
+        default=1024,
+        type=int,
+        help="With --pipelined-inference, the maximum number of agents from several environment "
+        "workers that are evaluated by a policy in a single batch.",
+        action=DetectDefault,
+    )
+    argparser.add_argument(
+        "--envs-per-worker",
+        default=1,
+        type=int,
+        help="The number of Unity environment instances driven by each environment worker process. "
+        "The instances of a worker step concurrently and their steps are returned together, which "
+        "saves the memory and context switches of one process per instance when --num-envs is large.",
+        action=DetectDefault,
+    )
+    argparser.add_argument(
+        "--streaming-stats",
+        default=False,
+        action=DetectDefaultStoreTrue,
+        help="Whether to aggregate the training statistics as they are reported (count, mean, "
+        "standard deviation, min, max and histogram buckets) on each thread, instead of keeping "
+        "every value until the next summary is written.",
+    )
+    argparser.add_argument(
+        "--timer-sample-rate",
+        default=1.0,
+        type=float,
+        help="The fraction of the calls of frequently called blocks of code that the profiling timers "
+        "time, between 0 and 1. Blocks are always timed for their first calls, and the blocks inside a "
+        "sampled block are timed with it. Lower rates reduce the overhead of the timers.",
+        action=DetectDefault,
+    )
+    argparser.add_argument(
+        "--worker-timers-interval-s",
+        default=0.0,
+        type=float,
+        help="How often, in seconds, the environment workers send their timers to the trainer. "
+        "The timers accumulate in the workers in between. With 0, they are sent with every step.",
+        action=DetectDefault,
+    )
     argparser.add_argument(
         "--torch",
         default=False,
@@ -0,0 +1,499 @@
+from collections import defaultdict
+import functools
+from typing import BinaryIO, DefaultDict, Iterator, List, Optional, Union
+
+import numpy as np
+import h5py
+
+from mlagents.trainers.buffer import (
+    AgentBuffer,
+    AgentBufferField,
+    AgentBufferKey,
+    BufferEntry,
+    BufferException,
+)
+
+
+class ColumnarBufferField:
+    """
+    ColumnarBufferField is a drop-in replacement for AgentBufferField that stores all of its
+    entries in a single, preallocated numpy column instead of a list of per-step arrays.
+    The column is addressed as a circular buffer, so dropping the oldest entries is O(1).
+    If a capacity is given, appending past it overwrites the oldest entries (replay buffer semantics),
+    otherwise the column grows geometrically.
+    Group entries (List[np.ndarray]) don't have a fixed shape, and are stored in an object column.
+    """
+
+    INITIAL_CAPACITY = 256
+
+    def __init__(self, capacity: Optional[int] = None):
+        self.padding_value = 0.0
+        self._max_capacity = capacity
+        self._data: Optional[np.ndarray] = None
+        self._start = 0
+        self._length = 0
+        # Number of newest entries written since mark_saved(), None if the whole storage may
+        # have changed. Used to save a replay buffer incrementally.
+        self._num_unsaved: Optional[int] = None
+
+    @staticmethod
+    def from_array(
+        data: np.ndarray, padding_value: float = 0.0
+    ) -> "ColumnarBufferField":
+        """
+        Wraps an existing array (whose first dimension is the number of entries) without copying it.
+        """
+        field = ColumnarBufferField()
+        field._data = data
+        field._length = len(data)
+        field.padding_value = padding_value
+        return field
+
+    @staticmethod
+    def from_storage(
+        storage: np.ndarray,
+        start: int,
+        length: int,
+        capacity: Optional[int] = None,
+        padding_value: float = 0.0,
+    ) -> "ColumnarBufferField":
+        """
+        Wraps the physical storage of a column, e.g. a memory-mapped file written by
+        ReplayBufferStore, without copying it. The storage is considered saved.
+        :param storage: The storage, whose first dimension is the number of slots.
+        :param start: The slot of the oldest entry.
+        :param length: The number of entries.
+        :param capacity: The ring buffer capacity, which must be the number of slots if set.
+        """
+        if capacity is not None and capacity != len(storage):
+            raise BufferException(
+                f"Storage of {len(storage)} entries doesn't match the capacity {capacity}."
+            )
+        field = ColumnarBufferField(capacity)
+        field._data = storage
+        field._start = start
+        field._length = length
+        field.padding_value = padding_value
+        field._num_unsaved = 0
+        return field
+
+    def __str__(self) -> str:
+        return f"ColumnarBufferField: {list(self)}"
+
+    def __len__(self) -> int:
+        return self._length
+
+    def __iter__(self) -> Iterator[BufferEntry]:
+        return iter(self._contiguous())
+
+    def __array__(self, dtype: Optional[np.dtype] = None) -> np.ndarray:
+        data = self._contiguous()
+        return data if dtype is None else data.astype(dtype, copy=False)
+
+    @property
+    def capacity(self) -> int:
+        """
+        The number of entries that can be stored before growing (or overwriting, for
+        a ring buffer).
+        """
+        return 0 if self._data is None else len(self._data)
+
+    @property
+    def storage(self) -> Optional[np.ndarray]:
+        """
+        The physical storage of the column. Entries start at slot `start` and wrap around.
+        """
+        return self._data
+
+    @property
+    def start(self) -> int:
+        return self._start
+
+    def replace_storage(self, storage: np.ndarray) -> None:
+        """
+        Replaces the physical storage of the column with a copy of the same slots, e.g. to
+        stop using a memory-mapped file.
+        """
+        if self._data is None or storage.shape != self._data.shape:
+            raise BufferException("The new storage must have the shape of the current one.")
+        self._data = storage
+
+    def unsaved_slots(self) -> Optional[np.ndarray]:
+        """
+        The storage slots written since the last call to mark_saved(), or None if the whole
+        storage may have changed.
+        """
+        if self._num_unsaved is None:
+            return None
+        num_unsaved = min(self._num_unsaved, self._length)
+        return self._physical(np.arange(self._length - num_unsaved, self._length))
+
+    def mark_saved(self) -> None:
+        self._num_unsaved = 0
+
+    def _add_unsaved(self, num_entries: int) -> None:
+        if self._num_unsaved is not None:
+            self._num_unsaved = min(self._num_unsaved + num_entries, len(self._data))
+
+    @property
+    def contains_lists(self) -> bool:
+        """
+        Checks whether this ColumnarBufferField contains List[np.ndarray].
+        """
+        return self._length > 0 and self._data.dtype == object
+
+    def _physical(self, logical: Union[int, np.ndarray]) -> Union[int, np.ndarray]:
+        return (logical + self._start) % len(self._data)
+
+    def _contiguous(self) -> np.ndarray:
+        """
+        Returns the entries in insertion order. This is a view of the column if the entries
+        don't wrap around the end of the storage, otherwise a copy.
+        """
+        if self._data is None:
+            return np.empty(0, dtype=np.float32)
+        end = self._start + self._length
+        if end <= len(self._data):
+            return self._data[self._start : end]
+        return np.concatenate(
+            (self._data[self._start :], self._data[: end - len(self._data)])
+        )
+
+    def _allocate(self, sample: BufferEntry, min_size: int) -> None:
+        if isinstance(sample, list):
+            dtype: np.dtype = np.dtype(object)
+            shape: tuple = ()
+        else:
+            sample = np.asarray(sample)
+            # Visual observations are kept in their compact form, everything else is
+            # stored as float32 like the rest of the trainer expects.
+            dtype = np.dtype(np.uint8 if sample.dtype == np.uint8 else np.float32)
+            shape = sample.shape
+        if self._max_capacity is not None:
+            size = self._max_capacity
+        else:
+            size = max(min_size, self.INITIAL_CAPACITY)
+        self._data = np.empty((size,) + shape, dtype=dtype)
+        self._start = 0
+        self._length = 0
+        self._num_unsaved = None
+
+    def _grow(self, min_size: int) -> None:
+        new_data = np.empty(
+            (max(2 * len(self._data), min_size),) + self._data.shape[1:],
+            dtype=self._data.dtype,
+        )
+        new_data[: self._length] = self._contiguous()
+        self._data = new_data
+        self._start = 0
+        self._num_unsaved = None
+
+    def _to_block(self, data: Union[np.ndarray, List[BufferEntry]]) -> np.ndarray:
+        if self._data.dtype != object:
+            return np.asarray(data)
+        block = np.empty(len(data), dtype=object)
+        for i, entry in enumerate(data):
+            block[i] = entry
+        return block
+
+    def _write_block(self, block: np.ndarray) -> None:
+        num_new = len(block)
+        if self._max_capacity is None:
+            if self._length + num_new > len(self._data):
+                self._grow(self._length + num_new)
+        else:
+            if num_new >= len(self._data):
+                # Only the newest entries fit
+                block = block[num_new - len(self._data) :]
+                num_new = len(block)
+                self._start = 0
+                self._length = 0
+            overflow = self._length + num_new - len(self._data)
+            if overflow > 0:
+                self.drop_oldest(overflow)
+        write_start = self._physical(self._length)
+        first_chunk = min(num_new, len(self._data) - write_start)
+        self._data[write_start : write_start + first_chunk] = block[:first_chunk]
+        self._data[: num_new - first_chunk] = block[first_chunk:]
+        self._length += num_new
+        self._add_unsaved(num_new)
+
+    def append(self, element: BufferEntry, padding_value: float = 0.0) -> None:
+        """
+        Adds an element to this column. Also lets you change the padding
+        type, so that it can be set on append (e.g. action_masks should
+        be padded with 1.)
+        :param element: The element to append to the column.
+        :param padding_value: The value used to pad when get_batch is called.
+        """
+        if self._data is None:
+            self._allocate(element, 1)
+        if self._max_capacity is None:
+            if self._length == len(self._data):
+                self._grow(self._length + 1)
+        elif self._length == len(self._data):
+            self.drop_oldest(1)
+        self._data[self._physical(self._length)] = element
+        self._length += 1
+        self._add_unsaved(1)
+        self.padding_value = padding_value
+
+    def extend(self, data: Union[np.ndarray, List[BufferEntry]]) -> None:
+        """
+        Appends all the entries of data to this column in a single copy.
+        :param data: A list of BufferEntry, or an array whose first dimension is the number of entries.
+        """
+        if len(data) == 0:
+            return
+        if self._data is None:
+            self._allocate(data[0], len(data))
+        self._write_block(self._to_block(data))
+
+    def set(self, data: Union[np.ndarray, List[BufferEntry]]) -> None:
+        """
+        Sets the content of this column to the input data
+        :param data: The BufferEntry list to be set.
+        """
+        self.reset_field()
+        self.extend(data)
+
+    def reset_field(self) -> None:
+        """
+        Resets the ColumnarBufferField. The underlying storage is kept for reuse.
+        """
+        self._start = 0
+        self._length = 0
+        self._num_unsaved = None
+
+    def drop_oldest(self, num_entries: int) -> None:
+        """
+        Removes the num_entries oldest entries of this column in O(1).
+        """
+        num_entries = min(num_entries, self._length)
+        if num_entries > 0:
+            self._start = self._physical(num_entries)
+            self._length -= num_entries
+
+    def take(self, indices: np.ndarray) -> "ColumnarBufferField":
+        """
+        Gathers the entries at the given logical indices into a new ColumnarBufferField.
+        """
+        if self._data is None:
+            return ColumnarBufferField()
+        return ColumnarBufferField.from_array(
+            self._data[self._physical(np.asarray(indices))], self.padding_value
+        )
+
+    def reorder(self, indices: np.ndarray) -> None:
+        """
+        Replaces the content of this column with the entries at the given logical indices,
+        keeping the allocated storage.
+        """
+        if self._data is None:
+            return
+        gathered = self._data[self._physical(np.asarray(indices))]
+        self._data[: len(gathered)] = gathered
+        self._start = 0
+        self._length = len(gathered)
+        self._num_unsaved = None
+
+    def _logical_index(self, index: int) -> int:
+        if index < 0:
+            index += self._length
+        if not 0 <= index < self._length:
+            raise IndexError(f"Index {index} out of range for {self._length} entries")
+        return index
+
+    def __getitem__(self, index):
+        if isinstance(index, (int, np.integer)):
+            return self._data[self._physical(self._logical_index(index))]
+        return self.take(np.arange(self._length)[index])
+
+    def __setitem__(self, index, value) -> None:
+        self._num_unsaved = None
+        if isinstance(index, (int, np.integer)):
+            self._data[self._physical(self._logical_index(index))] = value
+        elif isinstance(index, slice) and index == slice(None):
+            self.set(value)
+        else:
+            positions = self._physical(np.arange(self._length)[index])
+            self._data[positions] = self._to_block(value)
+
+    def get_batch(
+        self,
+        batch_size: int = None,
+        training_length: Optional[int] = 1,
+        sequential: bool = True,
+    ) -> Union[np.ndarray, List[BufferEntry]]:
+        """
+        Retrieve the last batch_size elements of length training_length from the column.
+        See AgentBufferField.get_batch for the meaning of the parameters. Unlike
+        AgentBufferField, this returns an array (possibly a view of the column) unless the
+        column contains group entries.
+        """
+        if training_length is None:
+            training_length = 1
+        if sequential:
+            # The sequences will not have overlapping elements (this involves padding)
+            leftover = self._length % training_length
+            max_batch_size = self._length // training_length + 1 * (leftover != 0)
+            if batch_size is None:
+                batch_size = max_batch_size
+            if batch_size > max_batch_size:
+                raise BufferException(
+                    "The batch size and training length requested for get_batch where"
+                    " too large given the current number of data points."
+                )
+            if batch_size * training_length > self._length:
+                if self.contains_lists:
+                    return list(self) + [[]] * (training_length - leftover)
+                # We want to duplicate the last value in the array, multiplied by the padding_value.
+                padding = np.array(self[-1], dtype=np.float32) * self.padding_value
+                padding_block = np.broadcast_to(
+                    padding.astype(self._data.dtype),
+                    (training_length - leftover,) + padding.shape,
+                )
+                return np.concatenate((self._contiguous(), padding_block))
+            batch = self._contiguous()[self._length - batch_size * training_length :]
+        else:
+            # The sequences will have overlapping elements
+            if batch_size is None:
+                batch_size = self._length - training_length + 1
+            if (self._length - training_length + 1) < batch_size:
+                raise BufferException(
+                    "The batch size and training length requested for get_batch where"
+                    " too large given the current number of data points."
+                )
+            ends = np.arange(self._length - batch_size + 1, self._length + 1)
+            indices = ends[:, np.newaxis] - training_length + np.arange(training_length)
+            batch = self._data[self._physical(indices.ravel())]
+        return list(batch) if self.contains_lists else batch
+
+    def padded_to_batch(
+        self, pad_value: float = 0, dtype: np.dtype = np.float32
+    ) -> Union[np.ndarray, List[np.ndarray]]:
+        """
+        Converts this ColumnarBufferField into a numpy array with first dimension equal to the
+        number of entries. No conversion is needed unless the dtype differs from the column's.
+        Group entries are padded like AgentBufferField.padded_to_batch.
+        :param pad_value: Value to pad group entries, when there are less than the maximum
+            number of agents present.
+        :param dtype: Dtype of output numpy array.
+        """
+        if self._length == 0 or self.contains_lists:
+            return AgentBufferField(list(self)).padded_to_batch(pad_value, dtype)
+        return np.asanyarray(self._contiguous(), dtype=dtype)
+
+
+class ColumnarAgentBuffer(AgentBuffer):
+    """
+    ColumnarAgentBuffer is an AgentBuffer whose fields are ColumnarBufferFields. Shuffling,
+    sampling and truncating operate on index arrays rather than on lists of entries.
+    If capacity is set, every field is a ring buffer holding the newest capacity experiences.
+    """
+
+    def __init__(self, capacity: Optional[int] = None):
+        super().__init__()
+        self.capacity = capacity
+        self._fields: DefaultDict[  # type: ignore
+            AgentBufferKey, ColumnarBufferField
+        ] = defaultdict(functools.partial(ColumnarBufferField, capacity))
+
+    def __setitem__(self, key: AgentBufferKey, value) -> None:
+        # Plain lists, AgentBufferFields and arrays are copied into a column
+        if not isinstance(value, ColumnarBufferField):
+            field = ColumnarBufferField(self.capacity)
+            field.set(value)
+            field.padding_value = getattr(value, "padding_value", 0.0)
+            value = field
+        super().__setitem__(key, value)
+
+    @staticmethod
+    def _sequence_indices(
+        sequence_starts: np.ndarray, sequence_length: int
+    ) -> np.ndarray:
+        return (sequence_starts[:, np.newaxis] + np.arange(sequence_length)).ravel()
+
+    def shuffle(
+        self, sequence_length: int, key_list: List[AgentBufferKey] = None
+    ) -> None:
+        """
+        Shuffles the fields in key_list in a consistent way: The reordering will
+        be the same across fields.
+        :param key_list: The fields that must be shuffled.
+        """
+        if key_list is None:
+            key_list = list(self._fields.keys())
+        if not self.check_length(key_list):
+            raise BufferException(
+                "Unable to shuffle if the fields are not of same length"
+            )
+        s = np.arange(len(self[key_list[0]]) // sequence_length)
+        np.random.shuffle(s)
+        indices = self._sequence_indices(s * sequence_length, sequence_length)
+        for key in key_list:
+            self[key].reorder(indices)
+
+    def make_mini_batch(self, start: int, end: int) -> "ColumnarAgentBuffer":
+        """
+        Creates a mini-batch from buffer.
+        :param start: Starting index of buffer.
+        :param end: Ending index of buffer.
+        :return: Dict of mini batch.
+        """
+        mini_batch = ColumnarAgentBuffer()
+        for key, field in self._fields.items():
+            mini_batch[key] = field[start:end]
+        return mini_batch
+
+    def sample_mini_batch(
+        self, batch_size: int, sequence_length: int = 1
+    ) -> "ColumnarAgentBuffer":
+        """
+        Creates a mini-batch from a random start and end.
+        :param batch_size: number of elements to withdraw.
+        :param sequence_length: Length of sequences to sample.
+            Number of sequences to sample will be batch_size/sequence_length.
+        """
+        num_seq_to_sample = batch_size // sequence_length
+        num_sequences_in_buffer = self.num_experiences // sequence_length
+        start_idxes = (
+            np.random.randint(num_sequences_in_buffer, size=num_seq_to_sample)
+            * sequence_length
+        )  # Sample random sequence starts
+        return self.make_sequence_mini_batch(start_idxes, sequence_length)
+
+    def make_sequence_mini_batch(
+        self, start_idxes: np.ndarray, sequence_length: int = 1
+    ) -> "ColumnarAgentBuffer":
+        """
+        Creates a mini-batch from the sequences that start at the given indices.
+        :param start_idxes: The indices of the first experience of each sequence.
+        :param sequence_length: Length of the sequences.
+        """
+        indices = self._sequence_indices(start_idxes, sequence_length)
+        mini_batch = ColumnarAgentBuffer()
+        for key, field in self._fields.items():
+            mini_batch[key] = field.take(indices)
+        return mini_batch
+
+    def load_from_file(self, file_object: BinaryIO) -> None:
+        """
+        Loads the AgentBuffer from a file-like object.
+        """
+        with h5py.File(file_object, "r") as read_file:
+            for key in list(read_file.keys()):
+                self[self._decode_key(key)] = read_file[key][()]
+
+    def truncate(self, max_length: int, sequence_length: int = 1) -> None:
+        """
+        Truncates the buffer to a certain length by dropping the oldest experiences. This is O(1).
+        Note that we must truncate an integer number of sequence_lengths
+        param: max_length: The length at which to truncate the buffer.
+        """
+        current_length = self.num_experiences
+        # make max_length an integer number of sequence_lengths
+        max_length -= max_length % sequence_length
+        if current_length > max_length:
+            for field in self._fields.values():
+                field.drop_oldest(current_length - max_length)
@@ -1,7 +1,18 @@
+import hashlib
+import multiprocessing
 import os
-from typing import List, Tuple
+import pickle
+from concurrent.futures import ProcessPoolExecutor
+from typing import Any, Callable, Dict, List, NamedTuple, Optional, Tuple, Union
 import numpy as np
-from mlagents.trainers.buffer import AgentBuffer, BufferKey
+from mlagents.trainers.buffer import (
+    AgentBuffer,
+    AgentBufferKey,
+    BufferException,
+    BufferKey,
+)
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
+from mlagents.trainers.replay_buffer_store import ReplayBufferStore
 from mlagents_envs.communicator_objects.agent_info_action_pair_pb2 import (
     AgentInfoActionPairProto,
 )
@@ -12,134 +23,330 @@ from mlagents_envs.communicator_objects.brain_parameters_pb2 import BrainParamet
 from mlagents_envs.communicator_objects.demonstration_meta_pb2 import (
     DemonstrationMetaProto,
 )
+from mlagents_envs.logging_util import get_logger
 from mlagents_envs.timers import timed, hierarchical_timer
 from google.protobuf.internal.decoder import _DecodeVarint32  # type: ignore
 from google.protobuf.internal.encoder import _EncodeVarint  # type: ignore
 
+logger = get_logger(__name__)
 
 INITIAL_POS = 33
 SUPPORTED_DEMONSTRATION_VERSIONS = frozenset([0, 1])
+# Version of the cached demonstration buffers, part of their key.
+DEMO_CACHE_VERSION = 1
+DEMO_CACHE_HASH_CHUNK_SIZE = 1 << 20
+BEHAVIOR_SPEC_FILE_NAME = "behavior_spec.pkl"
 
 
-@timed
-def make_demo_buffer(
-    pair_infos: List[AgentInfoActionPairProto],
-    behavior_spec: BehaviorSpec,
-    sequence_length: int,
-) -> AgentBuffer:
-    # Create and populate buffer using experiences
-    demo_raw_buffer = AgentBuffer()
-    demo_processed_buffer = AgentBuffer()
-    for idx, current_pair_info in enumerate(pair_infos):
-        if idx > len(pair_infos) - 2:
-            break
-        next_pair_info = pair_infos[idx + 1]
-        current_decision_step, current_terminal_step = steps_from_proto(
-            [current_pair_info.agent_info], behavior_spec
-        )
-        next_decision_step, next_terminal_step = steps_from_proto(
-            [next_pair_info.agent_info], behavior_spec
-        )
-        previous_action = (
-            np.array(
-                pair_infos[idx].action_info.vector_actions_deprecated, dtype=np.float32
-            )
-            * 0
+class _DemoSteps(NamedTuple):
+    """
+    The decoded AgentInfoActionPairProtos of demonstrations, one row per pair.
+    """
+
+    done: np.ndarray
+    reward: np.ndarray
+    obs: List[np.ndarray]
+    continuous_actions: Optional[np.ndarray]
+    discrete_actions: Optional[np.ndarray]
+    # The deprecated vector actions, which are used as the previous actions.
+    vector_actions: List[np.ndarray]
+
+    @staticmethod
+    def concatenate(steps_list: List["_DemoSteps"]) -> "_DemoSteps":
+        def _concatenate(arrays: List[Optional[np.ndarray]]) -> Optional[np.ndarray]:
+            not_none = [array for array in arrays if array is not None]
+            return np.concatenate(not_none) if not_none else None
+
+        return _DemoSteps(
+            done=np.concatenate([steps.done for steps in steps_list]),
+            reward=np.concatenate([steps.reward for steps in steps_list]),
+            obs=[
+                np.concatenate(obs)
+                for obs in zip(*(steps.obs for steps in steps_list))
+            ],
+            continuous_actions=_concatenate(
+                [steps.continuous_actions for steps in steps_list]
+            ),
+            discrete_actions=_concatenate(
+                [steps.discrete_actions for steps in steps_list]
+            ),
+            vector_actions=[
+                action for steps in steps_list for action in steps.vector_actions
+            ],
         )
-        if idx > 0:
-            previous_action = np.array(
-                pair_infos[idx - 1].action_info.vector_actions_deprecated,
-                dtype=np.float32,
-            )
 
-        next_done = len(next_terminal_step) == 1
-        next_reward = 0
-        if len(next_terminal_step) == 1:
-            next_reward = next_terminal_step.reward[0]
-        else:
-            next_reward = next_decision_step.reward[0]
-        current_obs = None
-        if len(current_terminal_step) == 1:
-            current_obs = list(current_terminal_step.values())[0].obs
-        else:
-            current_obs = list(current_decision_step.values())[0].obs
 
-        demo_raw_buffer[BufferKey.DONE].append(next_done)
-        demo_raw_buffer[BufferKey.ENVIRONMENT_REWARDS].append(next_reward)
-        for i, obs in enumerate(current_obs):
-            demo_raw_buffer[ObsUtil.get_name_at(i)].append(obs)
+def _decode_demo_steps(
+    pair_infos: List[AgentInfoActionPairProto], behavior_spec: BehaviorSpec
+) -> _DemoSteps:
+    """
+    Decodes the observations and rewards of all the pairs with a single call to
+    steps_from_proto, and puts the decision and terminal steps back in order.
+    """
+    agent_infos = [pair_info.agent_info for pair_info in pair_infos]
+    done = np.array([agent_info.done for agent_info in agent_infos], dtype=np.bool)
+    decision_steps, terminal_steps = steps_from_proto(agent_infos, behavior_spec)
+    reward = np.zeros(len(agent_infos), dtype=np.float32)
+    reward[~done] = decision_steps.reward
+    reward[done] = terminal_steps.reward
+    obs = []
+    for decision_obs, terminal_obs in zip(decision_steps.obs, terminal_steps.obs):
+        pair_obs = np.zeros(
+            (len(agent_infos),) + decision_obs.shape[1:], dtype=decision_obs.dtype
+        )
+        pair_obs[~done] = decision_obs
+        pair_obs[done] = terminal_obs
+        obs.append(pair_obs)
+
+    action_spec = behavior_spec.action_spec
+    continuous_actions = []
+    discrete_actions = []
+    for pair_info in pair_infos:
+        action_info = pair_info.action_info
         if (
-            len(current_pair_info.action_info.continuous_actions) == 0
-            and len(current_pair_info.action_info.discrete_actions) == 0
+            len(action_info.continuous_actions) == 0
+            and len(action_info.discrete_actions) == 0
         ):
-            if behavior_spec.action_spec.continuous_size > 0:
-                demo_raw_buffer[BufferKey.CONTINUOUS_ACTION].append(
-                    current_pair_info.action_info.vector_actions_deprecated
-                )
+            if action_spec.continuous_size > 0:
+                continuous_actions.append(action_info.vector_actions_deprecated)
             else:
-                demo_raw_buffer[BufferKey.DISCRETE_ACTION].append(
-                    current_pair_info.action_info.vector_actions_deprecated
-                )
+                discrete_actions.append(action_info.vector_actions_deprecated)
         else:
-            if behavior_spec.action_spec.continuous_size > 0:
-                demo_raw_buffer[BufferKey.CONTINUOUS_ACTION].append(
-                    current_pair_info.action_info.continuous_actions
-                )
-            if behavior_spec.action_spec.discrete_size > 0:
-                demo_raw_buffer[BufferKey.DISCRETE_ACTION].append(
-                    current_pair_info.action_info.discrete_actions
-                )
-        demo_raw_buffer[BufferKey.PREV_ACTION].append(previous_action)
-        if next_done:
+            if action_spec.continuous_size > 0:
+                continuous_actions.append(action_info.continuous_actions)
+            if action_spec.discrete_size > 0:
+                discrete_actions.append(action_info.discrete_actions)
+    return _DemoSteps(
+        done=done,
+        reward=reward,
+        obs=obs,
+        continuous_actions=np.array(continuous_actions, dtype=np.float32)
+        if continuous_actions
+        else None,
+        discrete_actions=np.array(discrete_actions, dtype=np.int32)
+        if discrete_actions
+        else None,
+        vector_actions=[
+            np.array(pair_info.action_info.vector_actions_deprecated, dtype=np.float32)
+            for pair_info in pair_infos
+        ],
+    )
+
+
+def _demo_steps_to_buffer(steps: _DemoSteps, sequence_length: int) -> AgentBuffer:
+    """
+    Fills an AgentBuffer with the decoded pairs. Each pair is an experience whose done
+    flag and reward are those of the next pair, so the last pair only ends the previous
+    experience. The episodes are padded to the sequence length separately.
+    """
+    demo_processed_buffer = AgentBuffer()
+    num_experiences = len(steps.done) - 1
+    if num_experiences <= 0:
+        return demo_processed_buffer
+    columns: Dict[AgentBufferKey, Union[np.ndarray, List[np.ndarray]]] = {
+        BufferKey.DONE: steps.done[1:],
+        BufferKey.ENVIRONMENT_REWARDS: steps.reward[1:],
+    }
+    for i, obs in enumerate(steps.obs):
+        columns[ObsUtil.get_name_at(i)] = obs[:num_experiences]
+    if steps.continuous_actions is not None:
+        columns[BufferKey.CONTINUOUS_ACTION] = steps.continuous_actions[
+            :num_experiences
+        ]
+    if steps.discrete_actions is not None:
+        columns[BufferKey.DISCRETE_ACTION] = steps.discrete_actions[:num_experiences]
+    previous_actions = steps.vector_actions[: num_experiences - 1]
+    columns[BufferKey.PREV_ACTION] = [steps.vector_actions[0] * 0] + previous_actions
+
+    episode_ends = list(np.flatnonzero(steps.done[1:]) + 1) + [num_experiences]
+    episode_start = 0
+    for episode_end in episode_ends:
+        if episode_end > episode_start:
+            demo_raw_buffer = AgentBuffer()
+            for key, column in columns.items():
+                demo_raw_buffer[key].extend(column[episode_start:episode_end])
             demo_raw_buffer.resequence_and_append(
                 demo_processed_buffer, batch_size=None, training_length=sequence_length
             )
-            demo_raw_buffer.reset_agent()
-    demo_raw_buffer.resequence_and_append(
-        demo_processed_buffer, batch_size=None, training_length=sequence_length
-    )
+        episode_start = episode_end
     return demo_processed_buffer
 
 
+@timed
+def make_demo_buffer(
+    pair_infos: List[AgentInfoActionPairProto],
+    behavior_spec: BehaviorSpec,
+    sequence_length: int,
+) -> AgentBuffer:
+    return _demo_steps_to_buffer(
+        _decode_demo_steps(pair_infos, behavior_spec), sequence_length
+    )
+
+
+def _decode_demonstration_file(
+    file_path: str,
+) -> Tuple[Optional[BehaviorSpec], Optional[_DemoSteps], int]:
+    """
+    Parses and decodes a single demonstration file. Runs in the worker processes of
+    demo_to_buffer, so that only numpy arrays are sent back.
+    """
+    behavior_spec, pair_infos, total_expected = _load_demonstration_file(file_path)
+    if behavior_spec is None:
+        return None, None, total_expected
+    return (
+        behavior_spec,
+        _decode_demo_steps(pair_infos, behavior_spec),
+        total_expected,
+    )
+
+
+def _map_demo_files(
+    fn: Callable[[str], Any], file_paths: List[str], num_workers: int
+) -> List[Any]:
+    num_workers = min(num_workers, len(file_paths))
+    if num_workers <= 1:
+        return [fn(path) for path in file_paths]
+    # The trainer has already started threads (e.g. torch's), and forking a multithreaded
+    # process isn't safe, so the workers are spawned.
+    with ProcessPoolExecutor(
+        max_workers=num_workers, mp_context=multiprocessing.get_context("spawn")
+    ) as executor:
+        return list(executor.map(fn, file_paths))
+
+
+def _demo_cache_key(file_paths: List[str], sequence_length: int) -> str:
+    digest = hashlib.sha256()
+    digest.update(f"{DEMO_CACHE_VERSION}:{sequence_length}".encode())
+    for path in file_paths:
+        digest.update(f":{os.path.getsize(path)}:".encode())
+        with open(path, "rb") as fp:
+            for chunk in iter(lambda: fp.read(DEMO_CACHE_HASH_CHUNK_SIZE), b""):
+                digest.update(chunk)
+    return digest.hexdigest()
+
+
+def _load_cached_demo_buffer(
+    cache_path: str,
+) -> Optional[Tuple[BehaviorSpec, AgentBuffer]]:
+    store = ReplayBufferStore(cache_path)
+    behavior_spec_path = os.path.join(cache_path, BEHAVIOR_SPEC_FILE_NAME)
+    if not store.exists() or not os.path.isfile(behavior_spec_path):
+        return None
+    try:
+        with open(behavior_spec_path, "rb") as spec_file:
+            behavior_spec = pickle.load(spec_file)
+        demo_buffer = ColumnarAgentBuffer()
+        store.load(demo_buffer)
+    except (OSError, EOFError, pickle.UnpicklingError, BufferException) as ex:
+        logger.warning(f"Ignoring the cached demonstrations at {cache_path}: {ex}")
+        return None
+    return behavior_spec, demo_buffer
+
+
+def _save_cached_demo_buffer(
+    cache_path: str, behavior_spec: BehaviorSpec, demo_buffer: AgentBuffer
+) -> AgentBuffer:
+    """
+    Saves the demonstration buffer as memory-mappable columns, and returns it as a
+    ColumnarAgentBuffer so that the first run uses the same buffer type as later ones.
+    """
+    columnar_buffer = ColumnarAgentBuffer()
+    for key, field in demo_buffer.items():
+        columnar_buffer[key] = field
+    try:
+        os.makedirs(cache_path, exist_ok=True)
+        # The manifest is written last, so the behavior spec goes first.
+        with open(os.path.join(cache_path, BEHAVIOR_SPEC_FILE_NAME), "wb") as spec_file:
+            pickle.dump(behavior_spec, spec_file)
+        ReplayBufferStore(cache_path).save(columnar_buffer)
+    except OSError as ex:
+        logger.warning(f"Unable to cache the demonstrations at {cache_path}: {ex}")
+    return columnar_buffer
+
+
+def _check_demo_behavior_spec(
+    behavior_spec: BehaviorSpec, expected_behavior_spec: BehaviorSpec
+) -> None:
+    # check action dimensions in demonstration match
+    if behavior_spec.action_spec != expected_behavior_spec.action_spec:
+        raise RuntimeError(
+            "The actions {} in demonstration do not match the policy's {}.".format(
+                behavior_spec.action_spec, expected_behavior_spec.action_spec
+            )
+        )
+    # check observations match
+    if len(behavior_spec.observation_specs) != len(
+        expected_behavior_spec.observation_specs
+    ):
+        raise RuntimeError(
+            "The demonstrations do not have the same number of observations as the policy."
+        )
+    else:
+        for i, (demo_obs, policy_obs) in enumerate(
+            zip(
+                behavior_spec.observation_specs,
+                expected_behavior_spec.observation_specs,
+            )
+        ):
+            if demo_obs.shape != policy_obs.shape:
+                raise RuntimeError(
+                    f"The shape {demo_obs} for observation {i} in demonstration \
+                    do not match the policy's {policy_obs}."
+                )
+
+
 @timed
 def demo_to_buffer(
-    file_path: str, sequence_length: int, expected_behavior_spec: BehaviorSpec = None
+    file_path: str,
+    sequence_length: int,
+    expected_behavior_spec: BehaviorSpec = None,
+    cache_dir: Optional[str] = None,
+    num_workers: int = 1,
 ) -> Tuple[BehaviorSpec, AgentBuffer]:
     """
     Loads demonstration file and uses it to fill training buffer.
     :param file_path: Location of demonstration file (.demo).
     :param sequence_length: Length of trajectories to fill buffer.
+    :param cache_dir: If set, the filled buffer is saved in this directory, keyed by the
+        content of the demonstration files and the sequence length, and later calls with the
+        same demonstrations memory-map it instead of loading the files again.
+    :param num_workers: Number of processes that decode the demonstration files of a
+        directory in parallel. By default, the files are decoded one after the other in this
+        process.
     :return:
     """
-    behavior_spec, info_action_pair, _ = load_demonstration(file_path)
-    demo_buffer = make_demo_buffer(info_action_pair, behavior_spec, sequence_length)
+    file_paths = get_demo_files(file_path)
+    cache_path = None
+    if cache_dir is not None:
+        cache_path = os.path.join(
+            cache_dir, _demo_cache_key(file_paths, sequence_length)
+        )
+        cached = _load_cached_demo_buffer(cache_path)
+        if cached is not None:
+            logger.info(f"Loaded the demonstrations {file_path} from {cache_path}.")
+            behavior_spec, demo_buffer = cached
+            if expected_behavior_spec:
+                _check_demo_behavior_spec(behavior_spec, expected_behavior_spec)
+            return behavior_spec, demo_buffer
+
+    with hierarchical_timer("decode_files"):
+        decoded_files = _map_demo_files(
+            _decode_demonstration_file, file_paths, num_workers
+        )
+    decoded_files = [decoded for decoded in decoded_files if decoded[0] is not None]
+    if not decoded_files:
+        raise RuntimeError(
+            f"No BrainParameters found in demonstration file at {file_path}."
+        )
+    behavior_spec = decoded_files[0][0]
     if expected_behavior_spec:
-        # check action dimensions in demonstration match
-        if behavior_spec.action_spec != expected_behavior_spec.action_spec:
-            raise RuntimeError(
-                "The actions {} in demonstration do not match the policy's {}.".format(
-                    behavior_spec.action_spec, expected_behavior_spec.action_spec
-                )
-            )
-        # check observations match
-        if len(behavior_spec.observation_specs) != len(
-            expected_behavior_spec.observation_specs
-        ):
-            raise RuntimeError(
-                "The demonstrations do not have the same number of observations as the policy."
-            )
-        else:
-            for i, (demo_obs, policy_obs) in enumerate(
-                zip(
-                    behavior_spec.observation_specs,
-                    expected_behavior_spec.observation_specs,
-                )
-            ):
-                if demo_obs.shape != policy_obs.shape:
-                    raise RuntimeError(
-                        f"The shape {demo_obs} for observation {i} in demonstration \
-                        do not match the policy's {policy_obs}."
-                    )
+        _check_demo_behavior_spec(behavior_spec, expected_behavior_spec)
+    # The files are decoded separately but make a single sequence of pairs, as if they
+    # had been loaded together.
+    steps = _DemoSteps.concatenate([decoded[1] for decoded in decoded_files])
+    demo_buffer = _demo_steps_to_buffer(steps, sequence_length)
+    if cache_path is not None:
+        demo_buffer = _save_cached_demo_buffer(cache_path, behavior_spec, demo_buffer)
     return behavior_spec, demo_buffer
 
 
@@ -170,6 +377,54 @@ def get_demo_files(path: str) -> List[str]:
         )
 
 
+def _load_demonstration_file(
+    file_path: str,
+) -> Tuple[Optional[BehaviorSpec], List[AgentInfoActionPairProto], int]:
+    """
+    Parses a single demonstration file.
+    :param file_path: Location of demonstration file (.demo).
+    :return: BehaviorSpec (None if the file has no pairs), list of AgentInfoActionPairProto
+        and number of expected steps.
+    """
+    behavior_spec = None
+    brain_param_proto = None
+    info_action_pairs: List[AgentInfoActionPairProto] = []
+    total_expected = 0
+    with open(file_path, "rb") as fp:
+        with hierarchical_timer("read_file"):
+            data = fp.read()
+        next_pos, pos, obs_decoded = 0, 0, 0
+        while pos < len(data):
+            next_pos, pos = _DecodeVarint32(data, pos)
+            if obs_decoded == 0:
+                # First 32 bytes of file dedicated to meta-data.
+                meta_data_proto = DemonstrationMetaProto()
+                meta_data_proto.ParseFromString(data[pos : pos + next_pos])
+                if meta_data_proto.api_version not in SUPPORTED_DEMONSTRATION_VERSIONS:
+                    raise RuntimeError(
+                        f"Can't load Demonstration data from an unsupported version ({meta_data_proto.api_version})"
+                    )
+                total_expected += meta_data_proto.number_steps
+                pos = INITIAL_POS
+            if obs_decoded == 1:
+                brain_param_proto = BrainParametersProto()
+                brain_param_proto.ParseFromString(data[pos : pos + next_pos])
+                pos += next_pos
+            if obs_decoded > 1:
+                agent_info_action = AgentInfoActionPairProto()
+                agent_info_action.ParseFromString(data[pos : pos + next_pos])
+                if behavior_spec is None:
+                    behavior_spec = behavior_spec_from_proto(
+                        brain_param_proto, agent_info_action.agent_info
+                    )
+                info_action_pairs.append(agent_info_action)
+                if len(info_action_pairs) == total_expected:
+                    break
+                pos += next_pos
+            obs_decoded += 1
+    return behavior_spec, info_action_pairs, total_expected
+
+
 @timed
 def load_demonstration(
     file_path: str,
@@ -179,48 +434,18 @@ def load_demonstration(
     :param file_path: Location of demonstration file (.demo).
     :return: BrainParameter and list of AgentInfoActionPairProto containing demonstration data.
     """
-
-    # First 32 bytes of file dedicated to meta-data.
     file_paths = get_demo_files(file_path)
     behavior_spec = None
-    brain_param_proto = None
     info_action_pairs = []
     total_expected = 0
     for _file_path in file_paths:
-        with open(_file_path, "rb") as fp:
-            with hierarchical_timer("read_file"):
-                data = fp.read()
-            next_pos, pos, obs_decoded = 0, 0, 0
-            while pos < len(data):
-                next_pos, pos = _DecodeVarint32(data, pos)
-                if obs_decoded == 0:
-                    meta_data_proto = DemonstrationMetaProto()
-                    meta_data_proto.ParseFromString(data[pos : pos + next_pos])
-                    if (
-                        meta_data_proto.api_version
-                        not in SUPPORTED_DEMONSTRATION_VERSIONS
-                    ):
-                        raise RuntimeError(
-                            f"Can't load Demonstration data from an unsupported version ({meta_data_proto.api_version})"
-                        )
-                    total_expected += meta_data_proto.number_steps
-                    pos = INITIAL_POS
-                if obs_decoded == 1:
-                    brain_param_proto = BrainParametersProto()
-                    brain_param_proto.ParseFromString(data[pos : pos + next_pos])
-                    pos += next_pos
-                if obs_decoded > 1:
-                    agent_info_action = AgentInfoActionPairProto()
-                    agent_info_action.ParseFromString(data[pos : pos + next_pos])
-                    if behavior_spec is None:
-                        behavior_spec = behavior_spec_from_proto(
-                            brain_param_proto, agent_info_action.agent_info
-                        )
-                    info_action_pairs.append(agent_info_action)
-                    if len(info_action_pairs) == total_expected:
-                        break
-                    pos += next_pos
-                obs_decoded += 1
+        file_behavior_spec, file_pairs, file_expected = _load_demonstration_file(
+            _file_path
+        )
+        if behavior_spec is None:
+            behavior_spec = file_behavior_spec
+        info_action_pairs += file_pairs
+        total_expected += file_expected
     if not behavior_spec:
         raise RuntimeError(
             f"No BrainParameters found in demonstration file at {file_path}."
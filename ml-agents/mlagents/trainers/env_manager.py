@@ -1,6 +1,6 @@
 from abc import ABC, abstractmethod
 
-from typing import List, Dict, NamedTuple, Iterable, Tuple
+from typing import List, Dict, NamedTuple, Iterable, Optional, Tuple
 from mlagents_envs.base_env import (
     DecisionSteps,
     TerminalSteps,
@@ -26,6 +26,8 @@ class EnvironmentStep(NamedTuple):
     worker_id: int
     brain_name_to_action_info: Dict[BehaviorName, ActionInfo]
     environment_stats: EnvironmentStats
+    # Version of each behavior's policy when brain_name_to_action_info was computed.
+    policy_versions: Optional[Dict[BehaviorName, int]] = None
 
     @property
     def name_behavior_ids(self) -> Iterable[BehaviorName]:
@@ -41,6 +43,8 @@ class EnvManager(ABC):
         self.policies: Dict[BehaviorName, Policy] = {}
         self.agent_managers: Dict[BehaviorName, AgentManager] = {}
         self.first_step_infos: List[EnvironmentStep] = []
+        # Number of policy updates received from each behavior's policy queue.
+        self.policy_versions: Dict[BehaviorName, int] = {}
 
     def set_policy(self, brain_name: BehaviorName, policy: Policy) -> None:
         self.policies[brain_name] = policy
@@ -117,6 +121,9 @@ class EnvManager(ABC):
                 # This halts the trainers until the policy queue is empty.
                 while True:
                     _policy = self.agent_managers[brain_name].policy_queue.get_nowait()
+                    self.policy_versions[brain_name] = (
+                        self.policy_versions.get(brain_name, 0) + 1
+                    )
             except AgentManagerQueue.Empty:
                 if _policy is not None:
                     self.set_policy(brain_name, _policy)
@@ -154,4 +161,12 @@ class EnvManager(ABC):
                 self.agent_managers[name_behavior_id].record_environment_stats(
                     step_info.environment_stats, step_info.worker_id
                 )
+                if (
+                    step_info.policy_versions is not None
+                    and name_behavior_id in step_info.policy_versions
+                ):
+                    self.agent_managers[name_behavior_id].record_policy_staleness(
+                        self.policy_versions.get(name_behavior_id, 0)
+                        - step_info.policy_versions[name_behavior_id]
+                    )
         return len(step_infos)
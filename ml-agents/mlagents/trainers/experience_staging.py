@@ -0,0 +1,246 @@
+from typing import Dict, List, Optional, Sequence, Tuple
+
+import numpy as np
+
+from mlagents_envs.base_env import ActionSpec, ActionTuple, AgentId
+from mlagents.trainers.policy.agent_slot_table import AgentSlotTable
+from mlagents.trainers.torch.action_log_probs import LogProbsTuple
+from mlagents.trainers.trajectory import StagedSteps
+
+
+class ExperienceStaging:
+    """
+    Stages the experiences of the agents of one worker in columnar arrays, so that the
+    AgentProcessor adds all the agents of a DecisionSteps or TerminalSteps block with a few
+    fancy-indexing operations.
+    Each agent gets a slot (see AgentSlotTable) when it first requests a decision, and frees it
+    when it terminates. The pending arrays hold, per slot, the last observation of the agent
+    and the action it took; the step arrays hold, per slot and step, the experiences of the
+    trajectory the agent is building. Once a trajectory is complete, the rows of its agent are
+    copied into StagedSteps.
+    """
+
+    INITIAL_LENGTH = 64
+
+    def __init__(
+        self,
+        obs_shapes: List[Tuple[int, ...]],
+        obs_dtypes: List[np.dtype],
+        action_spec: ActionSpec,
+        memory_size: int,
+        max_length: int,
+    ):
+        """
+        :param obs_shapes: The shape of each observation of an agent.
+        :param obs_dtypes: The dtype of each observation.
+        :param action_spec: The ActionSpec of the behavior.
+        :param memory_size: The size of the recurrent memories, 0 without memories.
+        :param max_length: The maximum length of a trajectory.
+        """
+        self._table = AgentSlotTable([], np.float32)
+        self._discrete_branches = list(action_spec.discrete_branches)
+        self._has_mask = action_spec.discrete_size > 0
+        self._has_memory = memory_size > 0
+        self._max_length = max_length
+        self._num_obs = len(obs_shapes)
+        continuous_size = action_spec.continuous_size
+        discrete_size = action_spec.discrete_size
+        mask_size = sum(self._discrete_branches)
+        pending_fields = [
+            ((continuous_size,), np.float32),
+            ((discrete_size,), np.int32),
+            ((continuous_size,), np.float32),
+            ((discrete_size,), np.float32),
+            ((mask_size,), np.bool_),
+        ]
+        # The row shape and dtype of each field, by slot for the pending fields and by slot and
+        # step for the step fields.
+        self._pending_specs: Dict[str, Tuple[Tuple[int, ...], np.dtype]] = {
+            f"obs_{i}": (shape, dtype)
+            for i, (shape, dtype) in enumerate(zip(obs_shapes, obs_dtypes))
+        }
+        self._pending_specs.update(
+            zip(
+                [
+                    "continuous_action",
+                    "discrete_action",
+                    "continuous_log_probs",
+                    "discrete_log_probs",
+                    "action_mask",
+                ],
+                pending_fields,
+            )
+        )
+        self._pending_specs["has_action"] = ((), np.bool_)
+        self._pending_specs["length"] = ((), np.int64)
+        self._pending_specs["episode_steps"] = ((), np.int64)
+        self._step_specs = {
+            name: spec
+            for name, spec in self._pending_specs.items()
+            if name not in ("has_action", "length", "episode_steps")
+        }
+        self._step_specs.update(
+            {
+                "reward": ((), np.float32),
+                "group_reward": ((), np.float32),
+                "done": ((), np.bool_),
+                "interrupted": ((), np.bool_),
+                "prev_action": ((discrete_size,), np.int32),
+                "memory": ((memory_size,), np.float32),
+            }
+        )
+        self._capacity = 0
+        self._steps_capacity = min(max_length, self.INITIAL_LENGTH)
+        self.pending: Dict[str, np.ndarray] = {
+            name: np.zeros((0,) + shape, dtype=dtype)
+            for name, (shape, dtype) in self._pending_specs.items()
+        }
+        self.steps: Dict[str, np.ndarray] = {
+            name: np.zeros((0, self._steps_capacity) + shape, dtype=dtype)
+            for name, (shape, dtype) in self._step_specs.items()
+        }
+
+    def __len__(self) -> int:
+        return len(self._table)
+
+    def find(self, agent_ids: Sequence[AgentId]) -> np.ndarray:
+        """
+        :return: The slot of each agent, or -1 for agents that are not staged.
+        """
+        return self._table.find(agent_ids)
+
+    def allocate(self, agent_ids: Sequence[AgentId]) -> np.ndarray:
+        """
+        Gives a slot to the agents that are not staged yet, with no pending action and an
+        empty trajectory.
+        :return: The slot of each agent.
+        """
+        new_agents = self._table.find(agent_ids) < 0
+        slots = self._table.allocate(agent_ids)
+        if self._table.capacity > self._capacity:
+            self._grow_slots(self._table.capacity)
+        new_slots = slots[new_agents]
+        for name in ("has_action", "length", "episode_steps"):
+            self.pending[name][new_slots] = 0
+        return slots
+
+    def remove(self, agent_ids: Sequence[AgentId]) -> None:
+        self._table.remove(agent_ids)
+
+    def agent_ids(self) -> List[AgentId]:
+        return list(self._table)
+
+    def _grow_slots(self, capacity: int) -> None:
+        for fields in (self.pending, self.steps):
+            for name, field in fields.items():
+                grown = np.zeros((capacity,) + field.shape[1:], dtype=field.dtype)
+                grown[: self._capacity] = field
+                fields[name] = grown
+        self._capacity = capacity
+
+    def _grow_steps(self, min_length: int) -> None:
+        length = min(max(min_length, 2 * self._steps_capacity), self._max_length)
+        for name, field in self.steps.items():
+            grown = np.zeros(
+                (self._capacity, length) + field.shape[2:], dtype=field.dtype
+            )
+            grown[:, : self._steps_capacity] = field
+            self.steps[name] = grown
+        self._steps_capacity = length
+
+    def set_pending_obs(
+        self,
+        slots: np.ndarray,
+        obs: List[np.ndarray],
+        action_mask: Optional[List[np.ndarray]],
+    ) -> None:
+        """
+        Stores the observations and action masks of a DecisionSteps block as the pending
+        observations of the agents in slots.
+        """
+        for i, obs_rows in enumerate(obs):
+            self.pending[f"obs_{i}"][slots] = obs_rows
+        if self._has_mask:
+            if action_mask is not None:
+                self.pending["action_mask"][slots] = np.concatenate(
+                    action_mask, axis=1
+                )
+            else:
+                self.pending["action_mask"][slots] = False
+
+    def set_pending_actions(
+        self,
+        slots: np.ndarray,
+        action: ActionTuple,
+        log_probs: LogProbsTuple,
+    ) -> None:
+        """
+        Stores the actions taken from the pending observations of the agents in slots.
+        """
+        self.pending["continuous_action"][slots] = action.continuous
+        self.pending["discrete_action"][slots] = action.discrete
+        self.pending["continuous_log_probs"][slots] = log_probs.continuous
+        self.pending["discrete_log_probs"][slots] = log_probs.discrete
+        self.pending["has_action"][slots] = True
+
+    def append(
+        self,
+        slots: np.ndarray,
+        reward: np.ndarray,
+        group_reward: np.ndarray,
+        done: bool,
+        interrupted: np.ndarray,
+        prev_action: np.ndarray,
+        memory: Optional[np.ndarray],
+    ) -> np.ndarray:
+        """
+        Appends an experience to the trajectories of the agents in slots, made of their
+        pending observations and actions and of the outcome of the actions. The pending actions
+        are consumed.
+        :return: The length of the trajectory of each agent.
+        """
+        steps = self.pending["length"][slots]
+        if len(steps) > 0 and steps.max() >= self._steps_capacity:
+            self._grow_steps(int(steps.max()) + 1)
+        for name in self._pending_specs:
+            if name in self.steps:
+                self.steps[name][slots, steps] = self.pending[name][slots]
+        self.steps["reward"][slots, steps] = reward
+        self.steps["group_reward"][slots, steps] = group_reward
+        self.steps["done"][slots, steps] = done
+        self.steps["interrupted"][slots, steps] = interrupted
+        self.steps["prev_action"][slots, steps] = prev_action
+        if memory is not None:
+            self.steps["memory"][slots, steps] = memory
+        self.pending["has_action"][slots] = False
+        self.pending["length"][slots] = steps + 1
+        if not done:
+            self.pending["episode_steps"][slots] += 1
+        return steps + 1
+
+    def pop_steps(self, slot: int) -> StagedSteps:
+        """
+        Copies the trajectory of the agent in slot out of the staging arrays, and starts a new
+        trajectory for the agent.
+        """
+        length = self.pending["length"][slot]
+        self.pending["length"][slot] = 0
+        rows = {name: field[slot, :length].copy() for name, field in self.steps.items()}
+        return StagedSteps(
+            obs=[rows[f"obs_{i}"] for i in range(self._num_obs)],
+            reward=rows["reward"],
+            done=rows["done"],
+            interrupted=rows["interrupted"],
+            action=ActionTuple(
+                continuous=rows["continuous_action"], discrete=rows["discrete_action"]
+            ),
+            action_probs=LogProbsTuple(
+                continuous=rows["continuous_log_probs"],
+                discrete=rows["discrete_log_probs"],
+            ),
+            action_mask=rows["action_mask"] if self._has_mask else None,
+            discrete_branches=self._discrete_branches,
+            prev_action=rows["prev_action"],
+            memory=rows["memory"] if self._has_memory else None,
+            group_reward=rows["group_reward"],
+        )
@@ -0,0 +1,140 @@
+import tempfile
+import weakref
+from typing import Dict, List, Mapping, NamedTuple, Optional, Tuple
+
+import numpy as np
+from mlagents.torch_utils import torch
+
+from mlagents.trainers.policy import Policy
+
+# The byte alignment of each tensor in a snapshot.
+_ALIGNMENT = 64
+
+
+class _TensorLayout(NamedTuple):
+    name: str
+    dtype: np.dtype
+    shape: Tuple[int, ...]
+    offset: int
+    nbytes: int
+
+
+def _aligned(nbytes: int) -> int:
+    return -(-nbytes // _ALIGNMENT) * _ALIGNMENT
+
+
+def _make_layout(weights: Mapping[str, torch.Tensor]) -> List[_TensorLayout]:
+    layout = []
+    offset = 0
+    for name, tensor in weights.items():
+        dtype = torch.empty(0, dtype=tensor.dtype).numpy().dtype
+        nbytes = tensor.numel() * dtype.itemsize
+        layout.append(_TensorLayout(name, dtype, tuple(tensor.shape), offset, nbytes))
+        offset += _aligned(nbytes)
+    return layout
+
+
+class SnapshotStore:
+    """
+    The snapshots of the weights of the policies of a GhostTrainer. The snapshots of a brain
+    name are the rows of a single preallocated byte array (its arena), with one row for each of
+    the window snapshots and one for the current weights of the learning policy, so saving a
+    snapshot is a copy of one row into another, without allocations.
+    Each row has a version, which changes when it is written. The store remembers the version
+    it loaded in each policy, and only copies a row into a policy when the policy doesn't already
+    hold it, directly into the tensors of the policy.
+    With a spill directory, the arenas are memory-mapped files in that directory, which the OS
+    pages out of RAM, so that the window can hold more snapshots than fit in memory.
+    """
+
+    def __init__(self, window: int, spill_dir: Optional[str] = None):
+        self.window = window
+        self.spill_dir = spill_dir
+        self._layouts: Dict[str, List[_TensorLayout]] = {}
+        self._arenas: Dict[str, np.ndarray] = {}
+        # The version of each row of each arena. 0 means that the row was never written.
+        self._versions: Dict[str, np.ndarray] = {}
+        self._last_version = 0
+        self._num_snapshots = 0
+        # The brain name and version that was last loaded in each policy.
+        self._loaded: "weakref.WeakKeyDictionary[Policy, Tuple[str, int]]" = (
+            weakref.WeakKeyDictionary()
+        )
+
+    @property
+    def num_snapshots(self) -> int:
+        """
+        The number of snapshots that were saved, up to the window.
+        """
+        return self._num_snapshots
+
+    def _create_arena(self, brain_name: str, weights: Mapping[str, torch.Tensor]):
+        layout = _make_layout(weights)
+        row_bytes = _aligned(layout[-1].offset + layout[-1].nbytes) if layout else 0
+        shape = (self.window + 1, row_bytes)
+        if self.spill_dir is not None:
+            # The file is deleted when the arena is garbage collected or the process exits.
+            arena: np.ndarray = np.memmap(
+                tempfile.TemporaryFile(dir=self.spill_dir),
+                dtype=np.uint8,
+                mode="w+",
+                shape=shape,
+            )
+        else:
+            arena = np.zeros(shape, dtype=np.uint8)
+        self._layouts[brain_name] = layout
+        self._arenas[brain_name] = arena
+        self._versions[brain_name] = np.zeros(self.window + 1, dtype=np.int64)
+
+    def _row_tensors(self, brain_name: str, row: int) -> Dict[str, torch.Tensor]:
+        arena_row = self._arenas[brain_name][row]
+        return {
+            layout.name: torch.from_numpy(
+                arena_row[layout.offset : layout.offset + layout.nbytes]
+                .view(layout.dtype)
+                .reshape(layout.shape)
+            )
+            for layout in self._layouts[brain_name]
+        }
+
+    def set_current(self, brain_name: str, weights: Mapping[str, torch.Tensor]) -> None:
+        """
+        Copies the current weights of the learning policy of brain_name in its arena.
+        :param weights: The weight tensors of the policy, from Policy.get_weight_tensors.
+        """
+        if brain_name not in self._arenas:
+            self._create_arena(brain_name, weights)
+        current = self._row_tensors(brain_name, self.window)
+        with torch.no_grad():
+            for name, tensor in weights.items():
+                current[name].copy_(tensor)
+        self._last_version += 1
+        self._versions[brain_name][self.window] = self._last_version
+
+    def save(self, index: int) -> None:
+        """
+        Saves the current weights of all the brain names as the snapshot at index.
+        """
+        for brain_name, arena in self._arenas.items():
+            arena[index] = arena[self.window]
+            versions = self._versions[brain_name]
+            versions[index] = versions[self.window]
+        self._num_snapshots = max(self._num_snapshots, index + 1)
+
+    def load(self, brain_name: str, index: Optional[int], policy: Policy) -> bool:
+        """
+        Loads the snapshot at index of brain_name in policy, or the current weights if index is
+        None or if no snapshot of brain_name was saved at index.
+        :return: Whether the weights were copied, False if policy already held them.
+        """
+        versions = self._versions[brain_name]
+        row = self.window if index is None or versions[index] == 0 else index
+        version = (brain_name, int(versions[row]))
+        if self._loaded.get(policy) == version:
+            return False
+        snapshot = self._row_tensors(brain_name, row)
+        with torch.no_grad():
+            for name, tensor in policy.get_weight_tensors().items():
+                tensor.copy_(snapshot[name])
+        self._loaded[policy] = version
+        return True
@@ -2,13 +2,14 @@
 # ## ML-Agent Learning (Ghost Trainer)
 
 from collections import defaultdict
-from typing import Deque, Dict, DefaultDict, List
+from typing import Deque, Dict, DefaultDict, List, Optional
 
 import numpy as np
 
 from mlagents_envs.logging_util import get_logger
 from mlagents_envs.base_env import BehaviorSpec
 from mlagents.trainers.policy import Policy
+from mlagents.trainers.ghost.snapshot_store import SnapshotStore
 
 from mlagents.trainers.trainer import Trainer
 from mlagents.trainers.trajectory import Trajectory
@@ -111,11 +112,10 @@ class GhostTrainer(Trainer):
         # steps.
         self.ghost_step: int = 0
 
-        # A list of dicts from brain name to a single snapshot for this trainer's policies
-        self.policy_snapshots: List[Dict[str, List[float]]] = []
-
-        # A dict from brain name to the current snapshot of this trainer's policies
-        self.current_policy_snapshot: Dict[str, List[float]] = {}
+        # The window of snapshots and the current weights of this trainer's policies
+        self.snapshots = SnapshotStore(
+            self.window, self_play_parameters.snapshot_spill_dir
+        )
 
         self.snapshot_counter: int = 0
 
@@ -263,7 +263,7 @@ class GhostTrainer(Trainer):
             internal_policy_queue = self._internal_policy_queues[brain_name]
             try:
                 policy = internal_policy_queue.get_nowait()
-                self.current_policy_snapshot[brain_name] = policy.get_weights()
+                self.snapshots.set_current(brain_name, policy.get_weight_tensors())
             except AgentManagerQueue.Empty:
                 continue
             if (
@@ -278,7 +278,7 @@ class GhostTrainer(Trainer):
                         brain_name, next_learning_team
                     )
                     policy = self.get_policy(behavior_id)
-                    policy.load_weights(self.current_policy_snapshot[brain_name])
+                    self.snapshots.load(brain_name, None, policy)
                     name_to_policy_queue[brain_name].put(policy)
 
         # CASE 2: Current learning team is managed by this GhostTrainer.
@@ -300,7 +300,7 @@ class GhostTrainer(Trainer):
             for brain_name in name_to_policy_queue:
                 behavior_id = create_name_behavior_id(brain_name, next_learning_team)
                 policy = self.get_policy(behavior_id)
-                policy.load_weights(self.current_policy_snapshot[brain_name])
+                self.snapshots.load(brain_name, None, policy)
                 name_to_policy_queue[brain_name].put(policy)
 
         # Note save and swap should be on different step counters.
@@ -357,11 +357,12 @@ class GhostTrainer(Trainer):
                 parsed_behavior_id, behavior_spec
             )
             self.trainer.add_policy(parsed_behavior_id, internal_trainer_policy)
-            self.current_policy_snapshot[
-                parsed_behavior_id.brain_name
-            ] = internal_trainer_policy.get_weights()
+            self.snapshots.set_current(
+                parsed_behavior_id.brain_name,
+                internal_trainer_policy.get_weight_tensors(),
+            )
 
-            policy.load_weights(internal_trainer_policy.get_weights())
+            self.snapshots.load(parsed_behavior_id.brain_name, None, policy)
             self._save_snapshot()  # Need to save after trainer initializes policy
             self._learning_team = self.controller.get_learning_team
             self.wrapped_trainer_team = team_id
@@ -394,20 +395,10 @@ class GhostTrainer(Trainer):
 
     def _save_snapshot(self) -> None:
         """
-        Saves a snapshot of the current weights of the policy and maintains the policy_snapshots
+        Saves a snapshot of the current weights of the policy and maintains the snapshots
         according to the window size
         """
-        for brain_name in self.current_policy_snapshot:
-            current_snapshot_for_brain_name = self.current_policy_snapshot[brain_name]
-
-            try:
-                self.policy_snapshots[self.snapshot_counter][
-                    brain_name
-                ] = current_snapshot_for_brain_name
-            except IndexError:
-                self.policy_snapshots.append(
-                    {brain_name: current_snapshot_for_brain_name}
-                )
+        self.snapshots.save(self.snapshot_counter)
         self.policy_elos[self.snapshot_counter] = self.current_elo
         self.snapshot_counter = (self.snapshot_counter + 1) % self.window
 
@@ -420,10 +411,10 @@ class GhostTrainer(Trainer):
             if team_id == self._learning_team:
                 continue
             elif np.random.uniform() < (1 - self.play_against_latest_model_ratio):
-                x = np.random.randint(len(self.policy_snapshots))
-                snapshot = self.policy_snapshots[x]
+                x = np.random.randint(self.snapshots.num_snapshots)
+                snapshot: Optional[int] = x
             else:
-                snapshot = self.current_policy_snapshot
+                snapshot = None
                 x = "current"
 
             self.current_opponent = -1 if x == "current" else x
@@ -431,7 +422,7 @@ class GhostTrainer(Trainer):
             for brain_name in self._team_to_name_to_policy_queue[team_id]:
                 behavior_id = create_name_behavior_id(brain_name, team_id)
                 policy = self.get_policy(behavior_id)
-                policy.load_weights(snapshot[brain_name])
+                self.snapshots.load(brain_name, snapshot, policy)
                 name_to_policy_queue[brain_name].put(policy)
                 logger.debug(
                     "Step {}: Swapping snapshot {} to id {} with team {} learning".format(
@@ -30,6 +30,9 @@ from mlagents_envs.timers import (
     hierarchical_timer,
     get_timer_tree,
     add_metadata as add_timer_metadata,
+    set_sample_rate as set_timer_sample_rate,
+    write_chrome_trace,
+    write_folded_stacks,
 )
 from mlagents_envs import logging_util
 from mlagents.plugins.stats_writer import register_stats_writer_plugins
@@ -86,6 +89,8 @@ def run_training(run_seed: int, options: RunOptions, num_areas: int) -> None:
             setup_init_path(options.behaviors, checkpoint_settings.maybe_init_path)
 
         # Configure Tensorboard Writers and StatsReporter
+        StatsReporter.set_streaming_aggregation(options.streaming_stats)
+        set_timer_sample_rate(options.timer_sample_rate)
         stats_writers = register_stats_writer_plugins(options)
         for sw in stats_writers:
             StatsReporter.add_writer(sw)
@@ -160,6 +165,8 @@ def write_timing_tree(output_dir: str) -> None:
     try:
         with open(timing_path, "w") as f:
             json.dump(get_timer_tree(), f, indent=4)
+        write_chrome_trace(os.path.join(output_dir, "timers_trace.json"))
+        write_folded_stacks(os.path.join(output_dir, "timers.folded"))
     except FileNotFoundError:
         logger.warning(
             f"Unable to save to {timing_path}. Make sure the directory exists"
@@ -190,6 +197,8 @@ def create_environment_factory(
             additional_args=env_args,
             side_channels=side_channels,
             log_folder=log_folder,
+            # The trainer scales uint8 visual observations in the encoders.
+            keep_uint8_observations=True,
         )
 
     return create_unity_environment
@@ -0,0 +1,83 @@
+from typing import Dict, List, NamedTuple, Optional, Sequence, Set, Tuple
+
+import numpy as np
+
+from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.trajectory import ObsUtil
+
+
+class Moments(NamedTuple):
+    """
+    The number of samples, the mean and the sum of squared deviations from the mean (M2) of a
+    batch of observations, per observation feature.
+    """
+
+    count: int
+    mean: np.ndarray
+    m2: np.ndarray
+
+    @staticmethod
+    def from_array(array: np.ndarray) -> "Moments":
+        array = np.asarray(array, dtype=np.float64)
+        if len(array) == 0:
+            return Moments(0, np.zeros(array.shape[1:]), np.zeros(array.shape[1:]))
+        mean = array.mean(axis=0)
+        return Moments(len(array), mean, np.square(array - mean).sum(axis=0))
+
+    def merge(self, other: "Moments") -> "Moments":
+        """
+        Combines the moments of two batches with the parallel formula of Chan et al., which
+        stays accurate when the batches have very different means or sizes.
+        """
+        if other.count == 0:
+            return self
+        if self.count == 0:
+            return other
+        count = self.count + other.count
+        delta = other.mean - self.mean
+        mean = self.mean + delta * (other.count / count)
+        m2 = self.m2 + other.m2 + np.square(delta) * (self.count * other.count / count)
+        return Moments(count, mean, m2)
+
+
+class ObservationMoments:
+    """
+    The Moments of the observations of a batch of trajectories, shared by all the Normalizers
+    the batch updates (those of the actor, of the critic...). The moments of an observation
+    are computed the first time a Normalizer asks for them, with one pass over the
+    observations, and each Normalizer receives them at most once, even when two networks share
+    it (e.g. with a shared critic).
+    """
+
+    def __init__(self, buffers: Sequence[AgentBuffer]):
+        self._buffers = list(buffers)
+        self._moments: Dict[int, Moments] = {}
+        self._delivered: Set[Tuple[int, int]] = set()
+
+    def get(self, index: int) -> Moments:
+        """
+        :return: The Moments of the observation at index, over all the buffers.
+        """
+        moments = self._moments.get(index)
+        if moments is None:
+            batches: List[Moments] = [
+                Moments.from_array(buffer[ObsUtil.get_name_at(index)])
+                for buffer in self._buffers
+                if buffer.num_experiences > 0
+            ]
+            moments = batches[0] if batches else Moments(0, np.zeros(0), np.zeros(0))
+            for batch in batches[1:]:
+                moments = moments.merge(batch)
+            self._moments[index] = moments
+        return moments
+
+    def take(self, index: int, normalizer: object) -> Optional[Moments]:
+        """
+        :return: The Moments of the observation at index for normalizer, or None if normalizer
+            already received them.
+        """
+        key = (index, id(normalizer))
+        if key in self._delivered:
+            return None
+        self._delivered.add(key)
+        return self.get(index)
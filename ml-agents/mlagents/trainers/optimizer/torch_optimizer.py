@@ -1,9 +1,11 @@
+import copy
 from typing import Dict, Optional, Tuple, List
 from mlagents.torch_utils import torch
 import numpy as np
 from collections import defaultdict
 
 from mlagents.trainers.buffer import AgentBuffer, AgentBufferField
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.trajectory import ObsUtil
 from mlagents.trainers.torch.components.bc.module import BCModule
 from mlagents.trainers.torch.components.reward_providers import create_reward_provider
@@ -32,6 +34,11 @@ class TorchOptimizer(Optimizer):
         self.bc_module: Optional[BCModule] = None
         self.create_reward_signals(trainer_settings.reward_signals)
         self.critic_memory_dict: Dict[str, torch.Tensor] = {}
+        # With a TrainerPipeline, the values of new trajectories are estimated with a
+        # copy of the critic while the critic is updated. The normalization updates made
+        # with the copy are kept until the update stage applies them to the models.
+        self._estimation_critic: Optional[torch.nn.Module] = None
+        self._deferred_moments: List[ObservationMoments] = []
         if trainer_settings.behavioral_cloning is not None:
             self.bc_module = BCModule(
                 self.policy,
@@ -48,6 +55,70 @@ class TorchOptimizer(Optimizer):
     def update(self, batch: AgentBuffer, num_sequences: int) -> Dict[str, float]:
         pass
 
+    @property
+    def estimation_critic(self):
+        """
+        The critic that estimates the values of new trajectories: the copy made by
+        copy_critic_for_estimation if there is one, otherwise the critic itself.
+        """
+        if self._estimation_critic is not None:
+            return self._estimation_critic
+        return self.critic
+
+    def copy_critic_for_estimation(self) -> None:
+        """
+        Makes the value estimates use a copy of the critic, so that they can run while
+        the critic is updated on another thread. The copy only changes through
+        load_estimation_critic and update_normalization.
+        """
+        self._estimation_critic = copy.deepcopy(self.critic)
+        for param in self._estimation_critic.parameters():
+            param.requires_grad_(False)
+
+    def critic_state(self) -> Dict[str, torch.Tensor]:
+        """
+        :return: A copy of the weights and normalization statistics of the critic, to be
+            loaded into the estimation copy with load_estimation_critic.
+        """
+        return {
+            name: tensor.detach().clone()
+            for name, tensor in self.critic.state_dict().items()
+        }
+
+    def load_estimation_critic(self, state: Dict[str, torch.Tensor]) -> None:
+        """
+        Loads a state returned by critic_state into the copy of the critic.
+        """
+        if self._estimation_critic is not None:
+            self._estimation_critic.load_state_dict(state)
+
+    def update_normalization(self, moments: ObservationMoments) -> None:
+        """
+        Updates the normalizers with the moments of the observations of new
+        trajectories. With a copy of the critic, only the copy is updated, and the
+        moments are kept for take_deferred_normalization.
+        """
+        if self._estimation_critic is None:
+            self.apply_normalization(moments)
+        else:
+            self._estimation_critic.update_normalization(moments)
+            self._deferred_moments.append(moments)
+
+    def take_deferred_normalization(self) -> List[ObservationMoments]:
+        """
+        :return: The moments that update_normalization only applied to the copy of the
+            critic since the last call. They must be passed to apply_normalization.
+        """
+        moments, self._deferred_moments = self._deferred_moments, []
+        return moments
+
+    def apply_normalization(self, moments: ObservationMoments) -> None:
+        """
+        Updates the normalizers of the policy and of the critic.
+        """
+        self.policy.update_normalization(moments)
+        self.critic.update_normalization(moments)
+
     def create_reward_signals(
         self, reward_signal_configs: Dict[RewardSignalType, RewardSignalSettings]
     ) -> None:
@@ -96,7 +167,7 @@ class TorchOptimizer(Optimizer):
 
             for _obs in tensor_obs:
                 seq_obs.append(_obs[start:end])
-            values, _mem = self.critic.critic_pass(
+            values, _mem = self.estimation_critic.critic_pass(
                 seq_obs, _mem, sequence_length=self.policy.sequence_length
             )
             for signal_name, _val in values.items():
@@ -116,7 +187,7 @@ class TorchOptimizer(Optimizer):
             for _ in range(leftover_seq_len):
                 all_next_memories.append(ModelUtils.to_numpy(_mem.squeeze()))
 
-            last_values, _mem = self.critic.critic_pass(
+            last_values, _mem = self.estimation_critic.critic_pass(
                 seq_obs, _mem, sequence_length=leftover_seq_len
             )
             for signal_name, _val in last_values.items():
@@ -154,16 +225,16 @@ class TorchOptimizer(Optimizer):
             memory = self.critic_memory_dict[agent_id]
         else:
             memory = (
-                torch.zeros((1, 1, self.critic.memory_size))
+                torch.zeros((1, 1, self.estimation_critic.memory_size))
                 if self.policy.use_recurrent
                 else None
             )
 
         # Convert to tensors
         current_obs = [
-            ModelUtils.list_to_tensor(obs) for obs in ObsUtil.from_buffer(batch, n_obs)
+            ModelUtils.obs_to_tensor(obs) for obs in ObsUtil.from_buffer(batch, n_obs)
         ]
-        next_obs = [ModelUtils.list_to_tensor(obs) for obs in next_obs]
+        next_obs = [ModelUtils.obs_to_tensor(obs) for obs in next_obs]
 
         next_obs = [obs.unsqueeze(0) for obs in next_obs]
 
@@ -179,14 +250,14 @@ class TorchOptimizer(Optimizer):
                     next_memory,
                 ) = self._evaluate_by_sequence(current_obs, memory)
             else:
-                value_estimates, next_memory = self.critic.critic_pass(
+                value_estimates, next_memory = self.estimation_critic.critic_pass(
                     current_obs, memory, sequence_length=batch.num_experiences
                 )
 
         # Store the memory for the next trajectory. This should NOT have a gradient.
         self.critic_memory_dict[agent_id] = next_memory
 
-        next_value_estimate, _ = self.critic.critic_pass(
+        next_value_estimate, _ = self.estimation_critic.critic_pass(
             next_obs, next_memory, sequence_length=1
         )
 
@@ -201,3 +272,66 @@ class TorchOptimizer(Optimizer):
             if agent_id in self.critic_memory_dict:
                 self.critic_memory_dict.pop(agent_id)
         return value_estimates, next_value_estimate, all_next_memories
+
+    def get_batched_trajectory_value_estimates(
+        self,
+        batches: List[AgentBuffer],
+        all_next_obs: List[List[np.ndarray]],
+        dones: List[bool],
+    ) -> List[
+        Tuple[
+            Dict[str, np.ndarray], Dict[str, np.ndarray], Optional[AgentBufferField]
+        ]
+    ]:
+        """
+        Get value estimates for several trajectories, like get_trajectory_value_estimates.
+        Without memories, the critic is run once on the observations and next observations of
+        all of the trajectories. With memories, each trajectory is evaluated on its own.
+        :param batches: The AgentBuffers of the trajectories.
+        :param all_next_obs: The next observation of each trajectory.
+        :param dones: Whether each trajectory is terminal.
+        :returns: The result of get_trajectory_value_estimates for each trajectory.
+        """
+        if self.policy.use_recurrent or len(batches) <= 1:
+            return [
+                self.get_trajectory_value_estimates(batch, next_obs, done)
+                for batch, next_obs, done in zip(batches, all_next_obs, dones)
+            ]
+        n_obs = len(self.policy.behavior_spec.observation_specs)
+        all_current_obs = [ObsUtil.from_buffer(batch, n_obs) for batch in batches]
+        # The observations of all trajectories, followed by one next observation per trajectory.
+        stacked_obs = [
+            ModelUtils.obs_to_tensor(
+                np.concatenate(
+                    [np.asarray(current_obs[i]) for current_obs in all_current_obs]
+                    + [np.asarray(next_obs[i])[np.newaxis] for next_obs in all_next_obs]
+                )
+            )
+            for i in range(n_obs)
+        ]
+        total_length = sum(batch.num_experiences for batch in batches)
+        with torch.no_grad():
+            stacked_estimates, _ = self.estimation_critic.critic_pass(
+                stacked_obs, None, sequence_length=total_length + len(batches)
+            )
+        estimates = {
+            name: ModelUtils.to_numpy(estimate)
+            for name, estimate in stacked_estimates.items()
+        }
+
+        results = []
+        start = 0
+        for i, (batch, done) in enumerate(zip(batches, dones)):
+            end = start + batch.num_experiences
+            value_estimates = {name: v[start:end] for name, v in estimates.items()}
+            next_value_estimate: Dict[str, np.ndarray] = {
+                name: v[total_length + i : total_length + i + 1]
+                for name, v in estimates.items()
+            }
+            if done:
+                for k in next_value_estimate:
+                    if not self.reward_signals[k].ignore_done:
+                        next_value_estimate[k] = np.zeros(1, dtype=np.float32)
+            results.append((value_estimates, next_value_estimate, None))
+            start = end
+        return results
@@ -1,4 +1,4 @@
-from typing import Dict, cast, List, Tuple, Optional
+from typing import Dict, cast, List, Tuple, Optional, Union
 from collections import defaultdict
 from mlagents.trainers.torch.components.reward_providers.extrinsic_reward_provider import (
     ExtrinsicRewardProvider,
@@ -27,8 +27,10 @@ from mlagents.trainers.torch.networks import Critic, MultiAgentNetworkBody
 from mlagents.trainers.torch.decoders import ValueHeads
 from mlagents.trainers.torch.agent_action import AgentAction
 from mlagents.trainers.torch.action_log_probs import ActionLogProbs
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 from mlagents.trainers.torch.utils import ModelUtils
 from mlagents.trainers.trajectory import ObsUtil, GroupObsUtil
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.settings import NetworkSettings
 
 from mlagents_envs.logging_util import get_logger
@@ -67,7 +69,9 @@ class TorchPOCAOptimizer(TorchOptimizer):
         def memory_size(self) -> int:
             return self.network_body.memory_size
 
-        def update_normalization(self, buffer: AgentBuffer) -> None:
+        def update_normalization(
+            self, buffer: Union[AgentBuffer, ObservationMoments]
+        ) -> None:
             self.network_body.update_normalization(buffer)
 
         def baseline(
@@ -247,13 +251,13 @@ class TorchPOCAOptimizer(TorchOptimizer):
                 batch[RewardSignalUtil.baseline_estimates_key(name)]
             )
 
+        # The observation tensors are shared with the reward providers
+        obs_cache = ObsTensorCache(batch)
         n_obs = len(self.policy.behavior_spec.observation_specs)
-        current_obs = ObsUtil.from_buffer(batch, n_obs)
-        # Convert to tensors
-        current_obs = [ModelUtils.list_to_tensor(obs) for obs in current_obs]
+        current_obs = obs_cache.obs(n_obs)
         groupmate_obs = GroupObsUtil.from_buffer(batch, n_obs)
         groupmate_obs = [
-            [ModelUtils.list_to_tensor(obs) for obs in _groupmate_obs]
+            [ModelUtils.obs_to_tensor(obs) for obs in _groupmate_obs]
             for _groupmate_obs in groupmate_obs
         ]
 
@@ -347,7 +351,7 @@ class TorchPOCAOptimizer(TorchOptimizer):
         }
 
         for reward_provider in self.reward_signals.values():
-            update_stats.update(reward_provider.update(batch))
+            update_stats.update(reward_provider.update(batch, obs_cache))
 
         return update_stats
 
@@ -428,14 +432,14 @@ class TorchPOCAOptimizer(TorchOptimizer):
                 groupmate_seq_act.append(_act)
 
             all_seq_obs = self_seq_obs + groupmate_seq_obs
-            values, _value_mem = self.critic.critic_pass(
+            values, _value_mem = self.estimation_critic.critic_pass(
                 all_seq_obs, _value_mem, sequence_length=self.policy.sequence_length
             )
             for signal_name, _val in values.items():
                 all_values[signal_name].append(_val)
 
             groupmate_obs_and_actions = (groupmate_seq_obs, groupmate_seq_act)
-            baselines, _baseline_mem = self.critic.baseline(
+            baselines, _baseline_mem = self.estimation_critic.baseline(
                 self_seq_obs[0],
                 groupmate_obs_and_actions,
                 _baseline_mem,
@@ -474,13 +478,13 @@ class TorchPOCAOptimizer(TorchOptimizer):
                 )
 
             all_seq_obs = self_seq_obs + groupmate_seq_obs
-            last_values, _value_mem = self.critic.critic_pass(
+            last_values, _value_mem = self.estimation_critic.critic_pass(
                 all_seq_obs, _value_mem, sequence_length=leftover_seq_len
             )
             for signal_name, _val in last_values.items():
                 all_values[signal_name].append(_val)
             groupmate_obs_and_actions = (groupmate_seq_obs, groupmate_seq_act)
-            last_baseline, _baseline_mem = self.critic.baseline(
+            last_baseline, _baseline_mem = self.estimation_critic.baseline(
                 self_seq_obs[0],
                 groupmate_obs_and_actions,
                 _baseline_mem,
@@ -564,15 +568,15 @@ class TorchPOCAOptimizer(TorchOptimizer):
         current_obs = ObsUtil.from_buffer(batch, n_obs)
         groupmate_obs = GroupObsUtil.from_buffer(batch, n_obs)
 
-        current_obs = [ModelUtils.list_to_tensor(obs) for obs in current_obs]
+        current_obs = [ModelUtils.obs_to_tensor(obs) for obs in current_obs]
         groupmate_obs = [
-            [ModelUtils.list_to_tensor(obs) for obs in _groupmate_obs]
+            [ModelUtils.obs_to_tensor(obs) for obs in _groupmate_obs]
             for _groupmate_obs in groupmate_obs
         ]
 
         groupmate_actions = AgentAction.group_from_buffer(batch)
 
-        next_obs = [ModelUtils.list_to_tensor(obs) for obs in next_obs]
+        next_obs = [ModelUtils.obs_to_tensor(obs) for obs in next_obs]
         next_obs = [obs.unsqueeze(0) for obs in next_obs]
 
         next_groupmate_obs = [
@@ -591,12 +595,12 @@ class TorchPOCAOptimizer(TorchOptimizer):
             _init_baseline_mem = self.baseline_memory_dict[agent_id]
         else:
             _init_value_mem = (
-                torch.zeros((1, 1, self.critic.memory_size))
+                torch.zeros((1, 1, self.estimation_critic.memory_size))
                 if self.policy.use_recurrent
                 else None
             )
             _init_baseline_mem = (
-                torch.zeros((1, 1, self.critic.memory_size))
+                torch.zeros((1, 1, self.estimation_critic.memory_size))
                 if self.policy.use_recurrent
                 else None
             )
@@ -625,11 +629,11 @@ class TorchPOCAOptimizer(TorchOptimizer):
                     _init_baseline_mem,
                 )
             else:
-                value_estimates, next_value_mem = self.critic.critic_pass(
+                value_estimates, next_value_mem = self.estimation_critic.critic_pass(
                     all_obs, _init_value_mem, sequence_length=batch.num_experiences
                 )
                 groupmate_obs_and_actions = (groupmate_obs, groupmate_actions)
-                baseline_estimates, next_baseline_mem = self.critic.baseline(
+                baseline_estimates, next_baseline_mem = self.estimation_critic.baseline(
                     current_obs,
                     groupmate_obs_and_actions,
                     _init_baseline_mem,
@@ -645,7 +649,7 @@ class TorchPOCAOptimizer(TorchOptimizer):
             else [next_obs]
         )
 
-        next_value_estimates, _ = self.critic.critic_pass(
+        next_value_estimates, _ = self.estimation_critic.critic_pass(
             all_next_obs, next_value_mem, sequence_length=1
         )
 
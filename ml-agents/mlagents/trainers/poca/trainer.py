@@ -3,19 +3,23 @@
 # Contains an implementation of MA-POCA.
 
 from collections import defaultdict
-from typing import cast, Dict
+from typing import cast, Dict, List, Tuple
 
 import numpy as np
 
 from mlagents_envs.side_channel.stats_side_channel import StatsAggregationMethod
 from mlagents_envs.logging_util import get_logger
 from mlagents_envs.base_env import BehaviorSpec
-from mlagents.trainers.buffer import BufferKey, RewardSignalUtil
+from mlagents.trainers.advantages import lambda_return_batch
+from mlagents.trainers.buffer import AgentBuffer, BufferKey, RewardSignalUtil
 from mlagents.trainers.trainer.rl_trainer import RLTrainer
 from mlagents.trainers.policy import Policy
 from mlagents.trainers.policy.torch_policy import TorchPolicy
 from mlagents.trainers.poca.optimizer_torch import TorchPOCAOptimizer
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
+from mlagents.trainers.torch.tensor_buffer import TensorAgentBuffer
 from mlagents.trainers.trajectory import Trajectory
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
 from mlagents.trainers.settings import TrainerSettings, POCASettings
 
@@ -66,14 +70,53 @@ class POCATrainer(RLTrainer):
         Processing involves calculating value and advantage targets for model updating step.
         :param trajectory: The Trajectory tuple containing the steps to be processed.
         """
-        super()._process_trajectory(trajectory)
+        self._process_trajectories([trajectory])
+
+    def _process_trajectories(self, trajectories: List[Trajectory]) -> None:
+        """
+        Processes trajectories like _process_trajectory, but computes the lambda returns and
+        advantages of all of them at once.
+        :param trajectories: The Trajectories, in the order they were received.
+        """
+        self._record_steps(trajectories)
+        for agent_buffer_trajectory in self._prepare_trajectories(trajectories):
+            self._append_to_update_buffer(agent_buffer_trajectory)
+
+    def _prepare_trajectories(
+        self, trajectories: List[Trajectory]
+    ) -> List[AgentBuffer]:
+        """
+        Converts trajectories to AgentBuffers with their value and baseline estimates, rewards,
+        advantages and returns, ready to be appended to the update buffer.
+        :param trajectories: The Trajectories, in the order they were received.
+        :return: One AgentBuffer per trajectory.
+        """
+        agent_buffer_trajectories = []
+        all_value_next = []
+        for trajectory in trajectories:
+            agent_buffer_trajectory, value_next = self._evaluate_trajectory(trajectory)
+            agent_buffer_trajectories.append(agent_buffer_trajectory)
+            all_value_next.append(value_next)
+
+        self._compute_advantages_and_returns(agent_buffer_trajectories, all_value_next)
+        return agent_buffer_trajectories
+
+    def _evaluate_trajectory(
+        self, trajectory: Trajectory
+    ) -> Tuple[AgentBuffer, Dict[str, float]]:
+        """
+        Converts a trajectory to an AgentBuffer and adds its value and baseline estimates and
+        rewards.
+        :param trajectory: The Trajectory tuple containing the steps to be processed.
+        :return: The AgentBuffer and the bootstrap value of each reward signal.
+        """
         agent_id = trajectory.agent_id  # All the agents should have the same ID
 
         agent_buffer_trajectory = trajectory.to_agentbuffer()
         # Update the normalization
         if self.is_training:
-            self.policy.update_normalization(agent_buffer_trajectory)
-            self.optimizer.critic.update_normalization(agent_buffer_trajectory)
+            moments = ObservationMoments([agent_buffer_trajectory])
+            self.optimizer.update_normalization(moments)
 
         # Get all value estimates
         (
@@ -117,9 +160,13 @@ class POCATrainer(RLTrainer):
         self.collected_group_rewards[agent_id] += np.sum(
             agent_buffer_trajectory[BufferKey.GROUP_REWARD]
         )
+        obs_cache = ObsTensorCache(agent_buffer_trajectory)
         for name, reward_signal in self.optimizer.reward_signals.items():
             evaluate_result = (
-                reward_signal.evaluate(agent_buffer_trajectory) * reward_signal.strength
+                self._evaluate_reward_signal(
+                    reward_signal, agent_buffer_trajectory, obs_cache
+                )
+                * reward_signal.strength
             )
             agent_buffer_trajectory[RewardSignalUtil.rewards_key(name)].extend(
                 evaluate_result
@@ -127,48 +174,6 @@ class POCATrainer(RLTrainer):
             # Report the reward signals
             self.collected_rewards[name][agent_id] += np.sum(evaluate_result)
 
-        # Compute lambda returns and advantage
-        tmp_advantages = []
-        for name in self.optimizer.reward_signals:
-
-            local_rewards = np.array(
-                agent_buffer_trajectory[RewardSignalUtil.rewards_key(name)].get_batch(),
-                dtype=np.float32,
-            )
-
-            baseline_estimate = agent_buffer_trajectory[
-                RewardSignalUtil.baseline_estimates_key(name)
-            ].get_batch()
-            v_estimates = agent_buffer_trajectory[
-                RewardSignalUtil.value_estimates_key(name)
-            ].get_batch()
-
-            lambd_returns = lambda_return(
-                r=local_rewards,
-                value_estimates=v_estimates,
-                gamma=self.optimizer.reward_signals[name].gamma,
-                lambd=self.hyperparameters.lambd,
-                value_next=value_next[name],
-            )
-
-            local_advantage = np.array(lambd_returns) - np.array(baseline_estimate)
-
-            agent_buffer_trajectory[RewardSignalUtil.returns_key(name)].set(
-                lambd_returns
-            )
-            agent_buffer_trajectory[RewardSignalUtil.advantage_key(name)].set(
-                local_advantage
-            )
-            tmp_advantages.append(local_advantage)
-
-        # Get global advantages
-        global_advantages = list(
-            np.mean(np.array(tmp_advantages, dtype=np.float32), axis=0)
-        )
-        agent_buffer_trajectory[BufferKey.ADVANTAGES].set(global_advantages)
-
-        self._append_to_update_buffer(agent_buffer_trajectory)
-
         # If this was a terminal trajectory, append stats and reset reward collection
         if trajectory.done_reached:
             self._update_end_episode_stats(agent_id, self.optimizer)
@@ -184,6 +189,58 @@ class POCATrainer(RLTrainer):
                 aggregation=StatsAggregationMethod.HISTOGRAM,
             )
             self.collected_group_rewards.pop(agent_id)
+        return agent_buffer_trajectory, value_next
+
+    def _compute_advantages_and_returns(
+        self,
+        agent_buffer_trajectories: List[AgentBuffer],
+        all_value_next: List[Dict[str, float]],
+    ) -> None:
+        """
+        Computes lambda returns and advantages of each reward signal for a batch of trajectories.
+        :param agent_buffer_trajectories: The AgentBuffers of the trajectories.
+        :param all_value_next: The bootstrap value of each reward signal, per trajectory.
+        """
+        all_advantages: List[List[np.ndarray]] = [[] for _ in agent_buffer_trajectories]
+        for name in self.optimizer.reward_signals:
+            local_rewards = [
+                agent_buffer_trajectory[RewardSignalUtil.rewards_key(name)].get_batch()
+                for agent_buffer_trajectory in agent_buffer_trajectories
+            ]
+            v_estimates = [
+                agent_buffer_trajectory[
+                    RewardSignalUtil.value_estimates_key(name)
+                ].get_batch()
+                for agent_buffer_trajectory in agent_buffer_trajectories
+            ]
+            all_lambd_returns = lambda_return_batch(
+                rewards=local_rewards,
+                value_estimates=v_estimates,
+                value_next=[value_next[name] for value_next in all_value_next],
+                gamma=self.optimizer.reward_signals[name].gamma,
+                lambd=self.hyperparameters.lambd,
+            )
+            for i, agent_buffer_trajectory in enumerate(agent_buffer_trajectories):
+                lambd_returns = all_lambd_returns[i]
+                baseline_estimate = agent_buffer_trajectory[
+                    RewardSignalUtil.baseline_estimates_key(name)
+                ].get_batch()
+                local_advantage = np.array(lambd_returns) - np.array(baseline_estimate)
+
+                agent_buffer_trajectory[RewardSignalUtil.returns_key(name)].set(
+                    lambd_returns
+                )
+                agent_buffer_trajectory[RewardSignalUtil.advantage_key(name)].set(
+                    local_advantage
+                )
+                all_advantages[i].append(local_advantage)
+
+        # Get global advantages
+        for i, agent_buffer_trajectory in enumerate(agent_buffer_trajectories):
+            global_advantages = list(
+                np.mean(np.array(all_advantages[i], dtype=np.float32), axis=0)
+            )
+            agent_buffer_trajectory[BufferKey.ADVANTAGES].set(global_advantages)
 
     def _is_ready_update(self):
         """
@@ -199,7 +256,7 @@ class POCATrainer(RLTrainer):
         The reward signal generators must be updated in this method at their own pace.
         """
         buffer_length = self.update_buffer.num_experiences
-        self.cumulative_returns_since_policy_update.clear()
+        self._clear_returns_since_policy_update()
 
         # Make sure batch_size is a multiple of sequence length. During training, we
         # will need to reshape the data into a batch_size x sequence_length tensor.
@@ -222,9 +279,13 @@ class POCATrainer(RLTrainer):
         )
         num_epoch = self.hyperparameters.num_epoch
         batch_update_stats = defaultdict(list)
-        for _ in range(num_epoch):
-            self.update_buffer.shuffle(sequence_length=self.policy.sequence_length)
+        if self.hyperparameters.stage_update_buffer:
+            # Convert the buffer to tensors on the training device once for all the epochs.
+            buffer: AgentBuffer = TensorAgentBuffer.from_buffer(self.update_buffer)
+        else:
             buffer = self.update_buffer
+        for _ in range(num_epoch):
+            buffer.shuffle(sequence_length=self.policy.sequence_length)
             max_num_batch = buffer_length // batch_size
             for i in range(0, max_num_batch * batch_size, batch_size):
                 update_stats = self.optimizer.update(
@@ -0,0 +1,115 @@
+from typing import Dict, Hashable, Iterator, List, Sequence
+
+import numpy as np
+
+
+class AgentSlotTable:
+    """
+    Stores per-agent rows, such as recurrent memories or previous actions, in contiguous
+    arrays (columns) indexed by a slot per agent, so that the rows of a batch of agents are
+    read and written with a single fancy-indexing operation.
+    The slots of removed agents are recycled, and the columns grow geometrically when there
+    are no free slots left.
+    """
+
+    INITIAL_CAPACITY = 64
+
+    def __init__(self, row_sizes: Sequence[int], dtype: np.dtype):
+        """
+        :param row_sizes: The size of the rows of each column.
+        :param dtype: The dtype of the columns.
+        """
+        self._slots: Dict[Hashable, int] = {}
+        self._free_slots: List[int] = []
+        self._capacity = 0
+        self.columns: List[np.ndarray] = [
+            np.zeros((0, row_size), dtype=dtype) for row_size in row_sizes
+        ]
+
+    def __len__(self) -> int:
+        return len(self._slots)
+
+    def __contains__(self, agent_id: Hashable) -> bool:
+        return agent_id in self._slots
+
+    def __iter__(self) -> Iterator[Hashable]:
+        return iter(self._slots)
+
+    @property
+    def capacity(self) -> int:
+        return self._capacity
+
+    def find(self, agent_ids: Sequence[Hashable]) -> np.ndarray:
+        """
+        :return: The slot of each agent, or -1 for agents that don't have one.
+        """
+        slots = self._slots
+        return np.fromiter(
+            (slots.get(agent_id, -1) for agent_id in agent_ids),
+            dtype=np.int64,
+            count=len(agent_ids),
+        )
+
+    def allocate(self, agent_ids: Sequence[Hashable]) -> np.ndarray:
+        """
+        Gives a slot to the agents that don't have one yet. Their rows are set to zero.
+        :return: The slot of each agent.
+        """
+        slots = self.find(agent_ids)
+        new_indices = np.flatnonzero(slots < 0)
+        if len(new_indices) == 0:
+            return slots
+        missing = len(new_indices) - len(self._free_slots)
+        if missing > 0:
+            self._grow(self._capacity + missing)
+        for index in new_indices:
+            agent_id = agent_ids[index]
+            slot = self._slots.get(agent_id)
+            if slot is None:
+                slot = self._free_slots.pop()
+                self._slots[agent_id] = slot
+            slots[index] = slot
+        new_slots = slots[new_indices]
+        for column in self.columns:
+            column[new_slots] = 0
+        return slots
+
+    def _grow(self, min_capacity: int) -> None:
+        capacity = max(min_capacity, 2 * self._capacity, self.INITIAL_CAPACITY)
+        for i, column in enumerate(self.columns):
+            new_column = np.zeros((capacity,) + column.shape[1:], dtype=column.dtype)
+            new_column[: self._capacity] = column
+            self.columns[i] = new_column
+        # Free slots are popped from the end, so the lowest ones are used first.
+        self._free_slots = (
+            list(range(capacity - 1, self._capacity - 1, -1)) + self._free_slots
+        )
+        self._capacity = capacity
+
+    def gather(self, column_index: int, agent_ids: Sequence[Hashable]) -> np.ndarray:
+        """
+        :return: The rows of the agents in the column, zeros for agents without a slot.
+        """
+        column = self.columns[column_index]
+        slots = self.find(agent_ids)
+        rows = np.zeros((len(slots),) + column.shape[1:], dtype=column.dtype)
+        known = slots >= 0
+        rows[known] = column[slots[known]]
+        return rows
+
+    def scatter(
+        self, column_index: int, agent_ids: Sequence[Hashable], rows: np.ndarray
+    ) -> None:
+        """
+        Writes the rows of the agents in the column, allocating slots as needed.
+        """
+        self.columns[column_index][self.allocate(agent_ids)] = rows
+
+    def remove(self, agent_ids: Sequence[Hashable]) -> None:
+        """
+        Frees the slots of the agents. Unknown agents are ignored.
+        """
+        for agent_id in agent_ids:
+            slot = self._slots.pop(agent_id, None)
+            if slot is not None:
+                self._free_slots.append(slot)
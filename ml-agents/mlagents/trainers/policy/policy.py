@@ -1,5 +1,5 @@
 from abc import abstractmethod
-from typing import Dict, List, Optional
+from typing import Any, Dict, List, Optional, Tuple, Union
 import numpy as np
 
 from mlagents_envs.base_env import ActionTuple, BehaviorSpec, DecisionSteps
@@ -8,7 +8,9 @@ from mlagents_envs.exception import UnityException
 from mlagents.trainers.action_info import ActionInfo
 from mlagents.trainers.settings import TrainerSettings, NetworkSettings
 from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.behavior_id_utils import GlobalAgentId
+from mlagents.trainers.policy.agent_slot_table import AgentSlotTable
 
 
 class UnityPolicyException(UnityException):
@@ -32,9 +34,6 @@ class Policy:
         self.trainer_settings = trainer_settings
         self.network_settings: NetworkSettings = trainer_settings.network_settings
         self.seed = seed
-        self.previous_action_dict: Dict[str, np.ndarray] = {}
-        self.previous_memory_dict: Dict[str, np.ndarray] = {}
-        self.memory_dict: Dict[str, np.ndarray] = {}
         self.normalize = trainer_settings.network_settings.normalize
         self.use_recurrent = self.network_settings.memory is not None
         self.h_size = self.network_settings.hidden_units
@@ -52,6 +51,11 @@ class Policy:
         if self.network_settings.memory is not None:
             self.m_size = self.network_settings.memory.memory_size
             self.sequence_length = self.network_settings.memory.sequence_length
+        # The current and previous memories of each agent.
+        self.memory_table = AgentSlotTable([self.m_size, self.m_size], np.float32)
+        self.previous_action_table = AgentSlotTable(
+            [self.behavior_spec.action_spec.discrete_size], np.int32
+        )
 
         # Non-exposed parameters; these aren't exposed because they don't have a
         # good explanation and usually shouldn't be touched.
@@ -71,35 +75,20 @@ class Policy:
     ) -> None:
         if memory_matrix is None:
             return
-
-        # Pass old memories into previous_memory_dict
-        for agent_id in agent_ids:
-            if agent_id in self.memory_dict:
-                self.previous_memory_dict[agent_id] = self.memory_dict[agent_id]
-
-        for index, agent_id in enumerate(agent_ids):
-            self.memory_dict[agent_id] = memory_matrix[index, :]
+        # The rows of new agents are zeros, so their previous memories stay zeros.
+        slots = self.memory_table.allocate(agent_ids)
+        memories, previous_memories = self.memory_table.columns
+        previous_memories[slots] = memories[slots]
+        memories[slots] = memory_matrix
 
     def retrieve_memories(self, agent_ids: List[GlobalAgentId]) -> np.ndarray:
-        memory_matrix = np.zeros((len(agent_ids), self.m_size), dtype=np.float32)
-        for index, agent_id in enumerate(agent_ids):
-            if agent_id in self.memory_dict:
-                memory_matrix[index, :] = self.memory_dict[agent_id]
-        return memory_matrix
+        return self.memory_table.gather(0, agent_ids)
 
     def retrieve_previous_memories(self, agent_ids: List[GlobalAgentId]) -> np.ndarray:
-        memory_matrix = np.zeros((len(agent_ids), self.m_size), dtype=np.float32)
-        for index, agent_id in enumerate(agent_ids):
-            if agent_id in self.previous_memory_dict:
-                memory_matrix[index, :] = self.previous_memory_dict[agent_id]
-        return memory_matrix
+        return self.memory_table.gather(1, agent_ids)
 
     def remove_memories(self, agent_ids: List[GlobalAgentId]) -> None:
-        for agent_id in agent_ids:
-            if agent_id in self.memory_dict:
-                self.memory_dict.pop(agent_id)
-            if agent_id in self.previous_memory_dict:
-                self.previous_memory_dict.pop(agent_id)
+        self.memory_table.remove(agent_ids)
 
     def make_empty_previous_action(self, num_agents: int) -> np.ndarray:
         """
@@ -114,26 +103,32 @@ class Policy:
     def save_previous_action(
         self, agent_ids: List[GlobalAgentId], action_tuple: ActionTuple
     ) -> None:
-        for index, agent_id in enumerate(agent_ids):
-            self.previous_action_dict[agent_id] = action_tuple.discrete[index, :]
+        self.previous_action_table.scatter(0, agent_ids, action_tuple.discrete)
 
     def retrieve_previous_action(self, agent_ids: List[GlobalAgentId]) -> np.ndarray:
-        action_matrix = self.make_empty_previous_action(len(agent_ids))
-        for index, agent_id in enumerate(agent_ids):
-            if agent_id in self.previous_action_dict:
-                action_matrix[index, :] = self.previous_action_dict[agent_id]
-        return action_matrix
+        return self.previous_action_table.gather(0, agent_ids)
 
     def remove_previous_action(self, agent_ids: List[GlobalAgentId]) -> None:
-        for agent_id in agent_ids:
-            if agent_id in self.previous_action_dict:
-                self.previous_action_dict.pop(agent_id)
+        self.previous_action_table.remove(agent_ids)
 
     def get_action(
         self, decision_requests: DecisionSteps, worker_id: int = 0
     ) -> ActionInfo:
         raise NotImplementedError
 
+    def get_action_batch(
+        self, requests: List[Tuple[DecisionSteps, int]]
+    ) -> List[ActionInfo]:
+        """
+        Decides actions for the DecisionSteps of several workers at once.
+        :param requests: A list of (DecisionSteps, worker_id) pairs.
+        :return: One ActionInfo per request, in the same order.
+        """
+        return [
+            self.get_action(decision_requests, worker_id)
+            for decision_requests, worker_id in requests
+        ]
+
     @staticmethod
     def check_nan_action(action: Optional[ActionTuple]) -> None:
         # Fast NaN check on the action
@@ -145,7 +140,9 @@ class Policy:
                 raise RuntimeError("Continuous NaN action detected.")
 
     @abstractmethod
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         pass
 
     @abstractmethod
@@ -164,6 +161,14 @@ class Policy:
     def get_weights(self) -> List[np.ndarray]:
         return []
 
+    @abstractmethod
+    def get_weight_tensors(self) -> Dict[str, Any]:
+        """
+        Returns the tensors of the weights of the policy, which share their memory with it:
+        writing to them changes the policy.
+        """
+        return {}
+
     @abstractmethod
     def init_load_weights(self) -> None:
         pass
@@ -1,4 +1,4 @@
-from typing import Any, Dict, List, Tuple, Optional
+from typing import Any, Dict, List, Tuple, Optional, Union
 import numpy as np
 from mlagents.torch_utils import torch, default_device
 import copy
@@ -6,16 +6,18 @@ import copy
 from mlagents.trainers.action_info import ActionInfo
 from mlagents.trainers.behavior_id_utils import get_global_agent_id
 from mlagents.trainers.policy import Policy
-from mlagents_envs.base_env import DecisionSteps, BehaviorSpec
+from mlagents_envs.base_env import ActionTuple, DecisionSteps, BehaviorSpec
 from mlagents_envs.timers import timed
 
 from mlagents.trainers.settings import TrainerSettings
 from mlagents.trainers.torch.networks import SimpleActor, SharedActorCritic, GlobalSteps
+from mlagents.trainers.torch.compiled_inference import CompiledActor
 
 from mlagents.trainers.torch.utils import ModelUtils
 from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.torch.agent_action import AgentAction
-from mlagents.trainers.torch.action_log_probs import ActionLogProbs
+from mlagents.trainers.torch.action_log_probs import ActionLogProbs, LogProbsTuple
 
 EPSILON = 1e-7  # Small value to avoid divide by zero
 
@@ -84,6 +86,14 @@ class TorchPolicy(Policy):
 
         self.actor.to(default_device())
         self._clip_action = not tanh_squash
+        self._compiled_actor: Optional[CompiledActor] = None
+        if trainer_settings.compiled_inference:
+            self._compiled_actor = CompiledActor(
+                self.actor,
+                len(self.behavior_spec.observation_specs),
+                has_masks=self.behavior_spec.action_spec.discrete_size > 0,
+                has_memories=self.use_recurrent,
+            )
 
     @property
     def export_memory_size(self) -> int:
@@ -104,11 +114,13 @@ class TorchPolicy(Policy):
                 )
         return mask
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         """
         If this policy normalizes vector observations, this will update the norm values in the graph.
         :param buffer: The buffer with the observations to add to the running estimate
-        of the distribution.
+        of the distribution, or the ObservationMoments of those observations.
         """
 
         if self.normalize:
@@ -157,6 +169,10 @@ class TorchPolicy(Policy):
         :param decision_requests: DecisionStep object containing inputs.
         :return: Outputs from network as defined by self.inference_dict.
         """
+        if self._compiled_actor is not None:
+            run_out = self._evaluate_compiled(decision_requests, global_agent_ids)
+            if run_out is not None:
+                return run_out
         obs = decision_requests.obs
         masks = self._extract_masks(decision_requests)
         tensor_obs = [torch.as_tensor(np_ob) for np_ob in obs]
@@ -183,6 +199,55 @@ class TorchPolicy(Policy):
             run_out["memory_out"] = ModelUtils.to_numpy(memories).squeeze(0)
         return run_out
 
+    def _evaluate_compiled(
+        self, decision_requests: DecisionSteps, global_agent_ids: List[str]
+    ) -> Optional[Dict[str, Any]]:
+        """
+        Same as evaluate, with the traced graphs of the CompiledActor.
+        :return: The outputs of the policy, or None if the actor couldn't be traced.
+        """
+        masks = None
+        if self.behavior_spec.action_spec.discrete_size > 0:
+            if decision_requests.action_mask is not None:
+                masks = 1 - np.concatenate(decision_requests.action_mask, axis=1)
+            else:
+                num_discrete_flat = np.sum(
+                    self.behavior_spec.action_spec.discrete_branches
+                )
+                masks = np.ones((len(decision_requests), num_discrete_flat))
+        memories = None
+        if self.use_recurrent:
+            memories = self.retrieve_memories(global_agent_ids)
+        assert self._compiled_actor is not None
+        outputs = self._compiled_actor(decision_requests.obs, masks, memories)
+        if outputs is None:
+            return None
+
+        continuous_action = ModelUtils.to_numpy(outputs.continuous_action)
+        discrete_action = ModelUtils.to_numpy(outputs.discrete_action)
+        env_continuous_action = continuous_action
+        if self._clip_action:
+            env_continuous_action = np.clip(continuous_action, -3, 3) / 3
+        run_out: Dict[str, Any] = {
+            "action": ActionTuple(
+                continuous=continuous_action, discrete=discrete_action
+            ),
+            # This is the clipped action which is not saved to the buffer
+            # but is exclusively sent to the environment.
+            "env_action": ActionTuple(
+                continuous=env_continuous_action, discrete=discrete_action
+            ),
+            "log_probs": LogProbsTuple(
+                continuous=ModelUtils.to_numpy(outputs.continuous_log_probs),
+                discrete=ModelUtils.to_numpy(outputs.discrete_log_probs),
+            ),
+            "entropy": ModelUtils.to_numpy(outputs.entropy),
+            "learning_rate": 0.0,
+        }
+        if self.use_recurrent:
+            run_out["memory_out"] = ModelUtils.to_numpy(outputs.memories).squeeze(0)
+        return run_out
+
     def get_action(
         self, decision_requests: DecisionSteps, worker_id: int = 0
     ) -> ActionInfo:
@@ -211,6 +276,103 @@ class TorchPolicy(Policy):
             agent_ids=list(decision_requests.agent_id),
         )
 
+    def get_action_batch(
+        self, requests: List[Tuple[DecisionSteps, int]]
+    ) -> List[ActionInfo]:
+        """
+        Decides actions for the DecisionSteps of several workers with a single forward pass.
+        :param requests: A list of (DecisionSteps, worker_id) pairs.
+        :return: One ActionInfo per request, in the same order.
+        """
+        non_empty = [
+            (decision_requests, worker_id)
+            for decision_requests, worker_id in requests
+            if len(decision_requests) > 0
+        ]
+        if len(non_empty) <= 1:
+            return super().get_action_batch(requests)
+
+        global_agent_ids = [
+            get_global_agent_id(worker_id, int(agent_id))
+            for decision_requests, worker_id in non_empty
+            for agent_id in decision_requests.agent_id
+        ]
+        run_out = self.evaluate(
+            self._concatenate_decision_steps([steps for steps, _ in non_empty]),
+            global_agent_ids,
+        )
+        self.save_memories(global_agent_ids, run_out.get("memory_out"))
+        self.check_nan_action(run_out.get("action"))
+
+        action_infos: List[ActionInfo] = []
+        start = 0
+        for decision_requests, _ in requests:
+            if len(decision_requests) == 0:
+                action_infos.append(ActionInfo.empty())
+                continue
+            end = start + len(decision_requests)
+            request_out = self._slice_run_out(run_out, start, end)
+            action_infos.append(
+                ActionInfo(
+                    action=request_out.get("action"),
+                    env_action=request_out.get("env_action"),
+                    outputs=request_out,
+                    agent_ids=list(decision_requests.agent_id),
+                )
+            )
+            start = end
+        return action_infos
+
+    @staticmethod
+    def _concatenate_decision_steps(
+        all_decision_steps: List[DecisionSteps],
+    ) -> DecisionSteps:
+        action_mask = None
+        masks = [steps.action_mask for steps in all_decision_steps]
+        if any(mask is not None for mask in masks):
+            first_mask = next(mask for mask in masks if mask is not None)
+            branches = [branch.shape[1] for branch in first_mask]
+            action_mask = [
+                np.concatenate(
+                    [
+                        mask[i]
+                        if mask is not None
+                        else np.zeros((len(steps), size), dtype=bool)
+                        for mask, steps in zip(masks, all_decision_steps)
+                    ]
+                )
+                for i, size in enumerate(branches)
+            ]
+        return DecisionSteps(
+            [
+                np.concatenate([steps.obs[i] for steps in all_decision_steps])
+                for i in range(len(all_decision_steps[0].obs))
+            ],
+            np.concatenate([steps.reward for steps in all_decision_steps]),
+            np.concatenate([steps.agent_id for steps in all_decision_steps]),
+            action_mask,
+            np.concatenate([steps.group_id for steps in all_decision_steps]),
+            np.concatenate([steps.group_reward for steps in all_decision_steps]),
+        )
+
+    @staticmethod
+    def _slice_run_out(run_out: Dict[str, Any], start: int, end: int) -> Dict[str, Any]:
+        """
+        Takes the outputs of the agents in [start, end) from the outputs of a batched evaluate().
+        """
+        sliced: Dict[str, Any] = {}
+        for key, value in run_out.items():
+            if isinstance(value, (ActionTuple, LogProbsTuple)):
+                sliced[key] = type(value)(
+                    continuous=value.continuous[start:end],
+                    discrete=value.discrete[start:end],
+                )
+            elif isinstance(value, np.ndarray) and value.ndim > 0:
+                sliced[key] = value[start:end]
+            else:
+                sliced[key] = value
+        return sliced
+
     def get_current_step(self):
         """
         Gets current model step.
@@ -236,6 +398,8 @@ class TorchPolicy(Policy):
 
     def load_weights(self, values: List[np.ndarray]) -> None:
         self.actor.load_state_dict(values)
+        if self._compiled_actor is not None:
+            self._compiled_actor.reset()
 
     def init_load_weights(self) -> None:
         pass
@@ -243,5 +407,10 @@ class TorchPolicy(Policy):
     def get_weights(self) -> List[np.ndarray]:
         return copy.deepcopy(self.actor.state_dict())
 
+    def get_weight_tensors(self) -> Dict[str, torch.Tensor]:
+        # Copying values into the tensors of the state dict updates the actor in place, so
+        # the graphs of the compiled actor stay valid.
+        return self.actor.state_dict()
+
     def get_modules(self):
         return {"Policy": self.actor, "global_step": self.global_step}
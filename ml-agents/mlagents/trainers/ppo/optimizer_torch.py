@@ -10,8 +10,8 @@ from mlagents.trainers.settings import TrainerSettings, PPOSettings
 from mlagents.trainers.torch.networks import ValueNetwork
 from mlagents.trainers.torch.agent_action import AgentAction
 from mlagents.trainers.torch.action_log_probs import ActionLogProbs
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 from mlagents.trainers.torch.utils import ModelUtils
-from mlagents.trainers.trajectory import ObsUtil
 
 
 class TorchPPOOptimizer(TorchOptimizer):
@@ -98,10 +98,10 @@ class TorchPPOOptimizer(TorchOptimizer):
                 batch[RewardSignalUtil.returns_key(name)]
             )
 
+        # The observation tensors are shared with the reward providers
+        obs_cache = ObsTensorCache(batch)
         n_obs = len(self.policy.behavior_spec.observation_specs)
-        current_obs = ObsUtil.from_buffer(batch, n_obs)
-        # Convert to tensors
-        current_obs = [ModelUtils.list_to_tensor(obs) for obs in current_obs]
+        current_obs = obs_cache.obs(n_obs)
 
         act_masks = ModelUtils.list_to_tensor(batch[BufferKey.ACTION_MASK])
         actions = AgentAction.from_buffer(batch)
@@ -171,7 +171,7 @@ class TorchPPOOptimizer(TorchOptimizer):
         }
 
         for reward_provider in self.reward_signals.values():
-            update_stats.update(reward_provider.update(batch))
+            update_stats.update(reward_provider.update(batch, obs_cache))
 
         return update_stats
 
@@ -3,18 +3,27 @@
 # Contains an implementation of PPO as described in: https://arxiv.org/abs/1707.06347
 
 from collections import defaultdict
-from typing import cast
+from typing import cast, Dict, List, Optional
 
 import numpy as np
 
 from mlagents_envs.logging_util import get_logger
 from mlagents_envs.base_env import BehaviorSpec
-from mlagents.trainers.buffer import BufferKey, RewardSignalUtil
+from mlagents.trainers.advantages import get_gae_batch
+from mlagents.trainers.buffer import (
+    AgentBuffer,
+    AgentBufferField,
+    BufferKey,
+    RewardSignalUtil,
+)
 from mlagents.trainers.trainer.rl_trainer import RLTrainer
 from mlagents.trainers.policy import Policy
 from mlagents.trainers.policy.torch_policy import TorchPolicy
 from mlagents.trainers.ppo.optimizer_torch import TorchPPOOptimizer
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
+from mlagents.trainers.torch.tensor_buffer import TensorAgentBuffer
 from mlagents.trainers.trajectory import Trajectory
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
 from mlagents.trainers.settings import TrainerSettings, PPOSettings
 
@@ -64,28 +73,82 @@ class PPOTrainer(RLTrainer):
         Processing involves calculating value and advantage targets for model updating step.
         :param trajectory: The Trajectory tuple containing the steps to be processed.
         """
-        super()._process_trajectory(trajectory)
-        agent_id = trajectory.agent_id  # All the agents should have the same ID
+        self._process_trajectories([trajectory])
+
+    def _process_trajectories(self, trajectories: List[Trajectory]) -> None:
+        """
+        Processes trajectories like _process_trajectory, but computes the value estimates,
+        advantages and returns of all of them at once.
+        :param trajectories: The Trajectories, in the order they were received.
+        """
+        self._record_steps(trajectories)
+        for agent_buffer_trajectory in self._prepare_trajectories(trajectories):
+            self._append_to_update_buffer(agent_buffer_trajectory)
+
+    def _prepare_trajectories(
+        self, trajectories: List[Trajectory]
+    ) -> List[AgentBuffer]:
+        """
+        Converts trajectories to AgentBuffers with their value estimates, rewards, advantages
+        and returns, ready to be appended to the update buffer.
+        :param trajectories: The Trajectories, in the order they were received.
+        :return: One AgentBuffer per trajectory.
+        """
+        agent_buffer_trajectories = [
+            self._convert_trajectory(trajectory) for trajectory in trajectories
+        ]
+        # Update the normalization with the moments of all the trajectories, computed once for
+        # the policy and the critic.
+        if self.is_training:
+            moments = ObservationMoments(agent_buffer_trajectories)
+            self.optimizer.update_normalization(moments)
+        all_value_estimates = self.optimizer.get_batched_trajectory_value_estimates(
+            agent_buffer_trajectories,
+            [trajectory.next_obs for trajectory in trajectories],
+            [
+                trajectory.done_reached and not trajectory.interrupted
+                for trajectory in trajectories
+            ],
+        )
+        all_value_next = []
+        for trajectory, agent_buffer_trajectory, value_estimates in zip(
+            trajectories, agent_buffer_trajectories, all_value_estimates
+        ):
+            self._evaluate_trajectory(
+                trajectory, agent_buffer_trajectory, *value_estimates
+            )
+            all_value_next.append(value_estimates[1])
+
+        self._compute_advantages_and_returns(agent_buffer_trajectories, all_value_next)
+        return agent_buffer_trajectories
 
+    def _convert_trajectory(self, trajectory: Trajectory) -> AgentBuffer:
+        """
+        Converts a trajectory to an AgentBuffer.
+        :param trajectory: The Trajectory tuple containing the steps to be processed.
+        """
         agent_buffer_trajectory = trajectory.to_agentbuffer()
         # Check if we used group rewards, warn if so.
         self._warn_if_group_reward(agent_buffer_trajectory)
+        return agent_buffer_trajectory
 
-        # Update the normalization
-        if self.is_training:
-            self.policy.update_normalization(agent_buffer_trajectory)
-            self.optimizer.critic.update_normalization(agent_buffer_trajectory)
-
-        # Get all value estimates
-        (
-            value_estimates,
-            value_next,
-            value_memories,
-        ) = self.optimizer.get_trajectory_value_estimates(
-            agent_buffer_trajectory,
-            trajectory.next_obs,
-            trajectory.done_reached and not trajectory.interrupted,
-        )
+    def _evaluate_trajectory(
+        self,
+        trajectory: Trajectory,
+        agent_buffer_trajectory: AgentBuffer,
+        value_estimates: Dict[str, np.ndarray],
+        value_next: Dict[str, np.ndarray],
+        value_memories: Optional[AgentBufferField],
+    ) -> None:
+        """
+        Adds the value estimates and rewards of a trajectory to its AgentBuffer.
+        :param trajectory: The Trajectory tuple containing the steps to be processed.
+        :param agent_buffer_trajectory: The AgentBuffer of the trajectory.
+        :param value_estimates: The value estimates, as returned by the optimizer.
+        :param value_next: The bootstrap value of each reward signal.
+        :param value_memories: The critic memories, if using memories.
+        """
+        agent_id = trajectory.agent_id  # All the agents should have the same ID
         if value_memories is not None:
             agent_buffer_trajectory[BufferKey.CRITIC_MEMORY].set(value_memories)
 
@@ -102,9 +165,13 @@ class PPOTrainer(RLTrainer):
         self.collected_rewards["environment"][agent_id] += np.sum(
             agent_buffer_trajectory[BufferKey.ENVIRONMENT_REWARDS]
         )
+        obs_cache = ObsTensorCache(agent_buffer_trajectory)
         for name, reward_signal in self.optimizer.reward_signals.items():
             evaluate_result = (
-                reward_signal.evaluate(agent_buffer_trajectory) * reward_signal.strength
+                self._evaluate_reward_signal(
+                    reward_signal, agent_buffer_trajectory, obs_cache
+                )
+                * reward_signal.strength
             )
             agent_buffer_trajectory[RewardSignalUtil.rewards_key(name)].extend(
                 evaluate_result
@@ -112,50 +179,66 @@ class PPOTrainer(RLTrainer):
             # Report the reward signals
             self.collected_rewards[name][agent_id] += np.sum(evaluate_result)
 
-        # Compute GAE and returns
-        tmp_advantages = []
-        tmp_returns = []
-        for name in self.optimizer.reward_signals:
-            bootstrap_value = value_next[name]
-
-            local_rewards = agent_buffer_trajectory[
-                RewardSignalUtil.rewards_key(name)
-            ].get_batch()
-            local_value_estimates = agent_buffer_trajectory[
-                RewardSignalUtil.value_estimates_key(name)
-            ].get_batch()
+        # If this was a terminal trajectory, append stats and reset reward collection
+        if trajectory.done_reached:
+            self._update_end_episode_stats(agent_id, self.optimizer)
 
-            local_advantage = get_gae(
+    def _compute_advantages_and_returns(
+        self,
+        agent_buffer_trajectories: List[AgentBuffer],
+        all_value_next: List[Dict[str, np.ndarray]],
+    ) -> None:
+        """
+        Computes GAE and returns of each reward signal for a batch of trajectories.
+        :param agent_buffer_trajectories: The AgentBuffers of the trajectories.
+        :param all_value_next: The bootstrap value of each reward signal, per trajectory.
+        """
+        all_advantages: List[List[np.ndarray]] = [[] for _ in agent_buffer_trajectories]
+        all_returns: List[List[np.ndarray]] = [[] for _ in agent_buffer_trajectories]
+        for name in self.optimizer.reward_signals:
+            local_rewards = [
+                agent_buffer_trajectory[RewardSignalUtil.rewards_key(name)].get_batch()
+                for agent_buffer_trajectory in agent_buffer_trajectories
+            ]
+            local_value_estimates = [
+                np.asarray(
+                    agent_buffer_trajectory[
+                        RewardSignalUtil.value_estimates_key(name)
+                    ].get_batch(),
+                    dtype=np.float32,
+                )
+                for agent_buffer_trajectory in agent_buffer_trajectories
+            ]
+            local_advantages = get_gae_batch(
                 rewards=local_rewards,
                 value_estimates=local_value_estimates,
-                value_next=bootstrap_value,
+                value_next=[value_next[name] for value_next in all_value_next],
                 gamma=self.optimizer.reward_signals[name].gamma,
                 lambd=self.hyperparameters.lambd,
             )
-            local_return = local_advantage + local_value_estimates
-            # This is later use as target for the different value estimates
-            agent_buffer_trajectory[RewardSignalUtil.returns_key(name)].set(
-                local_return
-            )
-            agent_buffer_trajectory[RewardSignalUtil.advantage_key(name)].set(
-                local_advantage
-            )
-            tmp_advantages.append(local_advantage)
-            tmp_returns.append(local_return)
+            for i, agent_buffer_trajectory in enumerate(agent_buffer_trajectories):
+                local_advantage = local_advantages[i]
+                local_return = local_advantage + local_value_estimates[i]
+                # This is later use as target for the different value estimates
+                agent_buffer_trajectory[RewardSignalUtil.returns_key(name)].set(
+                    local_return
+                )
+                agent_buffer_trajectory[RewardSignalUtil.advantage_key(name)].set(
+                    local_advantage
+                )
+                all_advantages[i].append(local_advantage)
+                all_returns[i].append(local_return)
 
         # Get global advantages
-        global_advantages = list(
-            np.mean(np.array(tmp_advantages, dtype=np.float32), axis=0)
-        )
-        global_returns = list(np.mean(np.array(tmp_returns, dtype=np.float32), axis=0))
-        agent_buffer_trajectory[BufferKey.ADVANTAGES].set(global_advantages)
-        agent_buffer_trajectory[BufferKey.DISCOUNTED_RETURNS].set(global_returns)
-
-        self._append_to_update_buffer(agent_buffer_trajectory)
-
-        # If this was a terminal trajectory, append stats and reset reward collection
-        if trajectory.done_reached:
-            self._update_end_episode_stats(agent_id, self.optimizer)
+        for i, agent_buffer_trajectory in enumerate(agent_buffer_trajectories):
+            global_advantages = list(
+                np.mean(np.array(all_advantages[i], dtype=np.float32), axis=0)
+            )
+            global_returns = list(
+                np.mean(np.array(all_returns[i], dtype=np.float32), axis=0)
+            )
+            agent_buffer_trajectory[BufferKey.ADVANTAGES].set(global_advantages)
+            agent_buffer_trajectory[BufferKey.DISCOUNTED_RETURNS].set(global_returns)
 
     def _is_ready_update(self):
         """
@@ -171,7 +254,7 @@ class PPOTrainer(RLTrainer):
         The reward signal generators must be updated in this method at their own pace.
         """
         buffer_length = self.update_buffer.num_experiences
-        self.cumulative_returns_since_policy_update.clear()
+        self._clear_returns_since_policy_update()
 
         # Make sure batch_size is a multiple of sequence length. During training, we
         # will need to reshape the data into a batch_size x sequence_length tensor.
@@ -194,9 +277,13 @@ class PPOTrainer(RLTrainer):
         )
         num_epoch = self.hyperparameters.num_epoch
         batch_update_stats = defaultdict(list)
-        for _ in range(num_epoch):
-            self.update_buffer.shuffle(sequence_length=self.policy.sequence_length)
+        if self.hyperparameters.stage_update_buffer:
+            # Convert the buffer to tensors on the training device once for all the epochs.
+            buffer: AgentBuffer = TensorAgentBuffer.from_buffer(self.update_buffer)
+        else:
             buffer = self.update_buffer
+        for _ in range(num_epoch):
+            buffer.shuffle(sequence_length=self.policy.sequence_length)
             max_num_batch = buffer_length // batch_size
             for i in range(0, max_num_batch * batch_size, batch_size):
                 update_stats = self.optimizer.update(
@@ -0,0 +1,231 @@
+from typing import NamedTuple, Optional
+
+import numpy as np
+
+# Added to the priorities so that every sequence can be sampled again
+PRIORITY_EPSILON = 1e-6
+# Weight of the maximum TD error in the priority of a sequence, the rest is the mean,
+# as in https://openreview.net/forum?id=r1lyTjAqYX
+SEQUENCE_MAX_WEIGHT = 0.9
+
+
+class SegmentTree:
+    """
+    A binary tree stored in an array, whose leaves hold one value per slot and whose inner
+    nodes hold the reduction of their children by operation, so that updating k slots and
+    reducing all of them costs O(k log n).
+    """
+
+    def __init__(self, capacity: int, operation: np.ufunc, neutral_value: float):
+        self._depth = 0
+        while 2 ** self._depth < capacity:
+            self._depth += 1
+        self._num_leaves = 2 ** self._depth
+        self._operation = operation
+        self._neutral_value = neutral_value
+        self._tree = np.full(2 * self._num_leaves, neutral_value, dtype=np.float64)
+
+    @property
+    def root(self) -> float:
+        """
+        The reduction of the values of all the slots.
+        """
+        return float(self._tree[1])
+
+    def __getitem__(self, slots: np.ndarray) -> np.ndarray:
+        return self._tree[self._num_leaves + slots]
+
+    def __setitem__(self, slots: np.ndarray, values: np.ndarray) -> None:
+        nodes = np.asarray(slots) + self._num_leaves
+        self._tree[nodes] = values
+        nodes = np.unique(nodes // 2)
+        while nodes.size > 0 and nodes[-1] >= 1:
+            self._tree[nodes] = self._operation(
+                self._tree[2 * nodes], self._tree[2 * nodes + 1]
+            )
+            if nodes[0] == 1:
+                break
+            nodes = np.unique(nodes // 2)
+
+    def clear(self, slots: np.ndarray) -> None:
+        self[slots] = self._neutral_value
+
+
+class SumTree(SegmentTree):
+    def __init__(self, capacity: int):
+        super().__init__(capacity, np.add, 0.0)
+
+    def find_prefix_sum(self, prefix_sums: np.ndarray) -> np.ndarray:
+        """
+        For each value v of prefix_sums, returns the first slot i for which the sum of the
+        values of the slots up to i is greater than v. Slots with a value of 0 are never
+        returned, unless all of them are 0.
+        """
+        prefix_sums = np.array(prefix_sums, dtype=np.float64)
+        nodes = np.ones(len(prefix_sums), dtype=np.int64)
+        for _ in range(self._depth):
+            left = self._tree[2 * nodes]
+            go_right = (prefix_sums >= left) & (self._tree[2 * nodes + 1] > 0)
+            prefix_sums -= left * go_right
+            nodes = 2 * nodes + go_right
+        return nodes - self._num_leaves
+
+
+class MinTree(SegmentTree):
+    def __init__(self, capacity: int):
+        super().__init__(capacity, np.minimum, np.inf)
+
+
+class PrioritizedSample(NamedTuple):
+    # The indices of the sampled sequences in the replay buffer
+    sequence_indices: np.ndarray
+    # The slots of the sampled sequences, to update their priorities
+    slots: np.ndarray
+    # The importance sampling weight of each sequence
+    weights: np.ndarray
+
+
+class PrioritizedReplay:
+    """
+    Prioritized experience replay (https://arxiv.org/abs/1511.05952) for the sequences of a
+    replay buffer. The priorities are kept in a sum tree to sample sequences proportionally
+    to them, and in a min tree to normalize the importance sampling weights, in O(log n).
+    The slots of the trees are a ring in the order of the replay buffer, so that appending
+    sequences and dropping the oldest ones (when the buffer is truncated or overwrites its
+    oldest experiences) doesn't move the other sequences.
+    New sequences get the highest priority seen so far, so that they are sampled at least
+    once before their TD error is known.
+    """
+
+    def __init__(
+        self, sequence_length: int = 1, alpha: float = 0.6, initial_capacity: int = 1024
+    ):
+        """
+        :param sequence_length: The length of the sequences of the replay buffer.
+        :param alpha: How much the priorities are used, 0 being uniform sampling.
+        :param initial_capacity: The initial number of sequences. The trees grow if the
+            buffer holds more sequences.
+        """
+        self.sequence_length = sequence_length
+        self.alpha = alpha
+        self._max_priority = 1.0
+        self._capacity = 0
+        self._head = 0
+        self._num_sequences = 0
+        self._allocate(max(initial_capacity, 1))
+
+    @property
+    def num_sequences(self) -> int:
+        return self._num_sequences
+
+    def _logical_slots(self, start: int, count: int) -> np.ndarray:
+        return (self._head + start + np.arange(count)) % self._capacity
+
+    def _allocate(self, capacity: int) -> None:
+        priorities: Optional[np.ndarray] = None
+        if self._num_sequences > 0:
+            priorities = self._sum_tree[self._logical_slots(0, self._num_sequences)]
+        self._capacity = capacity
+        self._head = 0
+        self._sum_tree = SumTree(capacity)
+        self._min_tree = MinTree(capacity)
+        if priorities is not None:
+            slots = np.arange(len(priorities))
+            self._sum_tree[slots] = priorities
+            self._min_tree[slots] = priorities
+
+    def append(self, num_experiences: int, num_experiences_in_buffer: int) -> None:
+        """
+        Adds the sequences of experiences appended to the replay buffer with the highest
+        priority, and drops the oldest sequences that the buffer no longer holds.
+        :param num_experiences: The number of experiences appended, before padding.
+        :param num_experiences_in_buffer: The number of experiences in the buffer after
+            appending them.
+        """
+        num_new = -(-num_experiences // self.sequence_length)
+        if self._num_sequences + num_new > self._capacity:
+            self._allocate(max(2 * self._capacity, self._num_sequences + num_new))
+        slots = self._logical_slots(self._num_sequences, num_new)
+        priority = self._max_priority ** self.alpha
+        self._sum_tree[slots] = priority
+        self._min_tree[slots] = priority
+        self._num_sequences += num_new
+        self.sync(num_experiences_in_buffer)
+
+    def sync(self, num_experiences_in_buffer: int) -> None:
+        """
+        Drops the oldest sequences that the replay buffer no longer holds.
+        :param num_experiences_in_buffer: The number of experiences in the buffer.
+        """
+        num_dropped = self._num_sequences - (
+            num_experiences_in_buffer // self.sequence_length
+        )
+        if num_dropped > 0:
+            slots = self._logical_slots(0, num_dropped)
+            self._sum_tree.clear(slots)
+            self._min_tree.clear(slots)
+            self._head = (self._head + num_dropped) % self._capacity
+            self._num_sequences -= num_dropped
+
+    def reset(self, num_experiences_in_buffer: int) -> None:
+        """
+        Gives the same priority to all the sequences of a replay buffer, e.g. after loading it.
+        """
+        self._max_priority = 1.0
+        self._num_sequences = 0
+        self._allocate(max(self._capacity, num_experiences_in_buffer))
+        self.append(num_experiences_in_buffer, num_experiences_in_buffer)
+
+    def sample(self, num_sequences: int, beta: float) -> PrioritizedSample:
+        """
+        Samples sequences proportionally to their priorities, one from each of num_sequences
+        ranges of equal total priority.
+        :param num_sequences: The number of sequences to sample.
+        :param beta: How much the importance sampling weights correct for the bias of the
+            sampling, 1 being fully.
+        """
+        total = self._sum_tree.root
+        prefix_sums = (
+            np.arange(num_sequences) + np.random.random_sample(num_sequences)
+        ) * (total / num_sequences)
+        slots = self._sum_tree.find_prefix_sum(prefix_sums)
+        # The weights are normalized by the weight of the least likely sequence,
+        # (N * P(i)) ** -beta / (N * min P) ** -beta
+        weights = (self._sum_tree[slots] / self._min_tree.root) ** -beta
+        sequence_indices = (slots - self._head) % self._capacity
+        return PrioritizedSample(sequence_indices, slots, weights.astype(np.float32))
+
+    def update_priorities(
+        self,
+        slots: np.ndarray,
+        td_errors: np.ndarray,
+        masks: Optional[np.ndarray] = None,
+    ) -> None:
+        """
+        Sets the priorities of sampled sequences from the TD errors of their experiences.
+        The priority of a sequence mixes the maximum and the mean of the absolute TD errors of
+        the experiences that aren't masked.
+        :param slots: The slots of the sequences, from PrioritizedSample.
+        :param td_errors: The TD error of each experience of the sequences.
+        :param masks: 0 for the padding experiences of the sequences.
+        """
+        errors = np.abs(np.asarray(td_errors, dtype=np.float64)).reshape(
+            len(slots), self.sequence_length
+        )
+        if self.sequence_length == 1:
+            priorities = errors[:, 0]
+        else:
+            if masks is None:
+                masks = np.ones_like(errors)
+            masks = np.asarray(masks, dtype=np.float64).reshape(errors.shape)
+            errors = errors * masks
+            mean_errors = errors.sum(axis=1) / np.maximum(masks.sum(axis=1), 1.0)
+            priorities = (
+                SEQUENCE_MAX_WEIGHT * errors.max(axis=1)
+                + (1.0 - SEQUENCE_MAX_WEIGHT) * mean_errors
+            )
+        priorities = priorities + PRIORITY_EPSILON
+        self._max_priority = max(self._max_priority, float(priorities.max()))
+        scaled_priorities = priorities ** self.alpha
+        self._sum_tree[slots] = scaled_priorities
+        self._min_tree[slots] = scaled_priorities
@@ -0,0 +1,197 @@
+import json
+import os
+from typing import Any, Dict
+
+import numpy as np
+
+from mlagents_envs.logging_util import get_logger
+from mlagents.trainers.buffer import AgentBuffer, AgentBufferField, BufferException
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer, ColumnarBufferField
+
+logger = get_logger(__name__)
+
+MANIFEST_FILE_NAME = "manifest.json"
+FORMAT_VERSION = 1
+
+
+class ReplayBufferStore:
+    """
+    Saves an AgentBuffer to a directory holding one .npy file per field and a manifest.
+    The columns of a ColumnarAgentBuffer are written in their physical (ring buffer) layout,
+    so that saving again only writes the slots that changed since the previous save, and
+    loading memory-maps the files instead of reading them. Fields that hold group entries
+    can't be memory-mapped and are pickled whole.
+    The manifest is replaced last, so an interrupted save leaves the previous one readable.
+    """
+
+    def __init__(self, directory: str):
+        self.directory = directory
+        # The storage each field was last saved from or loaded into. A field is only saved
+        # incrementally if its storage is still the one that the file mirrors.
+        self._synced_storage: Dict[str, np.ndarray] = {}
+
+    @property
+    def manifest_path(self) -> str:
+        return os.path.join(self.directory, MANIFEST_FILE_NAME)
+
+    def exists(self) -> bool:
+        return os.path.isfile(self.manifest_path)
+
+    @staticmethod
+    def _file_name(encoded_key: str) -> str:
+        # Encoded keys look like "obs:0", and ":" isn't allowed in file names on Windows.
+        return encoded_key.replace(":", "__") + ".npy"
+
+    def save(self, buffer: AgentBuffer) -> int:
+        """
+        Saves the buffer.
+        :param buffer: The AgentBuffer to save.
+        :return: The number of bytes written.
+        """
+        os.makedirs(self.directory, exist_ok=True)
+        bytes_written = 0
+        fields: Dict[str, Dict[str, Any]] = {}
+        for key, field in buffer.items():
+            encoded_key = AgentBuffer._encode_key(key)
+            file_name = self._file_name(encoded_key)
+            path = os.path.join(self.directory, file_name)
+            if (
+                isinstance(field, ColumnarBufferField)
+                and field.storage is not None
+                and field.storage.dtype != object
+            ):
+                bytes_written += self._save_storage(encoded_key, path, field)
+                start = field.start
+                memmap = True
+            else:
+                bytes_written += self._save_entries(path, field)
+                start = 0
+                memmap = False
+            fields[encoded_key] = {
+                "file": file_name,
+                "start": start,
+                "length": len(field),
+                "padding_value": float(field.padding_value),
+                "memmap": memmap,
+            }
+        manifest = {"format_version": FORMAT_VERSION, "fields": fields}
+        temp_path = self.manifest_path + ".tmp"
+        with open(temp_path, "w") as manifest_file:
+            json.dump(manifest, manifest_file, indent=2)
+        os.replace(temp_path, self.manifest_path)
+        return bytes_written
+
+    def _save_storage(
+        self, encoded_key: str, path: str, field: ColumnarBufferField
+    ) -> int:
+        storage = field.storage
+        if self._maps_file(storage, path):
+            # The storage is a copy-on-write map of the file that is about to be written. Writing
+            # to a mapped file or replacing it isn't safe on every platform (and fails on
+            # Windows), so the column is read into memory, which closes the map, and the file is
+            # rewritten whole. Later saves are incremental again.
+            storage = np.array(storage)
+            field.replace_storage(storage)
+            self._synced_storage.pop(encoded_key, None)
+        slots = field.unsaved_slots()
+        if (
+            slots is not None
+            and self._synced_storage.get(encoded_key) is storage
+            and os.path.isfile(path)
+        ):
+            out = np.lib.format.open_memmap(path, mode="r+")
+            rows = storage[slots]
+            out[slots] = rows
+            num_bytes = rows.nbytes
+            out.flush()
+            del out
+        else:
+            # The new file is written next to the old one and replaces it, so that an
+            # interrupted save leaves the previous one readable.
+            temp_path = path + ".tmp"
+            out = np.lib.format.open_memmap(
+                temp_path, mode="w+", dtype=storage.dtype, shape=storage.shape
+            )
+            out[:] = storage
+            num_bytes = storage.nbytes
+            out.flush()
+            del out
+            os.replace(temp_path, path)
+        field.mark_saved()
+        self._synced_storage[encoded_key] = storage
+        return num_bytes
+
+    @staticmethod
+    def _maps_file(storage: np.ndarray, path: str) -> bool:
+        filename = getattr(storage, "filename", None)
+        return (
+            filename is not None
+            and os.path.isfile(path)
+            and os.path.samefile(filename, path)
+        )
+
+    @staticmethod
+    def _save_entries(path: str, field: Any) -> int:
+        if field.contains_lists:
+            data = np.empty(len(field), dtype=object)
+            for i, entry in enumerate(field):
+                data[i] = entry
+        else:
+            data = np.asarray(field)
+        temp_path = path + ".tmp"
+        with open(temp_path, "wb") as data_file:
+            np.save(data_file, data, allow_pickle=True)
+        os.replace(temp_path, path)
+        return os.path.getsize(path)
+
+    def load(self, buffer: AgentBuffer) -> None:
+        """
+        Loads the saved fields into buffer. If buffer is a ColumnarAgentBuffer whose capacity
+        matches the saved columns, they are memory-mapped (copy-on-write) rather than read, so
+        the experiences are only read from disk as they are sampled.
+        :param buffer: The AgentBuffer to load into.
+        """
+        with open(self.manifest_path) as manifest_file:
+            manifest = json.load(manifest_file)
+        if manifest.get("format_version") != FORMAT_VERSION:
+            raise BufferException(
+                f"Unsupported replay buffer format version {manifest.get('format_version')}."
+            )
+        for encoded_key, entry in manifest["fields"].items():
+            key = AgentBuffer._decode_key(encoded_key)
+            path = os.path.join(self.directory, entry["file"])
+            padding_value = entry["padding_value"]
+            if entry["memmap"]:
+                storage = np.load(path, mmap_mode="c")
+                if isinstance(buffer, ColumnarAgentBuffer) and buffer.capacity in (
+                    None,
+                    len(storage),
+                ):
+                    buffer[key] = ColumnarBufferField.from_storage(
+                        storage,
+                        entry["start"],
+                        entry["length"],
+                        buffer.capacity,
+                        padding_value,
+                    )
+                    self._synced_storage[encoded_key] = storage
+                    continue
+                # Copy the entries out of the file, in order.
+                data = np.array(
+                    ColumnarBufferField.from_storage(
+                        storage, entry["start"], entry["length"]
+                    )
+                )
+            else:
+                data = np.load(path, allow_pickle=True)
+            if isinstance(buffer, ColumnarAgentBuffer):
+                buffer[key] = data
+                buffer[key].padding_value = padding_value
+            else:
+                field = AgentBufferField()
+                field.extend(list(data))
+                field.padding_value = padding_value
+                buffer[key] = field
+        logger.debug(
+            f"Loaded {buffer.num_experiences} experiences from {self.directory}."
+        )
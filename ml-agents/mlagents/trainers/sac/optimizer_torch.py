@@ -126,6 +126,8 @@ class TorchSACOptimizer(TorchOptimizer):
 
         self.tau = hyperparameters.tau
         self.burn_in_ratio = 0.0
+        # The TD errors of the last batch sampled with prioritized replay
+        self.td_errors: Optional[np.ndarray] = None
 
         # Non-exposed SAC parameters
         self.discrete_target_entropy_scale = 0.2  # Roughly equal to e-greedy 0.05
@@ -228,6 +230,7 @@ class TorchSACOptimizer(TorchOptimizer):
         dones: torch.Tensor,
         rewards: Dict[str, torch.Tensor],
         loss_masks: torch.Tensor,
+        importance_weights: Optional[torch.Tensor] = None,
     ) -> Tuple[torch.Tensor, torch.Tensor]:
         q1_losses = []
         q2_losses = []
@@ -235,18 +238,21 @@ class TorchSACOptimizer(TorchOptimizer):
         for i, name in enumerate(q1_out.keys()):
             q1_stream = q1_out[name].squeeze()
             q2_stream = q2_out[name].squeeze()
-            with torch.no_grad():
-                q_backup = rewards[name] + (
-                    (1.0 - self.use_dones_in_backup[name] * dones)
-                    * self.gammas[i]
-                    * target_values[name]
+            q_backup = self._q_backup(i, name, target_values, dones, rewards)
+            if importance_weights is not None:
+                _q1_loss = 0.5 * ModelUtils.masked_mean(
+                    importance_weights * (q_backup - q1_stream) ** 2, loss_masks
+                )
+                _q2_loss = 0.5 * ModelUtils.masked_mean(
+                    importance_weights * (q_backup - q2_stream) ** 2, loss_masks
+                )
+            else:
+                _q1_loss = 0.5 * ModelUtils.masked_mean(
+                    torch.nn.functional.mse_loss(q_backup, q1_stream), loss_masks
+                )
+                _q2_loss = 0.5 * ModelUtils.masked_mean(
+                    torch.nn.functional.mse_loss(q_backup, q2_stream), loss_masks
                 )
-            _q1_loss = 0.5 * ModelUtils.masked_mean(
-                torch.nn.functional.mse_loss(q_backup, q1_stream), loss_masks
-            )
-            _q2_loss = 0.5 * ModelUtils.masked_mean(
-                torch.nn.functional.mse_loss(q_backup, q2_stream), loss_masks
-            )
 
             q1_losses.append(_q1_loss)
             q2_losses.append(_q2_loss)
@@ -254,6 +260,43 @@ class TorchSACOptimizer(TorchOptimizer):
         q2_loss = torch.mean(torch.stack(q2_losses))
         return q1_loss, q2_loss
 
+    def _q_backup(
+        self,
+        stream_index: int,
+        name: str,
+        target_values: Dict[str, torch.Tensor],
+        dones: torch.Tensor,
+        rewards: Dict[str, torch.Tensor],
+    ) -> torch.Tensor:
+        with torch.no_grad():
+            return rewards[name] + (
+                (1.0 - self.use_dones_in_backup[name] * dones)
+                * self.gammas[stream_index]
+                * target_values[name]
+            )
+
+    def sac_td_errors(
+        self,
+        q1_out: Dict[str, torch.Tensor],
+        q2_out: Dict[str, torch.Tensor],
+        target_values: Dict[str, torch.Tensor],
+        dones: torch.Tensor,
+        rewards: Dict[str, torch.Tensor],
+    ) -> torch.Tensor:
+        """
+        Returns the absolute TD error of each experience, averaged over the two Q networks
+        and the reward streams. Used as the priorities of prioritized replay.
+        """
+        td_errors = []
+        with torch.no_grad():
+            for i, name in enumerate(q1_out.keys()):
+                q_backup = self._q_backup(i, name, target_values, dones, rewards)
+                td_errors.append(
+                    0.5 * (q_backup - q1_out[name].squeeze()).abs()
+                    + 0.5 * (q_backup - q2_out[name].squeeze()).abs()
+                )
+            return torch.mean(torch.stack(td_errors), dim=0)
+
     def sac_value_loss(
         self,
         log_probs: ActionLogProbs,
@@ -477,11 +520,11 @@ class TorchSACOptimizer(TorchOptimizer):
         n_obs = len(self.policy.behavior_spec.observation_specs)
         current_obs = ObsUtil.from_buffer(batch, n_obs)
         # Convert to tensors
-        current_obs = [ModelUtils.list_to_tensor(obs) for obs in current_obs]
+        current_obs = [ModelUtils.obs_to_tensor(obs) for obs in current_obs]
 
         next_obs = ObsUtil.from_buffer_next(batch, n_obs)
         # Convert to tensors
-        next_obs = [ModelUtils.list_to_tensor(obs) for obs in next_obs]
+        next_obs = [ModelUtils.obs_to_tensor(obs) for obs in next_obs]
 
         act_masks = ModelUtils.list_to_tensor(batch[BufferKey.ACTION_MASK])
         actions = AgentAction.from_buffer(batch)
@@ -575,8 +618,24 @@ class TorchSACOptimizer(TorchOptimizer):
         masks = ModelUtils.list_to_tensor(batch[BufferKey.MASKS], dtype=torch.bool)
         dones = ModelUtils.list_to_tensor(batch[BufferKey.DONE])
 
+        # Set when the batch was sampled with prioritized replay
+        importance_weights = None
+        if BufferKey.IMPORTANCE_WEIGHTS in batch:
+            importance_weights = ModelUtils.list_to_tensor(
+                batch[BufferKey.IMPORTANCE_WEIGHTS]
+            )
+            self.td_errors = ModelUtils.to_numpy(
+                self.sac_td_errors(q1_stream, q2_stream, target_values, dones, rewards)
+            )
+
         q1_loss, q2_loss = self.sac_q_loss(
-            q1_stream, q2_stream, target_values, dones, rewards, masks
+            q1_stream,
+            q2_stream,
+            target_values,
+            dones,
+            rewards,
+            masks,
+            importance_weights,
         )
         value_loss = self.sac_value_loss(
             log_probs, value_estimates, q1p_out, q2p_out, masks
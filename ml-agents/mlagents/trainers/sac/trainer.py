@@ -3,7 +3,7 @@
 # and implemented in https://github.com/hill-a/stable-baselines
 
 from collections import defaultdict
-from typing import Dict, cast
+from typing import Dict, List, Optional, cast
 import os
 
 import numpy as np
@@ -12,14 +12,20 @@ from mlagents.trainers.policy.checkpoint_manager import ModelCheckpoint
 from mlagents_envs.logging_util import get_logger
 from mlagents_envs.timers import timed
 from mlagents_envs.base_env import BehaviorSpec
-from mlagents.trainers.buffer import BufferKey, RewardSignalUtil
+from mlagents.trainers.buffer import AgentBuffer, BufferKey, RewardSignalUtil
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
 from mlagents.trainers.policy import Policy
+from mlagents.trainers.prioritized_replay import PrioritizedReplay
+from mlagents.trainers.replay_buffer_store import ReplayBufferStore
 from mlagents.trainers.trainer.rl_trainer import RLTrainer
 from mlagents.trainers.policy.torch_policy import TorchPolicy
 from mlagents.trainers.sac.optimizer_torch import TorchSACOptimizer
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
+from mlagents.trainers.torch.utils import ModelUtils
 from mlagents.trainers.trajectory import Trajectory, ObsUtil
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
-from mlagents.trainers.settings import TrainerSettings, SACSettings
+from mlagents.trainers.settings import TrainerSettings, SACSettings, ScheduleType
 
 logger = get_logger(__name__)
 
@@ -79,6 +85,44 @@ class SACTrainer(RLTrainer):
         )
 
         self.checkpoint_replay_buffer = self.hyperparameters.save_replay_buffer
+        self.replay_buffer_store = ReplayBufferStore(
+            os.path.join(self.artifact_path, "last_replay_buffer")
+        )
+
+        # The priorities of the sequences of the update buffer, if they aren't sampled uniformly
+        self.prioritized_replay: Optional[PrioritizedReplay] = None
+        if self.hyperparameters.prioritized_replay:
+            memory = self.trainer_settings.network_settings.memory
+            sequence_length = memory.sequence_length if memory is not None else 1
+            self.prioritized_replay = PrioritizedReplay(
+                sequence_length,
+                self.hyperparameters.priority_alpha,
+                self.hyperparameters.buffer_size // sequence_length,
+            )
+            self.decay_priority_beta = ModelUtils.DecayedValue(
+                ScheduleType.LINEAR,
+                self.hyperparameters.priority_beta,
+                1.0,
+                self.trainer_settings.max_steps,
+            )
+
+    def create_update_buffer(self, capacity: Optional[int] = None) -> AgentBuffer:
+        """
+        The replay buffer never holds more than buffer_size experiences, so a columnar
+        replay buffer is allocated once as a ring buffer of that size. The capacity is a
+        whole number of sequences so that overwriting old experiences always drops whole sequences.
+        Unlike the list buffer, which drops its oldest 20% once it is full, the ring buffer only
+        drops as many old experiences as it receives new ones.
+        """
+        hyperparameters = cast(SACSettings, self.trainer_settings.hyperparameters)
+        memory = self.trainer_settings.network_settings.memory
+        sequence_length = memory.sequence_length if memory is not None else 1
+        capacity = max(
+            hyperparameters.buffer_size
+            - hyperparameters.buffer_size % sequence_length,
+            sequence_length,
+        )
+        return super().create_update_buffer(capacity)
 
     def _checkpoint(self) -> ModelCheckpoint:
         """
@@ -87,7 +131,8 @@ class SACTrainer(RLTrainer):
         """
         ckpt = super()._checkpoint()
         if self.checkpoint_replay_buffer:
-            self.save_replay_buffer()
+            with self.model_lock:
+                self.save_replay_buffer()
         return ckpt
 
     def save_model(self) -> None:
@@ -101,24 +146,31 @@ class SACTrainer(RLTrainer):
 
     def save_replay_buffer(self) -> None:
         """
-        Save the training buffer's update buffer to a pickle file.
+        Save the training buffer's update buffer to the replay buffer store. With the columnar
+        buffer backend, only the experiences collected since the last save are written.
         """
-        filename = os.path.join(self.artifact_path, "last_replay_buffer.hdf5")
-        logger.info(f"Saving Experience Replay Buffer to {filename}...")
-        with open(filename, "wb") as file_object:
-            self.update_buffer.save_to_file(file_object)
-            logger.info(
-                f"Saved Experience Replay Buffer ({os.path.getsize(filename)} bytes)."
-            )
+        directory = self.replay_buffer_store.directory
+        logger.info(f"Saving Experience Replay Buffer to {directory}...")
+        num_bytes = self.replay_buffer_store.save(self.update_buffer)
+        logger.info(f"Saved Experience Replay Buffer ({num_bytes} bytes written).")
 
     def load_replay_buffer(self) -> None:
         """
-        Loads the last saved replay buffer from a file.
+        Loads the last saved replay buffer from the replay buffer store, or from the hdf5
+        file written by previous versions.
         """
-        filename = os.path.join(self.artifact_path, "last_replay_buffer.hdf5")
-        logger.info(f"Loading Experience Replay Buffer from {filename}...")
-        with open(filename, "rb+") as file_object:
-            self.update_buffer.load_from_file(file_object)
+        if self.replay_buffer_store.exists():
+            logger.info(
+                f"Loading Experience Replay Buffer from {self.replay_buffer_store.directory}..."
+            )
+            self.replay_buffer_store.load(self.update_buffer)
+        else:
+            filename = os.path.join(self.artifact_path, "last_replay_buffer.hdf5")
+            logger.info(f"Loading Experience Replay Buffer from {filename}...")
+            with open(filename, "rb+") as file_object:
+                self.update_buffer.load_from_file(file_object)
+        if self.prioritized_replay is not None:
+            self.prioritized_replay.reset(self.update_buffer.num_experiences)
         logger.debug(
             "Experience replay buffer has {} experiences.".format(
                 self.update_buffer.num_experiences
@@ -129,7 +181,34 @@ class SACTrainer(RLTrainer):
         """
         Takes a trajectory and processes it, putting it into the replay buffer.
         """
-        super()._process_trajectory(trajectory)
+        self._process_trajectories([trajectory])
+
+    def _process_trajectories(self, trajectories: List[Trajectory]) -> None:
+        self._record_steps(trajectories)
+        for agent_buffer_trajectory in self._prepare_trajectories(trajectories):
+            self._append_to_update_buffer(agent_buffer_trajectory)
+
+    def _append_to_update_buffer(self, agentbuffer_trajectory: AgentBuffer) -> None:
+        """
+        Appends an AgentBuffer to the update buffer, and gives its sequences the highest
+        priority if prioritized replay is used.
+        """
+        super()._append_to_update_buffer(agentbuffer_trajectory)
+        if self.prioritized_replay is not None and self.should_still_train:
+            self.prioritized_replay.append(
+                agentbuffer_trajectory.num_experiences,
+                self.update_buffer.num_experiences,
+            )
+
+    def _prepare_trajectories(
+        self, trajectories: List[Trajectory]
+    ) -> List[AgentBuffer]:
+        return [self._prepare_trajectory(trajectory) for trajectory in trajectories]
+
+    def _prepare_trajectory(self, trajectory: Trajectory) -> AgentBuffer:
+        """
+        Converts a trajectory to an AgentBuffer that is ready to be put into the replay buffer.
+        """
         last_step = trajectory.steps[-1]
         agent_id = trajectory.agent_id  # All the agents should have the same ID
 
@@ -139,16 +218,20 @@ class SACTrainer(RLTrainer):
 
         # Update the normalization
         if self.is_training:
-            self.policy.update_normalization(agent_buffer_trajectory)
-            self.optimizer.critic.update_normalization(agent_buffer_trajectory)
+            moments = ObservationMoments([agent_buffer_trajectory])
+            self.optimizer.update_normalization(moments)
 
         # Evaluate all reward functions for reporting purposes
         self.collected_rewards["environment"][agent_id] += np.sum(
             agent_buffer_trajectory[BufferKey.ENVIRONMENT_REWARDS]
         )
+        obs_cache = ObsTensorCache(agent_buffer_trajectory)
         for name, reward_signal in self.optimizer.reward_signals.items():
             evaluate_result = (
-                reward_signal.evaluate(agent_buffer_trajectory) * reward_signal.strength
+                self._evaluate_reward_signal(
+                    reward_signal, agent_buffer_trajectory, obs_cache
+                )
+                * reward_signal.strength
             )
 
             # Report the reward signals
@@ -179,10 +262,9 @@ class SACTrainer(RLTrainer):
                 agent_buffer_trajectory[ObsUtil.get_name_at_next(i)][-1] = obs
             agent_buffer_trajectory[BufferKey.DONE][-1] = False
 
-        self._append_to_update_buffer(agent_buffer_trajectory)
-
         if trajectory.done_reached:
             self._update_end_episode_stats(agent_id, self.optimizer)
+        return agent_buffer_trajectory
 
     def _is_ready_update(self) -> bool:
         """
@@ -247,7 +329,7 @@ class SACTrainer(RLTrainer):
         until the steps_per_update ratio is met.
         """
         has_updated = False
-        self.cumulative_returns_since_policy_update.clear()
+        self._clear_returns_since_policy_update()
         n_sequences = max(
             int(self.hyperparameters.batch_size / self.policy.sequence_length), 1
         )
@@ -259,19 +341,41 @@ class SACTrainer(RLTrainer):
             logger.debug(f"Updating SAC policy at step {self._step}")
             buffer = self.update_buffer
             if self.update_buffer.num_experiences >= self.hyperparameters.batch_size:
-                sampled_minibatch = buffer.sample_mini_batch(
-                    self.hyperparameters.batch_size,
-                    sequence_length=self.policy.sequence_length,
-                )
+                prioritized_sample = None
+                if self.prioritized_replay is not None:
+                    prioritized_sample = self.prioritized_replay.sample(
+                        n_sequences,
+                        self.decay_priority_beta.get_value(self._step),
+                    )
+                    sampled_minibatch = buffer.make_sequence_mini_batch(
+                        prioritized_sample.sequence_indices
+                        * self.policy.sequence_length,
+                        sequence_length=self.policy.sequence_length,
+                    )
+                    sampled_minibatch[BufferKey.IMPORTANCE_WEIGHTS] = np.repeat(
+                        prioritized_sample.weights, self.policy.sequence_length
+                    )
+                else:
+                    sampled_minibatch = buffer.sample_mini_batch(
+                        self.hyperparameters.batch_size,
+                        sequence_length=self.policy.sequence_length,
+                    )
                 # Get rewards for each reward
+                obs_cache = ObsTensorCache(sampled_minibatch)
                 for name, signal in self.optimizer.reward_signals.items():
                     sampled_minibatch[RewardSignalUtil.rewards_key(name)] = (
-                        signal.evaluate(sampled_minibatch) * signal.strength
+                        signal.evaluate(sampled_minibatch, obs_cache) * signal.strength
                     )
 
                 update_stats = self.optimizer.update(sampled_minibatch, n_sequences)
                 for stat_name, value in update_stats.items():
                     batch_update_stats[stat_name].append(value)
+                if prioritized_sample is not None:
+                    self.prioritized_replay.update_priorities(
+                        prioritized_sample.slots,
+                        self.optimizer.td_errors,
+                        sampled_minibatch[BufferKey.MASKS],
+                    )
 
                 self.update_steps += 1
 
@@ -285,11 +389,18 @@ class SACTrainer(RLTrainer):
                     self._stats_reporter.add_stat(stat, val)
 
         # Truncate update buffer if neccessary. Truncate more than we need to to avoid truncating
-        # a large buffer at each update.
-        if self.update_buffer.num_experiences > self.hyperparameters.buffer_size:
+        # a large buffer at each update. A columnar replay buffer never needs it, since it is a
+        # ring buffer that overwrites its oldest experiences one sequence at a time.
+        if (
+            not isinstance(self.update_buffer, ColumnarAgentBuffer)
+            and self.update_buffer.num_experiences > self.hyperparameters.buffer_size
+        ):
             self.update_buffer.truncate(
-                int(self.hyperparameters.buffer_size * BUFFER_TRUNCATE_PERCENT)
+                int(self.hyperparameters.buffer_size * BUFFER_TRUNCATE_PERCENT),
+                sequence_length=self.policy.sequence_length,
             )
+            if self.prioritized_replay is not None:
+                self.prioritized_replay.sync(self.update_buffer.num_experiences)
         return has_updated
 
     def _update_reward_signals(self) -> None:
@@ -127,6 +127,11 @@ class ConditioningType(Enum):
     NONE = "none"
 
 
+class BufferBackendType(Enum):
+    LIST = "list"
+    COLUMNAR = "columnar"
+
+
 @attr.s(auto_attribs=True)
 class NetworkSettings:
     @attr.s
@@ -157,6 +162,8 @@ class NetworkSettings:
 @attr.s(auto_attribs=True)
 class BehavioralCloningSettings:
     demo_path: str
+    demo_cache_dir: Optional[str] = None
+    demo_num_workers: int = 1
     steps: int = 0
     strength: float = 1.0
     samples_per_update: int = 0
@@ -172,6 +179,7 @@ class HyperparamSettings:
     buffer_size: int = 10240
     learning_rate: float = 3.0e-4
     learning_rate_schedule: ScheduleType = ScheduleType.CONSTANT
+    buffer_backend: BufferBackendType = BufferBackendType.LIST
 
 
 @attr.s(auto_attribs=True)
@@ -183,6 +191,7 @@ class PPOSettings(HyperparamSettings):
     learning_rate_schedule: ScheduleType = ScheduleType.LINEAR
     beta_schedule: ScheduleType = ScheduleType.LINEAR
     epsilon_schedule: ScheduleType = ScheduleType.LINEAR
+    stage_update_buffer: bool = False
 
 
 @attr.s(auto_attribs=True)
@@ -194,6 +203,9 @@ class SACSettings(HyperparamSettings):
     steps_per_update: float = 1
     save_replay_buffer: bool = False
     init_entcoef: float = 1.0
+    prioritized_replay: bool = False
+    priority_alpha: float = 0.6
+    priority_beta: float = 0.4
     reward_signal_steps_per_update: float = attr.ib()
 
     @reward_signal_steps_per_update.default
@@ -265,6 +277,8 @@ class GAILSettings(RewardSignalSettings):
     use_actions: bool = False
     use_vail: bool = False
     demo_path: str = attr.ib(kw_only=True)
+    demo_cache_dir: Optional[str] = None
+    demo_num_workers: int = 1
 
 
 @attr.s(auto_attribs=True)
@@ -638,6 +652,7 @@ class SelfPlaySettings:
     window: int = 10
     play_against_latest_model_ratio: float = 0.5
     initial_elo: float = 1200.0
+    snapshot_spill_dir: Optional[str] = None
 
 
 @attr.s(auto_attribs=True)
@@ -661,6 +676,9 @@ class TrainerSettings(ExportableSettings):
     time_horizon: int = 64
     summary_freq: int = 50000
     threaded: bool = False
+    staged_pipeline: bool = attr.ib(default=False)
+    batched_experiences: bool = False
+    compiled_inference: bool = False
     self_play: Optional[SelfPlaySettings] = None
     behavioral_cloning: Optional[BehavioralCloningSettings] = None
 
@@ -679,6 +697,13 @@ class TrainerSettings(ExportableSettings):
                     "When using memory, sequence length must be less than or equal to batch size. "
                 )
 
+    @staged_pipeline.validator
+    def _check_staged_pipeline_threaded(self, attribute, value):
+        if value and not self.threaded:
+            raise TrainerConfigError(
+                "staged_pipeline runs the trainer on its own threads and requires threaded to be true."
+            )
+
     @staticmethod
     def dict_to_trainerdict(d: Dict, t: type) -> "TrainerSettings.DefaultTrainerDict":
         return TrainerSettings.DefaultTrainerDict(
@@ -830,6 +855,14 @@ class EnvironmentSettings:
     restarts_rate_limit_period_s: int = parser.get_default(
         "restarts_rate_limit_period_s"
     )
+    shared_memory_transport: bool = parser.get_default("shared_memory_transport")
+    env_step_batch_size: int = attr.ib(
+        default=parser.get_default("env_step_batch_size")
+    )
+    env_step_batch_timeout_s: float = parser.get_default("env_step_batch_timeout_s")
+    pipelined_inference: bool = parser.get_default("pipelined_inference")
+    inference_batch_size: int = parser.get_default("inference_batch_size")
+    envs_per_worker: int = attr.ib(default=parser.get_default("envs_per_worker"))
 
     @num_envs.validator
     def validate_num_envs(self, attribute, value):
@@ -841,6 +874,16 @@ class EnvironmentSettings:
         if value <= 0:
             raise ValueError("num_areas must be set to a positive number >= 1.")
 
+    @env_step_batch_size.validator
+    def validate_env_step_batch_size(self, attribute, value):
+        if value <= 0:
+            raise ValueError("env_step_batch_size must be set to a positive number >= 1.")
+
+    @envs_per_worker.validator
+    def validate_envs_per_worker(self, attribute, value):
+        if value <= 0:
+            raise ValueError("envs_per_worker must be set to a positive number >= 1.")
+
 
 @attr.s(auto_attribs=True)
 class EngineSettings:
@@ -873,6 +916,14 @@ class RunOptions(ExportableSettings):
     # These are options that are relevant to the run itself, and not the engine or environment.
     # They will be left here.
     debug: bool = parser.get_default("debug")
+    streaming_stats: bool = parser.get_default("streaming_stats")
+    timer_sample_rate: float = attr.ib(default=parser.get_default("timer_sample_rate"))
+    worker_timers_interval_s: float = parser.get_default("worker_timers_interval_s")
+
+    @timer_sample_rate.validator
+    def validate_timer_sample_rate(self, attribute, value):
+        if not 0.0 < value <= 1.0:
+            raise ValueError("timer_sample_rate must be greater than 0 and at most 1.")
 
     # Convert to settings while making sure all fields are valid
     cattr.register_structure_hook(EnvironmentSettings, strict_to_cls)
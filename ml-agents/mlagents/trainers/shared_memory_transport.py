@@ -0,0 +1,237 @@
+from typing import Dict, List, Mapping, NamedTuple, Optional, Tuple
+
+import numpy as np
+
+from mlagents_envs.base_env import (
+    BehaviorName,
+    BehaviorSpec,
+    DecisionSteps,
+    TerminalSteps,
+)
+from mlagents_envs.logging_util import get_logger
+from mlagents.trainers.env_manager import AllStepResult
+from mlagents.trainers.exception import TrainerConfigError
+
+try:
+    from multiprocessing import shared_memory, resource_tracker
+except ImportError:
+    # multiprocessing.shared_memory was added in python 3.8
+    shared_memory = None
+    resource_tracker = None
+
+logger = get_logger(__name__)
+
+# Arrays are placed at multiples of this many bytes in the slab.
+SLAB_ALIGNMENT = 64
+MIN_SLAB_SIZE = 1 << 20
+
+
+class ArrayLayout(NamedTuple):
+    offset: int
+    shape: Tuple[int, ...]
+    dtype: str
+
+
+class StepsLayout(NamedTuple):
+    """
+    Where each array of a DecisionSteps or TerminalSteps lives in the slab. action_mask is only
+    set for DecisionSteps and interrupted only for TerminalSteps.
+    """
+
+    obs: List[ArrayLayout]
+    reward: ArrayLayout
+    agent_id: ArrayLayout
+    group_id: ArrayLayout
+    group_reward: ArrayLayout
+    action_mask: Optional[List[ArrayLayout]]
+    interrupted: Optional[ArrayLayout]
+
+
+class SharedStepDescriptor(NamedTuple):
+    """
+    The small, picklable message sent from a worker to the trainer instead of the AllStepResult.
+    """
+
+    shm_name: str
+    layouts: Dict[BehaviorName, Tuple[StepsLayout, StepsLayout]]
+
+
+def check_shared_memory_available() -> None:
+    if shared_memory is None:
+        raise TrainerConfigError(
+            "shared_memory_transport requires Python 3.8 or later (multiprocessing.shared_memory)."
+        )
+
+
+def ensure_resource_tracker_running() -> None:
+    """
+    Workers create their slabs and the trainer attaches to them. Starting the resource tracker
+    before the workers are created makes every process share it, so that a slab is only
+    tracked once and still gets cleaned up if its worker crashes.
+    """
+    if resource_tracker is not None and hasattr(resource_tracker, "ensure_running"):
+        resource_tracker.ensure_running()
+
+
+def _aligned(num_bytes: int) -> int:
+    return (num_bytes + SLAB_ALIGNMENT - 1) // SLAB_ALIGNMENT * SLAB_ALIGNMENT
+
+
+def bytes_per_agent(behavior_spec: BehaviorSpec) -> int:
+    """
+    The number of bytes a single agent of this behavior takes in a slab, ignoring alignment.
+    """
+    obs_bytes = sum(
+        int(np.prod(obs_spec.shape)) * np.dtype(np.float32).itemsize
+        for obs_spec in behavior_spec.observation_specs
+    )
+    mask_bytes = sum(behavior_spec.action_spec.discrete_branches)
+    # reward, agent_id, group_id, group_reward and interrupted
+    return obs_bytes + mask_bytes + 4 * 8 + 1
+
+
+class SharedMemoryStepWriter:
+    """
+    Worker-side end of the shared memory transport. Copies every array of an AllStepResult
+    into a shared memory slab and describes where they are. The slab is sized from the
+    BehaviorSpecs and reallocated (under a new name) when a step doesn't fit.
+    """
+
+    def __init__(
+        self,
+        behavior_specs: Mapping[BehaviorName, BehaviorSpec],
+        initial_agents_per_behavior: int = 16,
+    ):
+        check_shared_memory_available()
+        self._shm: Optional["shared_memory.SharedMemory"] = None
+        self._allocate(
+            max(
+                sum(bytes_per_agent(spec) for spec in behavior_specs.values())
+                * initial_agents_per_behavior,
+                MIN_SLAB_SIZE,
+            )
+        )
+
+    def _allocate(self, size: int) -> None:
+        # The trainer only reads the old slab while handling the previous step, and the worker
+        # only writes after receiving the next step command, so the old slab can go away now.
+        self.close()
+        self._shm = shared_memory.SharedMemory(create=True, size=size)
+
+    def write(self, all_step_result: AllStepResult) -> SharedStepDescriptor:
+        placements: List[Tuple[np.ndarray, ArrayLayout]] = []
+        end = 0
+
+        def _place(array: np.ndarray) -> ArrayLayout:
+            nonlocal end
+            array = np.ascontiguousarray(array)
+            layout = ArrayLayout(end, array.shape, array.dtype.str)
+            placements.append((array, layout))
+            end = _aligned(end + array.nbytes)
+            return layout
+
+        layouts: Dict[BehaviorName, Tuple[StepsLayout, StepsLayout]] = {}
+        for behavior_name, (decision_steps, terminal_steps) in all_step_result.items():
+            decision_layout = StepsLayout(
+                obs=[_place(obs) for obs in decision_steps.obs],
+                reward=_place(decision_steps.reward),
+                agent_id=_place(decision_steps.agent_id),
+                group_id=_place(decision_steps.group_id),
+                group_reward=_place(decision_steps.group_reward),
+                action_mask=[_place(mask) for mask in decision_steps.action_mask]
+                if decision_steps.action_mask is not None
+                else None,
+                interrupted=None,
+            )
+            terminal_layout = StepsLayout(
+                obs=[_place(obs) for obs in terminal_steps.obs],
+                reward=_place(terminal_steps.reward),
+                agent_id=_place(terminal_steps.agent_id),
+                group_id=_place(terminal_steps.group_id),
+                group_reward=_place(terminal_steps.group_reward),
+                action_mask=None,
+                interrupted=_place(terminal_steps.interrupted),
+            )
+            layouts[behavior_name] = (decision_layout, terminal_layout)
+
+        if end > self._shm.size:
+            self._allocate(max(end, 2 * self._shm.size))
+        for array, layout in placements:
+            if array.nbytes > 0:
+                np.ndarray(
+                    array.shape, array.dtype, buffer=self._shm.buf, offset=layout.offset
+                )[...] = array
+        return SharedStepDescriptor(self._shm.name, layouts)
+
+    def close(self) -> None:
+        if self._shm is not None:
+            self._shm.close()
+            self._shm.unlink()
+            self._shm = None
+
+
+class SharedMemoryStepReader:
+    """
+    Trainer-side end of the shared memory transport for one worker. Rebuilds the AllStepResult
+    from a SharedStepDescriptor as numpy views of the worker's slab.
+    """
+
+    def __init__(self):
+        check_shared_memory_available()
+        self._shm: Optional["shared_memory.SharedMemory"] = None
+
+    def _attach(self, shm_name: str) -> None:
+        if self._shm is None or self._shm.name != shm_name:
+            self.close()
+            self._shm = shared_memory.SharedMemory(name=shm_name)
+
+    def read(
+        self, descriptor: SharedStepDescriptor, copy: bool = False
+    ) -> AllStepResult:
+        """
+        :param descriptor: The descriptor sent by the worker.
+        :param copy: If False, the arrays are views of the slab, which are only valid until the
+            worker is asked for its next step. If True, each array is copied out of the slab.
+        """
+        self._attach(descriptor.shm_name)
+
+        def _array(layout: ArrayLayout) -> np.ndarray:
+            dtype = np.dtype(layout.dtype)
+            if int(np.prod(layout.shape)) == 0:
+                return np.empty(layout.shape, dtype=dtype)
+            view = np.ndarray(
+                layout.shape, dtype, buffer=self._shm.buf, offset=layout.offset
+            )
+            return view.copy() if copy else view
+
+        all_step_result: AllStepResult = {}
+        for behavior_name, (decision, terminal) in descriptor.layouts.items():
+            decision_steps = DecisionSteps(
+                [_array(obs) for obs in decision.obs],
+                _array(decision.reward),
+                _array(decision.agent_id),
+                [_array(mask) for mask in decision.action_mask]
+                if decision.action_mask is not None
+                else None,
+                _array(decision.group_id),
+                _array(decision.group_reward),
+            )
+            terminal_steps = TerminalSteps(
+                [_array(obs) for obs in terminal.obs],
+                _array(terminal.reward),
+                _array(terminal.interrupted),
+                _array(terminal.agent_id),
+                _array(terminal.group_id),
+                _array(terminal.group_reward),
+            )
+            all_step_result[behavior_name] = (decision_steps, terminal_steps)
+        return all_step_result
+
+    def close(self) -> None:
+        if self._shm is not None:
+            try:
+                self._shm.close()
+            except BufferError:
+                # Views of the slab are still alive; the mapping is released with them.
+                logger.debug("Shared memory slab still in use, not closing it.")
+            self._shm = None
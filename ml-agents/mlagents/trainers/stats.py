@@ -1,11 +1,14 @@
 from collections import defaultdict
 from enum import Enum
-from typing import List, Dict, NamedTuple, Any, Optional
+from typing import List, Dict, NamedTuple, Any, Optional, Tuple
+import itertools
 import numpy as np
 import abc
 import os
+import sys
+import threading
 import time
-from threading import RLock
+from threading import Lock, RLock
 
 from mlagents_envs.side_channel.stats_side_channel import StatsAggregationMethod
 
@@ -70,6 +73,195 @@ class StatsSummary(NamedTuple):
     def sum(self):
         return np.sum(self.full_dist)
 
+    @property
+    def histogram(self) -> Optional[Tuple[np.ndarray, np.ndarray]]:
+        """
+        The bucket limits and counts of a pre-aggregated histogram, None if full_dist is kept.
+        """
+        return None
+
+
+def _default_histogram_bucket_limits() -> np.ndarray:
+    """
+    The bucket limits used by TensorBoard (and TensorFlow) histograms: they grow by 10% from
+    1e-12 to 1e20 on both sides of 0.
+    """
+    positive_limits = []
+    limit = 1e-12
+    while limit < 1e20:
+        positive_limits.append(limit)
+        limit *= 1.1
+    return np.array(
+        [-limit for limit in reversed(positive_limits)]
+        + [0.0]
+        + positive_limits
+        + [sys.float_info.max]
+    )
+
+
+HISTOGRAM_BUCKET_LIMITS = _default_histogram_bucket_limits()
+# Orders the values added from different threads, to find the most recent one.
+_stat_sequence = itertools.count()
+
+
+class StreamingStat:
+    """
+    The running count, mean, sum of squared deviations from the mean, min and max of a stat,
+    updated with Welford's algorithm and merged with Chan's. HISTOGRAM stats also count their
+    values in the fixed HISTOGRAM_BUCKET_LIMITS buckets, so the memory used by a stat doesn't
+    depend on the number of values.
+    """
+
+    __slots__ = [
+        "aggregation_method",
+        "count",
+        "mean",
+        "m2",
+        "min",
+        "max",
+        "sequence",
+        "bucket_counts",
+    ]
+
+    def __init__(self, aggregation_method: StatsAggregationMethod):
+        self.aggregation_method = aggregation_method
+        self.bucket_counts: Optional[np.ndarray] = None
+        if aggregation_method == StatsAggregationMethod.HISTOGRAM:
+            self.bucket_counts = np.zeros(len(HISTOGRAM_BUCKET_LIMITS), dtype=np.int64)
+        self._reset()
+        self.sequence = -1
+
+    def _reset(self) -> None:
+        self.count = 0
+        self.mean = 0.0
+        self.m2 = 0.0
+        self.min = float("inf")
+        self.max = float("-inf")
+
+    def add(self, value: float) -> None:
+        value = float(value)
+        if self.aggregation_method == StatsAggregationMethod.MOST_RECENT:
+            self._reset()
+        self.count += 1
+        delta = value - self.mean
+        self.mean += delta / self.count
+        self.m2 += delta * (value - self.mean)
+        self.min = min(self.min, value)
+        self.max = max(self.max, value)
+        self.sequence = next(_stat_sequence)
+        if self.bucket_counts is not None:
+            self.bucket_counts[
+                np.searchsorted(HISTOGRAM_BUCKET_LIMITS, value)
+                if value <= HISTOGRAM_BUCKET_LIMITS[-1]
+                else -1
+            ] += 1
+
+    def add_array(self, values: np.ndarray) -> None:
+        values = np.asarray(values, dtype=np.float64).ravel()
+        if values.size == 0:
+            return
+        if self.aggregation_method == StatsAggregationMethod.MOST_RECENT:
+            self.add(values[-1])
+            return
+        other = StreamingStat(self.aggregation_method)
+        other.count = values.size
+        other.mean = float(np.mean(values))
+        other.m2 = float(np.sum(np.square(values - other.mean)))
+        other.min = float(np.min(values))
+        other.max = float(np.max(values))
+        other.sequence = next(_stat_sequence)
+        if other.bucket_counts is not None:
+            buckets = np.searchsorted(HISTOGRAM_BUCKET_LIMITS, values)
+            other.bucket_counts += np.bincount(
+                np.minimum(buckets, len(HISTOGRAM_BUCKET_LIMITS) - 1),
+                minlength=len(HISTOGRAM_BUCKET_LIMITS),
+            )
+        self.merge(other)
+
+    def merge(self, other: "StreamingStat") -> None:
+        """
+        Adds the values of other to this stat. For MOST_RECENT stats, the stat that was
+        updated last wins.
+        """
+        if other.count == 0:
+            return
+        if other.sequence > self.sequence:
+            self.aggregation_method = other.aggregation_method
+        if (
+            self.aggregation_method == StatsAggregationMethod.MOST_RECENT
+            or self.count == 0
+        ):
+            if other.sequence > self.sequence:
+                self._copy_from(other)
+            return
+        count = self.count + other.count
+        delta = other.mean - self.mean
+        self.mean += delta * other.count / count
+        self.m2 += other.m2 + delta * delta * self.count * other.count / count
+        self.count = count
+        self.min = min(self.min, other.min)
+        self.max = max(self.max, other.max)
+        self.sequence = max(self.sequence, other.sequence)
+        if other.bucket_counts is not None:
+            if self.bucket_counts is None:
+                self.bucket_counts = other.bucket_counts.copy()
+            else:
+                self.bucket_counts += other.bucket_counts
+
+    def _copy_from(self, other: "StreamingStat") -> None:
+        for slot in self.__slots__:
+            setattr(self, slot, getattr(other, slot))
+        if self.bucket_counts is not None:
+            self.bucket_counts = self.bucket_counts.copy()
+
+    def summary(self) -> "StreamingStatsSummary":
+        histogram = None
+        if self.bucket_counts is not None:
+            non_empty = np.flatnonzero(self.bucket_counts)
+            if len(non_empty) > 0:
+                first, last = non_empty[0], non_empty[-1] + 1
+                histogram = (
+                    HISTOGRAM_BUCKET_LIMITS[first:last],
+                    self.bucket_counts[first:last],
+                )
+        return StreamingStatsSummary(
+            num=self.count,
+            mean=self.mean,
+            std=float(np.sqrt(self.m2 / self.count)) if self.count > 0 else 0.0,
+            sum=self.mean * self.count,
+            min=self.min,
+            max=self.max,
+            aggregation_method=self.aggregation_method,
+            histogram=histogram,
+        )
+
+
+class StreamingStatsSummary(NamedTuple):
+    """
+    The summary of a StreamingStat. It has the same statistics as a StatsSummary, but not the
+    values themselves (full_dist).
+    """
+
+    num: int
+    mean: float
+    std: float
+    sum: float
+    min: float
+    max: float
+    aggregation_method: StatsAggregationMethod
+    histogram: Optional[Tuple[np.ndarray, np.ndarray]] = None
+
+    @property
+    def aggregated_value(self):
+        if self.aggregation_method == StatsAggregationMethod.SUM:
+            return self.sum
+        else:
+            return self.mean
+
+    @property
+    def sum_squares(self) -> float:
+        return self.num * (self.std ** 2 + self.mean ** 2)
+
 
 class StatsPropertyType(Enum):
     HYPERPARAMETERS = "hyperparameters"
@@ -243,9 +435,23 @@ class TensorboardWriter(StatsWriter):
                 f"{key}", value.aggregated_value, step
             )
             if value.aggregation_method == StatsAggregationMethod.HISTOGRAM:
-                self.summary_writers[category].add_histogram(
-                    f"{key}_hist", np.array(value.full_dist), step
-                )
+                if value.histogram is not None:
+                    bucket_limits, bucket_counts = value.histogram
+                    self.summary_writers[category].add_histogram_raw(
+                        f"{key}_hist",
+                        min=value.min,
+                        max=value.max,
+                        num=value.num,
+                        sum=value.sum,
+                        sum_squares=value.sum_squares,
+                        bucket_limits=bucket_limits.tolist(),
+                        bucket_counts=bucket_counts.tolist(),
+                        global_step=step,
+                    )
+                else:
+                    self.summary_writers[category].add_histogram(
+                        f"{key}_hist", np.array(value.full_dist), step
+                    )
             self.summary_writers[category].flush()
 
     def _maybe_create_summary_writer(self, category: str) -> None:
@@ -286,6 +492,17 @@ class TensorboardWriter(StatsWriter):
                 self.summary_writers[category].flush()
 
 
+class _StatsShard:
+    """
+    The streaming stats added by a single thread, by category and key. The lock is only
+    contended when the stats are written.
+    """
+
+    def __init__(self):
+        self.lock = Lock()
+        self.stats: Dict[str, Dict[str, StreamingStat]] = defaultdict(dict)
+
+
 class StatsReporter:
     writers: List[StatsWriter] = []
     stats_dict: Dict[str, Dict[str, List]] = defaultdict(lambda: defaultdict(list))
@@ -293,6 +510,11 @@ class StatsReporter:
     stats_aggregation: Dict[str, Dict[str, StatsAggregationMethod]] = defaultdict(
         lambda: defaultdict(lambda: StatsAggregationMethod.AVERAGE)
     )
+    # With streaming aggregation, each thread pre-aggregates the stats it adds in its own
+    # shard instead of appending them to stats_dict under the global lock.
+    streaming_aggregation = False
+    _shards: List[_StatsShard] = []
+    _thread_local = threading.local()
 
     def __init__(self, category: str):
         """
@@ -308,6 +530,56 @@ class StatsReporter:
         with StatsReporter.lock:
             StatsReporter.writers.append(writer)
 
+    @staticmethod
+    def set_streaming_aggregation(enabled: bool) -> None:
+        """
+        Enables or disables streaming aggregation. Streaming stats keep their count, mean,
+        standard deviation, min, max and, for HISTOGRAM stats, bucket counts rather than every
+        value, and are not passed to StatsWriter.on_add_stat.
+        """
+        with StatsReporter.lock:
+            StatsReporter.streaming_aggregation = enabled
+
+    @staticmethod
+    def _get_shard() -> _StatsShard:
+        shard = getattr(StatsReporter._thread_local, "shard", None)
+        if shard is None:
+            shard = _StatsShard()
+            StatsReporter._thread_local.shard = shard
+            with StatsReporter.lock:
+                StatsReporter._shards.append(shard)
+        return shard
+
+    def _get_streaming_stat(
+        self, shard: _StatsShard, key: str, aggregation: StatsAggregationMethod
+    ) -> StreamingStat:
+        category_stats = shard.stats[self.category]
+        stat = category_stats.get(key)
+        if stat is None:
+            stat = category_stats[key] = StreamingStat(aggregation)
+        stat.aggregation_method = aggregation
+        return stat
+
+    def _merge_streaming_stats(self, clear: bool) -> Dict[str, StreamingStat]:
+        """
+        Merges the streaming stats of this category from all the threads.
+        :param clear: Whether to remove the merged stats from the shards.
+        """
+        merged: Dict[str, StreamingStat] = {}
+        with StatsReporter.lock:
+            shards = list(StatsReporter._shards)
+        for shard in shards:
+            with shard.lock:
+                if clear:
+                    category_stats = shard.stats.pop(self.category, {})
+                else:
+                    category_stats = shard.stats.get(self.category, {})
+                for key, stat in category_stats.items():
+                    if key not in merged:
+                        merged[key] = StreamingStat(stat.aggregation_method)
+                    merged[key].merge(stat)
+        return merged
+
     def add_property(self, property_type: StatsPropertyType, value: Any) -> None:
         """
         Add a generic property to the StatsReporter. This could be e.g. a Dict of hyperparameters,
@@ -334,12 +606,43 @@ class StatsReporter:
         :param value: the value of the statistic.
         :param aggregation: the aggregation method for the statistic, default StatsAggregationMethod.AVERAGE.
         """
+        if StatsReporter.streaming_aggregation:
+            shard = self._get_shard()
+            with shard.lock:
+                self._get_streaming_stat(shard, key, aggregation).add(value)
+            return
         with StatsReporter.lock:
             StatsReporter.stats_dict[self.category][key].append(value)
             StatsReporter.stats_aggregation[self.category][key] = aggregation
             for writer in StatsReporter.writers:
                 writer.on_add_stat(self.category, key, value, aggregation)
 
+    def add_stats(
+        self,
+        key: str,
+        values: np.ndarray,
+        aggregation: StatsAggregationMethod = StatsAggregationMethod.AVERAGE,
+    ) -> None:
+        """
+        Add several float values of the same stat to the StatsReporter at once.
+
+        :param key: The type of statistic, e.g. Environment/Reward.
+        :param values: the values of the statistic.
+        :param aggregation: the aggregation method for the statistic, default StatsAggregationMethod.AVERAGE.
+        """
+        if StatsReporter.streaming_aggregation:
+            shard = self._get_shard()
+            with shard.lock:
+                self._get_streaming_stat(shard, key, aggregation).add_array(values)
+            return
+        values_list = np.asarray(values).ravel().tolist()
+        with StatsReporter.lock:
+            StatsReporter.stats_dict[self.category][key].extend(values_list)
+            StatsReporter.stats_aggregation[self.category][key] = aggregation
+            for writer in StatsReporter.writers:
+                for value in values_list:
+                    writer.on_add_stat(self.category, key, value, aggregation)
+
     def set_stat(self, key: str, value: float) -> None:
         """
         Sets a stat value to a float. This is for values that we don't want to average, and just
@@ -348,6 +651,13 @@ class StatsReporter:
         :param key: The type of statistic, e.g. Environment/Reward.
         :param value: the value of the statistic.
         """
+        if StatsReporter.streaming_aggregation:
+            shard = self._get_shard()
+            stat = StreamingStat(StatsAggregationMethod.MOST_RECENT)
+            stat.add(value)
+            with shard.lock:
+                shard.stats[self.category][key] = stat
+            return
         with StatsReporter.lock:
             StatsReporter.stats_dict[self.category][key] = [value]
             StatsReporter.stats_aggregation[self.category][
@@ -367,11 +677,13 @@ class StatsReporter:
         :param step: Training step which to write these stats as.
         """
         with StatsReporter.lock:
-            values: Dict[str, StatsSummary] = {}
+            values: Dict[str, Any] = {}
             for key in StatsReporter.stats_dict[self.category]:
                 if len(StatsReporter.stats_dict[self.category][key]) > 0:
                     stat_summary = self.get_stats_summaries(key)
                     values[key] = stat_summary
+            for key, stat in self._merge_streaming_stats(clear=True).items():
+                values[key] = stat.summary()
             for writer in StatsReporter.writers:
                 writer.write_stats(self.category, values, step)
             del StatsReporter.stats_dict[self.category]
@@ -383,6 +695,10 @@ class StatsReporter:
         :param key: The type of statistic, e.g. Environment/Reward.
         :returns: A StatsSummary containing summary statistics.
         """
+        if StatsReporter.streaming_aggregation:
+            streaming_stat = self._merge_streaming_stats(clear=False).get(key)
+            if streaming_stat is not None:
+                return streaming_stat.summary()
         stat_values = StatsReporter.stats_dict[self.category][key]
         if len(stat_values) == 0:
             return StatsSummary.empty()
@@ -1,5 +1,15 @@
 import datetime
-from typing import Dict, NamedTuple, List, Any, Optional, Callable, Set
+from typing import (
+    Dict,
+    NamedTuple,
+    List,
+    Any,
+    Optional,
+    Callable,
+    Set,
+    Iterator,
+    Tuple,
+)
 import cloudpickle
 import enum
 import time
@@ -14,7 +24,7 @@ from mlagents_envs.exception import (
 from multiprocessing import Process, Pipe, Queue
 from multiprocessing.connection import Connection
 from queue import Empty as EmptyQueueException
-from mlagents_envs.base_env import BaseEnv, BehaviorName, BehaviorSpec
+from mlagents_envs.base_env import BaseEnv, BehaviorName, BehaviorSpec, DecisionSteps
 from mlagents_envs import logging_util
 from mlagents.trainers.env_manager import EnvManager, EnvironmentStep, AllStepResult
 from mlagents.trainers.settings import TrainerSettings
@@ -24,9 +34,17 @@ from mlagents_envs.timers import (
     hierarchical_timer,
     reset_timers,
     get_timer_root,
+    set_sample_rate as set_timer_sample_rate,
 )
 from mlagents.trainers.settings import ParameterRandomizationSettings, RunOptions
 from mlagents.trainers.action_info import ActionInfo
+from mlagents.trainers.shared_memory_transport import (
+    SharedMemoryStepReader,
+    SharedMemoryStepWriter,
+    SharedStepDescriptor,
+    check_shared_memory_available,
+    ensure_resource_tracker_running,
+)
 from mlagents_envs.side_channel.environment_parameters_channel import (
     EnvironmentParametersChannel,
 )
@@ -46,6 +64,8 @@ from mlagents_envs.side_channel.side_channel import SideChannel
 
 logger = logging_util.get_logger(__name__)
 WORKER_SHUTDOWN_TIMEOUT_S = 10
+# How long to block on the step queue before checking on the workers again.
+STEP_QUEUE_POLL_INTERVAL_S = 1.0
 
 
 class EnvironmentCommand(enum.Enum):
@@ -62,6 +82,8 @@ class EnvironmentCommand(enum.Enum):
 class EnvironmentRequest(NamedTuple):
     cmd: EnvironmentCommand
     payload: Any = None
+    # The environment the request is for, when the worker process drives several of them.
+    worker_id: Optional[int] = None
 
 
 class EnvironmentResponse(NamedTuple):
@@ -74,6 +96,16 @@ class StepResponse(NamedTuple):
     all_step_result: AllStepResult
     timer_root: Optional[TimerNode]
     environment_stats: EnvironmentStats
+    # Set instead of all_step_result when the step was written to shared memory.
+    shared_step: Optional[SharedStepDescriptor] = None
+
+
+class MultiStepResponse(NamedTuple):
+    """
+    The StepResponses of all the environments of a worker process, which step together.
+    """
+
+    step_responses: Dict[int, StepResponse]
 
 
 class UnityEnvWorker:
@@ -83,12 +115,13 @@ class UnityEnvWorker:
         self.conn = conn
         self.previous_step: EnvironmentStep = EnvironmentStep.empty(worker_id)
         self.previous_all_action_info: Dict[str, ActionInfo] = {}
+        self.previous_policy_versions: Dict[str, int] = {}
         self.waiting = False
         self.closed = False
 
     def send(self, cmd: EnvironmentCommand, payload: Any = None) -> None:
         try:
-            req = EnvironmentRequest(cmd, payload)
+            req = EnvironmentRequest(cmd, payload, self.worker_id)
             self.conn.send(req)
         except (BrokenPipeError, EOFError):
             raise UnityCommunicationException("UnityEnvironment worker: send failed.")
@@ -105,7 +138,9 @@ class UnityEnvWorker:
 
     def request_close(self):
         try:
-            self.conn.send(EnvironmentRequest(EnvironmentCommand.CLOSE))
+            self.conn.send(
+                EnvironmentRequest(EnvironmentCommand.CLOSE, worker_id=self.worker_id)
+            )
         except (BrokenPipeError, EOFError):
             logger.debug(
                 f"UnityEnvWorker {self.worker_id} got exception trying to close."
@@ -113,104 +148,212 @@ class UnityEnvWorker:
             pass
 
 
+class _WorkerEnvironment:
+    """
+    An environment of a worker process, with its side channels.
+    """
+
+    def __init__(
+        self,
+        env_factory: Callable[[int, List[SideChannel]], UnityEnvironment],
+        worker_id: int,
+        run_options: RunOptions,
+    ):
+        self.worker_id = worker_id
+        self.env_parameters = EnvironmentParametersChannel()
+
+        engine_config = EngineConfig(
+            width=run_options.engine_settings.width,
+            height=run_options.engine_settings.height,
+            quality_level=run_options.engine_settings.quality_level,
+            time_scale=run_options.engine_settings.time_scale,
+            target_frame_rate=run_options.engine_settings.target_frame_rate,
+            capture_frame_rate=run_options.engine_settings.capture_frame_rate,
+        )
+        engine_configuration_channel = EngineConfigurationChannel()
+        engine_configuration_channel.set_configuration(engine_config)
+
+        self.stats_channel = StatsSideChannel()
+        self.training_analytics_channel: Optional[TrainingAnalyticsSideChannel] = None
+        if worker_id == 0:
+            self.training_analytics_channel = TrainingAnalyticsSideChannel()
+        self.step_writer: Optional[SharedMemoryStepWriter] = None
+
+        side_channels = [
+            self.env_parameters,
+            engine_configuration_channel,
+            self.stats_channel,
+        ]
+        if self.training_analytics_channel is not None:
+            side_channels.append(self.training_analytics_channel)
+
+        self.env = env_factory(worker_id, side_channels)
+        if (
+            not self.env.academy_capabilities
+            or not self.env.academy_capabilities.trainingAnalytics
+        ):
+            # Make sure we don't try to send training analytics if the environment doesn't know how to process
+            # them. This wouldn't be catastrophic, but would result in unknown SideChannel UUIDs being used.
+            self.training_analytics_channel = None
+        if self.training_analytics_channel:
+            self.training_analytics_channel.environment_initialized(run_options)
+        if run_options.env_settings.shared_memory_transport:
+            self.step_writer = SharedMemoryStepWriter(self.env.behavior_specs)
+
+    def set_actions(self, all_action_info: Dict[BehaviorName, ActionInfo]) -> None:
+        for brain_name, action_info in all_action_info.items():
+            if len(action_info.agent_ids) > 0:
+                self.env.set_actions(brain_name, action_info.env_action)
+
+    def step_async(self) -> None:
+        # Environments that can't step asynchronously step right away.
+        if isinstance(self.env, UnityEnvironment):
+            self.env.step_async()
+        else:
+            self.env.step()
+
+    def step_wait(self) -> None:
+        if isinstance(self.env, UnityEnvironment):
+            self.env.step_wait()
+
+    def all_step_result(self) -> AllStepResult:
+        all_step_result: AllStepResult = {}
+        for brain_name in self.env.behavior_specs:
+            all_step_result[brain_name] = self.env.get_steps(brain_name)
+        return all_step_result
+
+    def step_response(self, timer_root: Optional[TimerNode]) -> StepResponse:
+        all_step_result = self.all_step_result()
+        env_stats = self.stats_channel.get_and_reset_stats()
+        if self.step_writer is not None:
+            return StepResponse(
+                {}, timer_root, env_stats, self.step_writer.write(all_step_result)
+            )
+        return StepResponse(all_step_result, timer_root, env_stats)
+
+    def close(self) -> None:
+        self.env.close()
+        if self.step_writer is not None:
+            self.step_writer.close()
+
+
+def _step_environments(
+    envs: Dict[int, _WorkerEnvironment],
+    all_action_info: Dict[int, Dict[BehaviorName, ActionInfo]],
+    send_timers: bool,
+) -> EnvironmentResponse:
+    """
+    Sets the actions of the environments of a worker process and steps them. When the process
+    drives several environments, they all exchange their step with Unity at the same time, and
+    their StepResponses are returned together as a MultiStepResponse.
+    :param send_timers: Whether to send the timers of the process with the step.
+    """
+    for worker_id, env_action_info in all_action_info.items():
+        envs[worker_id].set_actions(env_action_info)
+    # TODO get gauges from the workers and merge them in the main process too.
+    if len(envs) == 1:
+        (worker_env,) = envs.values()
+        worker_env.env.step()
+        return EnvironmentResponse(
+            EnvironmentCommand.STEP,
+            worker_env.worker_id,
+            worker_env.step_response(get_timer_root() if send_timers else None),
+        )
+    for worker_env in envs.values():
+        worker_env.step_async()
+    for worker_env in envs.values():
+        worker_env.step_wait()
+    first_worker_id = next(iter(envs))
+    # The timers of the process are sent once, with the first environment.
+    step_responses = {
+        worker_id: worker_env.step_response(
+            get_timer_root() if send_timers and worker_id == first_worker_id else None
+        )
+        for worker_id, worker_env in envs.items()
+    }
+    return EnvironmentResponse(
+        EnvironmentCommand.STEP, first_worker_id, MultiStepResponse(step_responses)
+    )
+
+
 def worker(
     parent_conn: Connection,
     step_queue: Queue,
     pickled_env_factory: str,
-    worker_id: int,
+    worker_ids: List[int],
     run_options: RunOptions,
     log_level: int = logging_util.INFO,
 ) -> None:
+    """
+    Drives the environments with the given worker ids. The requests of the parent process
+    name the environment they are for. The environments step together: the STEP request of
+    each of them is held until all of them have one.
+    """
     env_factory: Callable[
         [int, List[SideChannel]], UnityEnvironment
     ] = cloudpickle.loads(pickled_env_factory)
-    env_parameters = EnvironmentParametersChannel()
-
-    engine_config = EngineConfig(
-        width=run_options.engine_settings.width,
-        height=run_options.engine_settings.height,
-        quality_level=run_options.engine_settings.quality_level,
-        time_scale=run_options.engine_settings.time_scale,
-        target_frame_rate=run_options.engine_settings.target_frame_rate,
-        capture_frame_rate=run_options.engine_settings.capture_frame_rate,
-    )
-    engine_configuration_channel = EngineConfigurationChannel()
-    engine_configuration_channel.set_configuration(engine_config)
-
-    stats_channel = StatsSideChannel()
-    training_analytics_channel: Optional[TrainingAnalyticsSideChannel] = None
-    if worker_id == 0:
-        training_analytics_channel = TrainingAnalyticsSideChannel()
-    env: UnityEnvironment = None
+    envs: Dict[int, _WorkerEnvironment] = {}
     # Set log level. On some platforms, the logger isn't common with the
     # main process, so we need to set it again.
     logging_util.set_log_level(log_level)
+    set_timer_sample_rate(run_options.timer_sample_rate)
+    timers_sent_time = time.perf_counter()
 
-    def _send_response(cmd_name: EnvironmentCommand, payload: Any) -> None:
+    def _send_response(
+        cmd_name: EnvironmentCommand, worker_id: int, payload: Any
+    ) -> None:
         parent_conn.send(EnvironmentResponse(cmd_name, worker_id, payload))
 
-    def _generate_all_results() -> AllStepResult:
-        all_step_result: AllStepResult = {}
-        for brain_name in env.behavior_specs:
-            all_step_result[brain_name] = env.get_steps(brain_name)
-        return all_step_result
-
     try:
-        side_channels = [env_parameters, engine_configuration_channel, stats_channel]
-        if training_analytics_channel is not None:
-            side_channels.append(training_analytics_channel)
-
-        env = env_factory(worker_id, side_channels)
-        if (
-            not env.academy_capabilities
-            or not env.academy_capabilities.trainingAnalytics
-        ):
-            # Make sure we don't try to send training analytics if the environment doesn't know how to process
-            # them. This wouldn't be catastrophic, but would result in unknown SideChannel UUIDs being used.
-            training_analytics_channel = None
-        if training_analytics_channel:
-            training_analytics_channel.environment_initialized(run_options)
+        for worker_id in worker_ids:
+            envs[worker_id] = _WorkerEnvironment(env_factory, worker_id, run_options)
+        pending_actions: Dict[int, Dict[BehaviorName, ActionInfo]] = {}
 
         while True:
             req: EnvironmentRequest = parent_conn.recv()
+            worker_env = envs[
+                req.worker_id if req.worker_id is not None else worker_ids[0]
+            ]
             if req.cmd == EnvironmentCommand.STEP:
-                all_action_info = req.payload
-                for brain_name, action_info in all_action_info.items():
-                    if len(action_info.agent_ids) > 0:
-                        env.set_actions(brain_name, action_info.env_action)
-                env.step()
-                all_step_result = _generate_all_results()
-                # The timers in this process are independent from all the processes and the "main" process
-                # So after we send back the root timer, we can safely clear them.
-                # Note that we could randomly return timers a fraction of the time if we wanted to reduce
-                # the data transferred.
-                # TODO get gauges from the workers and merge them in the main process too.
-                env_stats = stats_channel.get_and_reset_stats()
-                step_response = StepResponse(
-                    all_step_result, get_timer_root(), env_stats
-                )
-                step_queue.put(
-                    EnvironmentResponse(
-                        EnvironmentCommand.STEP, worker_id, step_response
+                pending_actions[worker_env.worker_id] = req.payload
+                if len(pending_actions) == len(envs):
+                    # The timers in this process are independent from all the processes and the
+                    # "main" process, so after we send back the root timer, we can safely clear
+                    # them. In between, they accumulate in the process.
+                    now = time.perf_counter()
+                    send_timers = (
+                        now - timers_sent_time >= run_options.worker_timers_interval_s
                     )
-                )
-                reset_timers()
+                    step_queue.put(
+                        _step_environments(envs, pending_actions, send_timers)
+                    )
+                    pending_actions = {}
+                    if send_timers:
+                        reset_timers()
+                        timers_sent_time = now
             elif req.cmd == EnvironmentCommand.BEHAVIOR_SPECS:
-                _send_response(EnvironmentCommand.BEHAVIOR_SPECS, env.behavior_specs)
+                _send_response(
+                    EnvironmentCommand.BEHAVIOR_SPECS,
+                    worker_env.worker_id,
+                    worker_env.env.behavior_specs,
+                )
             elif req.cmd == EnvironmentCommand.ENVIRONMENT_PARAMETERS:
                 for k, v in req.payload.items():
                     if isinstance(v, ParameterRandomizationSettings):
-                        v.apply(k, env_parameters)
+                        v.apply(k, worker_env.env_parameters)
             elif req.cmd == EnvironmentCommand.TRAINING_STARTED:
                 behavior_name, trainer_config = req.payload
-                if training_analytics_channel:
-                    training_analytics_channel.training_started(
+                if worker_env.training_analytics_channel:
+                    worker_env.training_analytics_channel.training_started(
                         behavior_name, trainer_config
                     )
             elif req.cmd == EnvironmentCommand.RESET:
-                env.reset()
-                all_step_result = _generate_all_results()
-                _send_response(EnvironmentCommand.RESET, all_step_result)
+                worker_env.env.reset()
+                _send_response(
+                    EnvironmentCommand.RESET,
+                    worker_env.worker_id,
+                    worker_env.all_step_result(),
+                )
             elif req.cmd == EnvironmentCommand.CLOSE:
                 break
     except (
@@ -220,26 +363,31 @@ def worker(
         UnityEnvironmentException,
         UnityCommunicatorStoppedException,
     ) as ex:
-        logger.debug(f"UnityEnvironment worker {worker_id}: environment stopping.")
-        step_queue.put(
-            EnvironmentResponse(EnvironmentCommand.ENV_EXITED, worker_id, ex)
-        )
-        _send_response(EnvironmentCommand.ENV_EXITED, ex)
+        logger.debug(f"UnityEnvironment worker {worker_ids}: environment stopping.")
+        for worker_id in worker_ids:
+            step_queue.put(
+                EnvironmentResponse(EnvironmentCommand.ENV_EXITED, worker_id, ex)
+            )
+            _send_response(EnvironmentCommand.ENV_EXITED, worker_id, ex)
     except Exception as ex:
         logger.exception(
-            f"UnityEnvironment worker {worker_id}: environment raised an unexpected exception."
+            f"UnityEnvironment worker {worker_ids}: environment raised an unexpected exception."
         )
-        step_queue.put(
-            EnvironmentResponse(EnvironmentCommand.ENV_EXITED, worker_id, ex)
-        )
-        _send_response(EnvironmentCommand.ENV_EXITED, ex)
+        for worker_id in worker_ids:
+            step_queue.put(
+                EnvironmentResponse(EnvironmentCommand.ENV_EXITED, worker_id, ex)
+            )
+            _send_response(EnvironmentCommand.ENV_EXITED, worker_id, ex)
     finally:
-        logger.debug(f"UnityEnvironment worker {worker_id} closing.")
-        if env is not None:
-            env.close()
-        logger.debug(f"UnityEnvironment worker {worker_id} done.")
+        logger.debug(f"UnityEnvironment worker {worker_ids} closing.")
+        for worker_env in envs.values():
+            worker_env.close()
+        logger.debug(f"UnityEnvironment worker {worker_ids} done.")
         parent_conn.close()
-        step_queue.put(EnvironmentResponse(EnvironmentCommand.CLOSED, worker_id, None))
+        for worker_id in worker_ids:
+            step_queue.put(
+                EnvironmentResponse(EnvironmentCommand.CLOSED, worker_id, None)
+            )
         step_queue.close()
 
 
@@ -262,13 +410,48 @@ class SubprocessEnvManager(EnvManager):
             [] for _ in range(n_env)
         ]
         self.restart_counts: List[int] = [0] * n_env
-        for worker_idx in range(n_env):
-            self.env_workers.append(
+        self.use_shared_memory = run_options.env_settings.shared_memory_transport
+        self.step_batch_size = run_options.env_settings.env_step_batch_size
+        self.step_batch_timeout_s = run_options.env_settings.env_step_batch_timeout_s
+        self.pipelined_inference = run_options.env_settings.pipelined_inference
+        self.inference_batch_size = run_options.env_settings.inference_batch_size
+        self.step_readers: Dict[int, SharedMemoryStepReader] = {}
+        self.envs_per_worker = run_options.env_settings.envs_per_worker
+        if self.use_shared_memory:
+            check_shared_memory_available()
+            ensure_resource_tracker_running()
+        for first_worker_id in range(0, n_env, self.envs_per_worker):
+            last_worker_id = min(first_worker_id + self.envs_per_worker, n_env)
+            worker_ids = list(range(first_worker_id, last_worker_id))
+            self.env_workers.extend(self._create_workers(worker_ids))
+            self.workers_alive += len(worker_ids)
+
+    def _create_workers(self, worker_ids: List[int]) -> List[UnityEnvWorker]:
+        """
+        Starts a worker process for the environments with the given worker ids.
+        :return: One UnityEnvWorker per environment.
+        """
+        if len(worker_ids) == 1:
+            return [
                 self.create_worker(
-                    worker_idx, self.step_queue, env_factory, run_options
+                    worker_ids[0], self.step_queue, self.env_factory, self.run_options
                 )
+            ]
+        return self.create_multi_env_worker(
+            worker_ids, self.step_queue, self.env_factory, self.run_options
+        )
+
+    def _worker_group(self, worker_id: int) -> List[int]:
+        """
+        :return: The worker ids of the environments that share a worker process with worker_id.
+        """
+        first_worker_id = worker_id - worker_id % self.envs_per_worker
+        return list(
+            range(
+                first_worker_id,
+                min(first_worker_id + self.envs_per_worker, len(self.env_workers)),
             )
-            self.workers_alive += 1
+        )
 
     @staticmethod
     def create_worker(
@@ -277,6 +460,37 @@ class SubprocessEnvManager(EnvManager):
         env_factory: Callable[[int, List[SideChannel]], BaseEnv],
         run_options: RunOptions,
     ) -> UnityEnvWorker:
+        child_process, parent_conn = SubprocessEnvManager._start_worker_process(
+            [worker_id], step_queue, env_factory, run_options
+        )
+        return UnityEnvWorker(child_process, worker_id, parent_conn)
+
+    @staticmethod
+    def create_multi_env_worker(
+        worker_ids: List[int],
+        step_queue: Queue,
+        env_factory: Callable[[int, List[SideChannel]], BaseEnv],
+        run_options: RunOptions,
+    ) -> List[UnityEnvWorker]:
+        """
+        Starts one worker process that drives the environments with the given worker ids.
+        :return: One UnityEnvWorker per environment, sharing the process and its connection.
+        """
+        child_process, parent_conn = SubprocessEnvManager._start_worker_process(
+            worker_ids, step_queue, env_factory, run_options
+        )
+        return [
+            UnityEnvWorker(child_process, worker_id, parent_conn)
+            for worker_id in worker_ids
+        ]
+
+    @staticmethod
+    def _start_worker_process(
+        worker_ids: List[int],
+        step_queue: Queue,
+        env_factory: Callable[[int, List[SideChannel]], BaseEnv],
+        run_options: RunOptions,
+    ) -> Tuple[Process, Connection]:
         parent_conn, child_conn = Pipe()
 
         # Need to use cloudpickle for the env factory function since function objects aren't picklable
@@ -288,21 +502,52 @@ class SubprocessEnvManager(EnvManager):
                 child_conn,
                 step_queue,
                 pickled_env_factory,
-                worker_id,
+                worker_ids,
                 run_options,
                 logger.level,
             ),
         )
         child_process.start()
-        return UnityEnvWorker(child_process, worker_id, parent_conn)
+        return child_process, parent_conn
 
     def _queue_steps(self) -> None:
-        for env_worker in self.env_workers:
-            if not env_worker.waiting:
-                env_action_info = self._take_step(env_worker.previous_step)
-                env_worker.previous_all_action_info = env_action_info
-                env_worker.send(EnvironmentCommand.STEP, env_action_info)
-                env_worker.waiting = True
+        if self.pipelined_inference:
+            ready_workers = [w for w in self.env_workers if not w.waiting]
+            for env_worker, env_action_info in zip(
+                ready_workers, self._take_steps_batched(ready_workers)
+            ):
+                self._send_step(env_worker, env_action_info)
+        else:
+            for env_worker in self.env_workers:
+                if not env_worker.waiting:
+                    self._send_step(
+                        env_worker, self._take_step(env_worker.previous_step)
+                    )
+
+    def _send_step(
+        self, env_worker: UnityEnvWorker, env_action_info: Dict[BehaviorName, ActionInfo]
+    ) -> None:
+        env_worker.previous_all_action_info = env_action_info
+        env_worker.previous_policy_versions = {
+            brain_name: self.policy_versions.get(brain_name, 0)
+            for brain_name in env_action_info
+        }
+        if self.use_shared_memory:
+            # The worker only needs the environment actions, don't pickle the rest.
+            env_action_info = {
+                brain_name: ActionInfo([], info.env_action, {}, info.agent_ids)
+                for brain_name, info in env_action_info.items()
+            }
+        env_worker.send(EnvironmentCommand.STEP, env_action_info)
+        env_worker.waiting = True
+
+    def process_steps(self, new_step_infos: List[EnvironmentStep]) -> int:
+        num_step_infos = super().process_steps(new_step_infos)
+        if self.pipelined_inference:
+            # The AgentProcessors are up to date with these steps, so the next actions can be
+            # sent now and the workers simulate while the trainers advance.
+            self._queue_steps()
+        return num_step_infos
 
     def _restart_failed_workers(self, first_failure: EnvironmentResponse) -> None:
         if first_failure.cmd != EnvironmentCommand.ENV_EXITED:
@@ -315,18 +560,63 @@ class SubprocessEnvManager(EnvManager):
             **{first_failure.worker_id: first_failure.payload},
             **other_failures,
         }
+        restarted: Set[int] = set()
         for worker_id, ex in failures.items():
             self._assert_worker_can_restart(worker_id, ex)
             logger.warning(f"Restarting worker[{worker_id}] after '{ex}'")
             self.recent_restart_timestamps[worker_id].append(datetime.datetime.now())
             self.restart_counts[worker_id] += 1
-            self.env_workers[worker_id] = self.create_worker(
-                worker_id, self.step_queue, self.env_factory, self.run_options
-            )
+            if worker_id in restarted:
+                continue
+            # The other environments of the worker process are restarted with it.
+            worker_ids = self._worker_group(worker_id)
+            for env_worker in self._create_workers(worker_ids):
+                self.env_workers[env_worker.worker_id] = env_worker
+            restarted.update(worker_ids)
         # The restarts were successful, clear all the existing training trajectories so we don't use corrupted or
         # outdated data.
         self.reset(self.env_parameters)
 
+    def _step_responses(self, timeout: float) -> Iterator[EnvironmentResponse]:
+        """
+        Yields the responses waiting in the step queue. If there are none, blocks for up to timeout
+        seconds until one arrives. The time spent blocked shows up as "wait_for_env" in the timers.
+        The queue is read lazily, so responses that arrive while the caller handles one are yielded too.
+        """
+        try:
+            step: EnvironmentResponse = self.step_queue.get_nowait()
+        except EmptyQueueException:
+            if timeout <= 0:
+                return
+            with hierarchical_timer("wait_for_env"):
+                try:
+                    step = self.step_queue.get(timeout=timeout)
+                except EmptyQueueException:
+                    return
+        while True:
+            yield from self._split_step_response(step)
+            try:
+                step = self.step_queue.get_nowait()
+            except EmptyQueueException:
+                return
+
+    @staticmethod
+    def _split_step_response(
+        response: EnvironmentResponse,
+    ) -> Iterator[EnvironmentResponse]:
+        """
+        Yields the response of each environment of a worker process that drives several of them.
+        """
+        if response.cmd == EnvironmentCommand.STEP and isinstance(
+            response.payload, MultiStepResponse
+        ):
+            for worker_id, step_response in response.payload.step_responses.items():
+                yield EnvironmentResponse(
+                    EnvironmentCommand.STEP, worker_id, step_response
+                )
+        else:
+            yield response
+
     def _drain_step_queue(self) -> Dict[int, Exception]:
         """
         Drains all steps out of the step queue and returns all exceptions from crashed workers.
@@ -336,17 +626,13 @@ class SubprocessEnvManager(EnvManager):
         workers_still_pending = {w.worker_id for w in self.env_workers if w.waiting}
         deadline = datetime.datetime.now() + datetime.timedelta(minutes=1)
         while workers_still_pending and deadline > datetime.datetime.now():
-            try:
-                while True:
-                    step: EnvironmentResponse = self.step_queue.get_nowait()
-                    if step.cmd == EnvironmentCommand.ENV_EXITED:
-                        workers_still_pending.add(step.worker_id)
-                        all_failures[step.worker_id] = step.payload
-                    else:
-                        workers_still_pending.remove(step.worker_id)
-                        self.env_workers[step.worker_id].waiting = False
-            except EmptyQueueException:
-                pass
+            for step in self._step_responses(STEP_QUEUE_POLL_INTERVAL_S):
+                if step.cmd == EnvironmentCommand.ENV_EXITED:
+                    workers_still_pending.add(step.worker_id)
+                    all_failures[step.worker_id] = step.payload
+                else:
+                    workers_still_pending.remove(step.worker_id)
+                    self.env_workers[step.worker_id].waiting = False
         if deadline < datetime.datetime.now():
             still_waiting = {w.worker_id for w in self.env_workers if w.waiting}
             raise TimeoutError(f"Workers {still_waiting} stuck in waiting state")
@@ -409,32 +695,39 @@ class SubprocessEnvManager(EnvManager):
 
         worker_steps: List[EnvironmentResponse] = []
         step_workers: Set[int] = set()
-        # Poll the step queue for completed steps from environment workers until we retrieve
-        # 1 or more, which we will then return as StepInfos
-        while len(worker_steps) < 1:
-            try:
-                while True:
-                    step: EnvironmentResponse = self.step_queue.get_nowait()
-                    if step.cmd == EnvironmentCommand.ENV_EXITED:
-                        # If even one env exits try to restart all envs that failed.
-                        self._restart_failed_workers(step)
-                        # Clear state and restart this function.
-                        worker_steps.clear()
-                        step_workers.clear()
-                        self._queue_steps()
-                    elif step.worker_id not in step_workers:
-                        self.env_workers[step.worker_id].waiting = False
-                        worker_steps.append(step)
-                        step_workers.add(step.worker_id)
-            except EmptyQueueException:
-                pass
+        # Wait for completed steps from environment workers until step_batch_size of them are ready,
+        # or step_batch_timeout_s has passed since the first one was. Every step that is ready by
+        # then is returned as StepInfos.
+        batch_size = max(1, min(self.step_batch_size, len(self.env_workers)))
+        batch_deadline: Optional[float] = None
+        while len(worker_steps) < batch_size:
+            if batch_deadline is None:
+                timeout = STEP_QUEUE_POLL_INTERVAL_S
+            else:
+                timeout = batch_deadline - time.perf_counter()
+                if timeout <= 0:
+                    break
+            for step in self._step_responses(timeout):
+                if step.cmd == EnvironmentCommand.ENV_EXITED:
+                    # If even one env exits try to restart all envs that failed.
+                    self._restart_failed_workers(step)
+                    # Clear state and restart this function.
+                    worker_steps.clear()
+                    step_workers.clear()
+                    batch_deadline = None
+                    self._queue_steps()
+                elif step.worker_id not in step_workers:
+                    self.env_workers[step.worker_id].waiting = False
+                    worker_steps.append(step)
+                    step_workers.add(step.worker_id)
+                    if batch_deadline is None:
+                        batch_deadline = time.perf_counter() + self.step_batch_timeout_s
         step_infos = self._postprocess_steps(worker_steps)
         return step_infos
 
     def _reset_env(self, config: Optional[Dict] = None) -> List[EnvironmentStep]:
         while any(ew.waiting for ew in self.env_workers):
-            if not self.step_queue.empty():
-                step = self.step_queue.get_nowait()
+            for step in self._step_responses(STEP_QUEUE_POLL_INTERVAL_S):
                 self.env_workers[step.worker_id].waiting = False
         # Send config to environment
         self.set_env_parameters(config)
@@ -505,6 +798,8 @@ class SubprocessEnvManager(EnvManager):
                         "A SubprocessEnvManager worker did not shut down correctly so it was forcefully terminated."
                     )
         self.step_queue.join_thread()
+        for step_reader in self.step_readers.values():
+            step_reader.close()
 
     def _postprocess_steps(
         self, env_steps: List[EnvironmentResponse]
@@ -514,11 +809,17 @@ class SubprocessEnvManager(EnvManager):
         for step in env_steps:
             payload: StepResponse = step.payload
             env_worker = self.env_workers[step.worker_id]
+            all_step_result = payload.all_step_result
+            if payload.shared_step is not None:
+                all_step_result = self._read_shared_step(
+                    step.worker_id, payload.shared_step
+                )
             new_step = EnvironmentStep(
-                payload.all_step_result,
+                all_step_result,
                 step.worker_id,
                 env_worker.previous_all_action_info,
                 payload.environment_stats,
+                env_worker.previous_policy_versions,
             )
             step_infos.append(new_step)
             env_worker.previous_step = new_step
@@ -535,6 +836,59 @@ class SubprocessEnvManager(EnvManager):
 
         return step_infos
 
+    def _read_shared_step(
+        self, worker_id: int, descriptor: SharedStepDescriptor
+    ) -> AllStepResult:
+        if worker_id not in self.step_readers:
+            self.step_readers[worker_id] = SharedMemoryStepReader()
+        # The slab is overwritten by the worker's next step, while the AgentProcessor keeps
+        # observations until their trajectory is complete, so copy each array out of it once.
+        return self.step_readers[worker_id].read(descriptor, copy=True)
+
+    @timed
+    def _take_steps_batched(
+        self, env_workers: List[UnityEnvWorker]
+    ) -> List[Dict[BehaviorName, ActionInfo]]:
+        """
+        Like _take_step for several workers at once. The DecisionSteps of a behavior from all the
+        workers are evaluated together, in batches of up to inference_batch_size agents.
+        """
+        all_action_info: List[Dict[BehaviorName, ActionInfo]] = [
+            {} for _ in env_workers
+        ]
+        requests: Dict[BehaviorName, List[Tuple[int, DecisionSteps]]] = {}
+        for index, env_worker in enumerate(env_workers):
+            step_result = env_worker.previous_step.current_all_step_result
+            for brain_name, (decision_steps, _) in step_result.items():
+                if brain_name in self.policies:
+                    requests.setdefault(brain_name, []).append((index, decision_steps))
+        for brain_name, behavior_requests in requests.items():
+            for batch in self._inference_batches(behavior_requests):
+                action_infos = self.policies[brain_name].get_action_batch(
+                    [
+                        (decision_steps, env_workers[index].worker_id)
+                        for index, decision_steps in batch
+                    ]
+                )
+                for (index, _), action_info in zip(batch, action_infos):
+                    all_action_info[index][brain_name] = action_info
+        return all_action_info
+
+    def _inference_batches(
+        self, requests: List[Tuple[int, DecisionSteps]]
+    ) -> Iterator[List[Tuple[int, DecisionSteps]]]:
+        batch: List[Tuple[int, DecisionSteps]] = []
+        num_agents = 0
+        for request in requests:
+            if batch and num_agents + len(request[1]) > self.inference_batch_size:
+                yield batch
+                batch = []
+                num_agents = 0
+            batch.append(request)
+            num_agents += len(request[1])
+        if batch:
+            yield batch
+
     @timed
     def _take_step(self, last_step: EnvironmentStep) -> Dict[BehaviorName, ActionInfo]:
         all_action_info: Dict[str, ActionInfo] = {}
@@ -0,0 +1,60 @@
+"""
+Compares computing GAE and lambda returns one trajectory at a time with the batched
+implementations in mlagents.trainers.advantages.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_advantages
+"""
+import argparse
+import timeit
+
+import numpy as np
+
+from mlagents.trainers.advantages import get_gae_batch, lambda_return_batch
+from mlagents.trainers.poca.trainer import lambda_return
+from mlagents.trainers.ppo.trainer import get_gae
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--num-trajectories", type=int, default=1000)
+    parser.add_argument("--time-horizon", type=int, default=64)
+    parser.add_argument("--repeats", type=int, default=5)
+    args = parser.parse_args()
+
+    rng = np.random.RandomState(0)
+    lengths = rng.randint(1, args.time_horizon + 1, size=args.num_trajectories)
+    rewards = [rng.randn(length).astype(np.float32) for length in lengths]
+    values = [rng.randn(length).astype(np.float32) for length in lengths]
+    value_next = rng.randn(args.num_trajectories).astype(np.float32)
+
+    def per_trajectory_gae():
+        for r, v, v_next in zip(rewards, values, value_next):
+            get_gae(r, v, value_next=v_next, gamma=0.99, lambd=0.95)
+
+    def batched_gae():
+        get_gae_batch(rewards, values, value_next, gamma=0.99, lambd=0.95)
+
+    def per_trajectory_lambda_return():
+        for r, v, v_next in zip(rewards, values, value_next):
+            lambda_return(r, v, gamma=0.99, lambd=0.8, value_next=v_next)
+
+    def batched_lambda_return():
+        lambda_return_batch(rewards, values, value_next, gamma=0.99, lambd=0.8)
+
+    print(
+        f"{args.num_trajectories} trajectories of up to {args.time_horizon} steps, "
+        f"best of {args.repeats}:"
+    )
+    for name, fn in (
+        ("get_gae, per trajectory", per_trajectory_gae),
+        ("get_gae_batch", batched_gae),
+        ("lambda_return, per trajectory", per_trajectory_lambda_return),
+        ("lambda_return_batch", batched_lambda_return),
+    ):
+        best = min(timeit.repeat(fn, number=1, repeat=args.repeats))
+        print(f"{name:>30}: {best * 1000:8.2f} ms")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,97 @@
+"""
+Compares the time AgentProcessor.add_experiences takes to add a step of many agents, and to turn
+the resulting trajectories into AgentBuffers, with and without batched experiences.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_agent_processor
+"""
+import argparse
+import time
+
+import numpy as np
+
+from mlagents_envs.base_env import ActionSpec, ActionTuple, BehaviorSpec
+from mlagents.trainers.action_info import ActionInfo
+from mlagents.trainers.agent_processor import AgentManager
+from mlagents.trainers.policy.policy import Policy
+from mlagents.trainers.settings import TrainerSettings
+from mlagents.trainers.stats import StatsReporter
+from mlagents.trainers.tests import mock_brain as mb
+from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
+from mlagents.trainers.torch.action_log_probs import LogProbsTuple
+
+
+def make_action_info(agent_ids: np.ndarray, action_spec: ActionSpec) -> ActionInfo:
+    num_agents = len(agent_ids)
+    action = ActionTuple(
+        continuous=np.zeros((num_agents, action_spec.continuous_size), np.float32),
+        discrete=np.zeros((num_agents, action_spec.discrete_size), np.int32),
+    )
+    return ActionInfo(
+        action=action,
+        env_action=action,
+        outputs={
+            "action": action,
+            "entropy": np.ones(num_agents, dtype=np.float32),
+            "learning_rate": 1.0,
+            "log_probs": LogProbsTuple(
+                continuous=np.zeros_like(action.continuous),
+                discrete=np.zeros(action.discrete.shape, dtype=np.float32),
+            ),
+        },
+        agent_ids=agent_ids,
+    )
+
+
+def run(batched: bool, args: argparse.Namespace) -> float:
+    observation_specs = create_observation_specs_with_shapes([(args.vec_obs_size,)])
+    action_spec = ActionSpec(2, (3, 3))
+    policy = Policy(0, BehaviorSpec(observation_specs, action_spec), TrainerSettings())
+    manager = AgentManager(
+        policy,
+        "bench",
+        StatsReporter("bench"),
+        max_trajectory_length=args.time_horizon,
+        threaded=False,
+        batched=batched,
+    )
+    decision_steps, terminal_steps = mb.create_mock_steps(
+        args.num_agents, observation_specs, action_spec
+    )
+    action_info = make_action_info(decision_steps.agent_id, action_spec)
+    manager.add_experiences(decision_steps, terminal_steps, 0, ActionInfo.empty())
+
+    start = time.perf_counter()
+    for _ in range(args.num_steps):
+        for worker_id in range(args.num_workers):
+            manager.add_experiences(
+                decision_steps, terminal_steps, worker_id, action_info
+            )
+        while not manager.trajectory_queue.empty():
+            manager.trajectory_queue.get_nowait().to_agentbuffer()
+    return time.perf_counter() - start
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--num-agents", type=int, default=1000)
+    parser.add_argument("--num-workers", type=int, default=4)
+    parser.add_argument("--vec-obs-size", type=int, default=64)
+    parser.add_argument("--time-horizon", type=int, default=64)
+    parser.add_argument("--num-steps", type=int, default=128)
+    args = parser.parse_args()
+
+    print(
+        f"{args.num_agents} agents x {args.num_workers} workers, "
+        f"{args.num_steps} steps, time horizon {args.time_horizon}:"
+    )
+    for name, batched in (("per agent", False), ("batched", True)):
+        elapsed = run(batched, args)
+        agent_steps = args.num_agents * args.num_workers * args.num_steps
+        print(
+            f"{name:>10}: {elapsed:8.2f} s, {agent_steps / elapsed:12.0f} agent steps/s"
+        )
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,87 @@
+"""
+Compares the time TorchPolicy.evaluate takes with the eager actor and with compiled inference
+(TrainerSettings.compiled_inference), for networks the size of the 3DBall, Walker and a visual
+environment, at several batch sizes.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_compiled_inference
+"""
+import argparse
+import functools
+import timeit
+
+from mlagents.torch_utils import torch
+from mlagents_envs.base_env import ActionSpec, BehaviorSpec
+from mlagents.trainers.policy.torch_policy import TorchPolicy
+from mlagents.trainers.settings import NetworkSettings, TrainerSettings
+from mlagents.trainers.tests import mock_brain as mb
+from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
+
+NETWORKS = {
+    "3DBall": (
+        [(8,)],
+        ActionSpec.create_continuous(2),
+        NetworkSettings(hidden_units=128, num_layers=2),
+    ),
+    "Walker": (
+        [(243,)],
+        ActionSpec.create_continuous(39),
+        NetworkSettings(hidden_units=512, num_layers=3),
+    ),
+    "visual": (
+        [(84, 84, 3), (8,)],
+        ActionSpec.create_discrete((3, 3)),
+        NetworkSettings(hidden_units=256, num_layers=2),
+    ),
+}
+
+
+def make_policy(network: str, compiled: bool) -> TorchPolicy:
+    observation_shapes, action_spec, network_settings = NETWORKS[network]
+    behavior_spec = BehaviorSpec(
+        create_observation_specs_with_shapes(observation_shapes), action_spec
+    )
+    trainer_settings = TrainerSettings(
+        network_settings=network_settings, compiled_inference=compiled
+    )
+    return TorchPolicy(0, behavior_spec, trainer_settings)
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--batch-sizes", type=str, default="1,16,64,256")
+    parser.add_argument("--networks", type=str, default=",".join(NETWORKS))
+    parser.add_argument("--number", type=int, default=20)
+    parser.add_argument("--repeats", type=int, default=5)
+    parser.add_argument("--threads", type=int, default=1)
+    args = parser.parse_args()
+    torch.set_num_threads(args.threads)
+
+    print(f"ms per evaluate, best of {args.repeats}:")
+    print(f"{'network':>8} {'batch':>6} {'eager':>9} {'compiled':>9} {'speedup':>8}")
+    for network in args.networks.split(","):
+        policies = {compiled: make_policy(network, compiled) for compiled in (False, True)}
+        for batch_size in map(int, args.batch_sizes.split(",")):
+            decision_steps, _ = mb.create_steps_from_behavior_spec(
+                policies[False].behavior_spec, batch_size
+            )
+            agent_ids = [str(agent_id) for agent_id in decision_steps.agent_id]
+            times = {}
+            for compiled, policy in policies.items():
+                evaluate = functools.partial(policy.evaluate, decision_steps, agent_ids)
+                # Trace the graph of this batch size before timing.
+                evaluate()
+                times[compiled] = (
+                    min(
+                        timeit.repeat(evaluate, number=args.number, repeat=args.repeats)
+                    )
+                    / args.number
+                )
+            print(
+                f"{network:>8} {batch_size:>6} {times[False] * 1000:9.3f} "
+                f"{times[True] * 1000:9.3f} {times[False] / times[True]:7.2f}x"
+            )
+
+
+if __name__ == "__main__":
+    main()
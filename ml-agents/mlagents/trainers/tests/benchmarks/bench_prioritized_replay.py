@@ -0,0 +1,67 @@
+"""
+Measures the overhead of prioritized replay over uniform sampling: sampling the sequences of
+a mini batch, updating their priorities, and appending and dropping trajectories, with a
+replay buffer of 1M+ transitions.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_prioritized_replay
+"""
+import argparse
+import timeit
+
+import numpy as np
+
+from mlagents.trainers.prioritized_replay import PrioritizedReplay
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--buffer-size", type=int, default=2 ** 20)
+    parser.add_argument("--batch-size", type=int, default=256)
+    parser.add_argument("--sequence-length", type=int, default=1)
+    parser.add_argument("--time-horizon", type=int, default=64)
+    parser.add_argument("--number", type=int, default=1000)
+    parser.add_argument("--repeats", type=int, default=5)
+    args = parser.parse_args()
+
+    sequence_length = args.sequence_length
+    num_sequences = args.batch_size // sequence_length
+    num_buffer_sequences = args.buffer_size // sequence_length
+    replay = PrioritizedReplay(sequence_length, initial_capacity=num_buffer_sequences)
+    replay.append(args.buffer_size, args.buffer_size)
+    rng = np.random.RandomState(0)
+    replay.update_priorities(
+        np.arange(num_buffer_sequences), rng.exponential(size=args.buffer_size)
+    )
+    td_errors = rng.exponential(size=num_sequences * sequence_length)
+
+    def uniform_sample():
+        np.random.randint(num_buffer_sequences, size=num_sequences)
+
+    def prioritized_sample():
+        replay.sample(num_sequences, beta=0.4)
+
+    def prioritized_sample_and_update():
+        sample = replay.sample(num_sequences, beta=0.4)
+        replay.update_priorities(sample.slots, td_errors)
+
+    def append_trajectory():
+        # The buffer is full, so the oldest sequences are dropped
+        replay.append(args.time_horizon, args.buffer_size)
+
+    print(
+        f"{args.buffer_size} transitions, {num_sequences} sequences of "
+        f"{sequence_length} per batch, best of {args.repeats}:"
+    )
+    for name, fn in (
+        ("uniform sample", uniform_sample),
+        ("prioritized sample", prioritized_sample),
+        ("prioritized sample + update", prioritized_sample_and_update),
+        ("append trajectory", append_trajectory),
+    ):
+        best = min(timeit.repeat(fn, number=args.number, repeat=args.repeats))
+        print(f"{name:>30}: {best * 1e6 / args.number:8.1f} us")
+
+
+if __name__ == "__main__":
+    main()
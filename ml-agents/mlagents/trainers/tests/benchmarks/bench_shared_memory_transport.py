@@ -0,0 +1,105 @@
+"""
+Compares the steps/sec of SubprocessEnvManager with the default (pickled) step transport
+and with the shared memory transport, using a mock environment with visual observations.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_shared_memory_transport
+"""
+import argparse
+import time
+
+import numpy as np
+
+from mlagents_envs.base_env import ActionTuple, BaseEnv, BehaviorMapping
+from mlagents.trainers.action_info import ActionInfo
+from mlagents.trainers.settings import RunOptions
+from mlagents.trainers.subprocess_env_manager import SubprocessEnvManager
+from mlagents.trainers.tests import mock_brain as mb
+
+BEHAVIOR_NAME = "bench"
+
+
+class StaticStepEnvironment(BaseEnv):
+    """
+    Returns the same, pre-built step on every call so that the benchmark measures the transport
+    and not the environment.
+    """
+
+    def __init__(self, num_agents: int):
+        self.behavior_spec = mb.setup_test_behavior_specs(
+            use_discrete=False, use_visual=True, vector_action_space=2
+        )
+        self.step_result = mb.create_steps_from_behavior_spec(
+            self.behavior_spec, num_agents
+        )
+
+    def step(self) -> None:
+        pass
+
+    def reset(self) -> None:
+        pass
+
+    def close(self) -> None:
+        pass
+
+    @property
+    def behavior_specs(self):
+        return BehaviorMapping({BEHAVIOR_NAME: self.behavior_spec})
+
+    def set_actions(self, behavior_name, action):
+        pass
+
+    def set_action_for_agent(self, behavior_name, agent_id, action):
+        pass
+
+    def get_steps(self, behavior_name):
+        return self.step_result
+
+
+class ZeroPolicy:
+    def get_action(self, decision_steps, worker_id=0):
+        num_agents = len(decision_steps)
+        action = ActionTuple(continuous=np.zeros((num_agents, 2), dtype=np.float32))
+        return ActionInfo(
+            action, action, {"log_probs": np.zeros(num_agents)}, decision_steps.agent_id
+        )
+
+
+def run(shared_memory_transport: bool, num_envs: int, num_agents: int, num_steps: int):
+    def env_factory(worker_id, side_channels):
+        return StaticStepEnvironment(num_agents)
+
+    run_options = RunOptions()
+    run_options.env_settings.shared_memory_transport = shared_memory_transport
+    env_manager = SubprocessEnvManager(env_factory, run_options, num_envs)
+    try:
+        env_manager.set_policy(BEHAVIOR_NAME, ZeroPolicy())
+        env_manager.reset()
+        # Warm up, so the workers and the slabs are created before timing.
+        for _ in range(10):
+            env_manager.get_steps()
+        env_steps = 0
+        start = time.perf_counter()
+        while env_steps < num_steps:
+            env_steps += len(env_manager.get_steps())
+        return env_steps / (time.perf_counter() - start)
+    finally:
+        env_manager.close()
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--num-envs", type=int, default=4)
+    parser.add_argument("--num-agents", type=int, default=32)
+    parser.add_argument("--num-steps", type=int, default=2000)
+    args = parser.parse_args()
+    for shared_memory_transport in (False, True):
+        steps_per_sec = run(
+            shared_memory_transport, args.num_envs, args.num_agents, args.num_steps
+        )
+        transport = "shared memory" if shared_memory_transport else "pickle"
+        print(f"{transport:>13}: {steps_per_sec:10.1f} env steps/sec")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,159 @@
+"""
+Compares decoding the agent infos of a behavior with rpc_utils.steps_from_proto, which fills
+preallocated arrays in one pass over the agents, with the previous implementation that built
+every field with a list comprehension over the agents.
+
+Run with:
+    python -m mlagents.trainers.tests.benchmarks.bench_steps_from_proto
+"""
+import argparse
+import functools
+import timeit
+
+import numpy as np
+
+from mlagents_envs.base_env import DecisionSteps, TerminalSteps
+from mlagents_envs.communicator_objects.unity_input_pb2 import UnityInputProto
+from mlagents_envs.mock_communicator import MockCommunicator
+from mlagents_envs.rpc_utils import (
+    _generate_split_indices,
+    _process_rank_one_or_two_observation,
+    _raise_on_nan_and_inf,
+    behavior_spec_from_proto,
+    steps_from_proto,
+)
+
+
+def list_steps_from_proto(agent_info_list, behavior_spec):
+    """
+    The previous implementation of steps_from_proto, for vector observations only.
+    """
+    decision_agent_info_list = [
+        agent_info for agent_info in agent_info_list if not agent_info.done
+    ]
+    terminal_agent_info_list = [
+        agent_info for agent_info in agent_info_list if agent_info.done
+    ]
+    decision_obs_list = []
+    terminal_obs_list = []
+    for obs_index, observation_spec in enumerate(behavior_spec.observation_specs):
+        decision_obs_list.append(
+            _process_rank_one_or_two_observation(
+                obs_index, observation_spec, decision_agent_info_list
+            )
+        )
+        terminal_obs_list.append(
+            _process_rank_one_or_two_observation(
+                obs_index, observation_spec, terminal_agent_info_list
+            )
+        )
+    decision_rewards = np.array(
+        [agent_info.reward for agent_info in decision_agent_info_list], dtype=np.float32
+    )
+    terminal_rewards = np.array(
+        [agent_info.reward for agent_info in terminal_agent_info_list], dtype=np.float32
+    )
+    decision_group_rewards = np.array(
+        [agent_info.group_reward for agent_info in decision_agent_info_list],
+        dtype=np.float32,
+    )
+    terminal_group_rewards = np.array(
+        [agent_info.group_reward for agent_info in terminal_agent_info_list],
+        dtype=np.float32,
+    )
+    _raise_on_nan_and_inf(decision_rewards, "rewards")
+    _raise_on_nan_and_inf(terminal_rewards, "rewards")
+    _raise_on_nan_and_inf(decision_group_rewards, "group_rewards")
+    _raise_on_nan_and_inf(terminal_group_rewards, "group_rewards")
+    decision_group_id = [agent_info.group_id for agent_info in decision_agent_info_list]
+    terminal_group_id = [agent_info.group_id for agent_info in terminal_agent_info_list]
+    max_step = np.array(
+        [agent_info.max_step_reached for agent_info in terminal_agent_info_list],
+        dtype=np.bool,
+    )
+    decision_agent_id = np.array(
+        [agent_info.id for agent_info in decision_agent_info_list], dtype=np.int32
+    )
+    terminal_agent_id = np.array(
+        [agent_info.id for agent_info in terminal_agent_info_list], dtype=np.int32
+    )
+    action_mask = None
+    if behavior_spec.action_spec.discrete_size > 0 and decision_agent_info_list:
+        n_agents = len(decision_agent_info_list)
+        a_size = np.sum(behavior_spec.action_spec.discrete_branches)
+        mask_matrix = np.ones((n_agents, a_size), dtype=np.bool)
+        for agent_index, agent_info in enumerate(decision_agent_info_list):
+            if len(agent_info.action_mask) == a_size:
+                mask_matrix[agent_index, :] = [
+                    False if agent_info.action_mask[k] else True
+                    for k in range(a_size)
+                ]
+        action_mask = (1 - mask_matrix).astype(np.bool)
+        indices = _generate_split_indices(behavior_spec.action_spec.discrete_branches)
+        action_mask = np.split(action_mask, indices, axis=1)
+    return (
+        DecisionSteps(
+            decision_obs_list,
+            decision_rewards,
+            decision_agent_id,
+            action_mask,
+            decision_group_id,
+            decision_group_rewards,
+        ),
+        TerminalSteps(
+            terminal_obs_list,
+            terminal_rewards,
+            max_step,
+            terminal_agent_id,
+            terminal_group_id,
+            terminal_group_rewards,
+        ),
+    )
+
+
+def _assert_steps_equal(expected, actual):
+    for expected_steps, actual_steps in zip(expected, actual):
+        for expected_obs, actual_obs in zip(expected_steps.obs, actual_steps.obs):
+            np.testing.assert_array_equal(expected_obs, actual_obs)
+        np.testing.assert_array_equal(expected_steps.reward, actual_steps.reward)
+        np.testing.assert_array_equal(expected_steps.agent_id, actual_steps.agent_id)
+        np.testing.assert_array_equal(expected_steps.group_id, actual_steps.group_id)
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("--num-agents", type=int, default=512)
+    parser.add_argument("--vec-obs-size", type=int, default=64)
+    parser.add_argument("--repeats", type=int, default=20)
+    args = parser.parse_args()
+
+    comm = MockCommunicator(
+        discrete_action=True,
+        num_agents=args.num_agents,
+        vec_obs_size=args.vec_obs_size,
+    )
+    output = comm.initialize(UnityInputProto())
+    agent_info_list = output.rl_output.agentInfos[comm.brain_name].value
+    behavior_spec = behavior_spec_from_proto(
+        output.rl_initialization_output.brain_parameters[0], agent_info_list[0]
+    )
+    _assert_steps_equal(
+        list_steps_from_proto(agent_info_list, behavior_spec),
+        steps_from_proto(agent_info_list, behavior_spec),
+    )
+
+    print(
+        f"{args.num_agents} agents with {args.vec_obs_size} observations, "
+        f"best of {args.repeats}:"
+    )
+    for name, fn in (
+        ("list comprehensions", list_steps_from_proto),
+        ("steps_from_proto", steps_from_proto),
+    ):
+        decode = functools.partial(fn, agent_info_list, behavior_spec)
+        best = min(timeit.repeat(decode, number=1, repeat=args.repeats))
+        print(f"{name:>20}: {best * 1000:8.2f} ms")
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,74 @@
+import numpy as np
+import pytest
+
+from mlagents.trainers.advantages import (
+    discount_rewards_batch,
+    get_gae_batch,
+    lambda_return_batch,
+)
+from mlagents.trainers.poca.trainer import lambda_return
+from mlagents.trainers.ppo.trainer import discount_rewards, get_gae
+
+
+def _random_trajectories(num_trajectories=10, max_length=20, seed=0):
+    rng = np.random.RandomState(seed)
+    lengths = rng.randint(1, max_length + 1, size=num_trajectories)
+    rewards = [rng.randn(length).astype(np.float32) for length in lengths]
+    values = [rng.randn(length).astype(np.float32) for length in lengths]
+    value_next = rng.randn(num_trajectories).astype(np.float32)
+    return rewards, values, value_next
+
+
+def test_discount_rewards_batch():
+    rewards, _, value_next = _random_trajectories()
+    batched = discount_rewards_batch(rewards, gamma=0.9, value_next=value_next)
+    for r, v_next, result in zip(rewards, value_next, batched):
+        assert result.shape == r.shape
+        np.testing.assert_allclose(
+            result, discount_rewards(r, gamma=0.9, value_next=v_next), rtol=1e-5
+        )
+    # Without bootstrap values
+    batched = discount_rewards_batch(rewards, gamma=0.9)
+    for r, result in zip(rewards, batched):
+        np.testing.assert_allclose(result, discount_rewards(r, gamma=0.9), rtol=1e-5)
+
+
+@pytest.mark.parametrize("lambd", [0.0, 0.95, 1.0])
+def test_get_gae_batch(lambd):
+    rewards, values, value_next = _random_trajectories()
+    batched = get_gae_batch(rewards, values, value_next, gamma=0.99, lambd=lambd)
+    for r, v, v_next, result in zip(rewards, values, value_next, batched):
+        expected = get_gae(r, v, value_next=v_next, gamma=0.99, lambd=lambd)
+        np.testing.assert_allclose(result, expected, rtol=1e-4, atol=1e-5)
+
+
+@pytest.mark.parametrize("lambd", [0.0, 0.8, 1.0])
+def test_lambda_return_batch(lambd):
+    rewards, values, value_next = _random_trajectories()
+    batched = lambda_return_batch(rewards, values, value_next, gamma=0.99, lambd=lambd)
+    for r, v, v_next, result in zip(rewards, values, value_next, batched):
+        expected = lambda_return(r, v, gamma=0.99, lambd=lambd, value_next=v_next)
+        np.testing.assert_allclose(result, expected, rtol=1e-4, atol=1e-5)
+
+
+def test_batch_accepts_lists_and_empty_input():
+    assert get_gae_batch([], [], []) == []
+    result = get_gae_batch([[1.0, 1.0]], [[0.0, 0.0]], [0.0], gamma=1.0, lambd=1.0)
+    np.testing.assert_allclose(result[0], [2.0, 1.0])
+
+
+def test_batch_accepts_array_bootstrap_values():
+    # The critic returns bootstrap values as single-element arrays, and terminal
+    # trajectories use 0.0
+    rewards = [[1.0, 1.0], [1.0]]
+    values = [[0.0, 0.0], [0.0]]
+    value_next = [np.array([2.0], dtype=np.float32), 0.0]
+    gae = get_gae_batch(rewards, values, value_next, gamma=1.0, lambd=1.0)
+    np.testing.assert_allclose(gae[0], [4.0, 3.0])
+    np.testing.assert_allclose(gae[1], [1.0])
+    returns = discount_rewards_batch(rewards, gamma=1.0, value_next=value_next)
+    np.testing.assert_allclose(returns[0], [4.0, 3.0])
+    lambda_returns = lambda_return_batch(
+        rewards, values, value_next, gamma=1.0, lambd=1.0
+    )
+    np.testing.assert_allclose(lambda_returns[0], [4.0, 3.0])
@@ -9,13 +9,17 @@ from mlagents.trainers.agent_processor import (
     AgentManagerQueue,
 )
 from mlagents.trainers.action_info import ActionInfo
+from mlagents.trainers.policy.agent_slot_table import AgentSlotTable
 from mlagents.trainers.torch.action_log_probs import LogProbsTuple
-from mlagents.trainers.trajectory import Trajectory
+from mlagents.trainers.trajectory import Trajectory, StagedSteps
+from mlagents.trainers.policy.policy import Policy
+from mlagents.trainers.settings import NetworkSettings, TrainerSettings
+from mlagents.trainers.buffer import BufferKey
 from mlagents.trainers.stats import StatsReporter, StatsSummary
 from mlagents.trainers.behavior_id_utils import get_global_agent_id
 from mlagents_envs.side_channel.stats_side_channel import StatsAggregationMethod
 from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
-from mlagents_envs.base_env import ActionSpec, ActionTuple
+from mlagents_envs.base_env import ActionSpec, ActionTuple, BehaviorSpec
 
 
 def create_mock_policy():
@@ -108,6 +112,144 @@ def test_agentprocessor(num_vis_obs):
     assert len(processor._experience_buffers[0]) == 0
 
 
+def _run_processor(batched: bool, step_sequence) -> List[Trajectory]:
+    trainer_settings = TrainerSettings()
+    trainer_settings.network_settings.memory = NetworkSettings.MemorySettings(
+        memory_size=4
+    )
+    observation_specs = create_observation_specs_with_shapes([(4,)])
+    action_spec = ActionSpec(2, (3, 2))
+    policy = Policy(0, BehaviorSpec(observation_specs, action_spec), trainer_settings)
+    tqueue = mock.Mock()
+    processor = AgentProcessor(
+        policy,
+        "test_brain_name",
+        max_trajectory_length=3,
+        stats_reporter=StatsReporter("testcat"),
+        batched=batched,
+    )
+    processor.publish_trajectory_queue(tqueue)
+    for decision_steps, terminal_steps, action_info, memories in step_sequence:
+        processor.add_experiences(decision_steps, terminal_steps, 0, action_info)
+        global_ids = [get_global_agent_id(0, i) for i in decision_steps.agent_id]
+        policy.save_memories(global_ids, memories)
+    return [call[0][0] for call in tqueue.put.call_args_list]
+
+
+def _create_random_action_info(random, agent_ids) -> ActionInfo:
+    num_agents = len(agent_ids)
+    action = ActionTuple(
+        continuous=random.rand(num_agents, 2).astype(np.float32),
+        discrete=random.randint(0, 2, (num_agents, 2)),
+    )
+    return ActionInfo(
+        action=action,
+        env_action=action,
+        outputs={
+            "action": action,
+            "entropy": np.ones(num_agents, dtype=np.float32),
+            "learning_rate": 1.0,
+            "log_probs": LogProbsTuple(
+                continuous=random.rand(num_agents, 2).astype(np.float32),
+                discrete=random.rand(num_agents, 2).astype(np.float32),
+            ),
+        },
+        agent_ids=agent_ids,
+    )
+
+
+def _assert_same_trajectory(trajectory: Trajectory, expected: Trajectory) -> None:
+    assert isinstance(trajectory.steps, StagedSteps)
+    assert trajectory.agent_id == expected.agent_id
+    assert len(trajectory.steps) == len(expected.steps)
+    assert trajectory.done_reached == expected.done_reached
+    assert trajectory.steps[-1].reward == expected.steps[-1].reward
+    expected_buffer = expected.to_agentbuffer()
+    buffer = trajectory.to_agentbuffer()
+    assert set(buffer.keys()) == set(expected_buffer.keys())
+    for field in expected_buffer:
+        np.testing.assert_array_equal(buffer[field], expected_buffer[field])
+    assert buffer[BufferKey.ACTION_MASK].padding_value == 1
+
+
+def test_agentprocessor_batched():
+    observation_specs = create_observation_specs_with_shapes([(4,)])
+    action_spec = ActionSpec(2, (3, 2))
+    random = np.random.RandomState(0)
+    step_sequence = []
+    action_info = ActionInfo.empty()
+    for step in range(8):
+        # Agent 1 terminates at step 4, and starts a new episode at step 5.
+        agent_ids = [0, 2] if step == 4 else [0, 1, 2]
+        decision_steps, _ = mb.create_mock_steps(
+            len(agent_ids), observation_specs, action_spec, agent_ids=agent_ids
+        )
+        _, terminal_steps = mb.create_mock_steps(
+            1, observation_specs, action_spec, done=True, agent_ids=[1]
+        )
+        if step != 4:
+            _, terminal_steps = mb.create_mock_steps(0, observation_specs, action_spec)
+        for steps in (decision_steps, terminal_steps):
+            steps.obs[0][:] = random.rand(*steps.obs[0].shape)
+            steps.reward[:] = random.rand(len(steps))
+        memories = random.rand(len(agent_ids), 4).astype(np.float32)
+        step_sequence.append((decision_steps, terminal_steps, action_info, memories))
+        action_info = _create_random_action_info(random, decision_steps.agent_id)
+
+    expected_trajectories = _run_processor(False, step_sequence)
+    trajectories = _run_processor(True, step_sequence)
+    assert len(trajectories) == len(expected_trajectories) == 6
+    key = lambda trajectory: trajectory.agent_id  # noqa: E731
+    for expected, trajectory in zip(
+        sorted(expected_trajectories, key=key), sorted(trajectories, key=key)
+    ):
+        _assert_same_trajectory(trajectory, expected)
+
+
+def test_agentprocessor_batched_terminal_without_action():
+    observation_specs = create_observation_specs_with_shapes([(4,)])
+    action_spec = ActionSpec(2, (3, 2))
+    random = np.random.RandomState(0)
+    step_sequence = []
+    action_info = ActionInfo.empty()
+    for step in range(6):
+        # Agent 1 terminates at step 5, before its decision of step 4 was acted on.
+        agent_ids = [0] if step == 5 else [0, 1]
+        decision_steps, _ = mb.create_mock_steps(
+            len(agent_ids), observation_specs, action_spec, agent_ids=agent_ids
+        )
+        _, terminal_steps = mb.create_mock_steps(
+            1 if step == 5 else 0,
+            observation_specs,
+            action_spec,
+            done=True,
+            agent_ids=[1] if step == 5 else [],
+        )
+        for steps in (decision_steps, terminal_steps):
+            steps.obs[0][:] = random.rand(*steps.obs[0].shape)
+            steps.reward[:] = random.rand(len(steps))
+        memories = random.rand(len(agent_ids), 4).astype(np.float32)
+        step_sequence.append((decision_steps, terminal_steps, action_info, memories))
+        acting_ids = [0] if step == 4 else decision_steps.agent_id
+        action_info = _create_random_action_info(random, acting_ids)
+
+    expected_trajectories = _run_processor(False, step_sequence)
+    trajectories = _run_processor(True, step_sequence)
+    # The per-step path ends agent 1's episode with the action of its previous decision.
+    terminated_id = get_global_agent_id(0, 1)
+    last_expected = expected_trajectories.pop()
+    assert last_expected.agent_id == terminated_id
+    assert last_expected.done_reached
+    # The batched path drops the unfinished trajectory instead of publishing it without
+    # done, and publishes the same trajectories otherwise.
+    assert len(trajectories) == len(expected_trajectories) == 2
+    key = lambda trajectory: trajectory.agent_id  # noqa: E731
+    for expected, trajectory in zip(
+        sorted(expected_trajectories, key=key), sorted(trajectories, key=key)
+    ):
+        _assert_same_trajectory(trajectory, expected)
+
+
 def test_group_statuses():
     policy = create_mock_policy()
     tqueue = mock.Mock()
@@ -384,3 +526,46 @@ def test_agent_manager_stats():
 
     # clean up our Mock from the global list
     StatsReporter.writers.remove(writer)
+
+
+def test_agentprocessor_saves_previous_action_of_each_agent():
+    policy = create_mock_policy()
+    previous_actions = AgentSlotTable([2], np.int32)
+    policy.save_previous_action.side_effect = lambda agent_ids, actions: (
+        previous_actions.scatter(0, agent_ids, actions.discrete)
+    )
+    processor = AgentProcessor(
+        policy,
+        "test_brain_name",
+        max_trajectory_length=5,
+        stats_reporter=StatsReporter("testcat"),
+    )
+    mock_decision_steps, mock_terminal_steps = mb.create_mock_steps(
+        num_agents=3,
+        observation_specs=create_observation_specs_with_shapes([(8,)]),
+        action_spec=ActionSpec.create_discrete((3, 3)),
+    )
+    discrete_actions = np.array([[0, 1], [1, 2], [2, 0]], dtype=np.int32)
+    action_info = ActionInfo(
+        action=ActionTuple(discrete=discrete_actions),
+        env_action=ActionTuple(discrete=discrete_actions),
+        outputs={
+            "action": ActionTuple(discrete=discrete_actions),
+            "entropy": np.array([1.0], dtype=np.float32),
+            "learning_rate": 1.0,
+            "log_probs": LogProbsTuple(discrete=np.zeros((3, 2), dtype=np.float32)),
+        },
+        agent_ids=mock_decision_steps.agent_id,
+    )
+    processor.add_experiences(
+        mock_decision_steps, mock_terminal_steps, 0, ActionInfo.empty()
+    )
+    processor.add_experiences(mock_decision_steps, mock_terminal_steps, 0, action_info)
+
+    # Each agent keeps its own row of the actions of the step.
+    global_ids = [
+        get_global_agent_id(0, agent_id) for agent_id in mock_decision_steps.agent_id
+    ]
+    np.testing.assert_array_equal(
+        previous_actions.gather(0, global_ids), discrete_actions
+    )
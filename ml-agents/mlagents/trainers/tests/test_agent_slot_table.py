@@ -0,0 +1,85 @@
+import numpy as np
+
+from mlagents_envs.base_env import ActionTuple
+from mlagents.trainers.policy.agent_slot_table import AgentSlotTable
+from mlagents.trainers.policy.policy import Policy
+from mlagents.trainers.settings import NetworkSettings, TrainerSettings
+from mlagents.trainers.tests import mock_brain as mb
+
+
+def test_agent_slot_table_recycles_slots():
+    table = AgentSlotTable([2], np.float32)
+    table.scatter(0, ["a", "b", "c"], np.arange(6, dtype=np.float32).reshape(3, 2))
+    assert len(table) == 3
+    np.testing.assert_array_equal(
+        table.gather(0, ["c", "x", "a"]), [[4, 5], [0, 0], [0, 1]]
+    )
+
+    table.remove(["b", "x"])
+    assert "b" not in table
+    assert table.find(["b"])[0] == -1
+    # The new agent reuses the slot of b, and doesn't see its row.
+    table.allocate(["d"])
+    assert table.capacity == AgentSlotTable.INITIAL_CAPACITY
+    np.testing.assert_array_equal(table.gather(0, ["d", "c"]), [[0, 0], [4, 5]])
+    assert sorted(table.find(["a", "c", "d"])) == [0, 1, 2]
+
+
+def test_agent_slot_table_grows():
+    table = AgentSlotTable([3, 1], np.int32)
+    num_agents = AgentSlotTable.INITIAL_CAPACITY * 3 + 1
+    agent_ids = [f"agent_{i}" for i in range(num_agents)]
+    rows = np.arange(num_agents * 3, dtype=np.int32).reshape(num_agents, 3)
+    table.scatter(0, agent_ids[:10], rows[:10])
+    table.scatter(0, agent_ids, rows)
+    assert table.capacity >= num_agents
+    np.testing.assert_array_equal(table.gather(0, agent_ids), rows)
+    np.testing.assert_array_equal(
+        table.gather(1, agent_ids), np.zeros((num_agents, 1))
+    )
+
+
+def test_policy_memories():
+    trainer_settings = TrainerSettings()
+    trainer_settings.network_settings.memory = NetworkSettings.MemorySettings(
+        memory_size=4
+    )
+    behavior_spec = mb.setup_test_behavior_specs(
+        True, False, vector_action_space=[3, 2], vector_obs_space=8
+    )
+    policy = Policy(0, behavior_spec, trainer_settings)
+    agent_ids = ["agent_0-0", "agent_0-1"]
+    first = np.ones((2, 4), dtype=np.float32)
+    second = np.full((2, 4), 2, dtype=np.float32)
+
+    policy.save_memories(agent_ids, first)
+    np.testing.assert_array_equal(policy.retrieve_memories(agent_ids), first)
+    np.testing.assert_array_equal(
+        policy.retrieve_previous_memories(agent_ids), np.zeros((2, 4))
+    )
+    policy.save_memories(agent_ids[:1], second[:1])
+    np.testing.assert_array_equal(
+        policy.retrieve_memories(agent_ids), [second[0], first[1]]
+    )
+    np.testing.assert_array_equal(
+        policy.retrieve_previous_memories(agent_ids), [first[0], np.zeros(4)]
+    )
+
+    policy.remove_memories(agent_ids[:1])
+    np.testing.assert_array_equal(
+        policy.retrieve_memories(agent_ids), [np.zeros(4), first[1]]
+    )
+    np.testing.assert_array_equal(
+        policy.retrieve_previous_memories(agent_ids[:1]), np.zeros((1, 4))
+    )
+
+    actions = ActionTuple(discrete=np.array([[2, 1], [1, 0]], dtype=np.int32))
+    policy.save_previous_action(agent_ids, actions)
+    np.testing.assert_array_equal(
+        policy.retrieve_previous_action(agent_ids[::-1] + ["agent_1-0"]),
+        [[1, 0], [2, 1], [0, 0]],
+    )
+    policy.remove_previous_action(agent_ids[1:])
+    np.testing.assert_array_equal(
+        policy.retrieve_previous_action(agent_ids), [[2, 1], [0, 0]]
+    )
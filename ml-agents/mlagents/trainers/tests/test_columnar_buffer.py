@@ -0,0 +1,176 @@
+import io
+
+import numpy as np
+import pytest
+
+from mlagents.trainers.buffer import AgentBuffer, BufferException, BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer, ColumnarBufferField
+from mlagents.trainers.tests.test_buffer import construct_fake_buffer
+from mlagents.trainers.trajectory import ObsUtil
+
+
+def construct_columnar_buffer(capacity=None, num_agents=2, training_length=2):
+    update_buffer = ColumnarAgentBuffer(capacity)
+    for agent_id in range(1, num_agents + 1):
+        construct_fake_buffer(agent_id).resequence_and_append(
+            update_buffer, batch_size=None, training_length=training_length
+        )
+    return update_buffer
+
+
+def test_columnar_matches_list_buffer():
+    list_buffer = AgentBuffer()
+    columnar_buffer = ColumnarAgentBuffer()
+    for agent_id in (1, 2):
+        for target in (list_buffer, columnar_buffer):
+            construct_fake_buffer(agent_id).resequence_and_append(
+                target, batch_size=None, training_length=2
+            )
+    assert columnar_buffer.keys() == list_buffer.keys()
+    assert columnar_buffer.num_experiences == list_buffer.num_experiences == 20
+    for key in list_buffer.keys():
+        assert isinstance(columnar_buffer[key], ColumnarBufferField)
+        if key == BufferKey.GROUP_CONTINUOUS_ACTION:
+            continue
+        np.testing.assert_array_equal(
+            columnar_buffer[key].get_batch(), np.array(list_buffer[key].get_batch())
+        )
+    # Group entries are kept as lists and padded the same way
+    list_padded = list_buffer[BufferKey.GROUP_CONTINUOUS_ACTION].padded_to_batch()
+    columnar_padded = columnar_buffer[
+        BufferKey.GROUP_CONTINUOUS_ACTION
+    ].padded_to_batch()
+    assert len(list_padded) == len(columnar_padded) == 3
+    for list_arr, columnar_arr in zip(list_padded, columnar_padded):
+        np.testing.assert_array_equal(list_arr, columnar_arr)
+
+
+def test_columnar_field_get_batch():
+    field = ColumnarBufferField()
+    for i in range(9):
+        field.append(np.array([i, i + 1], dtype=np.float32), padding_value=1.0)
+
+    a = field.get_batch(batch_size=2, training_length=3, sequential=True)
+    np.testing.assert_array_equal(a, np.array([[i, i + 1] for i in range(3, 9)]))
+
+    a = field.get_batch(batch_size=2, training_length=3, sequential=False)
+    np.testing.assert_array_equal(
+        a, np.array([[i, i + 1] for i in (5, 6, 7, 6, 7, 8)])
+    )
+
+    # Padding repeats the last entry multiplied by padding_value
+    a = field.get_batch(batch_size=None, training_length=4, sequential=True)
+    assert a.shape == (12, 2)
+    np.testing.assert_array_equal(a[-3:], np.array([[8, 9]] * 3))
+
+    with pytest.raises(BufferException):
+        field.get_batch(batch_size=4, training_length=3, sequential=True)
+
+
+def test_columnar_field_growth_and_indexing():
+    field = ColumnarBufferField()
+    field.extend(np.arange(ColumnarBufferField.INITIAL_CAPACITY + 10))
+    assert len(field) == ColumnarBufferField.INITIAL_CAPACITY + 10
+    assert field.capacity >= len(field)
+    assert field[-1] == ColumnarBufferField.INITIAL_CAPACITY + 9
+    field[-1] = -1
+    assert field[-1] == -1
+    sliced = field[2:5]
+    assert isinstance(sliced, ColumnarBufferField)
+    np.testing.assert_array_equal(sliced, [2, 3, 4])
+    with pytest.raises(IndexError):
+        field[len(field)]
+
+
+def test_columnar_ring_buffer():
+    field = ColumnarBufferField(capacity=4)
+    for i in range(6):
+        field.append(np.float32(i))
+    assert field.capacity == 4
+    np.testing.assert_array_equal(field, [2, 3, 4, 5])
+    field.extend(np.array([6, 7, 8], dtype=np.float32))
+    np.testing.assert_array_equal(field, [5, 6, 7, 8])
+    field.extend(np.arange(10, 20, dtype=np.float32))
+    np.testing.assert_array_equal(field, [16, 17, 18, 19])
+    field.drop_oldest(3)
+    np.testing.assert_array_equal(field, [19])
+
+    update_buffer = construct_columnar_buffer(capacity=6)
+    assert update_buffer.num_experiences == 6
+    # Only the newest experiences of agent 2 are kept
+    np.testing.assert_array_equal(
+        update_buffer[ObsUtil.get_name_at(0)][0], [241, 242, 243]
+    )
+
+
+def test_columnar_buffer_sample():
+    update_buffer = construct_columnar_buffer()
+    mb = update_buffer.sample_mini_batch(batch_size=4, sequence_length=1)
+    assert isinstance(mb, ColumnarAgentBuffer)
+    assert mb.keys() == update_buffer.keys()
+    assert np.array(mb[BufferKey.CONTINUOUS_ACTION]).shape == (4, 2)
+
+    # Sequences must be sampled whole
+    mb = update_buffer.sample_mini_batch(batch_size=20, sequence_length=10)
+    obs = mb[ObsUtil.get_name_at(0)].padded_to_batch()
+    assert obs.shape == (20, 3)
+    for seq_start in (0, 10):
+        assert obs[seq_start, 0] in (101, 201)
+
+    c = update_buffer.make_mini_batch(start=0, end=3)
+    assert np.array(c[BufferKey.CONTINUOUS_ACTION]).shape == (3, 2)
+
+
+def test_columnar_buffer_shuffle():
+    update_buffer = construct_columnar_buffer()
+    # Copy, since converting a column may return a view of it
+    before = {k: np.array(update_buffer[k]).copy() for k in update_buffer.keys()}
+    update_buffer.shuffle(sequence_length=2, key_list=[ObsUtil.get_name_at(0)])
+    shuffled = np.array(update_buffer[ObsUtil.get_name_at(0)])
+    assert shuffled.shape == before[ObsUtil.get_name_at(0)].shape
+    # Rows are permuted, not changed, and pairs stay together
+    assert sorted(map(tuple, shuffled)) == sorted(
+        map(tuple, before[ObsUtil.get_name_at(0)])
+    )
+    before_obs = before[ObsUtil.get_name_at(0)]
+    for i in range(0, len(shuffled), 2):
+        j = int(np.where(before_obs[:, 0] == shuffled[i, 0])[0][0])
+        np.testing.assert_array_equal(shuffled[i + 1], before_obs[j + 1])
+    # Fields not in key_list are untouched
+    np.testing.assert_array_equal(
+        update_buffer[BufferKey.CONTINUOUS_ACTION], before[BufferKey.CONTINUOUS_ACTION]
+    )
+
+
+def test_columnar_buffer_truncate():
+    update_buffer = construct_columnar_buffer()
+    last_obs = np.array(update_buffer[ObsUtil.get_name_at(0)][-2:])
+    update_buffer.truncate(2)
+    assert update_buffer.num_experiences == 2
+    np.testing.assert_array_equal(update_buffer[ObsUtil.get_name_at(0)], last_obs)
+
+    update_buffer = construct_columnar_buffer()
+    update_buffer.truncate(4, sequence_length=3)
+    assert update_buffer.num_experiences == 3
+
+    update_buffer.reset_agent()
+    assert update_buffer.num_experiences == 0
+
+
+def test_columnar_buffer_setitem_and_save_load():
+    update_buffer = construct_columnar_buffer()
+    update_buffer[BufferKey.ENVIRONMENT_REWARDS] = np.ones(20, dtype=np.float32)
+    assert isinstance(update_buffer[BufferKey.ENVIRONMENT_REWARDS], ColumnarBufferField)
+    assert update_buffer.check_length(
+        [BufferKey.ENVIRONMENT_REWARDS, BufferKey.CONTINUOUS_ACTION]
+    )
+    del update_buffer[BufferKey.GROUP_CONTINUOUS_ACTION]
+
+    write_buffer = io.BytesIO()
+    update_buffer.save_to_file(write_buffer)
+    loaded = ColumnarAgentBuffer()
+    loaded.load_from_file(write_buffer)
+    assert len(loaded) == len(update_buffer)
+    for k in update_buffer.keys():
+        assert isinstance(loaded[k], ColumnarBufferField)
+        assert np.allclose(update_buffer[k], loaded[k])
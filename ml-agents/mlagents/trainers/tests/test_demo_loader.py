@@ -19,6 +19,7 @@ from mlagents.trainers.demo_loader import (
     write_delimited,
 )
 from mlagents.trainers.buffer import BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
 
 
 BEHAVIOR_SPEC = create_mock_3dball_behavior_specs()
@@ -54,6 +55,57 @@ def test_load_demo_dir():
     )
 
 
+def test_load_demo_dir_parallel():
+    path_prefix = os.path.dirname(os.path.abspath(__file__))
+    _, sequential_buffer = demo_to_buffer(
+        path_prefix + "/test_demo_dir", 2, BEHAVIOR_SPEC, num_workers=1
+    )
+    _, parallel_buffer = demo_to_buffer(
+        path_prefix + "/test_demo_dir", 2, BEHAVIOR_SPEC, num_workers=3
+    )
+    assert parallel_buffer.keys() == sequential_buffer.keys()
+    for key in sequential_buffer.keys():
+        np.testing.assert_array_equal(
+            np.array(parallel_buffer[key]), np.array(sequential_buffer[key])
+        )
+
+
+def test_demo_cache(tmpdir):
+    path_prefix = os.path.dirname(os.path.abspath(__file__))
+    _, uncached_buffer = demo_to_buffer(path_prefix + "/test.demo", 1, BEHAVIOR_SPEC)
+    _, first_buffer = demo_to_buffer(
+        path_prefix + "/test.demo", 1, BEHAVIOR_SPEC, cache_dir=str(tmpdir)
+    )
+    assert len(os.listdir(str(tmpdir))) == 1
+    with mock.patch(
+        "mlagents.trainers.demo_loader._decode_demonstration_file"
+    ) as mock_decode:
+        behavior_spec, cached_buffer = demo_to_buffer(
+            path_prefix + "/test.demo", 1, BEHAVIOR_SPEC, cache_dir=str(tmpdir)
+        )
+        mock_decode.assert_not_called()
+    assert np.sum(behavior_spec.observation_specs[0].shape) == 8
+    assert isinstance(cached_buffer, ColumnarAgentBuffer)
+    assert isinstance(cached_buffer[BufferKey.CONTINUOUS_ACTION].storage, np.memmap)
+    for buffer in (first_buffer, cached_buffer):
+        assert buffer.keys() == uncached_buffer.keys()
+        for key in uncached_buffer.keys():
+            np.testing.assert_array_equal(
+                np.array(buffer[key]), np.array(uncached_buffer[key])
+            )
+    # Another sequence length is cached separately.
+    demo_to_buffer(path_prefix + "/test.demo", 2, BEHAVIOR_SPEC, cache_dir=str(tmpdir))
+    assert len(os.listdir(str(tmpdir))) == 2
+    # The cached spec is still checked against the policy's.
+    with pytest.raises(RuntimeError):
+        mismatch_act = setup_test_behavior_specs(
+            False, False, vector_action_space=3, vector_obs_space=9
+        )
+        demo_to_buffer(
+            path_prefix + "/test.demo", 1, mismatch_act, cache_dir=str(tmpdir)
+        )
+
+
 def test_demo_mismatch():
     path_prefix = os.path.dirname(os.path.abspath(__file__))
     # observation size mismatch
@@ -0,0 +1,39 @@
+import numpy as np
+
+from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.observation_moments import Moments, ObservationMoments
+from mlagents.trainers.trajectory import ObsUtil
+
+
+def make_buffer(obs: np.ndarray) -> AgentBuffer:
+    buffer = AgentBuffer()
+    buffer[ObsUtil.get_name_at(0)].extend(obs)
+    return buffer
+
+
+def test_moments_merge():
+    rng = np.random.RandomState(0)
+    # Batches with very different sizes and a large common offset.
+    batches = [rng.normal(1e4, 1.0, size=(n, 3)) for n in (1, 5, 1000)]
+    moments = Moments.from_array(batches[0])
+    for batch in batches[1:]:
+        moments = moments.merge(Moments.from_array(batch))
+    moments = moments.merge(Moments.from_array(np.zeros((0, 3))))
+
+    all_obs = np.concatenate(batches)
+    assert moments.count == len(all_obs)
+    np.testing.assert_allclose(moments.mean, all_obs.mean(axis=0))
+    np.testing.assert_allclose(moments.m2, all_obs.var(axis=0) * len(all_obs))
+
+
+def test_observation_moments():
+    obs = [np.arange(8, dtype=np.float32).reshape(4, 2), np.ones((2, 2), np.float32)]
+    moments = ObservationMoments([make_buffer(o) for o in obs] + [AgentBuffer()])
+    all_obs = np.concatenate(obs)
+    np.testing.assert_allclose(moments.get(0).mean, all_obs.mean(axis=0))
+
+    # Each normalizer receives the moments once.
+    normalizers = [object(), object()]
+    assert moments.take(0, normalizers[0]).count == 6
+    assert moments.take(0, normalizers[0]) is None
+    assert moments.take(0, normalizers[1]).count == 6
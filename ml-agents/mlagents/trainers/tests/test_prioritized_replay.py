@@ -0,0 +1,105 @@
+import numpy as np
+import pytest
+
+from mlagents.trainers.buffer import AgentBuffer, BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
+from mlagents.trainers.prioritized_replay import (
+    MinTree,
+    PrioritizedReplay,
+    PRIORITY_EPSILON,
+    SumTree,
+)
+
+
+def test_sum_tree():
+    tree = SumTree(5)
+    tree[np.arange(5)] = np.array([1.0, 0.0, 2.0, 3.0, 0.5])
+    assert tree.root == 6.5
+    np.testing.assert_array_equal(
+        tree.find_prefix_sum(np.array([0.0, 0.99, 1.0, 2.5, 3.0, 5.9, 6.0, 6.49])),
+        [0, 0, 2, 2, 3, 3, 4, 4],
+    )
+    tree[np.array([2])] = 0.0
+    assert tree.root == 4.5
+    # Empty slots are never found, even when rounding errors exceed the total
+    np.testing.assert_array_equal(tree.find_prefix_sum(np.array([1.0, 5.0])), [3, 4])
+
+
+def test_min_tree():
+    tree = MinTree(6)
+    assert tree.root == np.inf
+    tree[np.arange(6)] = np.array([4.0, 2.0, 3.0, 5.0, 6.0, 7.0])
+    assert tree.root == 2.0
+    tree.clear(np.array([1, 2]))
+    assert tree.root == 4.0
+
+
+def test_append_and_drop_oldest():
+    replay = PrioritizedReplay(sequence_length=2, initial_capacity=2)
+    replay.append(3, 4)
+    assert replay.num_sequences == 2
+    replay.update_priorities(np.arange(2), np.array([2.0, 2.0, 4.0, 4.0]))
+    # The trees grow when the buffer holds more sequences
+    replay.append(6, 10)
+    assert replay.num_sequences == 5
+    # The oldest sequences are dropped when the buffer overwrites or truncates them
+    replay.append(2, 10)
+    assert replay.num_sequences == 5
+    sample = replay.sample(100, beta=1.0)
+    assert sample.sequence_indices.min() == 0
+    assert sample.sequence_indices.max() == 4
+    replay.sync(4)
+    assert replay.num_sequences == 2
+    sample = replay.sample(100, beta=1.0)
+    assert set(sample.sequence_indices) == {0, 1}
+
+
+def test_sample_proportional_to_priorities():
+    np.random.seed(0)
+    replay = PrioritizedReplay(alpha=1.0)
+    replay.append(4, 4)
+    sample = replay.sample(4, beta=0.0)
+    np.testing.assert_array_equal(np.sort(sample.sequence_indices), np.arange(4))
+    np.testing.assert_array_equal(sample.weights, np.ones(4))
+
+    replay.update_priorities(np.arange(4), np.array([1.0, -3.0, 0.0, 4.0]))
+    sample = replay.sample(8000, beta=1.0)
+    counts = np.bincount(sample.sequence_indices, minlength=4) / 8000
+    np.testing.assert_allclose(counts, [0.125, 0.375, 0.0, 0.5], atol=0.01)
+    # The weights are normalized by the weight of the least likely sequence
+    assert np.max(sample.weights) <= 1.0
+    index_1 = np.where(sample.sequence_indices == 1)[0][0]
+    index_3 = np.where(sample.sequence_indices == 3)[0][0]
+    assert sample.weights[index_3] / sample.weights[index_1] == pytest.approx(
+        (3.0 + PRIORITY_EPSILON) / (4.0 + PRIORITY_EPSILON), rel=1e-5
+    )
+
+    # New sequences get the highest priority
+    replay.append(1, 5)
+    sample = replay.sample(8000, beta=1.0)
+    counts = np.bincount(sample.sequence_indices, minlength=5) / 8000
+    np.testing.assert_allclose(counts[4], 4.0 / 12.0, atol=0.01)
+
+
+def test_sequence_priorities():
+    replay = PrioritizedReplay(sequence_length=3, alpha=1.0)
+    replay.append(6, 6)
+    td_errors = np.array([1.0, -2.0, 10.0, 3.0, 1.0, 2.0])
+    masks = np.array([1.0, 1.0, 0.0, 1.0, 1.0, 1.0])
+    replay.update_priorities(np.arange(2), td_errors, masks)
+    # Padding isn't used, and the priorities mix the maximum and the mean error
+    np.testing.assert_allclose(
+        replay._sum_tree[np.arange(2)],
+        [0.9 * 2.0 + 0.1 * 1.5, 0.9 * 3.0 + 0.1 * 2.0],
+        rtol=1e-5,
+    )
+
+
+@pytest.mark.parametrize("columnar", [True, False], ids=["columnar", "list"])
+def test_make_sequence_mini_batch(columnar):
+    buffer = ColumnarAgentBuffer() if columnar else AgentBuffer()
+    buffer[BufferKey.ENVIRONMENT_REWARDS].extend(np.arange(10, dtype=np.float32))
+    mini_batch = buffer.make_sequence_mini_batch(np.array([6, 0, 6]), 2)
+    np.testing.assert_array_equal(
+        np.asarray(mini_batch[BufferKey.ENVIRONMENT_REWARDS]), [6, 7, 0, 1, 6, 7]
+    )
@@ -0,0 +1,102 @@
+import numpy as np
+
+from mlagents.trainers.buffer import AgentBuffer, BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
+from mlagents.trainers.replay_buffer_store import ReplayBufferStore
+from mlagents.trainers.tests.test_buffer import construct_fake_buffer
+from mlagents.trainers.trajectory import ObsUtil
+
+
+def _append_fake_experiences(update_buffer, agent_id):
+    construct_fake_buffer(agent_id).resequence_and_append(
+        update_buffer, batch_size=None, training_length=1
+    )
+
+
+def _assert_buffers_equal(expected, loaded):
+    assert loaded.keys() == expected.keys()
+    for key in expected.keys():
+        if key == BufferKey.GROUP_CONTINUOUS_ACTION:
+            assert len(loaded[key]) == len(expected[key])
+            continue
+        np.testing.assert_array_equal(np.array(loaded[key]), np.array(expected[key]))
+
+
+def _append_numbered_experiences(update_buffer, start, num_experiences):
+    numbers = np.arange(start, start + num_experiences, dtype=np.float32)
+    update_buffer[BufferKey.ENVIRONMENT_REWARDS].extend(numbers)
+    update_buffer[ObsUtil.get_name_at(0)].extend(np.stack([numbers] * 3, axis=1))
+
+
+def test_replay_buffer_store_incremental(tmpdir):
+    store = ReplayBufferStore(str(tmpdir))
+    update_buffer = ColumnarAgentBuffer(capacity=25)
+    bytes_per_experience = 4 + 3 * 4
+    _append_numbered_experiences(update_buffer, 0, 10)
+    # The first save writes the whole ring buffer.
+    assert store.save(update_buffer) == 25 * bytes_per_experience
+    assert store.exists()
+
+    # Later ones only write the new experiences, even once the ring buffer wraps around.
+    _append_numbered_experiences(update_buffer, 10, 10)
+    assert store.save(update_buffer) == 10 * bytes_per_experience
+    _append_numbered_experiences(update_buffer, 20, 10)
+    assert store.save(update_buffer) == 10 * bytes_per_experience
+
+    loaded = ColumnarAgentBuffer(capacity=25)
+    store = ReplayBufferStore(str(tmpdir))
+    store.load(loaded)
+    np.testing.assert_array_equal(
+        loaded[BufferKey.ENVIRONMENT_REWARDS], np.arange(5, 30)
+    )
+    np.testing.assert_array_equal(
+        np.array(loaded[ObsUtil.get_name_at(0)])[:, 2], np.arange(5, 30)
+    )
+    # The columns are memory-mapped rather than read.
+    assert isinstance(loaded[BufferKey.ENVIRONMENT_REWARDS].storage, np.memmap)
+
+    # The first save of the loaded buffer rewrites the mapped files, the next ones are
+    # incremental again.
+    assert store.save(loaded) == 25 * bytes_per_experience
+    _append_numbered_experiences(loaded, 30, 5)
+    assert store.save(loaded) == 5 * bytes_per_experience
+
+
+def test_replay_buffer_store_resume(tmpdir):
+    update_buffer = ColumnarAgentBuffer(capacity=25)
+    _append_fake_experiences(update_buffer, 1)
+    ReplayBufferStore(str(tmpdir)).save(update_buffer)
+
+    # Keep training on the loaded buffer and save it again with the same store.
+    store = ReplayBufferStore(str(tmpdir))
+    loaded = ColumnarAgentBuffer(capacity=25)
+    store.load(loaded)
+    for agent_id in (2, 3):
+        _append_fake_experiences(update_buffer, agent_id)
+        _append_fake_experiences(loaded, agent_id)
+    store.save(loaded)
+    # The saved files were mapped by the loaded buffer, which now holds its columns in memory
+    # so that the files aren't written to or replaced while mapped.
+    assert not isinstance(loaded[BufferKey.ENVIRONMENT_REWARDS].storage, np.memmap)
+
+    reloaded = ColumnarAgentBuffer(capacity=25)
+    ReplayBufferStore(str(tmpdir)).load(reloaded)
+    _assert_buffers_equal(update_buffer, reloaded)
+
+    # A buffer with another capacity or backend gets a copy of the entries.
+    list_buffer = AgentBuffer()
+    ReplayBufferStore(str(tmpdir)).load(list_buffer)
+    _assert_buffers_equal(update_buffer, list_buffer)
+    smaller = ColumnarAgentBuffer(capacity=10)
+    ReplayBufferStore(str(tmpdir)).load(smaller)
+    assert smaller.num_experiences == 10
+
+
+def test_replay_buffer_store_list_buffer(tmpdir):
+    update_buffer = AgentBuffer()
+    _append_fake_experiences(update_buffer, 1)
+    store = ReplayBufferStore(str(tmpdir))
+    store.save(update_buffer)
+    loaded = AgentBuffer()
+    store.load(loaded)
+    _assert_buffers_equal(update_buffer, loaded)
@@ -160,6 +160,13 @@ def test_trainersettings_structure():
         trainersettings_dict = {"hyperparameters": {"batch_size": 1024}}
         TrainerSettings.structure(trainersettings_dict, TrainerSettings)
 
+    # Check that the staged pipeline requires a threaded trainer
+    with pytest.raises(TrainerConfigError):
+        TrainerSettings.structure({"staged_pipeline": True}, TrainerSettings)
+    TrainerSettings.structure(
+        {"threaded": True, "staged_pipeline": True}, TrainerSettings
+    )
+
 
 def test_trainersettingsschedules_structure():
     """
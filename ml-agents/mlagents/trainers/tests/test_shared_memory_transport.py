@@ -0,0 +1,111 @@
+import numpy as np
+import pytest
+
+from mlagents.trainers.shared_memory_transport import (
+    SharedMemoryStepReader,
+    SharedMemoryStepWriter,
+    shared_memory,
+)
+from mlagents.trainers.tests import mock_brain as mb
+
+pytestmark = pytest.mark.skipif(
+    shared_memory is None, reason="multiprocessing.shared_memory requires python 3.8"
+)
+
+
+def _make_step_result(num_agents, use_discrete=True, use_visual=True):
+    behavior_spec = mb.setup_test_behavior_specs(
+        use_discrete=use_discrete,
+        use_visual=use_visual,
+        vector_action_space=[2, 3] if use_discrete else 2,
+        vector_obs_space=8,
+    )
+    decision_steps, _ = mb.create_steps_from_behavior_spec(behavior_spec, num_agents)
+    _, terminal_steps = mb.create_mock_steps(
+        num_agents,
+        behavior_spec.observation_specs,
+        behavior_spec.action_spec,
+        done=True,
+        agent_ids=list(range(num_agents, 2 * num_agents)),
+    )
+    decision_steps.reward[:] = np.arange(num_agents)
+    decision_steps.obs[-1][:] = np.arange(num_agents)[:, np.newaxis]
+    return behavior_spec, {"test_brain": (decision_steps, terminal_steps)}
+
+
+def _assert_steps_equal(expected, received):
+    for attr_name in ("reward", "agent_id", "group_id", "group_reward"):
+        np.testing.assert_array_equal(
+            getattr(expected, attr_name), getattr(received, attr_name)
+        )
+    assert len(expected.obs) == len(received.obs)
+    for expected_obs, received_obs in zip(expected.obs, received.obs):
+        assert expected_obs.dtype == received_obs.dtype
+        np.testing.assert_array_equal(expected_obs, received_obs)
+
+
+@pytest.mark.parametrize("use_discrete", [True, False])
+def test_shared_memory_round_trip(use_discrete):
+    behavior_spec, step_result = _make_step_result(4, use_discrete=use_discrete)
+    writer = SharedMemoryStepWriter({"test_brain": behavior_spec})
+    reader = SharedMemoryStepReader()
+    try:
+        descriptor = writer.write(step_result)
+        received = reader.read(descriptor)
+        decision_steps, terminal_steps = step_result["test_brain"]
+        received_decision, received_terminal = received["test_brain"]
+        _assert_steps_equal(decision_steps, received_decision)
+        _assert_steps_equal(terminal_steps, received_terminal)
+        np.testing.assert_array_equal(
+            terminal_steps.interrupted, received_terminal.interrupted
+        )
+        if use_discrete:
+            for mask, received_mask in zip(
+                decision_steps.action_mask, received_decision.action_mask
+            ):
+                np.testing.assert_array_equal(mask, received_mask)
+        else:
+            assert received_decision.action_mask is None
+
+        # Views see the next step written by the worker, copies don't.
+        copied = reader.read(descriptor, copy=True)
+        step_result["test_brain"][0].reward[:] = -1
+        writer.write(step_result)
+        assert np.all(received["test_brain"][0].reward == -1)
+        np.testing.assert_array_equal(copied["test_brain"][0].reward, np.arange(4))
+        del received, received_decision, received_terminal
+    finally:
+        reader.close()
+        writer.close()
+
+
+def test_shared_memory_slab_grows():
+    behavior_spec, small_result = _make_step_result(1)
+    _, large_result = _make_step_result(256)
+    writer = SharedMemoryStepWriter(
+        {"test_brain": behavior_spec}, initial_agents_per_behavior=1
+    )
+    reader = SharedMemoryStepReader()
+    try:
+        small_descriptor = writer.write(small_result)
+        reader.read(small_descriptor, copy=True)
+        large_descriptor = writer.write(large_result)
+        assert large_descriptor.shm_name != small_descriptor.shm_name
+        received = reader.read(large_descriptor, copy=True)
+        _assert_steps_equal(large_result["test_brain"][0], received["test_brain"][0])
+    finally:
+        reader.close()
+        writer.close()
+
+
+def test_shared_memory_empty_steps():
+    behavior_spec, step_result = _make_step_result(0)
+    writer = SharedMemoryStepWriter({"test_brain": behavior_spec})
+    reader = SharedMemoryStepReader()
+    try:
+        received = reader.read(writer.write(step_result), copy=True)
+        assert len(received["test_brain"][0]) == 0
+        assert len(received["test_brain"][1]) == 0
+    finally:
+        reader.close()
+        writer.close()
@@ -2,9 +2,12 @@ from unittest import mock
 import os
 import pytest
 import tempfile
+import threading
 import unittest
 import time
 
+import numpy as np
+
 
 from mlagents.trainers.stats import (
     StatsReporter,
@@ -14,6 +17,7 @@ from mlagents.trainers.stats import (
     ConsoleWriter,
     StatsPropertyType,
     StatsAggregationMethod,
+    StreamingStat,
 )
 
 from mlagents.trainers.env_manager import AgentManager
@@ -81,6 +85,80 @@ def test_stat_reporter_property():
     )
 
 
+@pytest.fixture
+def streaming_stats():
+    StatsReporter.set_streaming_aggregation(True)
+    yield
+    StatsReporter.set_streaming_aggregation(False)
+
+
+def test_streaming_stat_merge():
+    values = np.arange(100, dtype=np.float64) ** 1.5
+    stat = StreamingStat(StatsAggregationMethod.HISTOGRAM)
+    for value in values[:30]:
+        stat.add(value)
+    other = StreamingStat(StatsAggregationMethod.HISTOGRAM)
+    other.add_array(values[30:])
+    stat.merge(other)
+
+    summary = stat.summary()
+    assert summary.num == 100
+    assert summary.mean == pytest.approx(np.mean(values))
+    assert summary.std == pytest.approx(np.std(values))
+    assert summary.sum == pytest.approx(np.sum(values))
+    assert summary.sum_squares == pytest.approx(np.sum(values ** 2))
+    assert (summary.min, summary.max) == (0.0, values[-1])
+    bucket_limits, bucket_counts = summary.histogram
+    assert np.sum(bucket_counts) == 100
+    assert bucket_limits[0] == 0.0
+    assert bucket_limits[-1] >= values[-1]
+
+    most_recent = StreamingStat(StatsAggregationMethod.MOST_RECENT)
+    most_recent.add_array(values)
+    most_recent.add(3.0)
+    assert most_recent.summary().aggregated_value == 3.0
+
+
+def test_stat_reporter_streaming(streaming_stats):
+    mock_writer = mock.Mock()
+    StatsReporter.writers.clear()
+    StatsReporter.add_writer(mock_writer)
+    statsreporter = StatsReporter("streaming_category")
+
+    def add_values(offset):
+        for i in range(100):
+            statsreporter.add_stat("key", float(offset + i))
+        statsreporter.add_stats(
+            "hist", np.arange(10) + offset, StatsAggregationMethod.HISTOGRAM
+        )
+
+    threads = [threading.Thread(target=add_values, args=(j * 100,)) for j in range(4)]
+    for thread in threads:
+        thread.start()
+    for thread in threads:
+        thread.join()
+    statsreporter.set_stat("recent", 1.0)
+    statsreporter.set_stat("recent", 2.0)
+
+    summary = statsreporter.get_stats_summaries("key")
+    assert summary.num == 400
+    assert summary.mean == pytest.approx(199.5)
+    assert summary.std == pytest.approx(np.std(np.arange(400)))
+    assert statsreporter.get_stats_summaries("recent").aggregated_value == 2.0
+    mock_writer.on_add_stat.assert_not_called()
+
+    statsreporter.write_stats(10)
+    mock_writer.write_stats.assert_called_once()
+    category, values, step = mock_writer.write_stats.call_args[0]
+    assert (category, step) == ("streaming_category", 10)
+    assert set(values.keys()) == {"key", "hist", "recent"}
+    assert values["hist"].num == 40
+    assert np.sum(values["hist"].histogram[1]) == 40
+    assert values["key"].histogram is None
+    # The stats are cleared once they are written.
+    assert statsreporter.get_stats_summaries("key").num == 0
+
+
 @mock.patch("mlagents.trainers.stats.SummaryWriter")
 def test_tensorboard_writer(mock_summary):
     # Test write_stats
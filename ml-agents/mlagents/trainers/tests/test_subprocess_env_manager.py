@@ -9,11 +9,14 @@ from mlagents.trainers.subprocess_env_manager import (
     SubprocessEnvManager,
     EnvironmentResponse,
     StepResponse,
+    MultiStepResponse,
     EnvironmentCommand,
 )
 from mlagents.trainers.env_manager import EnvironmentStep
+from mlagents.trainers.action_info import ActionInfo
 from mlagents_envs.base_env import BaseEnv
 from mlagents_envs.side_channel.stats_side_channel import StatsAggregationMethod
+from mlagents_envs.timers import get_timer_root
 from mlagents_envs.exception import (
     UnityEnvironmentException,
     UnityCommunicationException,
@@ -68,6 +71,49 @@ class SubprocessEnvManagerTest(unittest.TestCase):
         )
         self.assertEqual(len(env.env_workers), 2)
 
+    @mock.patch(
+        "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_multi_env_worker"
+    )
+    @mock.patch(
+        "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
+    )
+    def test_environments_share_workers(
+        self, mock_create_worker, mock_create_multi_env_worker
+    ):
+        mock_create_worker.side_effect = create_worker_mock
+        mock_create_multi_env_worker.side_effect = lambda worker_ids, *args: [
+            create_worker_mock(worker_id, *args) for worker_id in worker_ids
+        ]
+        run_options = RunOptions()
+        run_options.env_settings.envs_per_worker = 2
+        env = SubprocessEnvManager(mock_env_factory, run_options, 3)
+        # Creates two processes, the second one with a single environment.
+        env.create_multi_env_worker.assert_called_once_with(
+            [0, 1], env.step_queue, mock_env_factory, run_options
+        )
+        env.create_worker.assert_called_once_with(
+            2, env.step_queue, mock_env_factory, run_options
+        )
+        self.assertEqual([w.worker_id for w in env.env_workers], [0, 1, 2])
+        self.assertEqual(env._worker_group(1), [0, 1])
+        self.assertEqual(env._worker_group(2), [2])
+
+        # The combined step of a worker process is split by environment.
+        step_responses = {
+            worker_id: StepResponse({}, None, {}) for worker_id in (0, 1)
+        }
+        env.step_queue = Mock()
+        env.step_queue.get_nowait.side_effect = [
+            EnvironmentResponse(
+                EnvironmentCommand.STEP, 0, MultiStepResponse(step_responses)
+            ),
+            EmptyQueue(),
+        ]
+        self.assertEqual(
+            [(r.worker_id, r.payload) for r in env._step_responses(0)],
+            [(0, step_responses[0]), (1, step_responses[1])],
+        )
+
     @mock.patch(
         "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
     )
@@ -156,6 +202,121 @@ class SubprocessEnvManagerTest(unittest.TestCase):
             manager.env_workers[1].previous_step,
         ]
 
+    @mock.patch(
+        "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
+    )
+    def test_step_blocks_until_a_worker_is_ready(self, mock_create_worker):
+        mock_create_worker.side_effect = create_worker_mock
+        manager = SubprocessEnvManager(mock_env_factory, RunOptions(), 2)
+        manager.step_queue = Mock()
+        manager.step_queue.get_nowait.side_effect = [
+            EmptyQueue(),
+            EmptyQueue(),
+            EmptyQueue(),
+        ]
+        manager.step_queue.get.side_effect = [
+            EmptyQueue(),
+            EnvironmentResponse(EnvironmentCommand.STEP, 1, StepResponse(1, None, {})),
+        ]
+        manager._take_step = Mock(return_value={})
+        res = manager._step()
+        # The manager waits on the queue instead of polling it, retrying after a timeout
+        manager.step_queue.get.assert_called_with(timeout=ANY)
+        assert manager.step_queue.get.call_count == 2
+        assert res == [manager.env_workers[1].previous_step]
+        assert not manager.env_workers[1].waiting
+        assert manager.env_workers[0].waiting
+        assert "wait_for_env" in get_timer_root().children
+
+    @mock.patch(
+        "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
+    )
+    def test_step_batches_ready_workers(self, mock_create_worker):
+        mock_create_worker.side_effect = create_worker_mock
+        run_options = RunOptions()
+        run_options.env_settings.env_step_batch_size = 3
+        run_options.env_settings.env_step_batch_timeout_s = 60
+        manager = SubprocessEnvManager(mock_env_factory, run_options, 3)
+        manager.step_queue = Mock()
+        manager.step_queue.get_nowait.side_effect = [
+            EnvironmentResponse(EnvironmentCommand.STEP, 0, StepResponse(0, None, {})),
+            EmptyQueue(),
+            EmptyQueue(),
+            EnvironmentResponse(EnvironmentCommand.STEP, 2, StepResponse(2, None, {})),
+            EmptyQueue(),
+        ]
+        manager.step_queue.get.side_effect = [
+            EnvironmentResponse(EnvironmentCommand.STEP, 1, StepResponse(1, None, {}))
+        ]
+        manager._take_step = Mock(return_value={})
+        res = manager._step()
+        # All three workers are returned together
+        assert [step.current_all_step_result for step in res] == [0, 1, 2]
+
+        # With a timeout, the ready workers are returned once it has passed
+        manager.step_batch_timeout_s = 0
+        manager.step_queue.get_nowait.side_effect = [
+            EnvironmentResponse(EnvironmentCommand.STEP, 1, StepResponse(3, None, {})),
+            EmptyQueue(),
+        ]
+        manager.step_queue.get.reset_mock()
+        res = manager._step()
+        assert [step.current_all_step_result for step in res] == [3]
+        manager.step_queue.get.assert_not_called()
+
+    @mock.patch(
+        "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
+    )
+    def test_pipelined_inference_sends_actions_after_processing(
+        self, mock_create_worker
+    ):
+        mock_create_worker.side_effect = create_worker_mock
+        run_options = RunOptions()
+        run_options.env_settings.pipelined_inference = True
+        run_options.env_settings.inference_batch_size = 5
+        manager = SubprocessEnvManager(mock_env_factory, run_options, 3)
+        brain_name = "testbrain"
+        policy = Mock()
+        policy.get_action_batch.side_effect = lambda requests: [
+            ActionInfo([], [], {}, [worker_id]) for _, worker_id in requests
+        ]
+        manager.set_policy(brain_name, policy)
+        manager.policy_versions[brain_name] = 4
+        decision_steps = [MagicMock(), MagicMock(), MagicMock()]
+        for steps, num_agents in zip(decision_steps, [2, 2, 3]):
+            steps.__len__.return_value = num_agents
+        step_infos = []
+        for worker_id in (0, 1, 2):
+            step_info = EnvironmentStep(
+                {brain_name: (decision_steps[worker_id], Mock())}, worker_id, {}, {}
+            )
+            manager.env_workers[worker_id].previous_step = step_info
+            step_infos.append(step_info)
+
+        manager.process_steps(step_infos)
+        # Workers 0 and 1 fit in a batch, worker 2 goes in the next one
+        policy.get_action_batch.assert_has_calls(
+            [
+                call([(decision_steps[0], 0), (decision_steps[1], 1)]),
+                call([(decision_steps[2], 2)]),
+            ]
+        )
+        for worker_id, env_worker in enumerate(manager.env_workers):
+            assert env_worker.waiting
+            sent_actions = env_worker.send.call_args[0][1]
+            assert sent_actions[brain_name].agent_ids == [worker_id]
+            assert env_worker.previous_policy_versions == {brain_name: 4}
+
+        # The actions are already sent, so the next step only waits for the workers.
+        manager.step_queue = Mock()
+        manager.step_queue.get_nowait.side_effect = [
+            EnvironmentResponse(EnvironmentCommand.STEP, 0, StepResponse({}, None, {})),
+            EmptyQueue(),
+        ]
+        res = manager._step()
+        assert policy.get_action_batch.call_count == 2
+        assert res[0].policy_versions == {brain_name: 4}
+
     @mock.patch(
         "mlagents.trainers.subprocess_env_manager.SubprocessEnvManager.create_worker"
     )
@@ -261,13 +422,15 @@ class SubprocessEnvManagerTest(unittest.TestCase):
         assert agent_manager_mock.policy == mock_policy
 
 
-@pytest.mark.parametrize("num_envs", [1, 4])
-def test_subprocess_env_endtoend(num_envs):
+@pytest.mark.parametrize("num_envs,envs_per_worker", [(1, 1), (4, 1), (4, 2)])
+def test_subprocess_env_endtoend(num_envs, envs_per_worker):
     def simple_env_factory(worker_id, config):
         env = SimpleEnvironment(["1D"], action_sizes=(0, 1))
         return env
 
-    env_manager = SubprocessEnvManager(simple_env_factory, RunOptions(), num_envs)
+    run_options = RunOptions()
+    run_options.env_settings.envs_per_worker = envs_per_worker
+    env_manager = SubprocessEnvManager(simple_env_factory, run_options, num_envs)
     # Run PPO using env_manager
     check_environment_trains(
         simple_env_factory(0, []),
@@ -0,0 +1,135 @@
+import threading
+import time
+from unittest import mock
+
+import pytest
+
+import mlagents.trainers.tests.mock_brain as mb
+from mlagents.trainers.agent_processor import AgentManagerQueue
+from mlagents.trainers.settings import TrainerSettings
+from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
+from mlagents.trainers.tests.test_rl_trainer import FakeTrainer, create_rl_trainer
+from mlagents.trainers.trainer.trainer_pipeline import TrainerPipeline
+from mlagents_envs.base_env import ActionSpec
+from mlagents_envs.timers import get_timer_stack_for_thread
+
+
+class StagedFakeTrainer(FakeTrainer):
+    def _prepare_trajectories(self, trajectories):
+        return [trajectory.to_agentbuffer() for trajectory in trajectories]
+
+
+class BlockingUpdateTrainer(StagedFakeTrainer):
+    def __init__(self, *args, **kwargs):
+        super().__init__(*args, **kwargs)
+        self.updating = threading.Event()
+        self.prepared_during_update = threading.Event()
+
+    def _prepare_trajectories(self, trajectories):
+        if self.updating.is_set():
+            self.prepared_during_update.set()
+        return super()._prepare_trajectories(trajectories)
+
+    def _update_policy(self):
+        self.updating.set()
+        # Hold the model lock until the next trajectories have been prepared.
+        self.prepared_during_update.wait(timeout=5.0)
+        self.updating.clear()
+        return True
+
+
+def _wait_for(condition, timeout=5.0):
+    deadline = time.time() + timeout
+    while not condition():
+        if time.time() > deadline:
+            pytest.fail("Timed out waiting for the trainer pipeline.")
+        time.sleep(0.01)
+
+
+def test_supports_staged_pipeline():
+    assert not create_rl_trainer().supports_staged_pipeline
+    trainer = StagedFakeTrainer(
+        "test_trainer", TrainerSettings(), True, False, "mock_model_path", 0
+    )
+    assert trainer.supports_staged_pipeline
+
+
+@mock.patch("mlagents.trainers.trainer.trainer.StatsReporter.write_stats")
+def test_trainer_pipeline(mock_write_stats):
+    trainer = StagedFakeTrainer(
+        "test_trainer",
+        TrainerSettings(max_steps=100, checkpoint_interval=1000, summary_freq=1000),
+        True,
+        False,
+        "mock_model_path",
+        0,
+    )
+    trainer.set_is_policy_updating(True)
+    trainer.add_policy("TestBrain", mock.Mock())
+    trajectory_queue = AgentManagerQueue("testbrain", maxlen=20)
+    policy_queue = AgentManagerQueue("testbrain")
+    trainer.subscribe_trajectory_queue(trajectory_queue)
+    trainer.publish_policy_queue(policy_queue)
+    time_horizon = 10
+    trajectory = mb.make_fake_trajectory(
+        length=time_horizon,
+        observation_specs=create_observation_specs_with_shapes([(1,)]),
+        max_step_complete=True,
+        action_spec=ActionSpec.create_discrete((2,)),
+    )
+
+    stopped = False
+    pipeline = TrainerPipeline(trainer, lambda: stopped)
+    pipeline.start()
+    try:
+        for _ in range(5):
+            trajectory_queue.put(trajectory)
+        _wait_for(lambda: trainer.update_buffer.num_experiences == 5 * time_horizon)
+        assert trainer.get_step == 5 * time_horizon
+        # FakeTrainer is always ready to update, so the policy gets published.
+        _wait_for(lambda: not policy_queue.empty())
+    finally:
+        stopped = True
+        for thread in pipeline.threads:
+            thread.join()
+
+    ingest_thread, update_thread, _ = pipeline.threads
+    ingest_gauges = get_timer_stack_for_thread(ingest_thread).gauges
+    assert "trainer_pipeline.test_trainer.ingest.queue_depth" in ingest_gauges
+    update_gauges = get_timer_stack_for_thread(update_thread).gauges
+    assert "trainer_pipeline.test_trainer.update.queue_depth" in update_gauges
+
+
+@mock.patch("mlagents.trainers.trainer.trainer.StatsReporter.write_stats")
+def test_trainer_pipeline_prepares_during_update(mock_write_stats):
+    trainer = BlockingUpdateTrainer(
+        "test_trainer",
+        TrainerSettings(max_steps=100, checkpoint_interval=1000, summary_freq=1000),
+        True,
+        False,
+        "mock_model_path",
+        0,
+    )
+    trainer.add_policy("TestBrain", mock.Mock())
+    trajectory_queue = AgentManagerQueue("testbrain", maxlen=20)
+    trainer.subscribe_trajectory_queue(trajectory_queue)
+    trajectory = mb.make_fake_trajectory(
+        length=10,
+        observation_specs=create_observation_specs_with_shapes([(1,)]),
+        max_step_complete=True,
+        action_spec=ActionSpec.create_discrete((2,)),
+    )
+
+    stopped = False
+    pipeline = TrainerPipeline(trainer, lambda: stopped)
+    pipeline.start()
+    try:
+        trajectory_queue.put(trajectory)
+        assert trainer.updating.wait(timeout=5.0)
+        trajectory_queue.put(trajectory)
+        # The update stage holds the model lock until this is set.
+        assert trainer.prepared_during_update.wait(timeout=5.0)
+    finally:
+        stopped = True
+        for thread in pipeline.threads:
+            thread.join()
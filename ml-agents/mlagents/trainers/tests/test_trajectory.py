@@ -88,3 +88,19 @@ def test_obsutil_group_from_buffer():
                 assert np.isnan(_exp_obs).all()
             else:
                 assert not np.isnan(_exp_obs).any()
+
+
+def test_obsutil_group_from_buffer_uint8():
+    buff = AgentBuffer()
+    for _ in range(3):
+        buff[GroupObsUtil.get_name_at(0)].append(
+            2 * [np.full((2, 2, 3), 255, dtype=np.uint8)]
+        )
+    buff[GroupObsUtil.get_name_at(0)].append([np.zeros((2, 2, 3), dtype=np.uint8)])
+
+    # uint8 observations are scaled, since they have to be padded with NaNs.
+    agent_0_obs, agent_1_obs = GroupObsUtil.from_buffer(buff, 1)
+    np.testing.assert_array_equal(agent_0_obs[0][:3], 1.0)
+    np.testing.assert_array_equal(agent_0_obs[0][3], 0.0)
+    np.testing.assert_array_equal(agent_1_obs[0][:3], 1.0)
+    assert np.isnan(agent_1_obs[0][3]).all()
@@ -50,6 +50,27 @@ def test_normalizer():
         assert val == pytest.approx(0.707, abs=0.001)
 
 
+def test_normalizer_merge():
+    input_size = 3
+    norm = Normalizer(input_size)
+    running_mean = norm.running_mean
+    batches = [torch.randn(n, input_size) * 10 + 100 for n in (1, 7, 32)]
+    for batch in batches[:2]:
+        norm.update(batch)
+    batch = batches[2]
+    mean = batch.mean(0)
+    norm.merge(len(batch), mean, (batch - mean).square().sum(0))
+
+    # The statistics are updated in place, and count the initial step.
+    assert norm.running_mean is running_mean
+    assert norm.normalization_steps.item() == 41
+    all_inputs = torch.cat(batches)
+    expected_mean = all_inputs.sum(0) / 41
+    expected_variance = 1 + (all_inputs.square().sum(0) - 41 * expected_mean.square())
+    assert torch.allclose(norm.running_mean, expected_mean, rtol=1e-5)
+    assert torch.allclose(norm.running_variance, expected_variance, rtol=1e-3)
+
+
 @mock.patch("mlagents.trainers.torch.encoders.Normalizer")
 def test_vector_encoder(mock_normalizer):
     mock_normalizer_inst = mock.Mock()
@@ -93,6 +114,24 @@ def test_visual_encoder(vis_class, image_size):
     assert encoding.shape == (1, num_outputs)
 
 
+@pytest.mark.parametrize(
+    "vis_class",
+    [
+        SimpleVisualEncoder,
+        ResNetVisualEncoder,
+        NatureVisualEncoder,
+        SmallVisualEncoder,
+        FullyConnectedVisualEncoder,
+    ],
+)
+def test_visual_encoder_uint8(vis_class):
+    image_size = (36, 36, 3)
+    enc = vis_class(image_size[0], image_size[1], image_size[2], 128)
+    uint8_input = torch.randint(0, 256, (2,) + image_size, dtype=torch.uint8)
+    # uint8 observations are scaled like the ones decoded from PNGs.
+    assert torch.allclose(enc(uint8_input), enc(uint8_input.float() / 255.0))
+
+
 @pytest.mark.parametrize(
     "vis_class, size",
     [
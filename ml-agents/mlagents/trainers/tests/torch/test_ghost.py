@@ -4,6 +4,7 @@ import numpy as np
 
 from mlagents.trainers.ghost.trainer import GhostTrainer
 from mlagents.trainers.ghost.controller import GhostController
+from mlagents.trainers.ghost.snapshot_store import SnapshotStore
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
 from mlagents.trainers.ppo.trainer import PPOTrainer
 from mlagents.trainers.agent_processor import AgentManagerQueue
@@ -218,5 +219,44 @@ def test_publish_queue(dummy_config):
     assert not policy_queue0.empty() and policy_queue1.empty()
 
 
+@pytest.mark.parametrize("spill", [False, True])
+def test_snapshot_store(dummy_config, tmp_path, spill):
+    mock_specs = mb.setup_test_behavior_specs(
+        True, False, vector_action_space=[2], vector_obs_space=8
+    )
+    trainer = PPOTrainer("test", 0, dummy_config, True, False, 0, "0")
+    trainer.seed = 1
+    policy = trainer.create_policy("test", mock_specs)
+    trainer.seed = 20
+    ghost_policy = trainer.create_policy("test", mock_specs)
+
+    store = SnapshotStore(2, tmp_path.as_posix() if spill else None)
+    store.set_current("test", policy.get_weight_tensors())
+    store.save(0)
+    first_weights = policy.get_weights()
+
+    # Change the weights of the learning policy and make them current.
+    for tensor in policy.get_weight_tensors().values():
+        tensor.add_(1)
+    store.set_current("test", policy.get_weight_tensors())
+    assert store.num_snapshots == 1
+
+    assert store.load("test", None, ghost_policy)
+    # The ghost policy already holds the current weights.
+    assert not store.load("test", None, ghost_policy)
+    for w, lw in zip(
+        policy.get_weights().values(), ghost_policy.get_weights().values()
+    ):
+        np.testing.assert_array_equal(w, lw)
+
+    assert store.load("test", 0, ghost_policy)
+    for w, lw in zip(first_weights.values(), ghost_policy.get_weights().values()):
+        np.testing.assert_array_equal(w, lw)
+    # The snapshot at 1 wasn't saved, so it is the current weights.
+    assert store.load("test", 1, ghost_policy)
+    store.save(1)
+    assert not store.load("test", 1, ghost_policy)
+
+
 if __name__ == "__main__":
     pytest.main()
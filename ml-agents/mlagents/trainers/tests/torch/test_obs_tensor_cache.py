@@ -0,0 +1,75 @@
+import numpy as np
+
+from mlagents.torch_utils import torch
+from mlagents.trainers.settings import CuriositySettings, RNDSettings
+from mlagents.trainers.tests.dummy_config import create_observation_specs_with_shapes
+from mlagents.trainers.tests.torch.test_reward_providers.utils import (
+    create_agent_buffer,
+)
+from mlagents.trainers.torch.components.reward_providers import (
+    CuriosityRewardProvider,
+    RNDRewardProvider,
+)
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
+from mlagents_envs.base_env import ActionSpec, BehaviorSpec
+
+BEHAVIOR_SPEC = BehaviorSpec(
+    create_observation_specs_with_shapes([(10,), (6, 6, 1)]),
+    ActionSpec.create_continuous(2),
+)
+
+
+def test_obs_converted_once():
+    buffer = create_agent_buffer(BEHAVIOR_SPEC, 5)
+    cache = ObsTensorCache(buffer)
+    obs = cache.obs(2)
+    next_obs = cache.next_obs(2)
+    assert [o.shape for o in obs] == [(5, 10), (5, 6, 6, 1)]
+    assert all(a is b for a, b in zip(obs, cache.obs(2)))
+    assert all(a is b for a, b in zip(next_obs, cache.next_obs(2)))
+    assert not torch.equal(obs[0], next_obs[0])
+    assert cache.obs(1)[0] is obs[0]
+
+
+def test_encodings():
+    buffer = create_agent_buffer(BEHAVIOR_SPEC, 5)
+    cache = ObsTensorCache(buffer)
+    encoder = torch.nn.Linear(10, 3)
+    other_encoder = torch.nn.Linear(10, 3)
+    calls = []
+
+    def encode(module):
+        calls.append(module)
+        return module(cache.obs(1)[0])
+
+    encoding = cache.encoding(encoder, "current", lambda: encode(encoder))
+    assert cache.encoding(encoder, "current", lambda: encode(encoder)) is encoding
+    cache.encoding(other_encoder, "current", lambda: encode(other_encoder))
+    assert calls == [encoder, other_encoder]
+
+    cache.drop_encodings(encoder)
+    assert cache.encoding(encoder, "current", lambda: encode(encoder)) is not encoding
+    cache.encoding(other_encoder, "current", lambda: encode(other_encoder))
+    assert calls == [encoder, other_encoder, encoder]
+
+
+def test_shared_cache_matches_reward_providers():
+    np.random.seed(42)
+    torch.manual_seed(42)
+    buffer = create_agent_buffer(BEHAVIOR_SPEC, 5)
+    curiosity_rp = CuriosityRewardProvider(BEHAVIOR_SPEC, CuriositySettings(32, 0.01))
+    rnd_rp = RNDRewardProvider(BEHAVIOR_SPEC, RNDSettings(32, 0.01))
+    curiosity_rp.update(buffer)
+    expected = [curiosity_rp.evaluate(buffer), rnd_rp.evaluate(buffer)]
+
+    cache = ObsTensorCache(buffer)
+    rewards = [curiosity_rp.evaluate(buffer, cache), rnd_rp.evaluate(buffer, cache)]
+    for reward, expected_reward in zip(rewards, expected):
+        np.testing.assert_allclose(reward, expected_reward, rtol=1e-5)
+
+    # The providers still learn when they are updated with a shared cache.
+    for _ in range(100):
+        curiosity_rp.update(buffer, cache)
+        rnd_rp.update(buffer, cache)
+    assert curiosity_rp.evaluate(buffer, cache)[0] < rewards[0][0]
+    assert rnd_rp.evaluate(buffer, cache)[0] < rewards[1][0]
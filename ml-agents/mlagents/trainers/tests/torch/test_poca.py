@@ -13,6 +13,7 @@ from mlagents.trainers.settings import RewardSignalSettings, RewardSignalType
 
 from mlagents.trainers.policy.torch_policy import TorchPolicy
 from mlagents.trainers.tests import mock_brain as mb
+from mlagents.trainers.torch.tensor_buffer import TensorAgentBuffer
 from mlagents.trainers.tests.mock_brain import copy_buffer_fields
 from mlagents.trainers.tests.test_trajectory import make_fake_trajectory
 from mlagents.trainers.settings import NetworkSettings
@@ -72,7 +73,8 @@ def create_test_poca_optimizer(dummy_config, use_rnn, use_discrete, use_visual):
 @pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
 @pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
 @pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
-def test_poca_optimizer_update(dummy_config, rnn, visual, discrete):
+@pytest.mark.parametrize("staged", [True, False], ids=["staged", "not_staged"])
+def test_poca_optimizer_update(dummy_config, rnn, visual, discrete, staged):
     # Test evaluate
     optimizer = create_test_poca_optimizer(
         dummy_config, use_rnn=rnn, use_discrete=discrete, use_visual=visual
@@ -101,6 +103,8 @@ def test_poca_optimizer_update(dummy_config, rnn, visual, discrete):
         BufferKey.MEMORY,
         [BufferKey.CRITIC_MEMORY, BufferKey.BASELINE_MEMORY],
     )
+    if staged:
+        update_buffer = TensorAgentBuffer.from_buffer(update_buffer)
 
     return_stats = optimizer.update(
         update_buffer,
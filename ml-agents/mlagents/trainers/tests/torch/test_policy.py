@@ -1,3 +1,4 @@
+import numpy as np
 import pytest
 
 from mlagents.torch_utils import torch
@@ -61,6 +62,80 @@ def test_policy_evaluate(rnn, visual, discrete):
         assert run_out["action"].continuous.shape == (NUM_AGENTS, VECTOR_ACTION_SPACE)
 
 
+@pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
+@pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
+@pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
+def test_policy_evaluate_compiled(rnn, visual, discrete):
+    trainer_settings = TrainerSettings(compiled_inference=True)
+    trainer_settings.network_settings.deterministic = True
+    policy = create_policy_mock(
+        trainer_settings, use_rnn=rnn, use_discrete=discrete, use_visual=visual
+    )
+    decision_step, _ = mb.create_steps_from_behavior_spec(
+        policy.behavior_spec, num_agents=NUM_AGENTS
+    )
+    agent_ids = list(decision_step.agent_id)
+    if rnn:
+        policy.save_memories(
+            agent_ids, np.random.normal(size=(NUM_AGENTS, policy.m_size))
+        )
+
+    compiled_out = policy.evaluate(decision_step, agent_ids)
+    compiled_actor = policy._compiled_actor
+    policy._compiled_actor = None
+    eager_out = policy.evaluate(decision_step, agent_ids)
+    policy._compiled_actor = compiled_actor
+
+    for key in ("action", "env_action", "log_probs"):
+        np.testing.assert_allclose(
+            compiled_out[key].continuous, eager_out[key].continuous, rtol=1e-5
+        )
+        np.testing.assert_allclose(
+            compiled_out[key].discrete, eager_out[key].discrete, rtol=1e-5
+        )
+    np.testing.assert_allclose(compiled_out["entropy"], eager_out["entropy"], rtol=1e-5)
+    if rnn:
+        np.testing.assert_allclose(
+            compiled_out["memory_out"], eager_out["memory_out"], rtol=1e-5, atol=1e-6
+        )
+    # Batches are padded to the next power of two, and traced once per padded size.
+    for num_agents in (3, 4, NUM_AGENTS):
+        decision_step, _ = mb.create_steps_from_behavior_spec(
+            policy.behavior_spec, num_agents=num_agents
+        )
+        run_out = policy.evaluate(decision_step, list(decision_step.agent_id))
+        assert run_out["entropy"].shape == (num_agents,)
+    assert sorted(policy._compiled_actor._traced.keys()) == [4, 16]
+
+
+def test_policy_evaluate_compiled_after_normalization_update():
+    trainer_settings = TrainerSettings(compiled_inference=True)
+    trainer_settings.network_settings.deterministic = True
+    trainer_settings.network_settings.normalize = True
+    policy = create_policy_mock(trainer_settings, use_discrete=False)
+    decision_step, _ = mb.create_steps_from_behavior_spec(
+        policy.behavior_spec, num_agents=NUM_AGENTS
+    )
+    agent_ids = list(decision_step.agent_id)
+    policy.evaluate(decision_step, agent_ids)
+
+    # Shift the running statistics after the graphs have been traced.
+    buffer = mb.simulate_rollout(BUFFER_INIT_SAMPLES, policy.behavior_spec)
+    obs = ObsUtil.from_buffer(buffer, 1)[0]
+    for i in range(len(obs)):
+        obs[i] = obs[i] * 10.0 + 5.0
+    policy.update_normalization(buffer)
+
+    compiled_out = policy.evaluate(decision_step, agent_ids)
+    compiled_actor = policy._compiled_actor
+    policy._compiled_actor = None
+    eager_out = policy.evaluate(decision_step, agent_ids)
+    policy._compiled_actor = compiled_actor
+    np.testing.assert_allclose(
+        compiled_out["action"].continuous, eager_out["action"].continuous, rtol=1e-5
+    )
+
+
 @pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
 @pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
 @pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
@@ -136,6 +211,40 @@ def test_sample_actions(rnn, visual, discrete):
         assert memories.shape == (1, 1, policy.m_size)
 
 
+@pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
+@pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
+def test_get_action_batch(rnn, discrete):
+    policy = create_policy_mock(TrainerSettings(), use_rnn=rnn, use_discrete=discrete)
+    decision_step, _ = mb.create_steps_from_behavior_spec(
+        policy.behavior_spec, num_agents=NUM_AGENTS
+    )
+    empty_step, _ = mb.create_steps_from_behavior_spec(
+        policy.behavior_spec, num_agents=0
+    )
+    action_infos = policy.get_action_batch(
+        [(decision_step, 0), (empty_step, 1), (decision_step, 2)]
+    )
+    assert len(action_infos) == 3
+    assert action_infos[1].agent_ids == []
+    for action_info in (action_infos[0], action_infos[2]):
+        assert action_info.agent_ids == list(decision_step.agent_id)
+        if discrete:
+            assert action_info.env_action.discrete.shape == (
+                NUM_AGENTS,
+                len(DISCRETE_ACTION_SPACE),
+            )
+        else:
+            assert action_info.env_action.continuous.shape == (
+                NUM_AGENTS,
+                VECTOR_ACTION_SPACE,
+            )
+        assert action_info.outputs["log_probs"].continuous.shape[0] == NUM_AGENTS
+        assert len(action_info.outputs["entropy"]) == NUM_AGENTS
+    if rnn:
+        # Memories are kept per worker
+        assert len(policy.memory_table) == 2 * NUM_AGENTS
+
+
 def test_step_overflow():
     policy = create_policy_mock(TrainerSettings())
     policy.set_step(2 ** 31 - 1)
@@ -3,9 +3,11 @@ import pytest
 import numpy as np
 import attr
 
+from mlagents.torch_utils import torch
 from mlagents.trainers.ppo.optimizer_torch import TorchPPOOptimizer
 from mlagents.trainers.policy.torch_policy import TorchPolicy
 from mlagents.trainers.tests import mock_brain as mb
+from mlagents.trainers.torch.tensor_buffer import TensorAgentBuffer
 from mlagents.trainers.tests.mock_brain import copy_buffer_fields
 from mlagents.trainers.tests.test_trajectory import make_fake_trajectory
 from mlagents.trainers.settings import NetworkSettings
@@ -58,7 +60,8 @@ def create_test_ppo_optimizer(dummy_config, use_rnn, use_discrete, use_visual):
 @pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
 @pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
 @pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
-def test_ppo_optimizer_update(dummy_config, rnn, visual, discrete):
+@pytest.mark.parametrize("staged", [True, False], ids=["staged", "not_staged"])
+def test_ppo_optimizer_update(dummy_config, rnn, visual, discrete, staged):
     # Test evaluate
     optimizer = create_test_ppo_optimizer(
         dummy_config, use_rnn=rnn, use_discrete=discrete, use_visual=visual
@@ -81,6 +84,8 @@ def test_ppo_optimizer_update(dummy_config, rnn, visual, discrete):
     )
     # Copy memories to critic memories
     copy_buffer_fields(update_buffer, BufferKey.MEMORY, [BufferKey.CRITIC_MEMORY])
+    if staged:
+        update_buffer = TensorAgentBuffer.from_buffer(update_buffer)
 
     return_stats = optimizer.update(
         update_buffer,
@@ -237,5 +242,76 @@ def test_ppo_get_value_estimates(dummy_config, rnn, visual, discrete):
         assert val != 0.0
 
 
+@pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
+@pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
+def test_ppo_get_batched_value_estimates(dummy_config, rnn, visual):
+    optimizer = create_test_ppo_optimizer(
+        dummy_config, use_rnn=rnn, use_discrete=False, use_visual=visual
+    )
+    trajectories = [
+        make_fake_trajectory(
+            length=length,
+            observation_specs=optimizer.policy.behavior_spec.observation_specs,
+            action_spec=CONTINUOUS_ACTION_SPEC,
+            max_step_complete=True,
+        )
+        for length in (30, 5, 12)
+    ]
+    dones = [False, True, False]
+    batched = optimizer.get_batched_trajectory_value_estimates(
+        [trajectory.to_agentbuffer() for trajectory in trajectories],
+        [trajectory.next_obs for trajectory in trajectories],
+        dones,
+    )
+    assert len(batched) == len(trajectories)
+    optimizer.critic_memory_dict.clear()
+    for trajectory, done, (value_estimates, value_next, memories) in zip(
+        trajectories, dones, batched
+    ):
+        expected_estimates, expected_next, _ = optimizer.get_trajectory_value_estimates(
+            trajectory.to_agentbuffer(), trajectory.next_obs, done
+        )
+        for name in expected_estimates:
+            assert len(value_estimates[name]) == len(trajectory.steps)
+            np.testing.assert_allclose(
+                value_estimates[name], expected_estimates[name], rtol=1e-5, atol=1e-6
+            )
+            np.testing.assert_allclose(
+                np.ravel(value_next[name]),
+                np.ravel(expected_next[name]),
+                rtol=1e-5,
+                atol=1e-6,
+            )
+        assert (memories is not None) == rnn
+
+
+def test_ppo_estimation_critic(dummy_config):
+    optimizer = create_test_ppo_optimizer(
+        dummy_config, use_rnn=False, use_discrete=False, use_visual=False
+    )
+    trajectory = make_fake_trajectory(
+        length=10,
+        observation_specs=optimizer.policy.behavior_spec.observation_specs,
+        action_spec=CONTINUOUS_ACTION_SPEC,
+        max_step_complete=True,
+    )
+
+    def estimates():
+        value_estimates, _, _ = optimizer.get_trajectory_value_estimates(
+            trajectory.to_agentbuffer(), trajectory.next_obs, done=False
+        )
+        return value_estimates["extrinsic"]
+
+    optimizer.copy_critic_for_estimation()
+    before = estimates()
+    with torch.no_grad():
+        for param in optimizer.critic.parameters():
+            param.add_(1.0)
+    # The copy keeps estimating with the weights it was made with.
+    np.testing.assert_allclose(estimates(), before)
+    optimizer.load_estimation_critic(optimizer.critic_state())
+    assert not np.allclose(estimates(), before)
+
+
 if __name__ == "__main__":
     pytest.main()
@@ -1,3 +1,4 @@
+import numpy as np
 import pytest
 from mlagents.torch_utils import torch
 
@@ -47,7 +48,8 @@ def create_sac_optimizer_mock(dummy_config, use_rnn, use_discrete, use_visual):
 @pytest.mark.parametrize("discrete", [True, False], ids=["discrete", "continuous"])
 @pytest.mark.parametrize("visual", [True, False], ids=["visual", "vector"])
 @pytest.mark.parametrize("rnn", [True, False], ids=["rnn", "no_rnn"])
-def test_sac_optimizer_update(dummy_config, rnn, visual, discrete):
+@pytest.mark.parametrize("prioritized", [True, False], ids=["prioritized", "uniform"])
+def test_sac_optimizer_update(dummy_config, rnn, visual, discrete, prioritized):
     torch.manual_seed(0)
     # Test evaluate
     optimizer = create_sac_optimizer_mock(
@@ -63,10 +65,19 @@ def test_sac_optimizer_update(dummy_config, rnn, visual, discrete):
     ]
     # Mock out value memories
     update_buffer[BufferKey.CRITIC_MEMORY] = update_buffer[BufferKey.MEMORY]
+    if prioritized:
+        update_buffer[BufferKey.IMPORTANCE_WEIGHTS] = np.random.uniform(
+            0.5, 1.0, size=update_buffer.num_experiences
+        ).astype(np.float32)
     return_stats = optimizer.update(
         update_buffer,
         num_sequences=update_buffer.num_experiences // optimizer.policy.sequence_length,
     )
+    if prioritized:
+        assert optimizer.td_errors.shape == (update_buffer.num_experiences,)
+        assert np.all(optimizer.td_errors >= 0)
+    else:
+        assert optimizer.td_errors is None
     # Make sure we have the right stats
     required_stats = [
         "Losses/Policy Loss",
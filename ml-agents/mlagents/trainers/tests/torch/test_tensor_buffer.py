@@ -0,0 +1,80 @@
+import numpy as np
+import pytest
+
+from mlagents.torch_utils import torch
+from mlagents.trainers.buffer import AgentBuffer, AgentBufferField, BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
+from mlagents.trainers.tests.test_buffer import construct_fake_buffer
+from mlagents.trainers.torch.tensor_buffer import TensorAgentBuffer
+from mlagents.trainers.torch.utils import ModelUtils
+from mlagents.trainers.trajectory import ObsUtil
+
+
+def construct_update_buffer(columnar):
+    update_buffer = ColumnarAgentBuffer() if columnar else AgentBuffer()
+    for agent_id in (1, 2):
+        construct_fake_buffer(agent_id).resequence_and_append(
+            update_buffer, batch_size=None, training_length=2
+        )
+    return update_buffer
+
+
+@pytest.mark.parametrize("columnar", [True, False], ids=["columnar", "list"])
+def test_tensor_buffer_from_buffer(columnar):
+    update_buffer = construct_update_buffer(columnar)
+    update_buffer[ObsUtil.get_name_at(1)].set(
+        [np.full((2, 2, 1), i, dtype=np.uint8) for i in range(20)]
+    )
+    tensor_buffer = TensorAgentBuffer.from_buffer(update_buffer)
+    assert tensor_buffer.num_experiences == update_buffer.num_experiences == 20
+    for key in (ObsUtil.get_name_at(0), BufferKey.CONTINUOUS_ACTION):
+        assert isinstance(tensor_buffer[key], torch.Tensor)
+        assert tensor_buffer[key].dtype == torch.float32
+        np.testing.assert_array_equal(
+            tensor_buffer[key].cpu().numpy(), np.asarray(update_buffer[key])
+        )
+    # Visual observations stay uint8
+    assert tensor_buffer[ObsUtil.get_name_at(1)].dtype == torch.uint8
+    # Group entries are kept as lists
+    group_field = tensor_buffer[BufferKey.GROUP_CONTINUOUS_ACTION]
+    assert isinstance(group_field, AgentBufferField)
+    assert len(group_field) == 20
+
+
+def test_tensor_buffer_shuffle():
+    update_buffer = construct_update_buffer(columnar=False)
+    tensor_buffer = TensorAgentBuffer.from_buffer(update_buffer)
+    obs = tensor_buffer[ObsUtil.get_name_at(0)].cpu().numpy()
+    tensor_buffer.shuffle(sequence_length=2)
+    shuffled_obs = tensor_buffer[ObsUtil.get_name_at(0)].cpu().numpy()
+    shuffled_actions = tensor_buffer[BufferKey.CONTINUOUS_ACTION].cpu().numpy()
+    group_actions = tensor_buffer[BufferKey.GROUP_CONTINUOUS_ACTION]
+
+    # The sequences are moved as a whole
+    sequences = {tuple(obs[i : i + 2].ravel()) for i in range(0, 20, 2)}
+    shuffled_sequences = {
+        tuple(shuffled_obs[i : i + 2].ravel()) for i in range(0, 20, 2)
+    }
+    assert sequences == shuffled_sequences
+    # The fields are shuffled in the same way
+    for i in range(20):
+        if shuffled_obs[i, 0] != 0:
+            assert shuffled_actions[i, 0] == shuffled_obs[i, 0] + 3
+            assert group_actions[i][0][0] == shuffled_actions[i, 0]
+
+
+def test_tensor_buffer_mini_batch():
+    update_buffer = construct_update_buffer(columnar=True)
+    tensor_buffer = TensorAgentBuffer.from_buffer(update_buffer)
+    mini_batch = tensor_buffer.make_mini_batch(4, 10)
+    assert mini_batch.num_experiences == 6
+
+    # The tensors of the mini batch are views of the tensors of the buffer
+    actions = mini_batch[BufferKey.CONTINUOUS_ACTION]
+    buffer_actions = tensor_buffer[BufferKey.CONTINUOUS_ACTION]
+    assert actions.data_ptr() == buffer_actions[4].data_ptr()
+    assert ModelUtils.list_to_tensor(actions) is actions
+    obs = mini_batch[ObsUtil.get_name_at(0)]
+    assert ModelUtils.obs_to_tensor(obs) is obs
+    assert ModelUtils.list_to_tensor(actions, dtype=torch.long).dtype == torch.long
+    assert len(mini_batch[BufferKey.GROUP_CONTINUOUS_ACTION]) == 6
@@ -0,0 +1,219 @@
+from typing import Dict, List, NamedTuple, Optional, Tuple
+
+import numpy as np
+from mlagents.torch_utils import torch, nn, default_device
+
+from mlagents_envs.logging_util import get_logger
+from mlagents.trainers.torch.networks import SimpleActor
+
+logger = get_logger(__name__)
+
+
+def _torch_dtype(array: np.ndarray) -> torch.dtype:
+    return torch.from_numpy(array[:0]).dtype
+
+
+class CompiledActorOutput(NamedTuple):
+    """
+    The outputs of SimpleActor.get_action_and_stats for the agents of a batch, as tensors.
+    """
+
+    continuous_action: torch.Tensor
+    discrete_action: torch.Tensor
+    continuous_log_probs: torch.Tensor
+    discrete_log_probs: torch.Tensor
+    entropy: torch.Tensor
+    memories: Optional[torch.Tensor]
+
+
+class _TraceableActor(nn.Module):
+    """
+    Wraps SimpleActor.get_action_and_stats so that its inputs and outputs are flat tuples of
+    tensors, which torch.jit.trace requires.
+    """
+
+    def __init__(
+        self, actor: SimpleActor, num_obs: int, has_masks: bool, has_memories: bool
+    ):
+        super().__init__()
+        self.actor = actor
+        self.num_obs = num_obs
+        self.has_masks = has_masks
+        self.has_memories = has_memories
+
+    def forward(self, *inputs: torch.Tensor) -> Tuple[torch.Tensor, ...]:
+        obs = list(inputs[: self.num_obs])
+        masks = inputs[self.num_obs] if self.has_masks else None
+        memories = inputs[-1] if self.has_memories else None
+        action, log_probs, entropy, memories_out = self.actor.get_action_and_stats(
+            obs, masks, memories
+        )
+        batch_size = obs[0].shape[0]
+        continuous_action = action.continuous_tensor
+        continuous_log_probs = log_probs.continuous_tensor
+        if continuous_action is None:
+            continuous_action = torch.zeros((batch_size, 0))
+            continuous_log_probs = torch.zeros((batch_size, 0))
+        if action.discrete_list:
+            discrete_action = action.discrete_tensor[:, 0, :]
+            discrete_log_probs = log_probs.discrete_tensor
+        else:
+            discrete_action = torch.zeros((batch_size, 0), dtype=torch.long)
+            discrete_log_probs = torch.zeros((batch_size, 0))
+        outputs = (
+            continuous_action,
+            discrete_action,
+            continuous_log_probs,
+            discrete_log_probs,
+            entropy,
+        )
+        if self.has_memories:
+            outputs += (memories_out,)
+        return outputs
+
+
+class _TracedBatch:
+    """
+    A graph traced for one batch size, with the input buffers it reads from.
+    """
+
+    def __init__(self, module: torch.jit.ScriptModule, inputs: List[torch.Tensor]):
+        self.module = module
+        self.inputs = inputs
+
+
+class CompiledActor:
+    """
+    Runs SimpleActor.get_action_and_stats for inference with graphs traced by torch.jit.trace,
+    without the Python overhead of the eager modules and of the distribution objects.
+    The traced graphs have a fixed batch size, so the batches are padded to the next power of
+    two, and one graph is traced per padded size. The inputs are copied into buffers that are
+    allocated once per graph (in pinned memory when the actor is on a GPU).
+    The graphs share their parameters with the actor, so they follow the optimizer updates and
+    load_state_dict. Call reset() when the actor's parameters or buffers are replaced rather
+    than updated in place.
+    If the actor can't be traced, CompiledActor logs a warning and returns None, and the caller
+    falls back to the eager modules.
+    """
+
+    def __init__(
+        self, actor: SimpleActor, num_obs: int, has_masks: bool, has_memories: bool
+    ):
+        self._traceable = _TraceableActor(actor, num_obs, has_masks, has_memories)
+        self._num_obs = num_obs
+        self._has_masks = has_masks
+        self._has_memories = has_memories
+        self._device = default_device()
+        self._traced: Dict[int, _TracedBatch] = {}
+        self._failed = False
+
+    def reset(self) -> None:
+        """
+        Drops the traced graphs, so that they are traced again on the next call.
+        """
+        self._traced.clear()
+
+    @staticmethod
+    def _padded_size(batch_size: int) -> int:
+        return 1 << max(batch_size - 1, 0).bit_length()
+
+    def _make_inputs(
+        self,
+        padded_size: int,
+        obs: List[np.ndarray],
+        masks: Optional[np.ndarray],
+        memories: Optional[np.ndarray],
+    ) -> List[torch.Tensor]:
+        pin_memory = self._device.type == "cuda"
+        inputs = [
+            torch.zeros(
+                (padded_size,) + ob.shape[1:],
+                dtype=_torch_dtype(ob),
+                pin_memory=pin_memory,
+            )
+            for ob in obs
+        ]
+        if masks is not None:
+            # The padding rows keep every action available.
+            inputs.append(
+                torch.ones((padded_size, masks.shape[1]), pin_memory=pin_memory)
+            )
+        if memories is not None:
+            inputs.append(
+                torch.zeros((1, padded_size, memories.shape[1]), pin_memory=pin_memory)
+            )
+        return inputs
+
+    def _get_traced(
+        self,
+        obs: List[np.ndarray],
+        masks: Optional[np.ndarray],
+        memories: Optional[np.ndarray],
+    ) -> Optional[_TracedBatch]:
+        padded_size = self._padded_size(len(obs[0]))
+        traced = self._traced.get(padded_size)
+        if traced is not None and all(
+            buffer.dtype == _torch_dtype(ob) for buffer, ob in zip(traced.inputs, obs)
+        ):
+            return traced
+        inputs = self._make_inputs(padded_size, obs, masks, memories)
+        try:
+            with torch.no_grad():
+                module = torch.jit.trace(
+                    self._traceable,
+                    tuple(tensor.to(self._device) for tensor in inputs),
+                    # The sampled actions differ from one run to the next.
+                    check_trace=False,
+                )
+        except Exception as e:
+            logger.warning(
+                f"Couldn't trace the actor for compiled inference, using the eager actor: {e}"
+            )
+            self._failed = True
+            return None
+        traced = _TracedBatch(module, inputs)
+        self._traced[padded_size] = traced
+        return traced
+
+    def __call__(
+        self,
+        obs: List[np.ndarray],
+        masks: Optional[np.ndarray],
+        memories: Optional[np.ndarray],
+    ) -> Optional[CompiledActorOutput]:
+        """
+        :param obs: The observations of the agents.
+        :param masks: The action masks of the agents, 1 for available actions, if the actor has
+            discrete actions.
+        :param memories: The memories of the agents, of shape (num_agents, memory_size), if the
+            actor is recurrent.
+        :return: The outputs for the agents, or None if the actor couldn't be traced.
+        """
+        if self._failed:
+            return None
+        batch_size = len(obs[0])
+        traced = self._get_traced(obs, masks, memories)
+        if traced is None:
+            return None
+        arrays = list(obs)
+        if self._has_masks:
+            arrays.append(masks)
+        for buffer, array in zip(traced.inputs, arrays):
+            buffer[:batch_size].copy_(torch.from_numpy(np.ascontiguousarray(array)))
+        if self._has_memories:
+            traced.inputs[-1][0, :batch_size].copy_(torch.from_numpy(memories))
+        with torch.no_grad():
+            outputs = traced.module(
+                *(
+                    buffer.to(self._device, non_blocking=True)
+                    for buffer in traced.inputs
+                )
+            )
+        return CompiledActorOutput(
+            continuous_action=outputs[0][:batch_size],
+            discrete_action=outputs[1][:batch_size],
+            continuous_log_probs=outputs[2][:batch_size],
+            discrete_log_probs=outputs[3][:batch_size],
+            entropy=outputs[4][:batch_size],
+            memories=outputs[5][:, :batch_size] if self._has_memories else None,
+        )
@@ -40,7 +40,11 @@ class BCModule:
         params = self.policy.actor.parameters()
         self.optimizer = torch.optim.Adam(params, lr=self.current_lr)
         _, self.demonstration_buffer = demo_to_buffer(
-            settings.demo_path, policy.sequence_length, policy.behavior_spec
+            settings.demo_path,
+            policy.sequence_length,
+            policy.behavior_spec,
+            cache_dir=settings.demo_cache_dir,
+            num_workers=settings.demo_num_workers,
         )
         self.batch_size = (
             settings.batch_size if settings.batch_size else default_batch_size
@@ -147,7 +151,7 @@ class BCModule:
             mini_batch_demo, len(self.policy.behavior_spec.observation_specs)
         )
         # Convert to tensors
-        tensor_obs = [ModelUtils.list_to_tensor(obs) for obs in np_obs]
+        tensor_obs = [ModelUtils.obs_to_tensor(obs) for obs in np_obs]
         act_masks = None
         expert_actions = AgentAction.from_buffer(mini_batch_demo)
         if self.policy.behavior_spec.action_spec.discrete_size > 0:
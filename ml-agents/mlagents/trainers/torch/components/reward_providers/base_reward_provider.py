@@ -1,9 +1,10 @@
 import numpy as np
 from mlagents.torch_utils import torch
 from abc import ABC, abstractmethod
-from typing import Dict
+from typing import Dict, Optional
 
 from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 from mlagents.trainers.settings import RewardSignalSettings
 from mlagents_envs.base_env import BehaviorSpec
 
@@ -47,12 +48,16 @@ class BaseRewardProvider(ABC):
         return self._ignore_done
 
     @abstractmethod
-    def evaluate(self, mini_batch: AgentBuffer) -> np.ndarray:
+    def evaluate(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> np.ndarray:
         """
         Evaluates the reward for the data present in the Dict mini_batch. Use this when evaluating a reward
         function drawn straight from a Buffer.
         :param mini_batch: A Dict of numpy arrays (the format used by our Buffer)
             when drawing from the update buffer.
+        :param cache: The observation tensors of mini_batch, shared with the other reward
+            providers. If None, the reward provider converts the observations itself.
         :return: a np.ndarray of rewards generated by the reward provider
         """
         raise NotImplementedError(
@@ -60,12 +65,16 @@ class BaseRewardProvider(ABC):
         )
 
     @abstractmethod
-    def update(self, mini_batch: AgentBuffer) -> Dict[str, np.ndarray]:
+    def update(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> Dict[str, np.ndarray]:
         """
         Update the reward for the data present in the Dict mini_batch. Use this when updating a reward
         function drawn straight from a Buffer.
         :param mini_batch: A Dict of numpy arrays (the format used by our Buffer)
             when drawing from the update buffer.
+        :param cache: The observation tensors of mini_batch, shared with the other reward
+            providers. If None, the reward provider converts the observations itself.
         :return: A dictionary from string to stats values
         """
         raise NotImplementedError(
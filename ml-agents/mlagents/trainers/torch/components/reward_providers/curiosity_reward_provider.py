@@ -1,5 +1,5 @@
 import numpy as np
-from typing import Dict, NamedTuple
+from typing import Dict, NamedTuple, Optional
 from mlagents.torch_utils import torch, default_device
 
 from mlagents.trainers.buffer import AgentBuffer, BufferKey
@@ -15,7 +15,7 @@ from mlagents.trainers.torch.action_flattener import ActionFlattener
 from mlagents.trainers.torch.utils import ModelUtils
 from mlagents.trainers.torch.networks import NetworkBody
 from mlagents.trainers.torch.layers import LinearEncoder, linear_layer
-from mlagents.trainers.trajectory import ObsUtil
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 
 logger = logging_util.get_logger(__name__)
 
@@ -40,16 +40,29 @@ class CuriosityRewardProvider(BaseRewardProvider):
         )
         self._has_updated_once = False
 
-    def evaluate(self, mini_batch: AgentBuffer) -> np.ndarray:
+    def evaluate(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> np.ndarray:
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         with torch.no_grad():
-            rewards = ModelUtils.to_numpy(self._network.compute_reward(mini_batch))
+            rewards = ModelUtils.to_numpy(
+                self._network.compute_reward(mini_batch, cache)
+            )
+        # The encodings don't have gradients, so they can't be used by an update.
+        cache.drop_encodings(self._network._state_encoder)
         rewards = np.minimum(rewards, 1.0 / self.strength)
         return rewards * self._has_updated_once
 
-    def update(self, mini_batch: AgentBuffer) -> Dict[str, np.ndarray]:
+    def update(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> Dict[str, np.ndarray]:
         self._has_updated_once = True
-        forward_loss = self._network.compute_forward_loss(mini_batch)
-        inverse_loss = self._network.compute_inverse_loss(mini_batch)
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
+        # Both losses use the same state encodings
+        forward_loss = self._network.compute_forward_loss(mini_batch, cache)
+        inverse_loss = self._network.compute_inverse_loss(mini_batch, cache)
 
         loss = self.loss_multiplier * (
             self.beta * forward_loss + (1.0 - self.beta) * inverse_loss
@@ -57,6 +70,7 @@ class CuriosityRewardProvider(BaseRewardProvider):
         self.optimizer.zero_grad()
         loss.backward()
         self.optimizer.step()
+        cache.drop_encodings(self._network._state_encoder)
         return {
             "Losses/Curiosity Forward Loss": forward_loss.item(),
             "Losses/Curiosity Inverse Loss": inverse_loss.item(),
@@ -109,37 +123,51 @@ class CuriosityNetwork(torch.nn.Module):
             linear_layer(256, state_encoder_settings.hidden_units),
         )
 
-    def get_current_state(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def get_current_state(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Extracts the current state embedding from a mini_batch.
         """
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         n_obs = len(self._state_encoder.processors)
-        np_obs = ObsUtil.from_buffer(mini_batch, n_obs)
-        # Convert to tensors
-        tensor_obs = [ModelUtils.list_to_tensor(obs) for obs in np_obs]
-
-        hidden, _ = self._state_encoder.forward(tensor_obs)
-        return hidden
+        return cache.encoding(
+            self._state_encoder,
+            "current",
+            lambda: self._state_encoder.forward(cache.obs(n_obs))[0],
+        )
 
-    def get_next_state(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def get_next_state(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Extracts the next state embedding from a mini_batch.
         """
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         n_obs = len(self._state_encoder.processors)
-        np_obs = ObsUtil.from_buffer_next(mini_batch, n_obs)
-        # Convert to tensors
-        tensor_obs = [ModelUtils.list_to_tensor(obs) for obs in np_obs]
-
-        hidden, _ = self._state_encoder.forward(tensor_obs)
-        return hidden
+        return cache.encoding(
+            self._state_encoder,
+            "next",
+            lambda: self._state_encoder.forward(cache.next_obs(n_obs))[0],
+        )
 
-    def predict_action(self, mini_batch: AgentBuffer) -> ActionPredictionTuple:
+    def predict_action(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> ActionPredictionTuple:
         """
         In the continuous case, returns the predicted action.
         In the discrete case, returns the logits.
         """
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         inverse_model_input = torch.cat(
-            (self.get_current_state(mini_batch), self.get_next_state(mini_batch)), dim=1
+            (
+                self.get_current_state(mini_batch, cache),
+                self.get_next_state(mini_batch, cache),
+            ),
+            dim=1,
         )
 
         continuous_pred = None
@@ -156,7 +184,9 @@ class CuriosityNetwork(torch.nn.Module):
             discrete_pred = torch.cat(branches, dim=1)
         return ActionPredictionTuple(continuous_pred, discrete_pred)
 
-    def predict_next_state(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def predict_next_state(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Uses the current state embedding and the action of the mini_batch to predict
         the next state embedding.
@@ -164,17 +194,19 @@ class CuriosityNetwork(torch.nn.Module):
         actions = AgentAction.from_buffer(mini_batch)
         flattened_action = self._action_flattener.forward(actions)
         forward_model_input = torch.cat(
-            (self.get_current_state(mini_batch), flattened_action), dim=1
+            (self.get_current_state(mini_batch, cache), flattened_action), dim=1
         )
 
         return self.forward_model_next_state_prediction(forward_model_input)
 
-    def compute_inverse_loss(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def compute_inverse_loss(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Computes the inverse loss for a mini_batch. Corresponds to the error on the
         action prediction (given the current and next state).
         """
-        predicted_action = self.predict_action(mini_batch)
+        predicted_action = self.predict_action(mini_batch, cache)
         actions = AgentAction.from_buffer(mini_batch)
         _inverse_loss = 0
         if self._action_spec.continuous_size > 0:
@@ -213,24 +245,30 @@ class CuriosityNetwork(torch.nn.Module):
             )
         return _inverse_loss
 
-    def compute_reward(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def compute_reward(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Calculates the curiosity reward for the mini_batch. Corresponds to the error
         between the predicted and actual next state.
         """
-        predicted_next_state = self.predict_next_state(mini_batch)
-        target = self.get_next_state(mini_batch)
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
+        predicted_next_state = self.predict_next_state(mini_batch, cache)
+        target = self.get_next_state(mini_batch, cache)
         sq_difference = 0.5 * (target - predicted_next_state) ** 2
         sq_difference = torch.sum(sq_difference, dim=1)
         return sq_difference
 
-    def compute_forward_loss(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def compute_forward_loss(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
         """
         Computes the loss for the next state prediction
         """
         return torch.mean(
             ModelUtils.dynamic_partition(
-                self.compute_reward(mini_batch),
+                self.compute_reward(mini_batch, cache),
                 ModelUtils.list_to_tensor(
                     mini_batch[BufferKey.MASKS], dtype=torch.float
                 ),
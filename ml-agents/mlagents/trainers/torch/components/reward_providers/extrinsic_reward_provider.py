@@ -1,5 +1,5 @@
 import numpy as np
-from typing import Dict
+from typing import Dict, Optional
 
 from mlagents.trainers.buffer import AgentBuffer, BufferKey
 from mlagents.trainers.torch.components.reward_providers.base_reward_provider import (
@@ -7,6 +7,7 @@ from mlagents.trainers.torch.components.reward_providers.base_reward_provider im
 )
 from mlagents_envs.base_env import BehaviorSpec
 from mlagents.trainers.settings import RewardSignalSettings
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 
 
 class ExtrinsicRewardProvider(BaseRewardProvider):
@@ -20,7 +21,9 @@ class ExtrinsicRewardProvider(BaseRewardProvider):
         super().__init__(specs, settings)
         self.add_groupmate_rewards = False
 
-    def evaluate(self, mini_batch: AgentBuffer) -> np.ndarray:
+    def evaluate(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> np.ndarray:
         indiv_rewards = np.array(
             mini_batch[BufferKey.ENVIRONMENT_REWARDS], dtype=np.float32
         )
@@ -39,5 +42,7 @@ class ExtrinsicRewardProvider(BaseRewardProvider):
             total_rewards += group_rewards
         return total_rewards
 
-    def update(self, mini_batch: AgentBuffer) -> Dict[str, np.ndarray]:
+    def update(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> Dict[str, np.ndarray]:
         return {}
@@ -14,8 +14,9 @@ from mlagents.trainers.torch.agent_action import AgentAction
 from mlagents.trainers.torch.action_flattener import ActionFlattener
 from mlagents.trainers.torch.networks import NetworkBody
 from mlagents.trainers.torch.layers import linear_layer, Initialization
+from mlagents.trainers.torch.encoders import uint8_to_float
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 from mlagents.trainers.demo_loader import demo_to_buffer
-from mlagents.trainers.trajectory import ObsUtil
 
 logger = logging_util.get_logger(__name__)
 
@@ -26,16 +27,23 @@ class GAILRewardProvider(BaseRewardProvider):
         self._ignore_done = False
         self._discriminator_network = DiscriminatorNetwork(specs, settings)
         self._discriminator_network.to(default_device())
+        # The 1 is supposed to be the sequence length but we do not have access here
         _, self._demo_buffer = demo_to_buffer(
-            settings.demo_path, 1, specs
-        )  # This is supposed to be the sequence length but we do not have access here
+            settings.demo_path,
+            1,
+            specs,
+            cache_dir=settings.demo_cache_dir,
+            num_workers=settings.demo_num_workers,
+        )
         params = list(self._discriminator_network.parameters())
         self.optimizer = torch.optim.Adam(params, lr=settings.learning_rate)
 
-    def evaluate(self, mini_batch: AgentBuffer) -> np.ndarray:
+    def evaluate(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> np.ndarray:
         with torch.no_grad():
             estimates, _ = self._discriminator_network.compute_estimate(
-                mini_batch, use_vail_noise=False
+                mini_batch, use_vail_noise=False, cache=cache
             )
             return ModelUtils.to_numpy(
                 -torch.log(
@@ -45,7 +53,9 @@ class GAILRewardProvider(BaseRewardProvider):
                 )
             )
 
-    def update(self, mini_batch: AgentBuffer) -> Dict[str, np.ndarray]:
+    def update(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> Dict[str, np.ndarray]:
 
         expert_batch = self._demo_buffer.sample_mini_batch(
             mini_batch.num_experiences, 1
@@ -53,7 +63,7 @@ class GAILRewardProvider(BaseRewardProvider):
         self._discriminator_network.encoder.update_normalization(expert_batch)
 
         loss, stats_dict = self._discriminator_network.compute_loss(
-            mini_batch, expert_batch
+            mini_batch, expert_batch, policy_cache=cache
         )
         self.optimizer.zero_grad()
         loss.backward()
@@ -119,18 +129,22 @@ class DiscriminatorNetwork(torch.nn.Module):
         """
         return self._action_flattener.forward(AgentAction.from_buffer(mini_batch))
 
-    def get_state_inputs(self, mini_batch: AgentBuffer) -> List[torch.Tensor]:
+    def get_state_inputs(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> List[torch.Tensor]:
         """
         Creates the observation input.
         """
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         n_obs = len(self.encoder.processors)
-        np_obs = ObsUtil.from_buffer(mini_batch, n_obs)
-        # Convert to tensors
-        tensor_obs = [ModelUtils.list_to_tensor(obs) for obs in np_obs]
-        return tensor_obs
+        return cache.obs(n_obs)
 
     def compute_estimate(
-        self, mini_batch: AgentBuffer, use_vail_noise: bool = False
+        self,
+        mini_batch: AgentBuffer,
+        use_vail_noise: bool = False,
+        cache: Optional[ObsTensorCache] = None,
     ) -> torch.Tensor:
         """
         Given a mini_batch, computes the estimate (How much the discriminator believes
@@ -138,8 +152,9 @@ class DiscriminatorNetwork(torch.nn.Module):
         :param mini_batch: The AgentBuffer of data
         :param use_vail_noise: Only when using VAIL : If true, will sample the code, if
         false, will return the mean of the code.
+        :param cache: The observation tensors of mini_batch, if they were already converted.
         """
-        inputs = self.get_state_inputs(mini_batch)
+        inputs = self.get_state_inputs(mini_batch, cache)
         if self._settings.use_actions:
             actions = self.get_action_input(mini_batch)
             dones = torch.as_tensor(
@@ -157,18 +172,25 @@ class DiscriminatorNetwork(torch.nn.Module):
         return estimate, z_mu
 
     def compute_loss(
-        self, policy_batch: AgentBuffer, expert_batch: AgentBuffer
+        self,
+        policy_batch: AgentBuffer,
+        expert_batch: AgentBuffer,
+        policy_cache: Optional[ObsTensorCache] = None,
     ) -> torch.Tensor:
         """
         Given a policy mini_batch and an expert mini_batch, computes the loss of the discriminator.
         """
         total_loss = torch.zeros(1)
         stats_dict: Dict[str, np.ndarray] = {}
+        # The observations are converted once for the estimates and the gradient penalty.
+        if policy_cache is None:
+            policy_cache = ObsTensorCache(policy_batch)
+        expert_cache = ObsTensorCache(expert_batch)
         policy_estimate, policy_mu = self.compute_estimate(
-            policy_batch, use_vail_noise=True
+            policy_batch, use_vail_noise=True, cache=policy_cache
         )
         expert_estimate, expert_mu = self.compute_estimate(
-            expert_batch, use_vail_noise=True
+            expert_batch, use_vail_noise=True, cache=expert_cache
         )
         stats_dict["Policy/GAIL Policy Estimate"] = policy_estimate.mean().item()
         stats_dict["Policy/GAIL Expert Estimate"] = expert_estimate.mean().item()
@@ -202,23 +224,32 @@ class DiscriminatorNetwork(torch.nn.Module):
         if self.gradient_penalty_weight > 0.0:
             gradient_magnitude_loss = (
                 self.gradient_penalty_weight
-                * self.compute_gradient_magnitude(policy_batch, expert_batch)
+                * self.compute_gradient_magnitude(
+                    policy_batch, expert_batch, policy_cache, expert_cache
+                )
             )
             stats_dict["Policy/GAIL Grad Mag Loss"] = gradient_magnitude_loss.item()
             total_loss += gradient_magnitude_loss
         return total_loss, stats_dict
 
     def compute_gradient_magnitude(
-        self, policy_batch: AgentBuffer, expert_batch: AgentBuffer
+        self,
+        policy_batch: AgentBuffer,
+        expert_batch: AgentBuffer,
+        policy_cache: Optional[ObsTensorCache] = None,
+        expert_cache: Optional[ObsTensorCache] = None,
     ) -> torch.Tensor:
         """
         Gradient penalty from https://arxiv.org/pdf/1704.00028. Adds stability esp.
         for off-policy. Compute gradients w.r.t randomly interpolated input.
         """
-        policy_inputs = self.get_state_inputs(policy_batch)
-        expert_inputs = self.get_state_inputs(expert_batch)
+        policy_inputs = self.get_state_inputs(policy_batch, policy_cache)
+        expert_inputs = self.get_state_inputs(expert_batch, expert_cache)
         interp_inputs = []
         for policy_input, expert_input in zip(policy_inputs, expert_inputs):
+            # Interpolate between the scaled observations.
+            policy_input = uint8_to_float(policy_input)
+            expert_input = uint8_to_float(expert_input)
             obs_epsilon = torch.rand(policy_input.shape)
             interp_input = obs_epsilon * policy_input + (1 - obs_epsilon) * expert_input
             interp_input.requires_grad = True  # For gradient calculation
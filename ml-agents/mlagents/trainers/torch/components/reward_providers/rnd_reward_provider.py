@@ -1,5 +1,5 @@
 import numpy as np
-from typing import Dict
+from typing import Dict, Optional
 from mlagents.torch_utils import torch
 
 from mlagents.trainers.buffer import AgentBuffer
@@ -10,9 +10,8 @@ from mlagents.trainers.settings import RNDSettings
 
 from mlagents_envs.base_env import BehaviorSpec
 from mlagents_envs import logging_util
-from mlagents.trainers.torch.utils import ModelUtils
 from mlagents.trainers.torch.networks import NetworkBody
-from mlagents.trainers.trajectory import ObsUtil
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 
 logger = logging_util.get_logger(__name__)
 
@@ -30,18 +29,40 @@ class RNDRewardProvider(BaseRewardProvider):
         self.optimizer = torch.optim.Adam(
             self._training_network.parameters(), lr=settings.learning_rate
         )
+        # The random network is never trained, so its output for a mini batch can be
+        # reused, unless its normalizer is updated each time it is called.
+        self._cache_target = not settings.network_settings.normalize
 
-    def evaluate(self, mini_batch: AgentBuffer) -> np.ndarray:
+    def _get_target(
+        self, mini_batch: AgentBuffer, cache: ObsTensorCache
+    ) -> torch.Tensor:
         with torch.no_grad():
-            target = self._random_network(mini_batch)
-            prediction = self._training_network(mini_batch)
+            if self._cache_target:
+                return cache.encoding(
+                    self._random_network,
+                    "target",
+                    lambda: self._random_network(mini_batch, cache),
+                )
+            return self._random_network(mini_batch, cache)
+
+    def evaluate(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> np.ndarray:
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
+        with torch.no_grad():
+            target = self._get_target(mini_batch, cache)
+            prediction = self._training_network(mini_batch, cache)
             rewards = torch.sum((prediction - target) ** 2, dim=1)
         return rewards.detach().cpu().numpy()
 
-    def update(self, mini_batch: AgentBuffer) -> Dict[str, np.ndarray]:
-        with torch.no_grad():
-            target = self._random_network(mini_batch)
-        prediction = self._training_network(mini_batch)
+    def update(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> Dict[str, np.ndarray]:
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
+        target = self._get_target(mini_batch, cache)
+        prediction = self._training_network(mini_batch, cache)
         loss = torch.mean(torch.sum((prediction - target) ** 2, dim=1))
         self.optimizer.zero_grad()
         loss.backward()
@@ -69,12 +90,12 @@ class RNDNetwork(torch.nn.Module):
 
         self._encoder = NetworkBody(specs.observation_specs, state_encoder_settings)
 
-    def forward(self, mini_batch: AgentBuffer) -> torch.Tensor:
+    def forward(
+        self, mini_batch: AgentBuffer, cache: Optional[ObsTensorCache] = None
+    ) -> torch.Tensor:
+        if cache is None:
+            cache = ObsTensorCache(mini_batch)
         n_obs = len(self._encoder.processors)
-        np_obs = ObsUtil.from_buffer(mini_batch, n_obs)
-        # Convert to tensors
-        tensor_obs = [ModelUtils.list_to_tensor(obs) for obs in np_obs]
-
-        hidden, _ = self._encoder.forward(tensor_obs)
+        hidden, _ = self._encoder.forward(cache.obs(n_obs))
         self._encoder.update_normalization(mini_batch)
         return hidden
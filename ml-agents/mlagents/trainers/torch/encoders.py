@@ -24,22 +24,30 @@ class Normalizer(nn.Module):
 
     def update(self, vector_input: torch.Tensor) -> None:
         with torch.no_grad():
-            steps_increment = vector_input.size()[0]
-            total_new_steps = self.normalization_steps + steps_increment
-
-            input_to_old_mean = vector_input - self.running_mean
-            new_mean: torch.Tensor = self.running_mean + (
-                input_to_old_mean / total_new_steps
-            ).sum(0)
-
-            input_to_new_mean = vector_input - new_mean
-            new_variance = self.running_variance + (
-                input_to_new_mean * input_to_old_mean
-            ).sum(0)
-            # Update references. This is much faster than in-place data update.
-            self.running_mean: torch.Tensor = new_mean
-            self.running_variance: torch.Tensor = new_variance
-            self.normalization_steps: torch.Tensor = total_new_steps
+            count = vector_input.shape[0]
+            if count == 0:
+                return
+            vector_input = vector_input.to(self.running_mean)
+            mean = vector_input.mean(0)
+            self.merge(count, mean, (vector_input - mean).square().sum(0))
+
+    def merge(self, count: int, mean: torch.Tensor, m2: torch.Tensor) -> None:
+        """
+        Merges the moments of a batch into the running statistics with the parallel formula of
+        Chan et al. The statistics are updated in place, so modules that hold references to
+        them (like the graphs of CompiledActor) see the update.
+        :param count: The number of samples in the batch.
+        :param mean: The mean of the batch.
+        :param m2: The sum of squared deviations from the mean of the batch.
+        """
+        with torch.no_grad():
+            steps = self.normalization_steps.to(self.running_mean)
+            total_steps = steps + count
+            delta = mean.to(self.running_mean) - self.running_mean
+            self.running_mean.add_(delta * count / total_steps)
+            delta_m2 = delta.square() * steps * count / total_steps
+            self.running_variance.add_(m2.to(self.running_variance) + delta_m2)
+            self.normalization_steps.add_(count)
 
     def copy_from(self, other_normalizer: "Normalizer") -> None:
         self.normalization_steps.data.copy_(other_normalizer.normalization_steps.data)
@@ -111,6 +119,16 @@ class VectorInput(nn.Module):
             self.normalizer.update(inputs)
 
 
+def uint8_to_float(visual_obs: torch.Tensor) -> torch.Tensor:
+    """
+    Scales visual observations that were kept as uint8 (see the Uint8 compression type) to
+    floats between 0 and 1. Other observations are returned unchanged.
+    """
+    if visual_obs.dtype == torch.uint8:
+        return visual_obs.float() / 255.0
+    return visual_obs
+
+
 class FullyConnectedVisualEncoder(nn.Module):
     def __init__(
         self, height: int, width: int, initial_channels: int, output_size: int
@@ -129,6 +147,7 @@ class FullyConnectedVisualEncoder(nn.Module):
         )
 
     def forward(self, visual_obs: torch.Tensor) -> torch.Tensor:
+        visual_obs = uint8_to_float(visual_obs)
         if not exporting_to_onnx.is_exporting():
             visual_obs = visual_obs.permute([0, 3, 1, 2])
         hidden = visual_obs.reshape(-1, self.input_size)
@@ -167,6 +186,7 @@ class SmallVisualEncoder(nn.Module):
         )
 
     def forward(self, visual_obs: torch.Tensor) -> torch.Tensor:
+        visual_obs = uint8_to_float(visual_obs)
         if not exporting_to_onnx.is_exporting():
             visual_obs = visual_obs.permute([0, 3, 1, 2])
         hidden = self.conv_layers(visual_obs)
@@ -201,6 +221,7 @@ class SimpleVisualEncoder(nn.Module):
         )
 
     def forward(self, visual_obs: torch.Tensor) -> torch.Tensor:
+        visual_obs = uint8_to_float(visual_obs)
         if not exporting_to_onnx.is_exporting():
             visual_obs = visual_obs.permute([0, 3, 1, 2])
         hidden = self.conv_layers(visual_obs)
@@ -238,6 +259,7 @@ class NatureVisualEncoder(nn.Module):
         )
 
     def forward(self, visual_obs: torch.Tensor) -> torch.Tensor:
+        visual_obs = uint8_to_float(visual_obs)
         if not exporting_to_onnx.is_exporting():
             visual_obs = visual_obs.permute([0, 3, 1, 2])
         hidden = self.conv_layers(visual_obs)
@@ -291,6 +313,7 @@ class ResNetVisualEncoder(nn.Module):
         self.sequential = nn.Sequential(*layers)
 
     def forward(self, visual_obs: torch.Tensor) -> torch.Tensor:
+        visual_obs = uint8_to_float(visual_obs)
         if not exporting_to_onnx.is_exporting():
             visual_obs = visual_obs.permute([0, 3, 1, 2])
         hidden = self.sequential(visual_obs)
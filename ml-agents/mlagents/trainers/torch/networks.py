@@ -13,7 +13,7 @@ from mlagents.trainers.torch.decoders import ValueHeads
 from mlagents.trainers.torch.layers import LSTM, LinearEncoder
 from mlagents.trainers.torch.encoders import VectorInput
 from mlagents.trainers.buffer import AgentBuffer
-from mlagents.trainers.trajectory import ObsUtil
+from mlagents.trainers.observation_moments import ObservationMoments
 from mlagents.trainers.torch.conditioning import ConditionalEncoder
 from mlagents.trainers.torch.attention import (
     EntityEmbedding,
@@ -84,11 +84,24 @@ class ObservationEncoder(nn.Module):
         """
         return self._total_goal_enc_size
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
-        obs = ObsUtil.from_buffer(buffer, len(self.processors))
-        for vec_input, enc in zip(obs, self.processors):
-            if isinstance(enc, VectorInput):
-                enc.update_normalization(torch.as_tensor(vec_input))
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
+        """
+        Updates the normalizers of the vector observations.
+        :param buffer: The observations to add to the running statistics, or their moments.
+        """
+        if isinstance(buffer, AgentBuffer):
+            buffer = ObservationMoments([buffer])
+        for i, enc in enumerate(self.processors):
+            if isinstance(enc, VectorInput) and enc.normalizer is not None:
+                moments = buffer.take(i, enc.normalizer)
+                if moments is not None and moments.count > 0:
+                    enc.normalizer.merge(
+                        moments.count,
+                        torch.as_tensor(moments.mean),
+                        torch.as_tensor(moments.m2),
+                    )
 
     def copy_normalization(self, other_encoder: "ObservationEncoder") -> None:
         if self.normalize:
@@ -218,7 +231,9 @@ class NetworkBody(nn.Module):
         else:
             self.lstm = None  # type: ignore
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         self.observation_encoder.update_normalization(buffer)
 
     def copy_normalization(self, other_network: "NetworkBody") -> None:
@@ -320,7 +335,9 @@ class MultiAgentNetworkBody(torch.nn.Module):
     def memory_size(self) -> int:
         return self.lstm.memory_size if self.use_lstm else 0
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         self.observation_encoder.update_normalization(buffer)
 
     def copy_normalization(self, other_network: "MultiAgentNetworkBody") -> None:
@@ -429,10 +446,12 @@ class MultiAgentNetworkBody(torch.nn.Module):
 
 class Critic(abc.ABC):
     @abc.abstractmethod
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         """
-        Updates normalization of Actor based on the provided List of vector obs.
-        :param vector_obs: A List of vector obs as tensors.
+        Updates normalization of Critic based on the provided observations.
+        :param buffer: An AgentBuffer with the observations, or their ObservationMoments.
         """
         pass
 
@@ -472,7 +491,9 @@ class ValueNetwork(nn.Module, Critic):
             encoding_size = network_settings.hidden_units
         self.value_heads = ValueHeads(stream_names, encoding_size, outputs_per_stream)
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         self.network_body.update_normalization(buffer)
 
     @property
@@ -506,10 +527,12 @@ class ValueNetwork(nn.Module, Critic):
 
 class Actor(abc.ABC):
     @abc.abstractmethod
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         """
-        Updates normalization of Actor based on the provided List of vector obs.
-        :param vector_obs: A List of vector obs as tensors.
+        Updates normalization of Actor based on the provided observations.
+        :param buffer: An AgentBuffer with the observations, or their ObservationMoments.
         """
         pass
 
@@ -624,7 +647,9 @@ class SimpleActor(nn.Module, Actor):
     def memory_size(self) -> int:
         return self.network_body.memory_size
 
-    def update_normalization(self, buffer: AgentBuffer) -> None:
+    def update_normalization(
+        self, buffer: Union[AgentBuffer, ObservationMoments]
+    ) -> None:
         self.network_body.update_normalization(buffer)
 
     def get_action_and_stats(
@@ -0,0 +1,69 @@
+from typing import Callable, Dict, Hashable, List, Tuple
+
+from mlagents.torch_utils import torch
+
+from mlagents.trainers.buffer import AgentBuffer, AgentBufferKey
+from mlagents.trainers.torch.utils import ModelUtils
+from mlagents.trainers.trajectory import ObsUtil
+
+
+class ObsTensorCache:
+    """
+    Caches the tensors computed from the observations of one mini batch, so that the optimizer
+    and the reward providers that use the same mini batch only convert its observations to
+    tensors once.
+    It can also hold the outputs of encoders for the mini batch. An encoding must only be
+    reused while the weights of its encoder don't change, i.e. for a frozen encoder, or within
+    a single loss computation, after which its owner drops it.
+    A cache must only be used with the mini batch it was created for.
+    """
+
+    def __init__(self, mini_batch: AgentBuffer):
+        self.mini_batch = mini_batch
+        self._obs: Dict[AgentBufferKey, torch.Tensor] = {}
+        self._encodings: Dict[Tuple[torch.nn.Module, Hashable], torch.Tensor] = {}
+
+    def _obs_tensor(self, key: AgentBufferKey) -> torch.Tensor:
+        tensor = self._obs.get(key)
+        if tensor is None:
+            tensor = ModelUtils.obs_to_tensor(self.mini_batch[key])
+            self._obs[key] = tensor
+        return tensor
+
+    def obs(self, num_obs: int) -> List[torch.Tensor]:
+        """
+        Returns the tensors of the first num_obs observations of the mini batch.
+        """
+        return [self._obs_tensor(ObsUtil.get_name_at(i)) for i in range(num_obs)]
+
+    def next_obs(self, num_obs: int) -> List[torch.Tensor]:
+        """
+        Returns the tensors of the first num_obs next observations of the mini batch.
+        """
+        return [self._obs_tensor(ObsUtil.get_name_at_next(i)) for i in range(num_obs)]
+
+    def encoding(
+        self,
+        encoder: torch.nn.Module,
+        name: Hashable,
+        compute: Callable[[], torch.Tensor],
+    ) -> torch.Tensor:
+        """
+        Returns the output of encoder for the mini batch, computed by compute the first time.
+        :param encoder: The encoder, whose encodings can be dropped with drop_encodings.
+        :param name: Identifies the input of the encoder, e.g. "next" for the next observations.
+        :param compute: Computes the output.
+        """
+        key = (encoder, name)
+        encoding = self._encodings.get(key)
+        if encoding is None:
+            encoding = compute()
+            self._encodings[key] = encoding
+        return encoding
+
+    def drop_encodings(self, encoder: torch.nn.Module) -> None:
+        """
+        Drops the outputs of encoder, e.g. after its weights were updated.
+        """
+        for key in [key for key in self._encodings if key[0] is encoder]:
+            del self._encodings[key]
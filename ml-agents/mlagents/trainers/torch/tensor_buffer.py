@@ -0,0 +1,95 @@
+from typing import List, Optional, Union
+
+import numpy as np
+from mlagents.torch_utils import torch, default_device
+
+from mlagents.trainers.buffer import (
+    AgentBuffer,
+    AgentBufferField,
+    AgentBufferKey,
+    BufferException,
+)
+
+TensorBufferField = Union[torch.Tensor, AgentBufferField]
+
+
+class TensorAgentBuffer(AgentBuffer):
+    """
+    TensorAgentBuffer is an AgentBuffer whose fields are converted to tensors once, before the
+    epochs of an on-policy update, instead of in every mini batch. Each field with a fixed shape
+    is a single tensor on the training device (uint8 observations stay uint8, everything else is
+    float32). Shuffling gathers every tensor in a permuted order with one indexing op, and the
+    mini batches hold slices of the tensors, which ModelUtils.list_to_tensor and obs_to_tensor
+    return without copying.
+    Group fields don't have a fixed shape, and are kept as AgentBufferFields that are reordered
+    with the same permutation.
+    Only shuffle and make_mini_batch are supported.
+    """
+
+    def __init__(self, device: Optional[torch.device] = None):
+        super().__init__()
+        self.device = default_device() if device is None else device
+
+    @staticmethod
+    def from_buffer(
+        buffer: AgentBuffer, device: Optional[torch.device] = None
+    ) -> "TensorAgentBuffer":
+        """
+        Converts the fields of an AgentBuffer (of any backend) to a TensorAgentBuffer.
+        :param buffer: The buffer to convert. It isn't modified.
+        :param device: The device of the tensors, by default the training device.
+        """
+        tensor_buffer = TensorAgentBuffer(device)
+        for key, field in buffer.items():
+            tensor_buffer[key] = tensor_buffer._to_tensor(field)
+        return tensor_buffer
+
+    def _to_tensor(self, field: AgentBufferField) -> TensorBufferField:
+        if len(field) == 0 or field.contains_lists:
+            return AgentBufferField(field)
+        array = np.asanyarray(field)
+        if array.dtype == object:
+            # The entries don't all have the same shape
+            return AgentBufferField(field)
+        dtype = None if array.dtype == np.uint8 else torch.float32
+        return torch.as_tensor(array, dtype=dtype, device=self.device)
+
+    def shuffle(
+        self, sequence_length: int, key_list: List[AgentBufferKey] = None
+    ) -> None:
+        """
+        Shuffles the fields in key_list in a consistent way: The reordering will
+        be the same across fields.
+        :param key_list: The fields that must be shuffled.
+        """
+        if key_list is None:
+            key_list = list(self._fields.keys())
+        if not self.check_length(key_list):
+            raise BufferException(
+                "Unable to shuffle if the fields are not of same length"
+            )
+        s = np.arange(len(self[key_list[0]]) // sequence_length)
+        np.random.shuffle(s)
+        indices = (
+            s[:, np.newaxis] * sequence_length + np.arange(sequence_length)
+        ).ravel()
+        device_indices = torch.as_tensor(indices, device=self.device)
+        for key in key_list:
+            field = self[key]
+            if isinstance(field, torch.Tensor):
+                self[key] = field.index_select(0, device_indices)
+            else:
+                self[key] = AgentBufferField([field[i] for i in indices])
+
+    def make_mini_batch(self, start: int, end: int) -> "TensorAgentBuffer":
+        """
+        Creates a mini-batch from buffer. The tensors of the mini-batch are views of the
+        tensors of this buffer.
+        :param start: Starting index of buffer.
+        :param end: Ending index of buffer.
+        :return: Dict of mini batch.
+        """
+        mini_batch = TensorAgentBuffer(self.device)
+        for key, field in self._fields.items():
+            mini_batch[key] = field[start:end]
+        return mini_batch
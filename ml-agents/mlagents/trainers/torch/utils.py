@@ -228,10 +228,27 @@ class ModelUtils:
     ) -> torch.Tensor:
         """
         Converts a list of numpy arrays into a tensor. MUCH faster than
-        calling as_tensor on the list directly.
+        calling as_tensor on the list directly. Tensors, e.g. the fields of a
+        TensorAgentBuffer, are returned as they are if they already have the dtype.
         """
+        if isinstance(ndarray_list, torch.Tensor):
+            return ndarray_list if dtype is None else ndarray_list.to(dtype)
         return torch.as_tensor(np.asanyarray(ndarray_list), dtype=dtype)
 
+    @staticmethod
+    def obs_to_tensor(ndarray_list: List[np.ndarray]) -> torch.Tensor:
+        """
+        Converts a list of observations into a tensor. Unlike list_to_tensor, uint8
+        observations stay uint8, so that they are copied (e.g. to the GPU) at a quarter of
+        the size. The visual encoders scale them.
+        """
+        if isinstance(ndarray_list, torch.Tensor):
+            return ndarray_list
+        np_array = np.asanyarray(ndarray_list)
+        if np_array.dtype == np.uint8:
+            return torch.as_tensor(np_array)
+        return torch.as_tensor(np_array, dtype=torch.float32)
+
     @staticmethod
     def list_to_tensor_list(
         ndarray_list: List[np.ndarray], dtype: Optional[torch.dtype] = torch.float32
@@ -2,6 +2,7 @@
 from typing import Dict, List, Optional
 from collections import defaultdict
 import abc
+import threading
 import time
 import attr
 import numpy as np
@@ -15,10 +16,12 @@ from mlagents_envs.logging_util import get_logger
 from mlagents_envs.timers import timed
 from mlagents.trainers.optimizer import Optimizer
 from mlagents.trainers.buffer import AgentBuffer, BufferKey
+from mlagents.trainers.columnar_buffer import ColumnarAgentBuffer
 from mlagents.trainers.trainer import Trainer
 from mlagents.trainers.torch.components.reward_providers.base_reward_provider import (
     BaseRewardProvider,
 )
+from mlagents.trainers.torch.obs_tensor_cache import ObsTensorCache
 from mlagents_envs.timers import hierarchical_timer
 from mlagents_envs.base_env import BehaviorSpec
 from mlagents.trainers.policy.policy import Policy
@@ -27,7 +30,7 @@ from mlagents.trainers.model_saver.torch_model_saver import TorchModelSaver
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
 from mlagents.trainers.agent_processor import AgentManagerQueue
 from mlagents.trainers.trajectory import Trajectory
-from mlagents.trainers.settings import TrainerSettings
+from mlagents.trainers.settings import TrainerSettings, BufferBackendType
 from mlagents.trainers.stats import StatsPropertyType
 from mlagents.trainers.model_saver.model_saver import BaseModelSaver
 
@@ -49,7 +52,14 @@ class RLTrainer(Trainer):
         self.collected_rewards: Dict[str, Dict[str, int]] = {
             "environment": defaultdict(lambda: 0)
         }
-        self.update_buffer: AgentBuffer = AgentBuffer()
+        self.update_buffer: AgentBuffer = self.create_update_buffer()
+        # Held while the models, the normalizers or the update buffer are modified or saved,
+        # so that the stages of a TrainerPipeline never see a half-applied update. The
+        # ingest stage estimates values with a copy of the critic instead, so it doesn't
+        # wait for the updates.
+        self.model_lock = threading.RLock()
+        # Held while the episode returns are recorded, read or cleared.
+        self.stats_lock = threading.Lock()
         self._stats_reporter.add_property(
             StatsPropertyType.HYPERPARAMETERS, self.trainer_settings.as_dict()
         )
@@ -66,35 +76,51 @@ class RLTrainer(Trainer):
         A signal that the Episode has ended. The buffer must be reset.
         Get only called when the academy resets.
         """
-        for rewards in self.collected_rewards.values():
-            for agent_id in rewards:
-                rewards[agent_id] = 0
+        with self.stats_lock:
+            for rewards in self.collected_rewards.values():
+                for agent_id in rewards:
+                    rewards[agent_id] = 0
 
     def _update_end_episode_stats(self, agent_id: str, optimizer: Optimizer) -> None:
-        for name, rewards in self.collected_rewards.items():
-            if name == "environment":
-                self.stats_reporter.add_stat(
-                    "Environment/Cumulative Reward",
-                    rewards.get(agent_id, 0),
-                    aggregation=StatsAggregationMethod.HISTOGRAM,
-                )
-                self.cumulative_returns_since_policy_update.append(
-                    rewards.get(agent_id, 0)
-                )
-                self.reward_buffer.appendleft(rewards.get(agent_id, 0))
-                rewards[agent_id] = 0
-            else:
-                if isinstance(optimizer.reward_signals[name], BaseRewardProvider):
+        with self.stats_lock:
+            for name, rewards in self.collected_rewards.items():
+                if name == "environment":
                     self.stats_reporter.add_stat(
-                        f"Policy/{optimizer.reward_signals[name].name.capitalize()} Reward",
+                        "Environment/Cumulative Reward",
                         rewards.get(agent_id, 0),
+                        aggregation=StatsAggregationMethod.HISTOGRAM,
                     )
-                else:
-                    self.stats_reporter.add_stat(
-                        optimizer.reward_signals[name].stat_name,
-                        rewards.get(agent_id, 0),
+                    self.cumulative_returns_since_policy_update.append(
+                        rewards.get(agent_id, 0)
                     )
-                rewards[agent_id] = 0
+                    self.reward_buffer.appendleft(rewards.get(agent_id, 0))
+                    rewards[agent_id] = 0
+                else:
+                    if isinstance(optimizer.reward_signals[name], BaseRewardProvider):
+                        self.stats_reporter.add_stat(
+                            f"Policy/{optimizer.reward_signals[name].name.capitalize()} Reward",
+                            rewards.get(agent_id, 0),
+                        )
+                    else:
+                        self.stats_reporter.add_stat(
+                            optimizer.reward_signals[name].stat_name,
+                            rewards.get(agent_id, 0),
+                        )
+                    rewards[agent_id] = 0
+
+    def create_update_buffer(self, capacity: Optional[int] = None) -> AgentBuffer:
+        """
+        Creates the buffer that trajectories are appended to before updating the policy,
+        using the backend selected in the hyperparameters.
+        :param capacity: If set and using the columnar backend, the buffer only keeps the newest
+            capacity experiences.
+        """
+        if (
+            self.trainer_settings.hyperparameters.buffer_backend
+            == BufferBackendType.COLUMNAR
+        ):
+            return ColumnarAgentBuffer(capacity)
+        return AgentBuffer()
 
     def _clear_update_buffer(self) -> None:
         """
@@ -138,11 +164,16 @@ class RLTrainer(Trainer):
 
     def _policy_mean_reward(self) -> Optional[float]:
         """ Returns the mean episode reward for the current policy. """
-        rewards = self.cumulative_returns_since_policy_update
-        if len(rewards) == 0:
-            return None
-        else:
-            return sum(rewards) / len(rewards)
+        with self.stats_lock:
+            rewards = self.cumulative_returns_since_policy_update
+            if len(rewards) == 0:
+                return None
+            else:
+                return sum(rewards) / len(rewards)
+
+    def _clear_returns_since_policy_update(self) -> None:
+        with self.stats_lock:
+            self.cumulative_returns_since_policy_update.clear()
 
     @timed
     def _checkpoint(self) -> ModelCheckpoint:
@@ -154,9 +185,10 @@ class RLTrainer(Trainer):
             logger.warning(
                 "Trainer has multiple policies, but default behavior only saves the first."
             )
-        export_path, auxillary_paths = self.model_saver.save_checkpoint(
-            self.brain_name, self._step
-        )
+        with self.model_lock:
+            export_path, auxillary_paths = self.model_saver.save_checkpoint(
+                self.brain_name, self._step
+            )
         new_checkpoint = ModelCheckpoint(
             int(self._step),
             export_path,
@@ -233,9 +265,68 @@ class RLTrainer(Trainer):
         Takes a trajectory and processes it, putting it into the update buffer.
         :param trajectory: The Trajectory tuple containing the steps to be processed.
         """
-        self._maybe_write_summary(self.get_step + len(trajectory.steps))
-        self._maybe_save_model(self.get_step + len(trajectory.steps))
-        self._increment_step(len(trajectory.steps), trajectory.behavior_id)
+        self._record_steps([trajectory])
+
+    def _record_steps(self, trajectories: List[Trajectory]) -> None:
+        """
+        Increments the step count by the steps of trajectories, after writing the summary
+        and saving the model if the steps reach their interval. _prepare_trajectories
+        leaves this to its caller, so that a TrainerPipeline can do it on its update stage.
+        :param trajectories: The Trajectories, in the order they were received.
+        """
+        for trajectory in trajectories:
+            self._maybe_write_summary(self.get_step + len(trajectory.steps))
+            self._maybe_save_model(self.get_step + len(trajectory.steps))
+            self._increment_step(len(trajectory.steps), trajectory.behavior_id)
+
+    def _process_trajectories(self, trajectories: List[Trajectory]) -> None:
+        """
+        Processes the trajectories taken from a trajectory queue in one advance(). Trainers
+        can override this to share work between the trajectories.
+        :param trajectories: The Trajectories, in the order they were received.
+        """
+        for trajectory in trajectories:
+            self._process_trajectory(trajectory)
+
+    def _prepare_trajectories(
+        self, trajectories: List[Trajectory]
+    ) -> List[AgentBuffer]:
+        """
+        Processes trajectories into AgentBuffers that are ready to be appended to the update
+        buffer, without appending them or recording their steps (see _record_steps).
+        Trainers that implement this can run their trajectory processing and their updates
+        on separate threads (see TrainerPipeline). It must update the normalizers through
+        the optimizer's update_normalization, and evaluate reward signals through
+        _evaluate_reward_signal.
+        :param trajectories: The Trajectories, in the order they were received.
+        :return: One AgentBuffer per trajectory.
+        """
+        raise NotImplementedError(
+            f"{self.__class__.__name__} doesn't support the staged trainer pipeline."
+        )
+
+    def _evaluate_reward_signal(
+        self,
+        reward_signal: BaseRewardProvider,
+        agent_buffer_trajectory: AgentBuffer,
+        obs_cache: Optional[ObsTensorCache] = None,
+    ) -> np.ndarray:
+        """
+        Evaluates a reward signal on the AgentBuffer of a trajectory. The reward providers
+        that have networks train them in _update_policy, so they are evaluated under
+        model_lock.
+        """
+        if reward_signal.get_modules():
+            with self.model_lock:
+                return reward_signal.evaluate(agent_buffer_trajectory, obs_cache)
+        return reward_signal.evaluate(agent_buffer_trajectory, obs_cache)
+
+    @property
+    def supports_staged_pipeline(self) -> bool:
+        return (
+            type(self)._prepare_trajectories  # type: ignore
+            is not RLTrainer._prepare_trajectories
+        )
 
     def _maybe_write_summary(self, step_after_process: int) -> None:
         """
@@ -299,13 +390,15 @@ class RLTrainer(Trainer):
                 # This ensures that even if the queue is being filled faster than it is
                 # being emptied, the trajectories in the queue are on-policy.
                 _queried = False
+                trajectories: List[Trajectory] = []
                 for _ in range(traj_queue.qsize()):
                     _queried = True
                     try:
-                        t = traj_queue.get_nowait()
-                        self._process_trajectory(t)
+                        trajectories.append(traj_queue.get_nowait())
                     except AgentManagerQueue.Empty:
                         break
+                if trajectories:
+                    self._process_trajectories(trajectories)
                 if self.threaded and not _queried:
                     # Yield thread to avoid busy-waiting
                     time.sleep(0.0001)
@@ -0,0 +1,215 @@
+import queue
+import threading
+import time
+from typing import Any, Callable, Dict, List, NamedTuple, Optional
+
+from mlagents_envs.timers import (
+    hierarchical_timer,
+    record_throughput,
+    set_queue_depth,
+)
+from mlagents.torch_utils import torch
+from mlagents.trainers.agent_processor import AgentManagerQueue
+from mlagents.trainers.buffer import AgentBuffer
+from mlagents.trainers.observation_moments import ObservationMoments
+from mlagents.trainers.optimizer.torch_optimizer import TorchOptimizer
+from mlagents.trainers.trainer.rl_trainer import RLTrainer
+from mlagents.trainers.trajectory import Trajectory
+
+# How long a stage waits on one of its queues before checking whether it should stop.
+QUEUE_TIMEOUT_S = 0.1
+# How long the ingest stage sleeps when there are no trajectories.
+INGEST_POLL_INTERVAL_S = 0.001
+
+
+class PreparedTrajectories(NamedTuple):
+    """
+    What the ingest stage hands the update stage for a batch of trajectories.
+    """
+
+    trajectories: List[Trajectory]
+    agent_buffers: List[AgentBuffer]
+    # The normalization updates to apply to the policy and the critic.
+    moments: List[ObservationMoments]
+
+
+class TrainerPipeline:
+    """
+    Runs an RLTrainer as three stages, each on its own thread, instead of a single thread that
+    calls advance():
+    - ingest takes the trajectories from the trajectory queues and turns them into AgentBuffers
+      with value estimates, rewards, advantages and returns (RLTrainer._prepare_trajectories).
+    - update appends those AgentBuffers to the update buffer and updates the model when ready.
+    - publish puts the updated policy into the policy queues.
+    The stages are connected by bounded queues. When the update stage falls behind, the ingest
+    stage blocks, the trajectory queues fill up and the AgentProcessors wait for room, which
+    slows the environments down instead of letting the trajectories pile up.
+    The ingest stage estimates values with its own copy of the critic, which is refreshed with
+    the weights and normalization statistics of the critic each time the update stage
+    publishes a policy, so the value estimates of new trajectories run while the models are
+    updated. Ingest only updates the normalizers of its copy, so a refreshed copy briefly
+    misses the observations of the batches still waiting for the update stage. The update stage applies the
+    same normalization updates to the policy and the critic when it appends the trajectories,
+    and also records their steps (writing summaries and checkpoints). The reward providers
+    that have networks are still evaluated under the trainer's model_lock, since the update
+    trains them.
+    """
+
+    def __init__(
+        self,
+        trainer: RLTrainer,
+        should_stop: Callable[[], bool],
+        max_pending_batches: int = 4,
+    ):
+        """
+        :param trainer: The trainer to run. It must support the staged pipeline.
+        :param should_stop: Called by the stages to know when to exit.
+        :param max_pending_batches: How many batches of prepared trajectories can wait for the
+            update stage before the ingest stage blocks.
+        """
+        self.trainer = trainer
+        self._should_stop = should_stop
+        self._prepared_queue: queue.Queue = queue.Queue(maxsize=max_pending_batches)
+        # A single pending publish is enough, since it always hands out the latest policy.
+        self._publish_queue: queue.Queue = queue.Queue(maxsize=1)
+        self._stage_name = f"trainer_pipeline.{trainer.brain_name}"
+        self._copied_critic = False
+        # The newest critic state published by the update stage for the ingest stage's copy.
+        self._critic_state: Optional[Dict[str, torch.Tensor]] = None
+        self._critic_state_lock = threading.Lock()
+        self.threads = [
+            threading.Thread(target=stage, daemon=True)
+            for stage in (self._ingest, self._update, self._publish)
+        ]
+
+    def start(self) -> None:
+        for thread in self.threads:
+            thread.start()
+
+    def _put(self, q: queue.Queue, item: Any) -> None:
+        """
+        Puts item into q, waiting for room unless the pipeline is stopping.
+        """
+        while not self._should_stop():
+            try:
+                q.put(item, timeout=QUEUE_TIMEOUT_S)
+                return
+            except queue.Full:
+                pass
+
+    def _get_all(self, q: queue.Queue) -> List[Any]:
+        """
+        Waits briefly for an item of q, then takes everything else that is in it.
+        """
+        try:
+            items = [q.get(timeout=QUEUE_TIMEOUT_S)]
+        except queue.Empty:
+            return []
+        while True:
+            try:
+                items.append(q.get_nowait())
+            except queue.Empty:
+                return items
+
+    def _take_trajectories(self) -> List[Trajectory]:
+        trajectories: List[Trajectory] = []
+        for traj_queue in self.trainer.trajectory_queues:
+            # As in RLTrainer.advance(), take at most what is in the queue right now.
+            for _ in range(traj_queue.qsize()):
+                try:
+                    trajectories.append(traj_queue.get_nowait())
+                except AgentManagerQueue.Empty:
+                    break
+        return trajectories
+
+    def _optimizer(self) -> Optional[TorchOptimizer]:
+        # The trainers that support the pipeline create their optimizer with their policy.
+        optimizer = getattr(self.trainer, "optimizer", None)
+        return optimizer if isinstance(optimizer, TorchOptimizer) else None
+
+    def _refresh_estimation_critic(self, optimizer: TorchOptimizer) -> None:
+        """
+        Makes the ingest stage's copy of the critic on the first call, and then loads the
+        newest critic state published by the update stage into it.
+        """
+        if not self._copied_critic:
+            with self.trainer.model_lock:
+                optimizer.copy_critic_for_estimation()
+            self._copied_critic = True
+            return
+        with self._critic_state_lock:
+            state, self._critic_state = self._critic_state, None
+        if state is not None:
+            optimizer.load_estimation_critic(state)
+
+    def _ingest(self) -> None:
+        stage = f"{self._stage_name}.ingest"
+        while not self._should_stop():
+            set_queue_depth(
+                stage, sum(q.qsize() for q in self.trainer.trajectory_queues)
+            )
+            trajectories = self._take_trajectories()
+            if not trajectories:
+                time.sleep(INGEST_POLL_INTERVAL_S)
+                continue
+            optimizer = self._optimizer()
+            if optimizer is not None:
+                self._refresh_estimation_critic(optimizer)
+            with hierarchical_timer("prepare_trajectories"):
+                agent_buffers = self.trainer._prepare_trajectories(trajectories)
+            moments = (
+                optimizer.take_deferred_normalization() if optimizer is not None else []
+            )
+            record_throughput(stage, sum(len(t.steps) for t in trajectories))
+            self._put(
+                self._prepared_queue,
+                PreparedTrajectories(trajectories, agent_buffers, moments),
+            )
+
+    def _update(self) -> None:
+        stage = f"{self._stage_name}.update"
+        trainer = self.trainer
+        while not self._should_stop():
+            set_queue_depth(stage, self._prepared_queue.qsize())
+            batches: List[PreparedTrajectories] = self._get_all(self._prepared_queue)
+            optimizer = self._optimizer()
+            for batch in batches:
+                trainer._record_steps(batch.trajectories)
+            num_steps = 0
+            with hierarchical_timer("append_to_update_buffer"), trainer.model_lock:
+                for batch in batches:
+                    if optimizer is not None:
+                        for moments in batch.moments:
+                            optimizer.apply_normalization(moments)
+                    for agent_buffer in batch.agent_buffers:
+                        trainer._append_to_update_buffer(agent_buffer)
+                        num_steps += agent_buffer.num_experiences
+            if num_steps > 0:
+                record_throughput(stage, num_steps)
+            if trainer.should_still_train and trainer._is_ready_update():
+                critic_state = None
+                with hierarchical_timer("_update_policy"), trainer.model_lock:
+                    updated = trainer._update_policy()
+                    if updated and optimizer is not None:
+                        critic_state = optimizer.critic_state()
+                if updated:
+                    if critic_state is not None:
+                        with self._critic_state_lock:
+                            self._critic_state = critic_state
+                    try:
+                        self._publish_queue.put_nowait(True)
+                    except queue.Full:
+                        # The pending publish will hand out this policy.
+                        pass
+
+    def _publish(self) -> None:
+        stage = f"{self._stage_name}.publish"
+        while not self._should_stop():
+            set_queue_depth(stage, self._publish_queue.qsize())
+            if not self._get_all(self._publish_queue):
+                continue
+            with hierarchical_timer("publish_policy"):
+                for q in self.trainer.policy_queues:
+                    # Get policies that correspond to the policy queue in question
+                    q.put(self.trainer.get_policy(q.behavior_id))
+            record_throughput(stage, 1)
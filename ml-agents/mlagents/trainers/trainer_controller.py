@@ -25,6 +25,8 @@ from mlagents_envs.timers import (
 from mlagents.trainers.trainer import Trainer
 from mlagents.trainers.environment_parameter_manager import EnvironmentParameterManager
 from mlagents.trainers.trainer import TrainerFactory
+from mlagents.trainers.trainer.rl_trainer import RLTrainer
+from mlagents.trainers.trainer.trainer_pipeline import TrainerPipeline
 from mlagents.trainers.behavior_id_utils import BehaviorIdentifiers
 from mlagents.trainers.agent_processor import AgentManager
 from mlagents import torch_utils
@@ -118,18 +120,16 @@ class TrainerController:
 
         parsed_behavior_id = BehaviorIdentifiers.from_name_behavior_id(name_behavior_id)
         brain_name = parsed_behavior_id.brain_name
-        trainerthread = None
+        new_threads: List[threading.Thread] = []
         if brain_name in self.trainers:
             trainer = self.trainers[brain_name]
         else:
             trainer = self.trainer_factory.generate(brain_name)
             self.trainers[brain_name] = trainer
             if trainer.threaded:
-                # Only create trainer thread for new trainers
-                trainerthread = threading.Thread(
-                    target=self.trainer_update_func, args=(trainer,), daemon=True
-                )
-                self.trainer_threads.append(trainerthread)
+                # Only create trainer threads for new trainers
+                new_threads = self._create_trainer_threads(trainer)
+                self.trainer_threads.extend(new_threads)
             env_manager.on_training_started(
                 brain_name, self.trainer_factory.trainer_config[brain_name]
             )
@@ -147,6 +147,7 @@ class TrainerController:
             trainer.stats_reporter,
             trainer.parameters.time_horizon,
             threaded=trainer.threaded,
+            batched=trainer.parameters.batched_experiences,
         )
         env_manager.set_agent_manager(name_behavior_id, agent_manager)
         env_manager.set_policy(name_behavior_id, policy)
@@ -156,8 +157,23 @@ class TrainerController:
         trainer.subscribe_trajectory_queue(agent_manager.trajectory_queue)
 
         # Only start new trainers
-        if trainerthread is not None:
-            trainerthread.start()
+        for thread in new_threads:
+            thread.start()
+
+    def _create_trainer_threads(self, trainer: Trainer) -> List[threading.Thread]:
+        if trainer.parameters.staged_pipeline:
+            if isinstance(trainer, RLTrainer) and trainer.supports_staged_pipeline:
+                pipeline = TrainerPipeline(trainer, lambda: self.kill_trainers)
+                return pipeline.threads
+            self.logger.warning(
+                f"{trainer.brain_name} doesn't support staged_pipeline, "
+                "it will be advanced on a single thread."
+            )
+        return [
+            threading.Thread(
+                target=self.trainer_update_func, args=(trainer,), daemon=True
+            )
+        ]
 
     def _create_trainers_and_managers(
         self, env_manager: EnvManager, behavior_ids: Set[str]
@@ -1,8 +1,9 @@
-from typing import List, NamedTuple
+from typing import List, NamedTuple, Optional, Sequence
 import numpy as np
 
 from mlagents.trainers.buffer import (
     AgentBuffer,
+    AgentBufferField,
     ObservationKeyPrefix,
     AgentBufferKey,
     BufferKey,
@@ -100,6 +101,16 @@ class GroupObsUtil:
     ) -> List[List[np.ndarray]]:
         return list(map(list, zip(*list_list)))
 
+    @staticmethod
+    def _padded_to_batch(field: AgentBufferField) -> List[np.ndarray]:
+        padded = field.padded_to_batch(pad_value=np.nan)
+        # uint8 observations can't hold the NaN padding of the missing agents, so they
+        # are padded as floats and scaled here rather than in the visual encoders.
+        first_obs = next((entry[0] for entry in field if entry), None)
+        if first_obs is not None and first_obs.dtype == np.uint8:
+            padded = [obs / 255.0 for obs in padded]
+        return padded
+
     @staticmethod
     def from_buffer(batch: AgentBuffer, num_obs: int) -> List[np.array]:
         """
@@ -108,7 +119,7 @@ class GroupObsUtil:
         separated_obs: List[np.array] = []
         for i in range(num_obs):
             separated_obs.append(
-                batch[GroupObsUtil.get_name_at(i)].padded_to_batch(pad_value=np.nan)
+                GroupObsUtil._padded_to_batch(batch[GroupObsUtil.get_name_at(i)])
             )
         # separated_obs contains a List(num_obs) of Lists(num_agents), we want to flip
         # that and get a List(num_agents) of Lists(num_obs)
@@ -123,9 +134,7 @@ class GroupObsUtil:
         separated_obs: List[np.array] = []
         for i in range(num_obs):
             separated_obs.append(
-                batch[GroupObsUtil.get_name_at_next(i)].padded_to_batch(
-                    pad_value=np.nan
-                )
+                GroupObsUtil._padded_to_batch(batch[GroupObsUtil.get_name_at_next(i)])
             )
         # separated_obs contains a List(num_obs) of Lists(num_agents), we want to flip
         # that and get a List(num_agents) of Lists(num_obs)
@@ -133,8 +142,129 @@ class GroupObsUtil:
         return result
 
 
+class StagedSteps(Sequence[AgentExperience]):
+    """
+    The steps of a trajectory of an agent without group, as contiguous arrays with one row per
+    step instead of a list of AgentExperiences. Indexing it builds the AgentExperience of a step,
+    and Trajectory.to_agentbuffer copies the arrays into the AgentBuffer field by field.
+    """
+
+    def __init__(
+        self,
+        obs: List[np.ndarray],
+        reward: np.ndarray,
+        done: np.ndarray,
+        interrupted: np.ndarray,
+        action: ActionTuple,
+        action_probs: LogProbsTuple,
+        action_mask: Optional[np.ndarray],
+        discrete_branches: List[int],
+        prev_action: np.ndarray,
+        memory: Optional[np.ndarray],
+        group_reward: np.ndarray,
+    ):
+        """
+        :param action_mask: The concatenated action masks of the discrete branches, with True
+            for masked actions as in AgentExperience, or None if there are no discrete actions.
+        :param discrete_branches: The sizes of the discrete branches, to split action_mask.
+        """
+        self.obs = obs
+        self.reward = reward
+        self.done = done
+        self.interrupted = interrupted
+        self.action = action
+        self.action_probs = action_probs
+        self.action_mask = action_mask
+        self.mask_split_indices = np.cumsum(discrete_branches)[:-1]
+        self.prev_action = prev_action
+        self.memory = memory
+        self.group_reward = group_reward
+
+    def __len__(self) -> int:
+        return len(self.reward)
+
+    def __getitem__(self, index):
+        if isinstance(index, slice):
+            return [self[i] for i in range(*index.indices(len(self)))]
+        if index < 0:
+            index += len(self)
+        if not 0 <= index < len(self):
+            raise IndexError("StagedSteps index out of range")
+        return AgentExperience(
+            obs=[obs[index] for obs in self.obs],
+            reward=float(self.reward[index]),
+            done=bool(self.done[index]),
+            action=ActionTuple(
+                continuous=self.action.continuous[index],
+                discrete=self.action.discrete[index],
+            ),
+            action_probs=LogProbsTuple(
+                continuous=self.action_probs.continuous[index],
+                discrete=self.action_probs.discrete[index],
+            ),
+            action_mask=np.split(self.action_mask[index], self.mask_split_indices)
+            if self.action_mask is not None
+            else None,
+            prev_action=self.prev_action[index],
+            interrupted=bool(self.interrupted[index]),
+            memory=self.memory[index] if self.memory is not None else None,
+            group_status=[],
+            group_reward=float(self.group_reward[index]),
+        )
+
+    def to_agentbuffer(self, next_obs: List[np.ndarray]) -> AgentBuffer:
+        """
+        Fills an AgentBuffer with the same fields as Trajectory.to_agentbuffer, with one extend
+        per field rather than one append per step and field.
+        """
+        buffer = AgentBuffer()
+        length = len(self)
+        for i, obs in enumerate(self.obs):
+            buffer[ObsUtil.get_name_at(i)].extend(obs)
+            buffer[ObsUtil.get_name_at_next(i)].extend(obs[1:])
+            buffer[ObsUtil.get_name_at_next(i)].append(next_obs[i])
+            buffer[GroupObsUtil.get_name_at(i)].extend([] for _ in range(length))
+            buffer[GroupObsUtil.get_name_at_next(i)].extend([] for _ in range(length))
+        for key in (
+            BufferKey.GROUP_CONTINUOUS_ACTION,
+            BufferKey.GROUP_DISCRETE_ACTION,
+            BufferKey.GROUPMATE_REWARDS,
+            BufferKey.GROUP_NEXT_CONT_ACTION,
+            BufferKey.GROUP_NEXT_DISC_ACTION,
+            BufferKey.GROUP_DONES,
+        ):
+            buffer[key].extend([] for _ in range(length))
+        buffer[BufferKey.GROUP_REWARD].extend(self.group_reward)
+        if self.memory is not None:
+            buffer[BufferKey.MEMORY].extend(self.memory)
+        buffer[BufferKey.MASKS].extend(np.ones(length, dtype=np.float32))
+        buffer[BufferKey.DONE].extend(self.done)
+
+        continuous, discrete = self.action.continuous, self.action.discrete
+        buffer[BufferKey.CONTINUOUS_ACTION].extend(continuous)
+        buffer[BufferKey.DISCRETE_ACTION].extend(discrete)
+        buffer[BufferKey.NEXT_CONT_ACTION].extend(continuous[1:])
+        buffer[BufferKey.NEXT_CONT_ACTION].append(np.zeros_like(continuous[-1]))
+        buffer[BufferKey.NEXT_DISC_ACTION].extend(discrete[1:])
+        buffer[BufferKey.NEXT_DISC_ACTION].append(np.zeros_like(discrete[-1]))
+        buffer[BufferKey.CONTINUOUS_LOG_PROBS].extend(self.action_probs.continuous)
+        buffer[BufferKey.DISCRETE_LOG_PROBS].extend(self.action_probs.discrete)
+
+        # 1 means active in the buffer, while True means masked in the staged masks.
+        if self.action_mask is not None:
+            buffer[BufferKey.ACTION_MASK].extend(1 - self.action_mask)
+        else:
+            buffer[BufferKey.ACTION_MASK].extend(
+                np.ones(discrete.shape, dtype=np.float32)
+            )
+        buffer[BufferKey.ACTION_MASK].padding_value = 1
+        buffer[BufferKey.PREV_ACTION].extend(self.prev_action)
+        buffer[BufferKey.ENVIRONMENT_REWARDS].extend(self.reward)
+        return buffer
+
+
 class Trajectory(NamedTuple):
-    steps: List[AgentExperience]
+    steps: Sequence[AgentExperience]
     next_obs: List[
         np.ndarray
     ]  # Observation following the trajectory, for bootstrapping
@@ -150,6 +280,8 @@ class Trajectory(NamedTuple):
         less than the trajectory, as the next observation need to be populated from the last
         step of the trajectory.
         """
+        if isinstance(self.steps, StagedSteps):
+            return self.steps.to_agentbuffer(self.next_obs)
         agent_buffer_trajectory = AgentBuffer()
         obs = self.steps[0].obs
         for step, exp in enumerate(self.steps):